@@ -1,5 +1,6 @@
 package raisa;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,6 +10,8 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,8 +20,15 @@ import raisa.config.InputOutputTargetEnum;
 import raisa.config.LocalizationModeEnum;
 import raisa.config.VisualizerConfig;
 import raisa.config.VisualizerConfigItemEnum;
+import raisa.domain.RayCaster;
 import raisa.domain.WorldModel;
 import raisa.domain.samples.Sample;
+import raisa.domain.vectormap.SvgMapReader;
+import raisa.domain.vectormap.VectorWorld;
+import raisa.metrics.FlightRecorderSink;
+import raisa.metrics.MetricsRegistry;
+import raisa.session.SensorFileWriter;
+import raisa.simulator.MultiRobotSimulation;
 import raisa.test.ExampleWorld1;
 import raisa.ui.VisualizerFrame;
 import raisa.util.RandomUtil;
@@ -36,6 +46,13 @@ public class Visualizer {
 	private static final String OPTION_SAMPLEFILE = "samplefile";
 	private static final String OPTION_CONTROLFILE = "controlfile";
 	private static final String OPTION_RANDOMSEED = "randomseed";
+	private static final String OPTION_FPS = "fps";
+	private static final String OPTION_HEADLESS = "headless";
+	private static final String OPTION_SENSOROUT = "sensorout";
+	private static final String OPTION_ROBOTS = "robots";
+	private static final String OPTION_CHECKPOINT = "checkpoint";
+	private static final String OPTION_METRICS = "metrics";
+	private static final String OPTION_JFR = "jfr";
 
 	private static List<Sample> getExampleSamples() {
 		ExampleWorld1 world = new ExampleWorld1();
@@ -67,15 +84,78 @@ public class Visualizer {
 	private static Options createCmdLineOptions() {
 		Options options = new Options();
 		options.addOption(OPTION_HELP, false, "print this help text");
-		options.addOption(OPTION_MAP, true, "map file in PNG-format");
+		options.addOption(OPTION_MAP, true, "map file in PNG or SVG format");
 		options.addOption(OPTION_IOMODE, true, "'simfile' (default), 'serial' or 'simulator'");
-		options.addOption(OPTION_LOCALIZATION, true, "'none' (default), 'slam' or 'particle_filter'");
+		options.addOption(OPTION_LOCALIZATION, true, "'none' (default), 'slam', 'particle_filter' or 'scan_matching'");
 		options.addOption(OPTION_SAMPLEFILE, true, "'example' or simulation samples file for simfile iomode");
 		options.addOption(OPTION_CONTROLFILE, true, "control file for actual robot or simulator");
 		options.addOption(OPTION_RANDOMSEED, true, "set numeric seed for random generators");
+		options.addOption(OPTION_FPS, true, "maximum frame rate of the map view (default 30)");
+		options.addOption(OPTION_HEADLESS, true, "run the simulator without user interface for given simulated seconds");
+		options.addOption(OPTION_SENSOROUT, true, "sensor file for samples generated in headless mode");
+		options.addOption(OPTION_ROBOTS, true, "number of robots simulated in parallel in headless mode (default 1)");
+		options.addOption(OPTION_CHECKPOINT, true, "world checkpoint to continue from");
+		options.addOption(OPTION_METRICS, false, "record pipeline metrics from the start, readable through JMX");
+		options.addOption(OPTION_JFR, true, "flight recording with pipeline events written to the file on exit (Java 11 or later)");
 		return options;
 	}
 
+	private static void runHeadless(CommandLine line) throws Exception {
+		float seconds;
+		try {
+			seconds = Float.parseFloat(line.getOptionValue(OPTION_HEADLESS));
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid headless duration \"" + line.getOptionValue(OPTION_HEADLESS) + "\"");
+		}
+		int robotCount = 1;
+		if (line.hasOption(OPTION_ROBOTS)) {
+			try {
+				robotCount = Integer.parseInt(line.getOptionValue(OPTION_ROBOTS));
+			} catch (NumberFormatException e) {
+				throw new ParseException("Invalid number of robots \"" + line.getOptionValue(OPTION_ROBOTS) + "\"");
+			}
+		}
+		WorldModel mapModel = new WorldModel();
+		RayCaster map = null;
+		if (line.hasOption(OPTION_MAP)) {
+			String fileName = line.getOptionValue(OPTION_MAP);
+			if ("svg".equalsIgnoreCase(FilenameUtils.getExtension(fileName))) {
+				// the sensors see the exact vector map, the estimators its rasterized copy
+				VectorWorld vectorWorld = new SvgMapReader().read(new File(fileName));
+				mapModel.getGrid().setUserImage(vectorWorld.toMapImage());
+				map = vectorWorld;
+			} else {
+				mapModel.loadMap(fileName);
+			}
+		}
+		if (map == null) {
+			map = mapModel.getGrid().getUserMapSnapshot();
+		}
+		long seed = RandomUtil.getSeed();
+		log.info("Running headless simulation of {} robots with random seed {}", robotCount, seed);
+		MultiRobotSimulation simulation = new MultiRobotSimulation(mapModel.getGrid(), map, robotCount, seed,
+				VisualizerConfig.getInstance().getSimulatorTicksPerSecond());
+		List<SensorFileWriter> sensorFileWriters = new ArrayList<SensorFileWriter>();
+		try {
+			if (line.hasOption(OPTION_SENSOROUT)) {
+				String fileName = line.getOptionValue(OPTION_SENSOROUT);
+				for (int i = 0; i < robotCount; ++i) {
+					File file = new File(robotCount == 1 ? fileName : FilenameUtils.removeExtension(fileName) + "-" + (i + 1) + "."
+							+ FilenameUtils.getExtension(fileName));
+					SensorFileWriter sensorFileWriter = new SensorFileWriter(file);
+					sensorFileWriters.add(sensorFileWriter);
+					simulation.getRobots().get(i).addSensorListener(sensorFileWriter);
+				}
+			}
+			simulation.run(seconds, Math.min(robotCount, Runtime.getRuntime().availableProcessors()));
+		} finally {
+			for (SensorFileWriter sensorFileWriter : sensorFileWriters) {
+				IOUtils.closeQuietly(sensorFileWriter);
+			}
+		}
+		log.info("Headless simulation finished");
+	}
+
 	public static void main(String[] args) throws Exception {
 		Options options = createCmdLineOptions();
 	    CommandLineParser parser = new PosixParser();
@@ -106,6 +186,8 @@ public class Visualizer {
 					config.setLocalizationMode(LocalizationModeEnum.SLAM);
 				} else if ("particle_filter".equalsIgnoreCase(val)) {
 					config.setLocalizationMode(LocalizationModeEnum.PARTICLE_FILTER);
+				} else if ("scan_matching".equalsIgnoreCase(val)) {
+					config.setLocalizationMode(LocalizationModeEnum.SCAN_MATCHING);
 				} else {
 					throw new ParseException("Invalid localization \"" + val + "\"");
 				}
@@ -113,6 +195,29 @@ public class Visualizer {
 				config.setLocalizationMode(LocalizationModeEnum.NONE);
 			}
 
+			if (line.hasOption(OPTION_FPS)) {
+				String val = line.getOptionValue(OPTION_FPS);
+				try {
+					config.setMaxFramesPerSecond(Integer.parseInt(val));
+				} catch (IllegalArgumentException e) {
+					throw new ParseException("Invalid fps \"" + val + "\"");
+				}
+			}
+
+			MetricsRegistry.getInstance().registerMBean();
+			if (line.hasOption(OPTION_METRICS)) {
+				MetricsRegistry.getInstance().setEnabled(true);
+			}
+
+			if (line.hasOption(OPTION_JFR)) {
+				FlightRecorderSink.startRecording(new File(line.getOptionValue(OPTION_JFR)));
+			}
+
+			if (line.hasOption(OPTION_HEADLESS)) {
+				runHeadless(line);
+				return;
+			}
+
 			if (line.hasOption(OPTION_IOMODE)) {
 				String val = line.getOptionValue(OPTION_IOMODE);
 				if ("simfile".equals(val)) {
@@ -131,6 +236,10 @@ public class Visualizer {
 			final WorldModel worldModel = new WorldModel();
 			final VisualizerFrame frame = new VisualizerFrame(worldModel);
 
+			if (line.hasOption(OPTION_CHECKPOINT)) {
+				frame.loadCheckpoint(line.getOptionValue(OPTION_CHECKPOINT));
+			}
+
 			if (line.hasOption(OPTION_SAMPLEFILE)) {
 				String val = line.getOptionValue(OPTION_SAMPLEFILE);
 				if ("example".equals(val)) {
@@ -1,10 +1,5 @@
 package raisa.comms;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
-
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +11,12 @@ public class SampleParser {
 	private static final Logger log = LoggerFactory.getLogger(SampleParser.class);
 	public String sampleString;
 	private final static float G = 9.80665f;
+	/** Infrared distances in cm outside these, exclusive, are not valid measurements */
+	public static final float MIN_IR_DISTANCE = 20.0f;
+	public static final float MAX_IR_DISTANCE = 150.0f;
+	/** Sonar distances in cm outside these, exclusive, are not valid measurements */
+	public static final float MIN_SONAR_DISTANCE = 15.0f;
+	public static final float MAX_SONAR_DISTANCE = 645.0f;
 	
 	public SampleParser() {
 	}
@@ -44,70 +45,66 @@ public class SampleParser {
 					int messageNumber = Integer.valueOf(value);
 					sample.setMessageNumber(messageNumber);
 				} else if (part.startsWith("IR")) {
-					float angle = (float) Math.toRadians(Integer.parseInt(value));
-					angle = angle - (float)Math.PI / 2.0f;
+					float angle = toSampleAngle(Integer.parseInt(value));
 					sample.setInfrared1Angle(angle);
 					infrared1AngleIsValid = true;
 				} else if (part.startsWith("ID")) {
 					float distance = parseIrSensorValue(value);
-					if (distance > 20.0f && distance < 150.0f) {
+					if (isValidIrDistance(distance)) {
 						sample.setInfrared1Distance(distance);
 						infrared1DistanceIsValid = true;
 					}
 				} else if(part.startsWith("Id")) {
 					float distance = Integer.parseInt(value);
-					if (distance > 20.0f && distance < 150.0f) {
+					if (isValidIrDistance(distance)) {
 						sample.setInfrared1Distance(distance);
 						infrared1DistanceIsValid = true;
 					}
 				} else if (part.startsWith("JR")) {
-					float angle = (float) Math.toRadians(Integer.parseInt(value));
-					angle = angle - (float)Math.PI / 2.0f;
+					float angle = toSampleAngle(Integer.parseInt(value));
 					sample.setInfrared2Angle(angle);
 					infrared2AngleIsValid = true;
 				} else if (part.startsWith("JD")) {
 					float distance = parseIrSensorValue(value);
-					if (distance > 20.0f && distance < 150.0f) {
+					if (isValidIrDistance(distance)) {
 						sample.setInfrared2Distance(distance);
 						infrared2DistanceIsValid = true;
 					}
 				} else if(part.startsWith("Jd")) {
 					float distance = Integer.parseInt(value);
-					if (distance > 20.0f && distance < 150.0f) {
+					if (isValidIrDistance(distance)) {
 						sample.setInfrared2Distance(distance);
 						infrared2DistanceIsValid = true;
 					}
 				} else if (part.startsWith("SR")) {
-					float angle = (float) Math.toRadians(Integer.parseInt(value));
-					angle = angle - (float)Math.PI / 2.0f;
+					float angle = toSampleAngle(Integer.parseInt(value));
 					sample.setUltrasound1Angle(angle);
 					ultrasound1AngleIsValid = true;
 				} else if (part.startsWith("SD")) {
 					float distance = parseSoundSensorValue(value);
-					if (distance > 15.0f && distance < 645.0f) {
+					if (isValidSonarDistance(distance)) {
 						sample.setUltrasound1Distance(distance);
 						ultrasound1DistanceIsValid = true;
 					}
 				} else if(part.startsWith("Sd")) {
 					float distance = Integer.parseInt(value);
-					if (distance > 15.0f && distance < 645.0f) {
+					if (isValidSonarDistance(distance)) {
 						sample.setUltrasound1Distance(distance);
 						ultrasound1DistanceIsValid = true;
 					}
 				} else if (part.startsWith("TR")) {
-					float angle = (float) Math.toRadians(Integer.parseInt(value));
-					angle = angle - (float)Math.PI / 2.0f;
+					float angle = toSampleAngle(Integer.parseInt(value));
 					sample.setUltrasound2Angle(angle);
 					ultrasound2AngleIsValid = true;
 				} else if (part.startsWith("TD")) {
 					float distance = parseSoundSensorValue(value);
-					if (distance > 15.0f && distance < 645.0f) {
+					if (isValidSonarDistance(distance)) {
 						sample.setUltrasound2Distance(distance);
 						ultrasound2DistanceIsValid = true;
 					}
 				} else if(part.startsWith("Td")) {
 					float distance = Integer.parseInt(value);
-					if (distance > 15.0f && distance < 645.0f) {
+					if (isValidSonarDistance(distance)) {
 						sample.setUltrasound2Distance(distance);
 						ultrasound2DistanceIsValid = true;
 					}
@@ -160,13 +157,8 @@ public class SampleParser {
 					long timestampMillis = Long.parseLong(value);
 					sample.setTimestampMillis(timestampMillis);										
 				} else if (part.startsWith("CA")) {
-					byte[] imageBytes = HexToBinaryUtil.hexStringToByteArray(value);
-					sample.setImageBytes(imageBytes);
-					try {
-						sample.setImage(ImageIO.read(new ByteArrayInputStream(imageBytes)));
-					} catch(IOException iex) {
-						log.error("Failed to parse image", iex);
-					}
+					// decoded only when displayed, see CameraImageCache
+					sample.setImageBytes(HexToBinaryUtil.hexStringToByteArray(value));
 				} else {
 				}
 			}
@@ -178,6 +170,22 @@ public class SampleParser {
 		return sample;
 	}
 
+	/**
+	 * Converts a scanner direction in degrees to the angle of a sample
+	 * relative to the heading of the robot.
+	 */
+	public static float toSampleAngle(int direction) {
+		return (float) Math.toRadians(direction) - (float) Math.PI / 2.0f;
+	}
+
+	public static boolean isValidIrDistance(float distance) {
+		return distance > MIN_IR_DISTANCE && distance < MAX_IR_DISTANCE;
+	}
+
+	public static boolean isValidSonarDistance(float distance) {
+		return distance > MIN_SONAR_DISTANCE && distance < MAX_SONAR_DISTANCE;
+	}
+
 	private float parseSoundSensorValue(String value) {
 		float srSensorValue = Integer.parseInt(value);
 		float distance = (srSensorValue / 2.0f) * 2.54f; // cm
@@ -0,0 +1,13 @@
+package raisa.comms;
+
+import raisa.domain.samples.Sample;
+
+/**
+ * Sensor listener that also takes samples already in parsed form. In-process
+ * sources such as the simulator publish samples this way, so they are not
+ * formatted into text and parsed back. The text of such a sample is created
+ * only when {@link Sample#getSampleString()} is called.
+ */
+public interface TypedSensorListener extends SensorListener {
+	void sampleReceived(Sample sample);
+}
@@ -15,12 +15,18 @@ import raisa.domain.plan.Waypoint;
 import raisa.domain.robot.Robot;
 import raisa.domain.robot.RobotState;
 import raisa.domain.robot.RobotStateListener;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
 import raisa.util.GeometryUtil;
 import raisa.util.Vector2D;
 
 public class PidController extends Controller implements RobotStateListener {
 
 	private static final float HALF_PI = (float)(Math.PI / 2.0d);
+	/** Above this traversal cost the robot is close to obstacles and drives slower */
+	private static final float CAUTIOUS_COST = 2.0f;
+	/** Age of the sample behind the state when the speeds computed from it are sent */
+	private static final Histogram controlAge = MetricsRegistry.getInstance().histogram("latency.sampleAge.control");
 
 	private final WorldModel world;
 	private final BasicController basicController;
@@ -75,7 +81,8 @@ public class PidController extends Controller implements RobotStateListener {
 	}
 
 
-	private void sendPackage() {
+	private void sendPackage(Robot robot) {
+		controlAge.recordSince(robot.getSampleReceivedNanos());
 		for(Communicator communicator : communicators) {
 			communicator.sendPackage(createPackage());
 		}
@@ -100,6 +107,13 @@ public class PidController extends Controller implements RobotStateListener {
 		return basicController.getServos();
 	}
 
+	@Override
+	public void robotStatesReplaced(List<Robot> states) {
+		// the integral and derivative terms belong to the replaced states
+		accError = 0.0f;
+		prevError = 0.0f;
+	}
+
 	@Override
 	public void robotStateChanged(Robot newRobot) {
 		if (ControllerTypeEnum.PID_CONTROLLER != VisualizerConfig.getInstance().getControllerType() ||
@@ -113,7 +127,7 @@ public class PidController extends Controller implements RobotStateListener {
 			rightSpeed = 0;
 			accError = 0.0f;
 			prevError = 0.0f;
-			sendPackage();
+			sendPackage(newRobot);
 			return;
 		}
 		if (currentWaypoint != waypointPosition) {
@@ -139,6 +153,10 @@ public class PidController extends Controller implements RobotStateListener {
 		float control = Kp * error + Kd * errorDot + Ki * accError;
 		int[] speedPowerMap = ControlMessage.getSpeedPowerMap();
 		int baseSpeed = speedPowerMap[3];
+		Vector2D position = robotState.getPosition();
+		if (world.getCostmap().getCost(position.x, position.y) > CAUTIOUS_COST) {
+			baseSpeed = speedPowerMap[2];
+		}
 		int gearChange;
 		if (control > HALF_PI) {
 			baseSpeed = 0;
@@ -151,7 +169,7 @@ public class PidController extends Controller implements RobotStateListener {
 		}
 		leftSpeed = baseSpeed * (movingForward?1:-1) + gearChange;
 		rightSpeed = baseSpeed * (movingForward?1:-1) - gearChange;
-		sendPackage();
+		sendPackage(newRobot);
 	}
 
 	private float calculateError(RobotState robotState, Vector2D waypointPosition) {
@@ -11,10 +11,25 @@ import raisa.comms.Communicator;
 import raisa.comms.ControlMessage;
 import raisa.comms.SampleParser;
 import raisa.comms.SensorListener;
+import raisa.comms.TypedSensorListener;
+import raisa.domain.samples.Sample;
+import raisa.metrics.Counter;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+import raisa.metrics.PipelineEvent;
+import raisa.metrics.PipelineEventEnum;
+import raisa.metrics.PipelineEvents;
 
 public abstract class AbstractSerialCommunicator implements Communicator {
 
 	private static final Logger log = LoggerFactory.getLogger(AbstractSerialCommunicator.class);
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private static final Counter sentMessages = metrics.counter("comms.sentMessages");
+	private static final Counter receivedSamples = metrics.counter("comms.receivedSamples");
+	private static final Counter invalidSamples = metrics.counter("comms.invalidSamples");
+	private static final Counter acknowledgements = metrics.counter("comms.acknowledgements");
+	private static final Histogram dispatchTime = metrics.histogram("comms.dispatch");
+	private static final Histogram parseTime = metrics.histogram("pipeline.parse");
 	/** Default bits per second for COM port. */
 	protected static final String ACK_STR = "ACK";
 	/** Milliseconds to block while waiting for port open */
@@ -57,6 +72,7 @@ public abstract class AbstractSerialCommunicator implements Communicator {
 			return;
 		}
 		if (serialWriter != null) {
+			sentMessages.increment();
 			serialWriter.sendMessage(controlMessage);
 			synchronized(serialWriterThread) {
 				serialWriterThread.notifyAll();
@@ -77,8 +93,11 @@ public abstract class AbstractSerialCommunicator implements Communicator {
 		if (!unfinishedSample.endsWith("\n")) {
 			return;
 		}
+		long receivedNanos = System.nanoTime();
+		PipelineEvents.begin(PipelineEventEnum.SAMPLE_RECEIVED).commit(unfinishedSample.length());
 		if (unfinishedSample.startsWith(ACK_STR)) {
 			log.debug("Sample {}", unfinishedSample);
+			acknowledgements.increment();
 			try {
 				int ackId = Character.getNumericValue(unfinishedSample.charAt(3));
 				serialWriter.setAckReceived(ackId);
@@ -89,15 +108,38 @@ public abstract class AbstractSerialCommunicator implements Communicator {
 				log.warn("Invalid acknowledgement: " + unfinishedSample);
 			}
 		} else if (!parser.isValid(unfinishedSample)) {
+			invalidSamples.increment();
 			log.warn("Invalid sample! {}", unfinishedSample);
 		} else {
+			receivedSamples.increment();
+			long startNanos = metrics.startTimer();
+			Sample sample = null;
 			for (SensorListener sensorListener : sensorListeners) {
-				sensorListener.sampleReceived(unfinishedSample);
+				if (sensorListener instanceof TypedSensorListener) {
+					// parsed once here so that the sample carries its arrival time
+					if (sample == null) {
+						sample = parse(unfinishedSample, receivedNanos);
+					}
+					((TypedSensorListener) sensorListener).sampleReceived(sample);
+				} else {
+					sensorListener.sampleReceived(unfinishedSample);
+				}
 			}
+			dispatchTime.recordSince(startNanos);
 		}
 		unfinishedSample = "";
 	}
 
+	private Sample parse(String sampleString, long receivedNanos) {
+		long startNanos = metrics.startTimer();
+		PipelineEvent event = PipelineEvents.begin(PipelineEventEnum.SAMPLE_PARSED);
+		Sample sample = parser.parse(sampleString);
+		sample.setReceivedNanos(receivedNanos);
+		event.commit(sample.getMessageNumber());
+		parseTime.recordSince(startNanos);
+		return sample;
+	}
+
 	@Override
 	public abstract void close();
 
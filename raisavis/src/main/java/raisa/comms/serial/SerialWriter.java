@@ -7,6 +7,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import raisa.comms.ControlMessage;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+import raisa.metrics.PipelineEvent;
+import raisa.metrics.PipelineEventEnum;
+import raisa.metrics.PipelineEvents;
 
 /**
  * Sends the latest control message to Raisa until acknowledgement received.
@@ -16,11 +21,16 @@ class SerialWriter implements Runnable {
 	private static final Logger log = LoggerFactory.getLogger(SerialWriter.class);
 
 	private static final long RETRANSMISSION_DELAY = 500L;
+	private static final Histogram roundTripTime = MetricsRegistry.getInstance().histogram("latency.controlRoundTrip");
 
 	private final OutputStream output;
 	private ControlMessage latestMessage;
 	private int ackId = -1;
 	private boolean running = true;
+	/** Begun at the first send of the message waiting for acknowledgement */
+	private PipelineEvent acknowledgementEvent;
+	private ControlMessage unacknowledgedMessage;
+	private long unacknowledgedSinceNanos;
 
 	public SerialWriter(OutputStream output) {
 		this.output = output;
@@ -28,6 +38,13 @@ class SerialWriter implements Runnable {
 
 	public void setAckReceived(int id) {
 		this.ackId = id;
+		synchronized (this) {
+			if (unacknowledgedMessage != null && unacknowledgedMessage.getId() % 10 == id) {
+				acknowledgementEvent.commit(unacknowledgedMessage.getId());
+				roundTripTime.recordSince(unacknowledgedSinceNanos);
+				unacknowledgedMessage = null;
+			}
+		}
 	}
 
 	public void sendMessage(ControlMessage message) {
@@ -43,10 +60,19 @@ class SerialWriter implements Runnable {
 		return msg.getId() % 10 != ackId && !msg.isTakePicture();
 	}
 
-	private void writeMessage(ControlMessage msg) {
+	private void writeMessage(ControlMessage msg, int retryCounter) {
+		if (retryCounter == 0) {
+			synchronized (this) {
+				acknowledgementEvent = PipelineEvents.begin(PipelineEventEnum.CONTROL_MESSAGE_ACKNOWLEDGED);
+				unacknowledgedMessage = msg;
+				unacknowledgedSinceNanos = System.nanoTime();
+			}
+		}
+		PipelineEvent event = PipelineEvents.begin(PipelineEventEnum.CONTROL_MESSAGE_SENT);
 		try {
 			output.write(msg.toSerialMessage());
 			output.flush();
+			event.commit(msg.getId(), retryCounter);
 		} catch (IOException e) {
 			log.error("Error sending command to serial", e);
 		}
@@ -67,7 +93,7 @@ class SerialWriter implements Runnable {
 				ControlMessage msg = latestMessage;
 				int retryCounter = msg.getAndIncRetryCounter();
 				if (retryCounter == 0 || retryRequired(msg)) {
-					writeMessage(msg);
+					writeMessage(msg, retryCounter);
 				}
 			}
 			retransmissionDelay();
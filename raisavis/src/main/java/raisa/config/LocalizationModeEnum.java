@@ -2,7 +2,7 @@ package raisa.config;
 
 public enum LocalizationModeEnum {
 
-	NONE(0), PARTICLE_FILTER(1), SLAM(2);
+	NONE(0), PARTICLE_FILTER(1), SLAM(2), SCAN_MATCHING(3);
 	
 	private int index;
 	
@@ -26,6 +26,7 @@ public class VisualizerConfig {
 	// map area visualization options
 	private final Set<MapAreaElementEnum> displayedMapAreaElements = new HashSet<MapAreaElementEnum>();
 	private int displayMinAgeForParticles = 0;
+	private int maxFramesPerSecond = 30;
 
 	// measurements panel visualization options
 	private final Set<MeasurementTypeEnum> displayedMeasurements = new HashSet<MeasurementTypeEnum>();
@@ -194,6 +195,20 @@ public class VisualizerConfig {
 		return this.displayedMapAreaElements;
 	}
 
+	public int getMaxFramesPerSecond() {
+		return maxFramesPerSecond;
+	}
+
+	public void setMaxFramesPerSecond(int maxFramesPerSecond) {
+		if (maxFramesPerSecond <= 0) {
+			throw new IllegalArgumentException("Frame rate must be positive: " + maxFramesPerSecond);
+		}
+		if (this.maxFramesPerSecond != maxFramesPerSecond) {
+			this.maxFramesPerSecond = maxFramesPerSecond;
+			this.changedConfigs.add(VisualizerConfigItemEnum.MAX_FRAMES_PER_SECOND);
+		}
+	}
+
 	public void setSimulatorTicksPerSecond(int ticksPerSecond) {
 		this.simulatorTicksPerSecond = ticksPerSecond;
 	}
@@ -9,6 +9,7 @@ public enum VisualizerConfigItemEnum {
 	DISPLAYED_MEASUREMENTS, 
 	DISPLAYED_CONTROLS,
 	ACTIVATED_ALGORITHMS,
-	ACTIVATED_CONTROLLER;
+	ACTIVATED_CONTROLLER,
+	MAX_FRAMES_PER_SECOND;
 
 }
@@ -0,0 +1,270 @@
+package raisa.domain;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import raisa.domain.robot.Robot;
+import raisa.util.algorithm.search.IndexedMinHeap;
+
+/**
+ * Traversal cost of each grid cell for the center of the robot. Derived from
+ * a distance field to the nearest obstacle, which is kept up to date
+ * incrementally when single cells change. Obstacle and inscribed cells are
+ * lethal, cells where the robot footprint may touch an obstacle depending on
+ * its heading are expensive, and the cost decays exponentially to one at the
+ * inflation radius.
+ * <p>
+ * Cells blocked in the user map are obstacles at once, sensed cells only
+ * after {@link Grid#SENSED_OBSTACLE_HITS} hits, so that a spurious reading
+ * does not close a route.
+ */
+public class Costmap {
+	public static final float LETHAL_COST = Float.POSITIVE_INFINITY;
+	public static final float FREE_COST = 1.0f;
+	public static final float CIRCUMSCRIBED_COST = 8.0f;
+	public static final float INSCRIBED_RADIUS = Robot.ROBOT_WIDTH / 2.0f;
+	public static final float CIRCUMSCRIBED_RADIUS = (float) Math.hypot(Robot.ROBOT_WIDTH / 2.0f, Robot.ROBOT_LENGTH / 2.0f);
+	public static final float INFLATION_RADIUS = CIRCUMSCRIBED_RADIUS + 2.0f * Grid.CELL_SIZE;
+	private static final float COST_DECAY = 0.45f;
+
+	private static final int[] NEIGHBOR_DX = { 1, 0, -1, 0, 1, -1, -1, 1 };
+	private static final int[] NEIGHBOR_DY = { 0, 1, 0, -1, 1, 1, -1, -1 };
+
+	private final Grid grid;
+	private final int size = Grid.GRID_SIZE;
+	/** Distance to the nearest obstacle in cells, infinite if further than the inflation radius */
+	private final float[] distances;
+	/** Nearest obstacle cell or -1 */
+	private final int[] nearestObstacles;
+	private final float[] costs;
+	private final IndexedMinHeap wave;
+	private final int maxDistanceInCells = (int) Math.ceil(INFLATION_RADIUS / Grid.CELL_SIZE);
+	private final List<CostmapListener> listeners = new ArrayList<CostmapListener>();
+	private int[] changedCells = new int[64];
+	private int changedCellCount = 0;
+	private boolean trackingChanges = false;
+
+	public Costmap(Grid grid) {
+		this.grid = grid;
+		distances = new float[size * size];
+		nearestObstacles = new int[size * size];
+		costs = new float[size * size];
+		wave = new IndexedMinHeap(size * size);
+		rebuild();
+	}
+
+	public synchronized void addCostmapListener(CostmapListener listener) {
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+	}
+
+	public synchronized void removeCostmapListener(CostmapListener listener) {
+		listeners.remove(listener);
+	}
+
+	public float getCost(int x, int y) {
+		if (x < 0 || y < 0 || x >= size || y >= size) {
+			return LETHAL_COST;
+		}
+		return costs[y * size + x];
+	}
+
+	public float getCost(int cell) {
+		return costs[cell];
+	}
+
+	public float getCost(float worldX, float worldY) {
+		return getCost(Grid.toCell(worldX), Grid.toCell(worldY));
+	}
+
+	public boolean isLethal(int x, int y) {
+		return getCost(x, y) == LETHAL_COST;
+	}
+
+	/**
+	 * Distance to the nearest obstacle in world units, capped at the inflation radius.
+	 */
+	public float getObstacleDistance(int x, int y) {
+		if (x < 0 || y < 0 || x >= size || y >= size) {
+			return 0.0f;
+		}
+		return Math.min(distances[y * size + x] * Grid.CELL_SIZE, INFLATION_RADIUS);
+	}
+
+	/**
+	 * Recalculates everything from the grid. Used after bulk changes such as
+	 * loading a map or undoing an edit.
+	 */
+	public synchronized void rebuild() {
+		Arrays.fill(distances, Float.POSITIVE_INFINITY);
+		Arrays.fill(nearestObstacles, -1);
+		Arrays.fill(costs, FREE_COST);
+		wave.clear();
+		for (int y = 0; y < size; ++y) {
+			for (int x = 0; x < size; ++x) {
+				if (isObstacle(x, y)) {
+					int cell = y * size + x;
+					setDistance(cell, 0.0f, cell);
+					wave.insertOrUpdate(cell, 0.0f, 0.0f);
+				}
+			}
+		}
+		propagateLowerWave();
+		for (CostmapListener listener : listeners) {
+			listener.costmapRebuilt();
+		}
+	}
+
+	/**
+	 * Takes the distance field and costs from the map file instead of
+	 * calculating them. They have to belong to the obstacles of the grid.
+	 */
+	public synchronized void load(MapFile map) {
+		map.getLayer(MapLayerEnum.DISTANCE).asFloatBuffer().get(distances);
+		map.getLayer(MapLayerEnum.NEAREST_OBSTACLE).asIntBuffer().get(nearestObstacles);
+		map.getLayer(MapLayerEnum.COST).asFloatBuffer().get(costs);
+		wave.clear();
+		for (CostmapListener listener : listeners) {
+			listener.costmapRebuilt();
+		}
+	}
+
+	synchronized void getDistances(FloatBuffer buffer) {
+		buffer.put(distances);
+	}
+
+	synchronized void getNearestObstacles(IntBuffer buffer) {
+		buffer.put(nearestObstacles);
+	}
+
+	synchronized void getCosts(FloatBuffer buffer) {
+		buffer.put(costs);
+	}
+
+	/**
+	 * Updates the distance field around a single changed cell. The work done
+	 * is bounded by the cells within the inflation radius of the change.
+	 */
+	public synchronized void updateCell(int x, int y) {
+		if (x < 0 || y < 0 || x >= size || y >= size) {
+			return;
+		}
+		int cell = y * size + x;
+		boolean isObstacle = isObstacle(x, y);
+		boolean wasObstacle = nearestObstacles[cell] == cell;
+		if (isObstacle == wasObstacle) {
+			return;
+		}
+		trackingChanges = !listeners.isEmpty();
+		changedCellCount = 0;
+		if (isObstacle) {
+			setDistance(cell, 0.0f, cell);
+			wave.insertOrUpdate(cell, 0.0f, 0.0f);
+		} else {
+			propagateRaiseWave(cell);
+		}
+		propagateLowerWave();
+		trackingChanges = false;
+		if (changedCellCount > 0) {
+			for (CostmapListener listener : listeners) {
+				listener.costsChanged(changedCells, changedCellCount);
+			}
+		}
+	}
+
+	private boolean isObstacle(int x, int y) {
+		return grid.isUserCellBlocked(x, y) || grid.isSensedCellBlocked(x, y);
+	}
+
+	/**
+	 * Clears all cells whose nearest obstacle was the removed one and queues
+	 * their still valid neighbours so that the lower wave can fill the hole.
+	 */
+	private void propagateRaiseWave(int removedObstacle) {
+		int[] stack = new int[64];
+		int stackSize = 0;
+		stack[stackSize++] = removedObstacle;
+		setDistance(removedObstacle, Float.POSITIVE_INFINITY, -1);
+		while (stackSize > 0) {
+			int cell = stack[--stackSize];
+			int x = cell % size;
+			int y = cell / size;
+			for (int i = 0; i < NEIGHBOR_DX.length; ++i) {
+				int nx = x + NEIGHBOR_DX[i];
+				int ny = y + NEIGHBOR_DY[i];
+				if (nx < 0 || ny < 0 || nx >= size || ny >= size) {
+					continue;
+				}
+				int neighbor = ny * size + nx;
+				int obstacle = nearestObstacles[neighbor];
+				if (obstacle == removedObstacle) {
+					setDistance(neighbor, Float.POSITIVE_INFINITY, -1);
+					if (stackSize == stack.length) {
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					stack[stackSize++] = neighbor;
+				} else if (obstacle >= 0) {
+					wave.insertOrUpdate(neighbor, distances[neighbor], 0.0f);
+				}
+			}
+		}
+	}
+
+	private void propagateLowerWave() {
+		while (!wave.isEmpty()) {
+			int cell = wave.pop();
+			int obstacle = nearestObstacles[cell];
+			if (obstacle < 0) {
+				continue;
+			}
+			int obstacleX = obstacle % size;
+			int obstacleY = obstacle / size;
+			int x = cell % size;
+			int y = cell / size;
+			for (int i = 0; i < NEIGHBOR_DX.length; ++i) {
+				int nx = x + NEIGHBOR_DX[i];
+				int ny = y + NEIGHBOR_DY[i];
+				if (nx < 0 || ny < 0 || nx >= size || ny >= size) {
+					continue;
+				}
+				float distance = (float) Math.hypot(nx - obstacleX, ny - obstacleY);
+				int neighbor = ny * size + nx;
+				if (distance <= maxDistanceInCells && distance < distances[neighbor]) {
+					setDistance(neighbor, distance, obstacle);
+					wave.insertOrUpdate(neighbor, distance, 0.0f);
+				}
+			}
+		}
+	}
+
+	private void setDistance(int cell, float distance, int obstacle) {
+		distances[cell] = distance;
+		nearestObstacles[cell] = obstacle;
+		float cost = toCost(distance * Grid.CELL_SIZE);
+		if (trackingChanges && cost != costs[cell]) {
+			if (changedCellCount == changedCells.length) {
+				changedCells = Arrays.copyOf(changedCells, changedCells.length * 2);
+			}
+			changedCells[changedCellCount++] = cell;
+		}
+		costs[cell] = cost;
+	}
+
+	private static float toCost(float obstacleDistance) {
+		if (obstacleDistance < INSCRIBED_RADIUS) {
+			return LETHAL_COST;
+		}
+		if (obstacleDistance <= CIRCUMSCRIBED_RADIUS) {
+			return CIRCUMSCRIBED_COST;
+		}
+		if (obstacleDistance >= INFLATION_RADIUS) {
+			return FREE_COST;
+		}
+		return FREE_COST + (CIRCUMSCRIBED_COST - FREE_COST)
+				* (float) Math.exp(-COST_DECAY * (obstacleDistance - CIRCUMSCRIBED_RADIUS));
+	}
+}
@@ -0,0 +1,16 @@
+package raisa.domain;
+
+/**
+ * Called while the costmap is locked, implementations should only record the
+ * change and do the actual work elsewhere.
+ */
+public interface CostmapListener {
+
+	/**
+	 * The costs of the given cells changed. Only the first count entries are valid.
+	 */
+	void costsChanged(int[] cells, int count);
+
+	void costmapRebuilt();
+
+}
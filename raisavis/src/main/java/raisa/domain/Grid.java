@@ -3,29 +3,70 @@ package raisa.domain;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
-import raisa.util.CollectionUtil;
 import raisa.util.Vector2D;
 
-public class Grid {
+public class Grid implements RayCaster {
 	public static final int CELL_SIZE = 8;
 	public static final int GRID_SIZE = 401;
-	public static final int MAX_UNDO_LEVELS = 10;
+	public static final int MAX_UNDO_LEVELS = 1000;
+	/** Side of the square tiles the user map undo history is kept in */
+	public static final int USER_TILE_SIZE = 32;
+	private static final int USER_TILES_PER_SIDE = (GRID_SIZE + USER_TILE_SIZE - 1) / USER_TILE_SIZE;
+	private static final int USER_TILE_COUNT = USER_TILES_PER_SIDE * USER_TILES_PER_SIDE;
+	/** Side of the square cell regions whose modifications are tracked for redrawing */
+	public static final int REGION_SIZE = 16;
+	public static final int REGIONS_PER_SIDE = (GRID_SIZE + REGION_SIZE - 1) / REGION_SIZE;
+	/** Hits needed before a sensed cell is an obstacle, single readings are often spurious */
+	public static final int SENSED_OBSTACLE_HITS = 3;
+	private static final int MAX_SENSED_HITS = Byte.MAX_VALUE;
+	/** Beyond this many drawn cells the user map snapshot is made again from the image */
+	private static final int MAX_USER_MAP_SNAPSHOT_CHANGES = GRID_SIZE * GRID_SIZE / 64;
+	/** Sensed deltas linked before a delta holding all the sensed cells is saved instead */
+	private static final int MAX_SENSED_DELTA_DEPTH = 16;
 	private static final Color transparentColor = new Color(1.0f, 0.0f, 1.0f, 0.0f);
 	private static final Color blockedColor = new Color(0.5f, 0.6f, 0.7f, 1.0f);
 	private static final Color userBlockedColor = Color.red;
 	private static final Color clearColor = Color.white;
 
 	private BufferedImage blockedImage = new BufferedImage(GRID_SIZE, GRID_SIZE, BufferedImage.TYPE_INT_ARGB);
-	private List<BufferedImage> userUndoLevels = new ArrayList<BufferedImage>();
+	private final BufferedImage userImage = new BufferedImage(GRID_SIZE, GRID_SIZE, BufferedImage.TYPE_INT_ARGB);
+	/**
+	 * Tiles of the user map at each undo level. Levels share the tiles that
+	 * did not change between them, and tiles are never modified once in
+	 * the history, so undoing only copies the tiles that differ.
+	 */
+	private List<int[][]> userUndoLevels = new ArrayList<int[][]>();
 	private int userUndoLevel = 0;
+	/** Tiles of the user image changed since it was the current undo level */
+	private final BitSet changedUserTiles = new BitSet(USER_TILE_COUNT);
+	private volatile int userImageVersion = 0;
+	private final Object modificationLock = new Object();
+	private volatile int modificationCount = 0;
+	private final int[] regionModifications = new int[REGIONS_PER_SIDE * REGIONS_PER_SIDE];
+	private final Costmap costmap;
+	private final Object userMapSnapshotLock = new Object();
+	private MapSnapshot userMapSnapshot;
+	/** User cells drawn since the snapshot was made */
+	private int[] userMapSnapshotChanges = new int[64];
+	private int userMapSnapshotChangeCount = 0;
+	/** Set when the snapshot has to be made again from the whole image */
+	private boolean userMapSnapshotStale = true;
+	private final BitSet sensedChanges = new BitSet(GRID_SIZE * GRID_SIZE);
+	/** Obstacle readings in each cell since it was last sensed clear */
+	private final byte[] sensedHits = new byte[GRID_SIZE * GRID_SIZE];
+	private SensedDelta latestSensedDelta;
 
 	public Grid() {
-		BufferedImage userImage = new BufferedImage(GRID_SIZE, GRID_SIZE, BufferedImage.TYPE_INT_ARGB);
-		userUndoLevels.add(userImage);
 		resetImage(blockedImage);
-		resetImage(getUserImage());
+		resetImage(userImage);
+		userUndoLevels.add(new int[USER_TILE_COUNT][]);
+		changedUserTiles.set(0, USER_TILE_COUNT);
+		saveUserTiles();
+		costmap = new Costmap(this);
 	}
 
 	private void resetImage(BufferedImage image) {
@@ -36,61 +77,331 @@ public class Grid {
 		}
 	}
 
+	/**
+	 * Converts a world coordinate to a grid cell index. Same for both axes.
+	 */
+	public static int toCell(float coordinate) {
+		return Math.round(coordinate / CELL_SIZE) + GRID_SIZE / 2;
+	}
+
+	/**
+	 * Converts a grid cell index to the world coordinate of the cell center.
+	 */
+	public static float toWorld(int cell) {
+		return (cell - GRID_SIZE / 2) * CELL_SIZE;
+	}
+
 	public void setGridPosition(Vector2D position, boolean isBlocked) {
-		int x = Math.round(position.x / CELL_SIZE) + GRID_SIZE / 2;
-		int y = Math.round(position.y / CELL_SIZE) + GRID_SIZE / 2;
+		int x = toCell(position.x);
+		int y = toCell(position.y);
 		int rgbNew = clearColor.getRGB();
-		if (isBlocked) {
-			int rgbOld = this.blockedImage.getRGB(x, y);
-			if (rgbOld == clearColor.getRGB() || rgbOld == transparentColor.getRGB()) {
-				rgbNew = blockedColor.getRGB();
-			} else {
-				rgbNew = (new Color(rgbOld).darker()).getRGB();
+		synchronized (sensedChanges) {
+			if (isBlocked) {
+				int rgbOld = this.blockedImage.getRGB(x, y);
+				if (rgbOld == clearColor.getRGB() || rgbOld == transparentColor.getRGB()) {
+					rgbNew = blockedColor.getRGB();
+				} else {
+					rgbNew = (new Color(rgbOld).darker()).getRGB();
+				}
 			}
-		} 
-		this.blockedImage.setRGB(x, y, rgbNew);
+			this.blockedImage.setRGB(x, y, rgbNew);
+			int cell = y * GRID_SIZE + x;
+			sensedHits[cell] = isBlocked ? (byte) Math.min(sensedHits[cell] + 1, MAX_SENSED_HITS) : 0;
+			sensedChanges.set(cell);
+		}
+		markModified(x, y);
+		costmap.updateCell(x, y);
+	}
+
+	/**
+	 * Returns the sensed cells changed since the previous delta was saved or
+	 * restored. The delta links to that previous one, so restoring it
+	 * restores all the sensed cells. Every {@link #MAX_SENSED_DELTA_DEPTH}
+	 * deltas the chain is flattened into a new base, so that restoring does
+	 * not replay the whole history and older deltas can be freed.
+	 */
+	public SensedDelta saveSensedDelta() {
+		synchronized (sensedChanges) {
+			int[] cells = new int[sensedChanges.cardinality()];
+			int[] rgbs = new int[cells.length];
+			byte[] hits = new byte[cells.length];
+			int i = 0;
+			for (int cell = sensedChanges.nextSetBit(0); cell >= 0; cell = sensedChanges.nextSetBit(cell + 1)) {
+				cells[i] = cell;
+				rgbs[i] = blockedImage.getRGB(cell % GRID_SIZE, cell / GRID_SIZE);
+				hits[i] = sensedHits[cell];
+				++i;
+			}
+			sensedChanges.clear();
+			latestSensedDelta = new SensedDelta(latestSensedDelta, cells, rgbs, hits);
+			if (latestSensedDelta.depth >= MAX_SENSED_DELTA_DEPTH) {
+				latestSensedDelta = latestSensedDelta.flatten();
+			}
+			return latestSensedDelta;
+		}
+	}
+
+	/**
+	 * Returns all the sensed cells as they are now in a single delta, not
+	 * linked to the saved ones and leaving the changes to save as they are.
+	 */
+	public SensedDelta copySensedCells() {
+		synchronized (sensedChanges) {
+			int[] pixels = blockedImage.getRGB(0, 0, GRID_SIZE, GRID_SIZE, null, 0, GRID_SIZE);
+			int clearRgb = transparentColor.getRGB();
+			int count = 0;
+			for (int cell = 0; cell < pixels.length; ++cell) {
+				if (pixels[cell] != clearRgb || sensedHits[cell] != 0) {
+					++count;
+				}
+			}
+			int[] cells = new int[count];
+			int[] rgbs = new int[count];
+			byte[] hits = new byte[count];
+			int i = 0;
+			for (int cell = 0; cell < pixels.length; ++cell) {
+				if (pixels[cell] != clearRgb || sensedHits[cell] != 0) {
+					cells[i] = cell;
+					rgbs[i] = pixels[cell];
+					hits[i] = sensedHits[cell];
+					++i;
+				}
+			}
+			return new SensedDelta(null, cells, rgbs, hits);
+		}
+	}
+
+	/**
+	 * Replaces the sensed cells with the ones of the delta and the deltas
+	 * before it. Null clears them.
+	 */
+	public void restoreSensedDelta(SensedDelta delta) {
+		List<SensedDelta> deltas = new ArrayList<SensedDelta>();
+		for (SensedDelta d = delta; d != null; d = d.previous) {
+			deltas.add(d);
+		}
+		synchronized (sensedChanges) {
+			resetImage(blockedImage);
+			Arrays.fill(sensedHits, (byte) 0);
+			for (int i = deltas.size() - 1; i >= 0; --i) {
+				SensedDelta d = deltas.get(i);
+				for (int j = 0; j < d.cells.length; ++j) {
+					blockedImage.setRGB(d.cells[j] % GRID_SIZE, d.cells[j] / GRID_SIZE, d.rgbs[j]);
+					sensedHits[d.cells[j]] = d.hits[j];
+				}
+			}
+			sensedChanges.clear();
+			latestSensedDelta = delta;
+		}
+		markAllModified();
+		costmap.rebuild();
 	}
 
 	public void setUserPosition(Vector2D position, boolean isBlocked) {
-		int x = Math.round(position.x / CELL_SIZE) + GRID_SIZE / 2;
-		int y = Math.round(position.y / CELL_SIZE) + GRID_SIZE / 2;
+		int x = toCell(position.x);
+		int y = toCell(position.y);
 		int rgb1 = (isBlocked ? userBlockedColor : clearColor).getRGB();
-		getLatestUserImage().setRGB(x, y, rgb1);
+		userImage.setRGB(x, y, rgb1);
+		changedUserTiles.set((y / USER_TILE_SIZE) * USER_TILES_PER_SIDE + x / USER_TILE_SIZE);
+		++userImageVersion;
+		if (x >= 0 && y >= 0 && x < GRID_SIZE && y < GRID_SIZE) {
+			addUserMapSnapshotChange(y * GRID_SIZE + x);
+		}
+		markModified(x, y);
+		costmap.updateCell(x, y);
+	}
+
+	public Costmap getCostmap() {
+		return costmap;
+	}
+
+	/**
+	 * Incremented whenever the user drawn map changes. Lets derived maps
+	 * know when they have to be rebuilt.
+	 */
+	public int getUserImageVersion() {
+		return userImageVersion;
 	}
 
-	private BufferedImage getLatestUserImage() {
-		return this.userUndoLevels.get(userUndoLevels.size() - 1);
+	/**
+	 * Incremented whenever a cell of the user or sensed map images changes.
+	 */
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
+	/**
+	 * Modification count at the latest change of the given cell region.
+	 */
+	public int getRegionModification(int regionX, int regionY) {
+		return regionModifications[regionY * REGIONS_PER_SIDE + regionX];
+	}
+
+	private void markModified(int x, int y) {
+		synchronized (modificationLock) {
+			regionModifications[(y / REGION_SIZE) * REGIONS_PER_SIDE + x / REGION_SIZE] = ++modificationCount;
+		}
+	}
+
+	private void markModified(int x, int y, int width, int height) {
+		synchronized (modificationLock) {
+			++modificationCount;
+			for (int regionY = y / REGION_SIZE; regionY <= (y + height - 1) / REGION_SIZE; ++regionY) {
+				for (int regionX = x / REGION_SIZE; regionX <= (x + width - 1) / REGION_SIZE; ++regionX) {
+					regionModifications[regionY * REGIONS_PER_SIDE + regionX] = modificationCount;
+				}
+			}
+		}
+	}
+
+	private void markAllModified() {
+		synchronized (modificationLock) {
+			Arrays.fill(regionModifications, ++modificationCount);
+		}
+	}
+
+	/**
+	 * Returns true if the cell is blocked in the user drawn map. Cells outside
+	 * the grid are blocked.
+	 */
+	public boolean isUserCellBlocked(int x, int y) {
+		return isBlocked(x, y, getUserImage());
+	}
+
+	/**
+	 * Returns true if an obstacle has been sensed in the cell at least
+	 * {@link #SENSED_OBSTACLE_HITS} times since it was last sensed clear.
+	 * Cells outside the grid are blocked.
+	 */
+	public boolean isSensedCellBlocked(int x, int y) {
+		if (x < 0 || y < 0 || x >= GRID_SIZE || y >= GRID_SIZE) {
+			return true;
+		}
+		return sensedHits[y * GRID_SIZE + x] >= SENSED_OBSTACLE_HITS;
+	}
+
+	/**
+	 * Returns true if any sensed cell is blocked.
+	 */
+	public boolean hasSensedObstacles() {
+		synchronized (sensedChanges) {
+			for (byte hits : sensedHits) {
+				if (hits >= SENSED_OBSTACLE_HITS) {
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 
 	public BufferedImage getBlockedImage() {
 		return blockedImage;
 	}
 
+	/**
+	 * The user drawn map. Undoing and redoing change its pixels, the image
+	 * itself stays the same.
+	 */
 	public BufferedImage getUserImage() {
-		return userUndoLevels.get(userUndoLevel);
+		return userImage;
 	}
 
+	/**
+	 * Saves the user map as it is now as an undo level. Only the tiles
+	 * changed since the previous level are copied.
+	 */
 	public void pushUserUndoLevel() {
+		saveUserTiles();
 		if (isUserEditRedoable()) {
-			userUndoLevels = userUndoLevels.subList(0, userUndoLevel + 1);
+			userUndoLevels = new ArrayList<int[][]>(userUndoLevels.subList(0, userUndoLevel + 1));
+		}
+		userUndoLevels.add(userUndoLevels.get(userUndoLevel));
+		if (userUndoLevels.size() > MAX_UNDO_LEVELS + 1) {
+			userUndoLevels.remove(0);
 		}
-		BufferedImage copy = new BufferedImage(getLatestUserImage().getWidth(), getLatestUserImage().getHeight(),
-				getLatestUserImage().getType());
-		copy.setData(getLatestUserImage().getData());
-		userUndoLevels.add(copy);
-		userUndoLevels = CollectionUtil.takeLast(userUndoLevels, MAX_UNDO_LEVELS + 1);
 		userUndoLevel = userUndoLevels.size() - 1;
+		++userImageVersion;
 	}
 
 	public void redoUserUndoLevel() {
 		if (isUserEditRedoable()) {
-			++userUndoLevel;
+			saveUserTiles();
+			showUserUndoLevel(userUndoLevel + 1);
 		}
 	}
 
 	public void popUserUndoLevel() {
 		if (isUserEditUndoable()) {
-			--userUndoLevel;
+			saveUserTiles();
+			showUserUndoLevel(userUndoLevel - 1);
+		}
+	}
+
+	/**
+	 * Copies the changed tiles of the user image to the current undo level,
+	 * replacing its tiles instead of modifying them.
+	 */
+	private void saveUserTiles() {
+		if (changedUserTiles.isEmpty()) {
+			return;
+		}
+		int[][] tiles = userUndoLevels.get(userUndoLevel).clone();
+		for (int tile = changedUserTiles.nextSetBit(0); tile >= 0; tile = changedUserTiles.nextSetBit(tile + 1)) {
+			int x = (tile % USER_TILES_PER_SIDE) * USER_TILE_SIZE;
+			int y = (tile / USER_TILES_PER_SIDE) * USER_TILE_SIZE;
+			int width = Math.min(USER_TILE_SIZE, GRID_SIZE - x);
+			int height = Math.min(USER_TILE_SIZE, GRID_SIZE - y);
+			tiles[tile] = (int[]) userImage.getRaster().getDataElements(x, y, width, height, new int[width * height]);
+		}
+		userUndoLevels.set(userUndoLevel, tiles);
+		changedUserTiles.clear();
+	}
+
+	/**
+	 * Writes the tiles that differ from the current level to the user
+	 * image. The costmap is updated cell by cell unless most of the map
+	 * changed.
+	 */
+	private void showUserUndoLevel(int level) {
+		int[][] currentTiles = userUndoLevels.get(userUndoLevel);
+		int[][] tiles = userUndoLevels.get(level);
+		userUndoLevel = level;
+		BitSet differentTiles = new BitSet(USER_TILE_COUNT);
+		for (int tile = 0; tile < USER_TILE_COUNT; ++tile) {
+			if (tiles[tile] != currentTiles[tile]) {
+				differentTiles.set(tile);
+			}
+		}
+		boolean rebuild = differentTiles.cardinality() > USER_TILE_COUNT / 4;
+		int[] changedCells = new int[64];
+		int changedCellCount = 0;
+		for (int tile = differentTiles.nextSetBit(0); tile >= 0; tile = differentTiles.nextSetBit(tile + 1)) {
+			int x = (tile % USER_TILES_PER_SIDE) * USER_TILE_SIZE;
+			int y = (tile / USER_TILES_PER_SIDE) * USER_TILE_SIZE;
+			int width = Math.min(USER_TILE_SIZE, GRID_SIZE - x);
+			int height = Math.min(USER_TILE_SIZE, GRID_SIZE - y);
+			userImage.getRaster().setDataElements(x, y, width, height, tiles[tile]);
+			if (rebuild) {
+				continue;
+			}
+			for (int i = 0; i < tiles[tile].length; ++i) {
+				if (isBlockedRgb(tiles[tile][i]) != isBlockedRgb(currentTiles[tile][i])) {
+					if (changedCellCount == changedCells.length) {
+						changedCells = Arrays.copyOf(changedCells, changedCells.length * 2);
+					}
+					changedCells[changedCellCount++] = (y + i / width) * GRID_SIZE + x + i % width;
+				}
+			}
+			markModified(x, y, width, height);
+		}
+		userImageReplaced();
+		if (rebuild) {
+			markAllModified();
+			costmap.rebuild();
+		} else {
+			for (int i = 0; i < changedCellCount; ++i) {
+				costmap.updateCell(changedCells[i] % GRID_SIZE, changedCells[i] / GRID_SIZE);
+			}
 		}
 	}
 
@@ -111,31 +422,100 @@ public class Grid {
 	}
 
 	public void setUserImage(BufferedImage mapImage) {
-		getUserImage().setData(mapImage.getData());
+		userImage.setData(mapImage.getData());
+		changedUserTiles.set(0, USER_TILE_COUNT);
+		userImageReplaced();
+		markAllModified();
+		costmap.rebuild();
+	}
+
+	/**
+	 * Replaces the user drawn map with the one of the file. Its costmap
+	 * layers are used instead of rebuilding the costmap when they fit.
+	 */
+	public void setUserMap(MapFile map) {
+		if (!map.fitsGrid()) {
+			throw new IllegalArgumentException("Map does not have the size, resolution and origin of the grid");
+		}
+		int[] pixels = new int[GRID_SIZE * GRID_SIZE];
+		map.getUserPixels(pixels);
+		userImage.getRaster().setDataElements(0, 0, GRID_SIZE, GRID_SIZE, pixels);
+		changedUserTiles.set(0, USER_TILE_COUNT);
+		userImageReplaced();
+		markAllModified();
+		if (map.hasCostmapLayers() && !hasSensedObstacles()) {
+			costmap.load(map);
+		} else {
+			costmap.rebuild();
+		}
 	}
 
 	public void resetUserImage() {
-		resetImage(getUserImage());
+		resetImage(userImage);
+		changedUserTiles.set(0, USER_TILE_COUNT);
+		userImageReplaced();
+		markAllModified();
+		costmap.rebuild();
 	}
 
-	public float traceRay(Vector2D from, float angle) {
-		angle = angle - (float) Math.PI * 0.5f;
-		float x = from.x / CELL_SIZE + GRID_SIZE * 0.5f;
-		float y = from.y / CELL_SIZE + GRID_SIZE * 0.5f;
-		float dx = (float) Math.cos(angle);
-		float dy = (float) Math.sin(angle);
-		float maxDistanceInGrid = GRID_SIZE;
-		BufferedImage userImage = getUserImage();
-		for (float currentDistance = 0.0f; currentDistance < maxDistanceInGrid; currentDistance += 1.0f) {
-			x += dx;
-			y += dy;
+	/**
+	 * Immutable copy of the user drawn map. When only single cells were
+	 * drawn since the previous call, the previous copy is patched instead of
+	 * converting the whole image again.
+	 */
+	public MapSnapshot getUserMapSnapshot() {
+		synchronized (userMapSnapshotLock) {
+			if (userMapSnapshotStale) {
+				userMapSnapshot = new MapSnapshot(this);
+			} else if (userMapSnapshotChangeCount > 0) {
+				userMapSnapshot = userMapSnapshot.withChangedCells(this, userMapSnapshotChanges, userMapSnapshotChangeCount);
+			}
+			userMapSnapshotStale = false;
+			userMapSnapshotChangeCount = 0;
+			return userMapSnapshot;
+		}
+	}
 
-			if (isBlocked(x, y, userImage)) {
-				return currentDistance * CELL_SIZE;
+	private void addUserMapSnapshotChange(int cell) {
+		synchronized (userMapSnapshotLock) {
+			if (userMapSnapshotStale) {
+				return;
+			}
+			if (userMapSnapshotChangeCount == MAX_USER_MAP_SNAPSHOT_CHANGES) {
+				userMapSnapshotStale = true;
+				return;
 			}
+			if (userMapSnapshotChangeCount == userMapSnapshotChanges.length) {
+				userMapSnapshotChanges = Arrays.copyOf(userMapSnapshotChanges, userMapSnapshotChanges.length * 2);
+			}
+			userMapSnapshotChanges[userMapSnapshotChangeCount++] = cell;
 		}
+	}
 
-		return maxDistanceInGrid * CELL_SIZE;
+	/**
+	 * Called instead of incrementing the version when more than single
+	 * cells of the user image were replaced.
+	 */
+	private void userImageReplaced() {
+		++userImageVersion;
+		synchronized (userMapSnapshotLock) {
+			userMapSnapshotStale = true;
+		}
+	}
+
+	@Override
+	public float traceRay(Vector2D from, float angle) {
+		return getUserMapSnapshot().traceRay(from, angle);
+	}
+
+	@Override
+	public void traceRays(Vector2D from, float[] angles, int count, float maxRange, float[] distances) {
+		getUserMapSnapshot().traceRays(from, angles, count, maxRange, distances);
+	}
+
+	@Override
+	public float traceCone(Vector2D from, float angle, float halfWidth, float maxRange) {
+		return getUserMapSnapshot().traceCone(from, angle, halfWidth, maxRange);
 	}
 
 	public float getWidth() {
@@ -148,16 +528,38 @@ public class Grid {
 
 	private boolean isBlocked(float x, float y, BufferedImage userImage) {
 		if (x >= 0 && x < userImage.getWidth() - 1 && y >= 0 && y < userImage.getHeight() - 1) {
-			int clearRgb = clearColor.getRGB();
-			int rgb = userImage.getRGB((int) x, (int) y);
-			int alpha = (rgb >> 24) & 0xFF;
-			boolean isOpaque = alpha > 0;
-			return rgb != clearRgb && isOpaque;
+			return isBlockedRgb(userImage.getRGB((int) x, (int) y));
 		} else {
 			return true;
 		}
 	}
 
+	/**
+	 * Returns true for user map pixels that are drawn and not clear.
+	 */
+	static boolean isBlockedRgb(int rgb) {
+		int alpha = (rgb >> 24) & 0xFF;
+		boolean isOpaque = alpha > 0;
+		return rgb != clearColor.getRGB() && isOpaque;
+	}
+
+	static byte toOccupancy(int rgb) {
+		if (((rgb >> 24) & 0xFF) == 0) {
+			return MapFile.OCCUPANCY_UNKNOWN;
+		}
+		return isBlockedRgb(rgb) ? MapFile.OCCUPANCY_BLOCKED : MapFile.OCCUPANCY_FREE;
+	}
+
+	/**
+	 * Occupancies from 50 up are blocked.
+	 */
+	static int fromOccupancy(byte occupancy) {
+		if (occupancy < 0) {
+			return transparentColor.getRGB();
+		}
+		return occupancy >= MapFile.OCCUPANCY_BLOCKED / 2 ? userBlockedColor.getRGB() : clearColor.getRGB();
+	}
+
 	public boolean isClear(Vector2D position) {
 		BufferedImage userImage = getUserImage();
 		return !isBlocked(position.x / CELL_SIZE + GRID_SIZE * 0.5f - 0.5f, position.y / CELL_SIZE + GRID_SIZE * 0.5f - 0.5f, userImage);
@@ -178,4 +580,73 @@ public class Grid {
 	public float getCellSize() {
 		return CELL_SIZE;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Sensed cells changed between two saves, with their colors at the
+	 * later one.
+	 */
+	public static final class SensedDelta {
+		private final SensedDelta previous;
+		private final int[] cells;
+		private final int[] rgbs;
+		private final byte[] hits;
+		/** Deltas linked before this one */
+		private final int depth;
+
+		SensedDelta(SensedDelta previous, int[] cells, int[] rgbs, byte[] hits) {
+			this.previous = previous;
+			this.depth = previous == null ? 0 : previous.depth + 1;
+			this.cells = cells;
+			this.rgbs = rgbs;
+			this.hits = hits;
+		}
+
+		/**
+		 * Returns a single delta with the same cells as this one and the
+		 * ones before it.
+		 */
+		SensedDelta flatten() {
+			if (previous == null) {
+				return this;
+			}
+			List<SensedDelta> deltas = new ArrayList<SensedDelta>();
+			for (SensedDelta d = this; d != null; d = d.previous) {
+				deltas.add(d);
+			}
+			BitSet changed = new BitSet(GRID_SIZE * GRID_SIZE);
+			int[] pixels = new int[GRID_SIZE * GRID_SIZE];
+			byte[] cellHits = new byte[GRID_SIZE * GRID_SIZE];
+			for (int i = deltas.size() - 1; i >= 0; --i) {
+				SensedDelta d = deltas.get(i);
+				for (int j = 0; j < d.cells.length; ++j) {
+					changed.set(d.cells[j]);
+					pixels[d.cells[j]] = d.rgbs[j];
+					cellHits[d.cells[j]] = d.hits[j];
+				}
+			}
+			int[] flatCells = new int[changed.cardinality()];
+			int[] flatRgbs = new int[flatCells.length];
+			byte[] flatHits = new byte[flatCells.length];
+			int i = 0;
+			for (int cell = changed.nextSetBit(0); cell >= 0; cell = changed.nextSetBit(cell + 1)) {
+				flatCells[i] = cell;
+				flatRgbs[i] = pixels[cell];
+				flatHits[i] = cellHits[cell];
+				++i;
+			}
+			return new SensedDelta(null, flatCells, flatRgbs, flatHits);
+		}
+
+		int[] getCells() {
+			return cells;
+		}
+
+		int[] getRgbs() {
+			return rgbs;
+		}
+
+		byte[] getHits() {
+			return hits;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package raisa.domain;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Native map format whose layers are raw arrays read through a memory
+ * mapping, so loading a map does not decode anything and takes the same
+ * time whatever its size.
+ * <p>
+ * Layout, big-endian: int magic, int version, float origin x and y (world
+ * coordinates of the center of cell 0, 0), float cell size, int width and
+ * height in cells, float inflation radius the costmap layers were made
+ * with, int layer count, and for each layer an int layer id and a long
+ * offset from the start of the file. Layers are arrays of width * height
+ * values in rows, starting at offsets aligned to 8 bytes.
+ * <p>
+ * The distance field, nearest obstacle and cost layers are those of the
+ * user drawn map alone, and are used as they are when they match the
+ * current costmap parameters and no obstacles have been sensed yet.
+ */
+public class MapFile {
+	public static final String EXTENSION = "rmap";
+	/** "RMAP" */
+	static final int MAGIC = 0x524D4150;
+	static final int VERSION = 1;
+	public static final byte OCCUPANCY_FREE = 0;
+	public static final byte OCCUPANCY_BLOCKED = 100;
+	public static final byte OCCUPANCY_UNKNOWN = -1;
+	private static final int HEADER_SIZE = 36;
+	private static final int LAYER_ENTRY_SIZE = 12;
+
+	private final float originX;
+	private final float originY;
+	private final float cellSize;
+	private final int width;
+	private final int height;
+	private final float inflationRadius;
+	private final Map<MapLayerEnum, ByteBuffer> layers;
+
+	private MapFile(float originX, float originY, float cellSize, int width, int height, float inflationRadius,
+			Map<MapLayerEnum, ByteBuffer> layers) {
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSize;
+		this.width = width;
+		this.height = height;
+		this.inflationRadius = inflationRadius;
+		this.layers = layers;
+	}
+
+	/**
+	 * Maps the file and checks its header, the layers are read through the
+	 * mapping when used. Layers of unknown ids are skipped.
+	 */
+	public static MapFile open(File file) throws IOException {
+		return open(file, false);
+	}
+
+	/**
+	 * Same as {@link #open(File)}, but with copy the whole file is read into
+	 * memory instead. A mapped file cannot be deleted or replaced on Windows
+	 * until the mapping has been garbage collected, a copied one can.
+	 */
+	public static MapFile open(File file, boolean copy) throws IOException {
+		ByteBuffer buffer;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			FileChannel channel = randomAccessFile.getChannel();
+			long fileSize = channel.size();
+			if (fileSize > Integer.MAX_VALUE) {
+				throw new IOException("Map file " + file + " is too large");
+			}
+			if (copy) {
+				buffer = ByteBuffer.allocate((int) fileSize);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						break;
+					}
+				}
+				buffer.flip();
+			} else {
+				// the mapping stays valid after the channel is closed
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			}
+		}
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a map file " + file);
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported map file version " + version);
+		}
+		float originX = buffer.getFloat(8);
+		float originY = buffer.getFloat(12);
+		float cellSize = buffer.getFloat(16);
+		int width = buffer.getInt(20);
+		int height = buffer.getInt(24);
+		float inflationRadius = buffer.getFloat(28);
+		int layerCount = buffer.getInt(32);
+		if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE / 4 || layerCount < 0
+				|| HEADER_SIZE + (long) layerCount * LAYER_ENTRY_SIZE > buffer.limit()) {
+			throw new IOException("Corrupted map file " + file);
+		}
+		Map<MapLayerEnum, ByteBuffer> layers = new EnumMap<MapLayerEnum, ByteBuffer>(MapLayerEnum.class);
+		for (int i = 0; i < layerCount; ++i) {
+			int entry = HEADER_SIZE + i * LAYER_ENTRY_SIZE;
+			MapLayerEnum layer = MapLayerEnum.fromId(buffer.getInt(entry));
+			long offset = buffer.getLong(entry + 4);
+			if (layer == null) {
+				continue;
+			}
+			int layerSize = width * height * layer.getBytesPerCell();
+			if (offset < 0 || offset + layerSize > buffer.limit()) {
+				throw new IOException("Corrupted map file " + file + ", layer " + layer + " is truncated");
+			}
+			ByteBuffer layerBuffer = buffer.duplicate();
+			layerBuffer.position((int) offset);
+			layerBuffer.limit((int) offset + layerSize);
+			layers.put(layer, layerBuffer.slice());
+		}
+		if (!layers.containsKey(MapLayerEnum.USER_PIXELS) && !layers.containsKey(MapLayerEnum.OCCUPANCY)) {
+			throw new IOException("Map file " + file + " has neither pixels nor occupancy");
+		}
+		return new MapFile(originX, originY, cellSize, width, height, inflationRadius, layers);
+	}
+
+	/**
+	 * Writes the user drawn map of the grid with its occupancy and costmap
+	 * layers. Written to a temporary file first and renamed, the file is
+	 * not mapped so that the rename works on every platform.
+	 */
+	public static void write(File file, Grid grid) throws IOException {
+		int cellCount = Grid.GRID_SIZE * Grid.GRID_SIZE;
+		int[] pixels = grid.getUserImage().getRGB(0, 0, Grid.GRID_SIZE, Grid.GRID_SIZE, null, 0, Grid.GRID_SIZE);
+		// the costmap of the grid includes sensed obstacles, which do not
+		// belong to the map
+		Grid userMapOnly = grid;
+		if (grid.hasSensedObstacles()) {
+			userMapOnly = new Grid();
+			userMapOnly.setUserImage(grid.getUserImage());
+		}
+		MapLayerEnum[] layers = MapLayerEnum.values();
+		long[] offsets = new long[layers.length];
+		long size = HEADER_SIZE + layers.length * LAYER_ENTRY_SIZE;
+		for (int i = 0; i < layers.length; ++i) {
+			size = (size + 7) & ~7L;
+			offsets[i] = size;
+			size += (long) cellCount * layers[i].getBytesPerCell();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putFloat(Grid.toWorld(0));
+		buffer.putFloat(Grid.toWorld(0));
+		buffer.putFloat(Grid.CELL_SIZE);
+		buffer.putInt(Grid.GRID_SIZE);
+		buffer.putInt(Grid.GRID_SIZE);
+		buffer.putFloat(Costmap.INFLATION_RADIUS);
+		buffer.putInt(layers.length);
+		for (int i = 0; i < layers.length; ++i) {
+			buffer.putInt(layers[i].getId());
+			buffer.putLong(offsets[i]);
+		}
+		for (int i = 0; i < layers.length; ++i) {
+			buffer.position((int) offsets[i]);
+			switch (layers[i]) {
+			case USER_PIXELS:
+				buffer.asIntBuffer().put(pixels);
+				break;
+			case OCCUPANCY:
+				byte[] occupancy = new byte[cellCount];
+				for (int cell = 0; cell < cellCount; ++cell) {
+					occupancy[cell] = Grid.toOccupancy(pixels[cell]);
+				}
+				buffer.put(occupancy);
+				break;
+			case DISTANCE:
+				userMapOnly.getCostmap().getDistances(buffer.asFloatBuffer());
+				break;
+			case NEAREST_OBSTACLE:
+				userMapOnly.getCostmap().getNearestObstacles(buffer.asIntBuffer());
+				break;
+			case COST:
+				userMapOnly.getCostmap().getCosts(buffer.asFloatBuffer());
+				break;
+			}
+		}
+		buffer.rewind();
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		try (FileOutputStream output = new FileOutputStream(temporaryFile)) {
+			FileChannel channel = output.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+		if (file.exists()) {
+			FileUtils.forceDelete(file);
+		}
+		FileUtils.moveFile(temporaryFile, file);
+	}
+
+	/**
+	 * Returns true if the map has the size, resolution and origin of
+	 * {@link Grid}.
+	 */
+	public boolean fitsGrid() {
+		return width == Grid.GRID_SIZE && height == Grid.GRID_SIZE && cellSize == Grid.CELL_SIZE
+				&& originX == Grid.toWorld(0) && originY == Grid.toWorld(0);
+	}
+
+	/**
+	 * Returns true if the map has all the costmap layers and they were made
+	 * with the current costmap parameters.
+	 */
+	public boolean hasCostmapLayers() {
+		return layers.containsKey(MapLayerEnum.DISTANCE) && layers.containsKey(MapLayerEnum.NEAREST_OBSTACLE)
+				&& layers.containsKey(MapLayerEnum.COST) && inflationRadius == Costmap.INFLATION_RADIUS;
+	}
+
+	public boolean hasLayer(MapLayerEnum layer) {
+		return layers.containsKey(layer);
+	}
+
+	/**
+	 * Returns a view of the layer, positioned at its first cell.
+	 */
+	public ByteBuffer getLayer(MapLayerEnum layer) {
+		ByteBuffer buffer = layers.get(layer);
+		if (buffer == null) {
+			throw new IllegalArgumentException("Map file has no layer " + layer);
+		}
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Reads the user drawn map, converted from the occupancy layer if the
+	 * map has no pixels.
+	 */
+	public void getUserPixels(int[] pixels) {
+		if (hasLayer(MapLayerEnum.USER_PIXELS)) {
+			getLayer(MapLayerEnum.USER_PIXELS).asIntBuffer().get(pixels);
+		} else {
+			ByteBuffer occupancy = getLayer(MapLayerEnum.OCCUPANCY);
+			for (int cell = 0; cell < pixels.length; ++cell) {
+				pixels[cell] = Grid.fromOccupancy(occupancy.get(cell));
+			}
+		}
+	}
+
+	public float getOriginX() {
+		return originX;
+	}
+
+	public float getOriginY() {
+		return originY;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
@@ -0,0 +1,42 @@
+package raisa.domain;
+
+/**
+ * Layers of a {@link MapFile}, each an array of one value per grid cell.
+ */
+public enum MapLayerEnum {
+	/** ARGB pixels of the user drawn map */
+	USER_PIXELS(1, 4),
+	/** One byte per cell, see {@link MapFile#OCCUPANCY_FREE} and the others */
+	OCCUPANCY(2, 1),
+	/** Float distance to the nearest obstacle in cells, see {@link Costmap} */
+	DISTANCE(3, 4),
+	/** Int index of the nearest obstacle cell or -1 */
+	NEAREST_OBSTACLE(4, 4),
+	/** Float traversal cost */
+	COST(5, 4);
+
+	private final int id;
+	private final int bytesPerCell;
+
+	private MapLayerEnum(int id, int bytesPerCell) {
+		this.id = id;
+		this.bytesPerCell = bytesPerCell;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public int getBytesPerCell() {
+		return bytesPerCell;
+	}
+
+	public static MapLayerEnum fromId(int id) {
+		for (MapLayerEnum layer : values()) {
+			if (layer.id == id) {
+				return layer;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,154 @@
+package raisa.domain;
+
+import java.awt.image.BufferedImage;
+
+import raisa.util.Vector2D;
+
+/**
+ * Immutable copy of the user drawn map, traced like {@link Grid} but safe to
+ * share between threads. Several simulated robots can run against one
+ * snapshot while the map itself is edited.
+ * <p>
+ * Rays walk the grid cell by cell, so each blocked cell on the way is found
+ * exactly, and directions come from a shared sine table.
+ */
+public class MapSnapshot implements RayCaster {
+	private static final int CELL_SIZE = Grid.CELL_SIZE;
+	private static final int GRID_SIZE = Grid.GRID_SIZE;
+	private static final float MAX_RANGE = GRID_SIZE * CELL_SIZE;
+	private static final int SINE_TABLE_SIZE = 4096;
+	private static final float SINE_TABLE_SCALE = SINE_TABLE_SIZE / (2.0f * (float) Math.PI);
+	private static final float[] SINE_TABLE = new float[SINE_TABLE_SIZE];
+
+	static {
+		for (int i = 0; i < SINE_TABLE_SIZE; ++i) {
+			SINE_TABLE[i] = (float) Math.sin(i / SINE_TABLE_SCALE);
+		}
+	}
+
+	private final boolean[] blocked = new boolean[GRID_SIZE * GRID_SIZE];
+
+	public MapSnapshot(Grid grid) {
+		BufferedImage userImage = grid.getUserImage();
+		int[] rgbs = userImage.getRGB(0, 0, GRID_SIZE, GRID_SIZE, null, 0, GRID_SIZE);
+		for (int i = 0; i < rgbs.length; ++i) {
+			blocked[i] = Grid.isBlockedRgb(rgbs[i]);
+		}
+		// the last row and column are outside the map in Grid too
+		for (int i = 0; i < GRID_SIZE; ++i) {
+			blocked[(GRID_SIZE - 1) * GRID_SIZE + i] = true;
+			blocked[i * GRID_SIZE + GRID_SIZE - 1] = true;
+		}
+	}
+
+	private MapSnapshot(MapSnapshot previous) {
+		System.arraycopy(previous.blocked, 0, blocked, 0, blocked.length);
+	}
+
+	/**
+	 * Copy of this snapshot with the given cells read again from the user
+	 * image, much cheaper than converting the whole image.
+	 */
+	MapSnapshot withChangedCells(Grid grid, int[] cells, int count) {
+		MapSnapshot snapshot = new MapSnapshot(this);
+		BufferedImage userImage = grid.getUserImage();
+		for (int i = 0; i < count; ++i) {
+			int x = cells[i] % GRID_SIZE;
+			int y = cells[i] / GRID_SIZE;
+			if (x < GRID_SIZE - 1 && y < GRID_SIZE - 1) {
+				snapshot.blocked[cells[i]] = Grid.isBlockedRgb(userImage.getRGB(x, y));
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public float traceRay(Vector2D from, float angle) {
+		return trace(from.x / CELL_SIZE + GRID_SIZE * 0.5f, from.y / CELL_SIZE + GRID_SIZE * 0.5f, angle, MAX_RANGE);
+	}
+
+	@Override
+	public void traceRays(Vector2D from, float[] angles, int count, float maxRange, float[] distances) {
+		float x = from.x / CELL_SIZE + GRID_SIZE * 0.5f;
+		float y = from.y / CELL_SIZE + GRID_SIZE * 0.5f;
+		for (int i = 0; i < count; ++i) {
+			distances[i] = trace(x, y, angles[i], maxRange);
+		}
+	}
+
+	@Override
+	public float traceCone(Vector2D from, float angle, float halfWidth, float maxRange) {
+		float x = from.x / CELL_SIZE + GRID_SIZE * 0.5f;
+		float y = from.y / CELL_SIZE + GRID_SIZE * 0.5f;
+		// rays are at most a cell apart at the maximum range, so no cell in the sector is missed
+		int rays = Math.max(2, (int) Math.ceil(2.0f * halfWidth * maxRange / CELL_SIZE) + 1);
+		float step = 2.0f * halfWidth / (rays - 1);
+		float nearest = maxRange;
+		for (int i = 0; i < rays; ++i) {
+			// later rays only have to look as far as the nearest hit so far
+			nearest = Math.min(nearest, trace(x, y, angle - halfWidth + i * step, nearest));
+		}
+		return nearest;
+	}
+
+	public boolean isClear(Vector2D position) {
+		return !isBlocked(position.x / CELL_SIZE + GRID_SIZE * 0.5f - 0.5f, position.y / CELL_SIZE + GRID_SIZE * 0.5f - 0.5f);
+	}
+
+	/**
+	 * Walks the cells along the ray from a position given in cell units.
+	 *
+	 * @param angle radians, clockwise from up
+	 * @return distance in world units to the first blocked cell, or maxRange
+	 */
+	private float trace(float x, float y, float angle, float maxRange) {
+		int cellX = (int) Math.floor(x);
+		int cellY = (int) Math.floor(y);
+		if (isBlocked(cellX, cellY)) {
+			return 0.0f;
+		}
+		int index = ((int) (angle * SINE_TABLE_SCALE)) & (SINE_TABLE_SIZE - 1);
+		// up is negative y, so the direction is (sin, -cos)
+		float dx = SINE_TABLE[index];
+		float dy = -SINE_TABLE[(index + SINE_TABLE_SIZE / 4) & (SINE_TABLE_SIZE - 1)];
+		int stepX = dx > 0 ? 1 : -1;
+		int stepY = dy > 0 ? 1 : -1;
+		float deltaX = dx != 0.0f ? Math.abs(1.0f / dx) : Float.POSITIVE_INFINITY;
+		float deltaY = dy != 0.0f ? Math.abs(1.0f / dy) : Float.POSITIVE_INFINITY;
+		float nextX = dx > 0 ? (cellX + 1 - x) * deltaX : (x - cellX) * deltaX;
+		float nextY = dy > 0 ? (cellY + 1 - y) * deltaY : (y - cellY) * deltaY;
+		float maxDistance = maxRange / CELL_SIZE;
+		while (true) {
+			float distance;
+			if (nextX < nextY) {
+				distance = nextX;
+				nextX += deltaX;
+				cellX += stepX;
+			} else {
+				distance = nextY;
+				nextY += deltaY;
+				cellY += stepY;
+			}
+			if (distance >= maxDistance) {
+				return maxRange;
+			}
+			if (isBlocked(cellX, cellY)) {
+				return distance * CELL_SIZE;
+			}
+		}
+	}
+
+	private boolean isBlocked(int x, int y) {
+		if (x < 0 || y < 0 || x >= GRID_SIZE || y >= GRID_SIZE) {
+			return true;
+		}
+		return blocked[y * GRID_SIZE + x];
+	}
+
+	private boolean isBlocked(float x, float y) {
+		if (x < 0 || y < 0 || x >= GRID_SIZE || y >= GRID_SIZE) {
+			return true;
+		}
+		return blocked[(int) y * GRID_SIZE + (int) x];
+	}
+}
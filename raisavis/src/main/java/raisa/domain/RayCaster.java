@@ -0,0 +1,28 @@
+package raisa.domain;
+
+import raisa.util.Vector2D;
+
+/**
+ * Something distance sensors can be simulated against.
+ */
+public interface RayCaster {
+	/**
+	 * Returns the distance to the nearest obstacle in the given direction.
+	 *
+	 * @param angle radians, clockwise from up
+	 */
+	float traceRay(Vector2D from, float angle);
+
+	/**
+	 * Traces several rays from the same position at once.
+	 *
+	 * @param distances receives the distance for each of the first count angles
+	 */
+	void traceRays(Vector2D from, float[] angles, int count, float maxRange, float[] distances);
+
+	/**
+	 * Returns the distance to the nearest obstacle inside the sector of
+	 * the given half width around the angle, or maxRange if there is none.
+	 */
+	float traceCone(Vector2D from, float angle, float halfWidth, float maxRange);
+}
@@ -0,0 +1,11 @@
+package raisa.domain;
+
+/**
+ * State that replay keyframes save and later restore. A saved state must
+ * not change afterwards, as it may be restored any number of times.
+ */
+public interface Restorable<T> {
+	T saveState();
+
+	void restoreState(T state);
+}
@@ -5,15 +5,21 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.imageio.ImageIO;
 
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.commons.math3.random.RandomGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import raisa.comms.SampleParser;
-import raisa.comms.SensorListener;
+import raisa.comms.TypedSensorListener;
+import raisa.domain.checkpoint.CheckpointInput;
+import raisa.domain.checkpoint.CheckpointOutput;
 import raisa.domain.landmarks.Landmark;
 import raisa.domain.landmarks.LandmarkManager;
 import raisa.domain.plan.MotionPlan;
@@ -21,30 +27,56 @@ import raisa.domain.robot.Robot;
 import raisa.domain.robot.RobotStateListener;
 import raisa.domain.samples.AveragingSampleFixer;
 import raisa.domain.samples.Sample;
-import raisa.domain.samples.SampleFixer;
 import raisa.domain.samples.SampleListener;
+import raisa.domain.vectormap.SvgMapReader;
+import raisa.metrics.Counter;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+import raisa.metrics.PipelineEvent;
+import raisa.metrics.PipelineEventEnum;
+import raisa.metrics.PipelineEvents;
 import raisa.util.CollectionUtil;
+import raisa.util.RandomUtil;
 import raisa.util.Vector2D;
 
 
-public class WorldModel implements SensorListener {
+public class WorldModel implements TypedSensorListener, RayCaster, Restorable<WorldModel.SavedState> {
 	private static final Logger log = LoggerFactory.getLogger(WorldModel.class);
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private static final Counter receivedSamples = metrics.counter("pipeline.samples");
+	private static final Histogram parseTime = metrics.histogram("pipeline.parse");
+	private static final Histogram fixerTime = metrics.histogram("pipeline.fixers");
+	private static final Histogram listenerTime = metrics.histogram("pipeline.listeners");
 	private List<Sample> samples = new ArrayList<Sample>();
-	private final List<SampleFixer> sampleFixers = new ArrayList<SampleFixer>();
+	private final AveragingSampleFixer compassFixer = new AveragingSampleFixer(5, 40.0f);
 	private final List<SampleListener> sampleListeners = new ArrayList<SampleListener>();
 
 	private Grid grid = new Grid();
-	private final LandmarkManager landmarkManager = new LandmarkManager();
+	private final LandmarkManager landmarkManager;
 	private String latestMapFilename;
 
 	private List<Robot> states = new ArrayList<Robot>();
+	private volatile int stateVersion = 0;
 	private final List<RobotStateListener> stateListeners = new ArrayList<RobotStateListener>();
 
 	private final MotionPlan motionPlan = new MotionPlan();
+	private final List<CostmapListener> costmapListeners = new ArrayList<CostmapListener>();
+
+	private AppendedItems<Sample> savedSamples;
+	private int unsavedSamplesStart = 0;
+	private AppendedItems<Robot> savedStates;
+	private int unsavedStatesStart = 0;
 
 	public WorldModel() {
+		this(RandomUtil.newRandomGenerator());
+	}
+
+	/**
+	 * @param random used only by the landmark extraction of this world
+	 */
+	public WorldModel(RandomGenerator random) {
+		landmarkManager = new LandmarkManager(random);
 		addState(new Robot());
-		sampleFixers.add(new AveragingSampleFixer(5, 40.0f));
 	}
 
 	public List<Sample> getSamples() {
@@ -59,6 +91,12 @@ public class WorldModel implements SensorListener {
 		return copy;
 	}
 
+	public List<Robot> getLastStates(int numberOfStates) {
+		synchronized(states) {
+			return new ArrayList<Robot>(CollectionUtil.takeLast(states, numberOfStates));
+		}
+	}
+
 	public MotionPlan getMotionPlan() {
 		return this.motionPlan;
 	}
@@ -67,16 +105,50 @@ public class WorldModel implements SensorListener {
 		return this.landmarkManager.getLandmarks();
 	}
 
+	public Grid getGrid() {
+		return grid;
+	}
+
+	public Costmap getCostmap() {
+		return grid.getCostmap();
+	}
+
+	/**
+	 * Listeners stay registered when the grid is recreated on reset.
+	 */
+	public void addCostmapListener(CostmapListener listener) {
+		synchronized (costmapListeners) {
+			costmapListeners.add(listener);
+			grid.getCostmap().addCostmapListener(listener);
+		}
+	}
+
 	public LandmarkManager getLandmarkManager() {
 		return this.landmarkManager;
 	}
 
 	@Override
 	public synchronized void sampleReceived(String message) {
+		long startNanos = metrics.startTimer();
+		PipelineEvent event = PipelineEvents.begin(PipelineEventEnum.SAMPLE_PARSED);
 		Sample sample = new SampleParser().parse(message);
-		for (SampleFixer fixer : sampleFixers) {
-		 sample = fixer.fix(sample);
+		event.commit(sample.getMessageNumber());
+		parseTime.recordSince(startNanos);
+		sampleReceived(sample);
+	}
+
+	@Override
+	public synchronized void sampleReceived(Sample sample) {
+		receivedSamples.increment();
+		if (sample.getReceivedNanos() == 0) {
+			// replayed samples are only parsed here, they arrive now
+			sample.setReceivedNanos(System.nanoTime());
 		}
+		long startNanos = metrics.startTimer();
+		PipelineEvent event = PipelineEvents.begin(PipelineEventEnum.SAMPLE_FIXED);
+		sample = compassFixer.fix(sample);
+		event.commit(sample.getMessageNumber());
+		fixerTime.recordSince(startNanos);
 		addSample(sample);
 	}
 
@@ -92,12 +164,20 @@ public class WorldModel implements SensorListener {
 	public void addState(Robot state) {
 		synchronized(states) {
 			states.add(state);
+			++stateVersion;
 			for (RobotStateListener listener : stateListeners) {
 				listener.robotStateChanged(state);
 			}
 		}
 	}
 
+	/**
+	 * Incremented whenever a state is added or the states are reset.
+	 */
+	public int getStateVersion() {
+		return stateVersion;
+	}
+
 	public Robot getLatestState() {
 		synchronized (states) {
 			if (states.size() == 0) {
@@ -119,11 +199,22 @@ public class WorldModel implements SensorListener {
 
 	public void reset() {
 		samples = new ArrayList<Sample>();
-		states = new ArrayList<Robot>();
-		for (SampleFixer fixer : sampleFixers) {
-			fixer.reset();
+		synchronized (states) {
+			states = new ArrayList<Robot>();
+			++stateVersion;
 		}
+		compassFixer.reset();
+		savedSamples = null;
+		unsavedSamplesStart = 0;
+		savedStates = null;
+		unsavedStatesStart = 0;
 		grid = new Grid();
+		synchronized (costmapListeners) {
+			for (CostmapListener listener : costmapListeners) {
+				grid.getCostmap().addCostmapListener(listener);
+				listener.costmapRebuilt();
+			}
+		}
 		if(latestMapFilename != null) {
 			loadMap(latestMapFilename);
 		}
@@ -132,11 +223,85 @@ public class WorldModel implements SensorListener {
 	}
 
 	public void removeOldSamples(int preserveLength) {
-		samples = CollectionUtil.takeLast(samples, preserveLength);
+		List<Sample> keptSamples = CollectionUtil.takeLast(samples, preserveLength);
+		unsavedSamplesStart = Math.max(0, unsavedSamplesStart - (samples.size() - keptSamples.size()));
+		samples = keptSamples;
+	}
+
+	/**
+	 * Drops all but the latest states. The listeners are not notified, since
+	 * the latest state stays the same.
+	 */
+	public void removeOldStates(int preserveLength) {
+		synchronized (states) {
+			List<Robot> keptStates = CollectionUtil.takeLast(states, preserveLength);
+			unsavedStatesStart = Math.max(0, unsavedStatesStart - (states.size() - keptStates.size()));
+			states = keptStates;
+		}
+	}
+
+	public int getStateCount() {
+		synchronized (states) {
+			return states.size();
+		}
 	}
 
 	public void clearSamples() {
 		samples = new ArrayList<Sample>();
+		unsavedSamplesStart = 0;
+	}
+
+	/**
+	 * Saves the samples and states added since the previous save, the sensed
+	 * grid cells changed since then and the landmarks. Restoring brings back
+	 * the samples and states kept at the time of the save, not the ones
+	 * removed from the history before it.
+	 */
+	@Override
+	public synchronized SavedState saveState() {
+		int samplesStart = Math.min(unsavedSamplesStart, samples.size());
+		savedSamples = AppendedItems.save(savedSamples, samples, samplesStart);
+		unsavedSamplesStart = samples.size();
+		synchronized (states) {
+			savedStates = AppendedItems.save(savedStates, states, unsavedStatesStart);
+			unsavedStatesStart = states.size();
+		}
+		return new SavedState(savedSamples, savedStates, compassFixer.saveState(), grid.saveSensedDelta(), landmarkManager.saveState());
+	}
+
+	/**
+	 * Copies the state as it is now, sharing nothing with the saved states:
+	 * the samples and states kept in the history and all the sensed cells.
+	 * Used for checkpoints, which are written on their own.
+	 */
+	public synchronized SavedState copyState() {
+		AppendedItems<Robot> copiedStates;
+		synchronized (states) {
+			copiedStates = AppendedItems.save(null, states, 0);
+		}
+		return new SavedState(AppendedItems.save(null, samples, 0), copiedStates, compassFixer.saveState(), grid.copySensedCells(),
+				landmarkManager.saveState());
+	}
+
+	@Override
+	public synchronized void restoreState(SavedState state) {
+		samples = state.samples.toList();
+		savedSamples = state.samples;
+		unsavedSamplesStart = samples.size();
+		compassFixer.restoreState(state.compassFixer);
+		List<Robot> restoredStates = state.states.toList();
+		// readers lock the list they see, so the swap has to hold the old one
+		synchronized (states) {
+			states = restoredStates;
+			savedStates = state.states;
+			unsavedStatesStart = states.size();
+			++stateVersion;
+			for (RobotStateListener listener : stateListeners) {
+				listener.robotStatesReplaced(Collections.unmodifiableList(restoredStates));
+			}
+		}
+		grid.restoreSensedDelta(state.sensed);
+		landmarkManager.restoreState(state.landmarks);
 	}
 
 	public List<Sample> getLastSamples(int numberOfSamples) {
@@ -179,9 +344,17 @@ public class WorldModel implements SensorListener {
 		return grid.getUserRedoLevels();
 	}
 
+	/**
+	 * Saves the user drawn map as a PNG image, or as a map file with its
+	 * costmap layers when the extension is {@link MapFile#EXTENSION}.
+	 */
 	public void saveMap(String fileName) {
 		try {
-			ImageIO.write(grid.getUserImage(), "PNG", new File(fileName));
+			if (MapFile.EXTENSION.equalsIgnoreCase(FilenameUtils.getExtension(fileName))) {
+				MapFile.write(new File(fileName), grid);
+			} else {
+				ImageIO.write(grid.getUserImage(), "PNG", new File(fileName));
+			}
 		} catch (IOException e) {
 			log.error("Failed to save map", e);
 		}
@@ -189,7 +362,23 @@ public class WorldModel implements SensorListener {
 
 	public void loadMap(String fileName) {
 		try {
-			BufferedImage mapImage = ImageIO.read(new File(fileName));
+			if (MapFile.EXTENSION.equalsIgnoreCase(FilenameUtils.getExtension(fileName))) {
+				// copied on Windows, so that the map can be saved over the same file
+				MapFile map = MapFile.open(new File(fileName), SystemUtils.IS_OS_WINDOWS);
+				if (!map.fitsGrid()) {
+					throw new IOException("Map " + fileName + " does not have the size, resolution and origin of the grid");
+				}
+				grid.pushUserUndoLevel();
+				grid.setUserMap(map);
+				latestMapFilename = fileName;
+				return;
+			}
+			BufferedImage mapImage;
+			if ("svg".equalsIgnoreCase(FilenameUtils.getExtension(fileName))) {
+				mapImage = new SvgMapReader().read(new File(fileName)).toMapImage();
+			} else {
+				mapImage = ImageIO.read(new File(fileName));
+			}
 			grid.pushUserUndoLevel();
 			grid.setUserImage(mapImage);
 			latestMapFilename = fileName;
@@ -210,10 +399,21 @@ public class WorldModel implements SensorListener {
 		return grid.getBlockedImage();
 	}
 
+	@Override
 	public float traceRay(Vector2D from, float angle) {
 		return grid.traceRay(from, angle);
 	}
 
+	@Override
+	public void traceRays(Vector2D from, float[] angles, int count, float maxRange, float[] distances) {
+		grid.traceRays(from, angles, count, maxRange, distances);
+	}
+
+	@Override
+	public float traceCone(Vector2D from, float angle, float halfWidth, float maxRange) {
+		return grid.traceCone(from, angle, halfWidth, maxRange);
+	}
+
 	public float getWidth() {
 		return grid.getWidth();
 	}
@@ -238,11 +438,13 @@ public class WorldModel implements SensorListener {
 	}
 
 	private void notifySampleListeners(Sample sample) {
+		long startNanos = metrics.startTimer();
 		synchronized (sampleListeners) {
 			for (SampleListener listener : sampleListeners) {
 				listener.sampleAdded(sample);
 			}
 		}
+		listenerTime.recordSince(startNanos);
 	}
 
 	public boolean isClear(Vector2D position) {
@@ -256,4 +458,110 @@ public class WorldModel implements SensorListener {
 	public boolean isClear(Vector2D position, float epsilon) {
 		return grid.isClear(position, epsilon);
 	}
+
+	public static final class SavedState {
+		private final AppendedItems<Sample> samples;
+		private final AppendedItems<Robot> states;
+		private final AveragingSampleFixer.SavedState compassFixer;
+		private final Grid.SensedDelta sensed;
+		private final LandmarkManager.SavedState landmarks;
+
+		private SavedState(AppendedItems<Sample> samples, AppendedItems<Robot> states, AveragingSampleFixer.SavedState compassFixer,
+				Grid.SensedDelta sensed, LandmarkManager.SavedState landmarks) {
+			this.samples = samples;
+			this.states = states;
+			this.compassFixer = compassFixer;
+			this.sensed = sensed;
+			this.landmarks = landmarks;
+		}
+
+		/**
+		 * Writes the saved samples and states and the sensed cells flattened
+		 * into a single delta.
+		 */
+		public void write(CheckpointOutput output) throws IOException {
+			output.writeSamples(samples.toList());
+			output.writeRobots(states.toList());
+			compassFixer.write(output);
+			Grid.SensedDelta flatSensed = sensed.flatten();
+			output.writeInts(flatSensed.getCells(), flatSensed.getCells().length);
+			output.writeInts(flatSensed.getRgbs(), flatSensed.getRgbs().length);
+			output.writeBytes(flatSensed.getHits());
+			landmarks.write(output);
+		}
+
+		public static SavedState read(CheckpointInput input) throws IOException {
+			AppendedItems<Sample> samples = AppendedItems.save(null, input.readSamples(), 0);
+			AppendedItems<Robot> states = AppendedItems.save(null, input.readRobots(), 0);
+			AveragingSampleFixer.SavedState compassFixer = AveragingSampleFixer.SavedState.read(input);
+			int[] cells = input.readInts();
+			int[] rgbs = input.readInts();
+			byte[] hits = input.readBytes();
+			if (cells.length != rgbs.length || hits == null || hits.length != cells.length) {
+				throw new IOException("Corrupted checkpoint, sensed cells do not match");
+			}
+			for (int cell : cells) {
+				if (cell < 0 || cell >= Grid.GRID_SIZE * Grid.GRID_SIZE) {
+					throw new IOException("Corrupted checkpoint, sensed cell " + cell + " outside the grid");
+				}
+			}
+			return new SavedState(samples, states, compassFixer, new Grid.SensedDelta(null, cells, rgbs, hits), LandmarkManager.SavedState.read(input));
+		}
+	}
+
+	/**
+	 * Items appended to a list after the previous save, linked to the items
+	 * saved before them. The saved list is the last count items, the ones
+	 * before them had been removed from the list by the time of the save.
+	 */
+	private static final class AppendedItems<E> {
+		private final AppendedItems<E> previous;
+		private final List<E> items;
+		/** Items of this part and the parts before it */
+		private final int size;
+		private final int count;
+
+		private AppendedItems(AppendedItems<E> previous, List<E> items, int count) {
+			this.previous = previous;
+			this.items = items;
+			this.size = (previous == null ? 0 : previous.size) + items.size();
+			this.count = count;
+		}
+
+		/**
+		 * Saves the list whose items from start on were added after the
+		 * previous save. When more than half of the saved items would be
+		 * ones already removed from the list, the list is saved as a single
+		 * part instead, so the saves hold at most about twice the list.
+		 */
+		public static <E> AppendedItems<E> save(AppendedItems<E> previous, List<E> list, int start) {
+			int added = list.size() - start;
+			if (previous == null || previous.size + added > 2 * list.size()) {
+				return new AppendedItems<E>(null, new ArrayList<E>(list), list.size());
+			}
+			if (added == 0) {
+				return new AppendedItems<E>(previous.previous, previous.items, list.size());
+			}
+			return new AppendedItems<E>(previous, new ArrayList<E>(list.subList(start, list.size())), list.size());
+		}
+
+		public List<E> toList() {
+			// only the parts holding the last count items are needed
+			List<AppendedItems<E>> parts = new ArrayList<AppendedItems<E>>();
+			int partsSize = 0;
+			for (AppendedItems<E> part = this; part != null && partsSize < count; part = part.previous) {
+				parts.add(part);
+				partsSize += part.items.size();
+			}
+			List<E> list = new ArrayList<E>(count);
+			for (int i = parts.size() - 1; i >= 0; --i) {
+				List<E> items = parts.get(i).items;
+				if (i == parts.size() - 1) {
+					items = items.subList(partsSize - count, items.size());
+				}
+				list.addAll(items);
+			}
+			return list;
+		}
+	}
 }
@@ -0,0 +1,220 @@
+package raisa.domain.checkpoint;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static raisa.domain.checkpoint.CheckpointOutput.BUFFER_SIZE;
+import static raisa.domain.checkpoint.CheckpointOutput.ROBOT_STATE_FLOATS;
+import static raisa.domain.checkpoint.CheckpointOutput.SAMPLE_FLOATS;
+import static raisa.domain.checkpoint.CheckpointOutput.SAMPLE_INTS;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import raisa.domain.robot.Robot;
+import raisa.domain.robot.RobotState;
+import raisa.domain.samples.Sample;
+import raisa.util.Vector2D;
+
+/**
+ * Reads what {@link CheckpointOutput} wrote.
+ */
+public class CheckpointInput implements Closeable {
+	private final DataInputStream input;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	public CheckpointInput(InputStream input) {
+		this.input = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+	}
+
+	public int readInt() throws IOException {
+		return input.readInt();
+	}
+
+	public long readLong() throws IOException {
+		return input.readLong();
+	}
+
+	public float readFloat() throws IOException {
+		return input.readFloat();
+	}
+
+	public int[] readInts() throws IOException {
+		int[] values = new int[readLength()];
+		for (int offset = 0; offset < values.length;) {
+			int count = Math.min(values.length - offset, BUFFER_SIZE / 4);
+			fillBuffer(count * 4);
+			buffer.asIntBuffer().get(values, offset, count);
+			offset += count;
+		}
+		return values;
+	}
+
+	public long[] readLongs() throws IOException {
+		long[] values = new long[readLength()];
+		for (int offset = 0; offset < values.length;) {
+			int count = Math.min(values.length - offset, BUFFER_SIZE / 8);
+			fillBuffer(count * 8);
+			buffer.asLongBuffer().get(values, offset, count);
+			offset += count;
+		}
+		return values;
+	}
+
+	public float[] readFloats() throws IOException {
+		float[] values = new float[readLength()];
+		for (int offset = 0; offset < values.length;) {
+			int count = Math.min(values.length - offset, BUFFER_SIZE / 4);
+			fillBuffer(count * 4);
+			buffer.asFloatBuffer().get(values, offset, count);
+			offset += count;
+		}
+		return values;
+	}
+
+	public double[] readDoubles() throws IOException {
+		double[] values = new double[readLength()];
+		for (int offset = 0; offset < values.length;) {
+			int count = Math.min(values.length - offset, BUFFER_SIZE / 8);
+			fillBuffer(count * 8);
+			buffer.asDoubleBuffer().get(values, offset, count);
+			offset += count;
+		}
+		return values;
+	}
+
+	/**
+	 * @return the bytes, or null if null was written
+	 */
+	public byte[] readBytes() throws IOException {
+		int length = input.readInt();
+		if (length == -1) {
+			return null;
+		} else if (length < 0) {
+			throw new IOException("Corrupted checkpoint, negative length " + length);
+		}
+		byte[] values = new byte[length];
+		input.readFully(values);
+		return values;
+	}
+
+	public List<Sample> readSamples() throws IOException {
+		int count = readLength();
+		float[] floats = readFloats();
+		int[] ints = readInts();
+		long[] timestamps = readLongs();
+		byte[] flags = readBytes();
+		if (floats.length != count * SAMPLE_FLOATS || ints.length != count * SAMPLE_INTS || timestamps.length != count
+				|| flags == null || flags.length != count) {
+			throw new IOException("Corrupted checkpoint, sample columns do not match");
+		}
+		List<Sample> samples = new ArrayList<Sample>(count);
+		for (int i = 0; i < count; ++i) {
+			Sample sample = new Sample();
+			int f = i * SAMPLE_FLOATS;
+			sample.setInfrared1Angle(floats[f]);
+			sample.setInfrared1Distance(floats[f + 1]);
+			sample.setInfrared2Angle(floats[f + 2]);
+			sample.setInfrared2Distance(floats[f + 3]);
+			sample.setUltrasound1Angle(floats[f + 4]);
+			sample.setUltrasound1Distance(floats[f + 5]);
+			sample.setUltrasound2Angle(floats[f + 6]);
+			sample.setUltrasound2Distance(floats[f + 7]);
+			sample.setCompassDirection(floats[f + 8]);
+			sample.setAccelerationX(floats[f + 9]);
+			sample.setAccelerationY(floats[f + 10]);
+			sample.setAccelerationZ(floats[f + 11]);
+			sample.setGyroX(floats[f + 12]);
+			sample.setGyroY(floats[f + 13]);
+			sample.setGyroZ(floats[f + 14]);
+			int n = i * SAMPLE_INTS;
+			sample.setLeftTrackTicks(ints[n]);
+			sample.setRightTrackTicks(ints[n + 1]);
+			sample.setSoundIntensity(ints[n + 2]);
+			sample.setMessageNumber(ints[n + 3]);
+			sample.setTimestampMillis(timestamps[i]);
+			sample.setInfrared1MeasurementValid((flags[i] & 1) != 0);
+			sample.setInfrared2MeasurementValid((flags[i] & 2) != 0);
+			sample.setUltrasound1MeasurementValid((flags[i] & 4) != 0);
+			sample.setUltrasound2MeasurementValid((flags[i] & 8) != 0);
+			byte[] sampleString = readBytes();
+			if (sampleString != null) {
+				sample.setSampleString(new String(sampleString, US_ASCII));
+			}
+			sample.setImageBytes(readBytes());
+			samples.add(sample);
+		}
+		return samples;
+	}
+
+	public List<RobotState> readRobotStates() throws IOException {
+		int count = readLength();
+		float[] floats = readFloats();
+		byte[] flags = readBytes();
+		if (floats.length != count * ROBOT_STATE_FLOATS || flags == null || flags.length != count) {
+			throw new IOException("Corrupted checkpoint, robot state columns do not match");
+		}
+		List<RobotState> states = new ArrayList<RobotState>(count);
+		for (int i = 0; i < count; ++i) {
+			int f = i * ROBOT_STATE_FLOATS;
+			RobotState state = new RobotState();
+			state.setHeading(floats[f]);
+			state.setPositionLeftTrack(new Vector2D(floats[f + 1], floats[f + 2]));
+			state.setPositionRightTrack(new Vector2D(floats[f + 3], floats[f + 4]));
+			state.setSpeedLeftTrack(floats[f + 5]);
+			state.setSpeedRightTrack(floats[f + 6]);
+			state.setOdometer(floats[f + 7]);
+			state.setDirectionLeftTrackForward((flags[i] & 1) != 0);
+			state.setDirectionRightTrackForward((flags[i] & 2) != 0);
+			states.add(state);
+		}
+		return states;
+	}
+
+	public List<Robot> readRobots() throws IOException {
+		long[] timestamps = readLongs();
+		List<RobotState> measured = readRobotStates();
+		List<RobotState> estimated = readRobotStates();
+		if (measured.size() != timestamps.length || estimated.size() != timestamps.length) {
+			throw new IOException("Corrupted checkpoint, robot columns do not match");
+		}
+		List<Robot> robots = new ArrayList<Robot>(timestamps.length);
+		for (int i = 0; i < timestamps.length; ++i) {
+			Robot robot = new Robot(measured.get(i), estimated.get(i));
+			robot.setTimestampMillis(timestamps[i]);
+			robots.add(robot);
+		}
+		return robots;
+	}
+
+	public List<Vector2D> readPoints() throws IOException {
+		float[] coordinates = readFloats();
+		List<Vector2D> points = new ArrayList<Vector2D>(coordinates.length / 2);
+		for (int i = 0; i + 1 < coordinates.length; i += 2) {
+			points.add(new Vector2D(coordinates[i], coordinates[i + 1]));
+		}
+		return points;
+	}
+
+	private int readLength() throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Corrupted checkpoint, negative length " + length);
+		}
+		return length;
+	}
+
+	private void fillBuffer(int length) throws IOException {
+		buffer.clear();
+		input.readFully(buffer.array(), 0, length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+}
@@ -0,0 +1,203 @@
+package raisa.domain.checkpoint;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import raisa.domain.robot.Robot;
+import raisa.domain.robot.RobotState;
+import raisa.domain.samples.Sample;
+import raisa.util.Vector2D;
+
+/**
+ * Big-endian output for checkpoints. Arrays are written in bulk through a
+ * byte buffer, and lists of samples and robot states are written column by
+ * column so that each field goes out as one array.
+ */
+public class CheckpointOutput implements Closeable {
+	static final int BUFFER_SIZE = 64 * 1024;
+	static final int SAMPLE_FLOATS = 15;
+	static final int SAMPLE_INTS = 4;
+	static final int ROBOT_STATE_FLOATS = 8;
+
+	private final DataOutputStream output;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	public CheckpointOutput(OutputStream output) {
+		this.output = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+	}
+
+	public void writeInt(int value) throws IOException {
+		output.writeInt(value);
+	}
+
+	public void writeLong(long value) throws IOException {
+		output.writeLong(value);
+	}
+
+	public void writeFloat(float value) throws IOException {
+		output.writeFloat(value);
+	}
+
+	public void writeInts(int[] values, int length) throws IOException {
+		writeInt(length);
+		for (int offset = 0; offset < length;) {
+			buffer.clear();
+			int count = Math.min(length - offset, BUFFER_SIZE / 4);
+			buffer.asIntBuffer().put(values, offset, count);
+			output.write(buffer.array(), 0, count * 4);
+			offset += count;
+		}
+	}
+
+	public void writeLongs(long[] values, int length) throws IOException {
+		writeInt(length);
+		for (int offset = 0; offset < length;) {
+			buffer.clear();
+			int count = Math.min(length - offset, BUFFER_SIZE / 8);
+			buffer.asLongBuffer().put(values, offset, count);
+			output.write(buffer.array(), 0, count * 8);
+			offset += count;
+		}
+	}
+
+	public void writeFloats(float[] values, int length) throws IOException {
+		writeInt(length);
+		for (int offset = 0; offset < length;) {
+			buffer.clear();
+			int count = Math.min(length - offset, BUFFER_SIZE / 4);
+			buffer.asFloatBuffer().put(values, offset, count);
+			output.write(buffer.array(), 0, count * 4);
+			offset += count;
+		}
+	}
+
+	public void writeDoubles(double[] values) throws IOException {
+		writeInt(values.length);
+		for (int offset = 0; offset < values.length;) {
+			buffer.clear();
+			int count = Math.min(values.length - offset, BUFFER_SIZE / 8);
+			buffer.asDoubleBuffer().put(values, offset, count);
+			output.write(buffer.array(), 0, count * 8);
+			offset += count;
+		}
+	}
+
+	/**
+	 * Writes the length, or -1 for null, and the bytes.
+	 */
+	public void writeBytes(byte[] values) throws IOException {
+		if (values == null) {
+			writeInt(-1);
+		} else {
+			writeInt(values.length);
+			output.write(values);
+		}
+	}
+
+	public void writeSamples(List<Sample> samples) throws IOException {
+		int count = samples.size();
+		float[] floats = new float[count * SAMPLE_FLOATS];
+		int[] ints = new int[count * SAMPLE_INTS];
+		long[] timestamps = new long[count];
+		byte[] flags = new byte[count];
+		for (int i = 0; i < count; ++i) {
+			Sample sample = samples.get(i);
+			int f = i * SAMPLE_FLOATS;
+			floats[f] = sample.getInfrared1Angle();
+			floats[f + 1] = sample.getInfrared1Distance();
+			floats[f + 2] = sample.getInfrared2Angle();
+			floats[f + 3] = sample.getInfrared2Distance();
+			floats[f + 4] = sample.getUltrasound1Angle();
+			floats[f + 5] = sample.getUltrasound1Distance();
+			floats[f + 6] = sample.getUltrasound2Angle();
+			floats[f + 7] = sample.getUltrasound2Distance();
+			floats[f + 8] = sample.getCompassDirection();
+			floats[f + 9] = sample.getAcceleration().getX();
+			floats[f + 10] = sample.getAcceleration().getY();
+			floats[f + 11] = sample.getAcceleration().getZ();
+			floats[f + 12] = sample.getGyro().getX();
+			floats[f + 13] = sample.getGyro().getY();
+			floats[f + 14] = sample.getGyro().getZ();
+			int n = i * SAMPLE_INTS;
+			ints[n] = sample.getLeftTrackTicks();
+			ints[n + 1] = sample.getRightTrackTicks();
+			ints[n + 2] = sample.getSoundIntensity();
+			ints[n + 3] = sample.getMessageNumber();
+			timestamps[i] = sample.getTimestampMillis();
+			flags[i] = (byte) ((sample.isInfrared1MeasurementValid() ? 1 : 0) | (sample.isInfrared2MeasurementValid() ? 2 : 0)
+					| (sample.isUltrasound1MeasurementValid() ? 4 : 0) | (sample.isUltrasound2MeasurementValid() ? 8 : 0));
+		}
+		writeInt(count);
+		writeFloats(floats, floats.length);
+		writeInts(ints, ints.length);
+		writeLongs(timestamps, count);
+		writeBytes(flags);
+		for (Sample sample : samples) {
+			String sampleString = sample.getSampleString();
+			writeBytes(sampleString == null ? null : sampleString.getBytes(US_ASCII));
+			writeBytes(sample.getImageBytes());
+		}
+	}
+
+	public void writeRobotStates(List<RobotState> states) throws IOException {
+		int count = states.size();
+		float[] floats = new float[count * ROBOT_STATE_FLOATS];
+		byte[] flags = new byte[count];
+		for (int i = 0; i < count; ++i) {
+			RobotState state = states.get(i);
+			Vector2D left = state.getPositionLeftTrack();
+			Vector2D right = state.getPositionRightTrack();
+			int f = i * ROBOT_STATE_FLOATS;
+			floats[f] = state.getHeading();
+			floats[f + 1] = left.x;
+			floats[f + 2] = left.y;
+			floats[f + 3] = right.x;
+			floats[f + 4] = right.y;
+			floats[f + 5] = state.getSpeedLeftTrack();
+			floats[f + 6] = state.getSpeedRightTrack();
+			floats[f + 7] = state.getOdometer();
+			flags[i] = (byte) ((state.isDirectionLeftTrackForward() ? 1 : 0) | (state.isDirectionRightTrackForward() ? 2 : 0));
+		}
+		writeInt(count);
+		writeFloats(floats, floats.length);
+		writeBytes(flags);
+	}
+
+	public void writeRobots(List<Robot> robots) throws IOException {
+		int count = robots.size();
+		long[] timestamps = new long[count];
+		RobotState[] measured = new RobotState[count];
+		RobotState[] estimated = new RobotState[count];
+		for (int i = 0; i < count; ++i) {
+			Robot robot = robots.get(i);
+			timestamps[i] = robot.getTimestampMillis();
+			measured[i] = robot.getMeasuredState();
+			estimated[i] = robot.getEstimatedState();
+		}
+		writeLongs(timestamps, count);
+		writeRobotStates(Arrays.asList(measured));
+		writeRobotStates(Arrays.asList(estimated));
+	}
+
+	public void writePoints(List<Vector2D> points) throws IOException {
+		float[] coordinates = new float[points.size() * 2];
+		for (int i = 0; i < points.size(); ++i) {
+			coordinates[2 * i] = points.get(i).x;
+			coordinates[2 * i + 1] = points.get(i).y;
+		}
+		writeFloats(coordinates, coordinates.length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+}
@@ -0,0 +1,107 @@
+package raisa.domain.checkpoint;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.domain.particlefilter.ParticleFilter;
+import raisa.domain.robot.RobotStateAggregator;
+
+/**
+ * Everything needed to continue from where the world was: samples, robot
+ * states, the sensed and user drawn maps, landmarks, particles and the
+ * localization state.
+ * <p>
+ * Taking a checkpoint only copies the state between two samples, writing
+ * it can be left to another thread while samples keep coming. The copy
+ * holds the samples and states kept in the history and the sensed cells as
+ * they are, not the keyframe history of the world.
+ * <p>
+ * File layout, big-endian: int magic, int version, the user map as an int
+ * array of ARGB pixels, then the saved states of the world, the particle
+ * filter and the robot state aggregator as written by their write methods.
+ */
+public class WorldCheckpoint {
+	public static final String EXTENSION = "checkpoint";
+	/** "RCKP" */
+	static final int MAGIC = 0x52434B50;
+	static final int VERSION = 4;
+
+	private final int[] userMap;
+	private final WorldModel.SavedState world;
+	private final ParticleFilter.SavedState particles;
+	private final RobotStateAggregator.SavedState localization;
+
+	private WorldCheckpoint(int[] userMap, WorldModel.SavedState world, ParticleFilter.SavedState particles,
+			RobotStateAggregator.SavedState localization) {
+		this.userMap = userMap;
+		this.world = world;
+		this.particles = particles;
+		this.localization = localization;
+	}
+
+	public static WorldCheckpoint take(WorldModel worldModel, ParticleFilter particleFilter, RobotStateAggregator robotStateAggregator) {
+		// samples are processed while the world is locked, so the states
+		// saved here all belong to the same sample
+		synchronized (worldModel) {
+			int[] userMap = worldModel.getUserImage().getRGB(0, 0, Grid.GRID_SIZE, Grid.GRID_SIZE, null, 0, Grid.GRID_SIZE);
+			return new WorldCheckpoint(userMap, worldModel.copyState(), particleFilter.saveState(), robotStateAggregator.saveState());
+		}
+	}
+
+	public void restore(WorldModel worldModel, ParticleFilter particleFilter, RobotStateAggregator robotStateAggregator) {
+		synchronized (worldModel) {
+			BufferedImage userImage = new BufferedImage(Grid.GRID_SIZE, Grid.GRID_SIZE, BufferedImage.TYPE_INT_ARGB);
+			userImage.setRGB(0, 0, Grid.GRID_SIZE, Grid.GRID_SIZE, userMap, 0, Grid.GRID_SIZE);
+			worldModel.getGrid().pushUserUndoLevel();
+			worldModel.getGrid().setUserImage(userImage);
+			worldModel.restoreState(world);
+			particleFilter.restoreState(particles);
+			robotStateAggregator.restoreState(localization);
+		}
+	}
+
+	/**
+	 * Writes to a temporary file first and renames it, so that an earlier
+	 * checkpoint of the same name is not lost if writing fails.
+	 */
+	public void write(File file) throws IOException {
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		try (CheckpointOutput output = new CheckpointOutput(new FileOutputStream(temporaryFile))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInts(userMap, userMap.length);
+			world.write(output);
+			particles.write(output);
+			localization.write(output);
+		}
+		if (file.exists()) {
+			FileUtils.forceDelete(file);
+		}
+		FileUtils.moveFile(temporaryFile, file);
+	}
+
+	public static WorldCheckpoint read(File file) throws IOException {
+		try (CheckpointInput input = new CheckpointInput(new FileInputStream(file))) {
+			if (input.readInt() != MAGIC) {
+				throw new IOException("Not a checkpoint " + file);
+			}
+			int version = input.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version);
+			}
+			int[] userMap = input.readInts();
+			if (userMap.length != Grid.GRID_SIZE * Grid.GRID_SIZE) {
+				throw new IOException("Checkpoint map size does not match the grid");
+			}
+			return new WorldCheckpoint(userMap, WorldModel.SavedState.read(input), ParticleFilter.SavedState.read(input),
+					RobotStateAggregator.SavedState.read(input));
+		}
+	}
+}
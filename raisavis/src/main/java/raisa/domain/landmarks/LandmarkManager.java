@@ -1,35 +1,61 @@
 package raisa.domain.landmarks;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.math3.random.RandomGenerator;
+
 import raisa.config.VisualizerConfig;
 import raisa.domain.AlgorithmTypeEnum;
+import raisa.domain.Restorable;
+import raisa.domain.checkpoint.CheckpointInput;
+import raisa.domain.checkpoint.CheckpointOutput;
 import raisa.domain.robot.Robot;
 import raisa.domain.robot.RobotState;
 import raisa.domain.samples.Sample;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+import raisa.metrics.PipelineEvent;
+import raisa.metrics.PipelineEventEnum;
+import raisa.metrics.PipelineEvents;
 import raisa.util.CollectionUtil;
+import raisa.util.Segment2D;
 import raisa.util.Vector2D;
 
-public class LandmarkManager {
+public class LandmarkManager implements Restorable<LandmarkManager.SavedState> {
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private static final Histogram extractionTime = metrics.histogram("pipeline.landmarks");
 
 	private static final int RANSAC_SAMPLES = 200;
 	private static final int SPIKE_SAMPLES = 50;
 
 	private static final int RECALCULATE_INTERVAL = 50;
 
+	/** Landmark types in checkpoints */
+	private static final int NO_LANDMARK = 0;
+	private static final int SPIKE_LANDMARK = 1;
+	private static final int LINE_LANDMARK = 2;
+
 	private List<Landmark> landmarks = new ArrayList<Landmark>();
 
 	private List<Vector2D> dataPoints = new ArrayList<Vector2D>();
 	private List<Sample> samples = new ArrayList<Sample>();
 	private List<Robot> states = new ArrayList<Robot>();
 	private int sampleCounter = 0;
+	private volatile int version = 0;
 
-	private final RansacExtractor ransacExtractor = new RansacExtractor();
+	private final RansacExtractor ransacExtractor;
 	private final SpikeExtractor spikeExtractor = new SpikeExtractor();
 
 	private final VisualizerConfig config = VisualizerConfig.getInstance();
 
+	public LandmarkManager(RandomGenerator random) {
+		ransacExtractor = new RansacExtractor(random);
+	}
+
 	public void reset() {
 		landmarks = new ArrayList<Landmark>();
 		dataPoints = new ArrayList<Vector2D>();
@@ -37,12 +63,40 @@ public class LandmarkManager {
 		states = new ArrayList<Robot>();
 		sampleCounter = 0;
 		ransacExtractor.reset();
+		++version;
+	}
+
+	/**
+	 * Saves copies of the landmarks and the data points still used for
+	 * extracting them.
+	 */
+	@Override
+	public SavedState saveState() {
+		return new SavedState(this);
+	}
+
+	@Override
+	public void restoreState(SavedState state) {
+		// copied again, the landmarks are modified when new ones are associated
+		landmarks = SerializationUtils.clone(state.landmarks);
+		dataPoints = new ArrayList<Vector2D>(state.dataPoints);
+		samples = new ArrayList<Sample>(state.samples);
+		states = new ArrayList<Robot>(state.states);
+		sampleCounter = state.sampleCounter;
+		++version;
 	}
 
 	public List<Landmark> getLandmarks() {
 		return this.landmarks;
 	}
 
+	/**
+	 * Incremented whenever the landmarks are recalculated or reset.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
 	public RansacExtractor getRansacExtractor() {
 		return this.ransacExtractor;
 	}
@@ -62,6 +116,8 @@ public class LandmarkManager {
 		samples.add(sample);
 		states.add(state);
 		if (sampleCounter % RECALCULATE_INTERVAL == 0) {
+			long startNanos = metrics.startTimer();
+			PipelineEvent event = PipelineEvents.begin(PipelineEventEnum.LANDMARKS_RECALCULATED);
 			for (Landmark landmark : landmarks) {
 				landmark.setDetectedLandmark(null);
 			}
@@ -79,6 +135,9 @@ public class LandmarkManager {
 										CollectionUtil.takeLast(states, SPIKE_SAMPLES))));
 			}
 			ret = executeRansac || executeSpikes;
+			++version;
+			event.commit(landmarks.size(), dataPoints.size());
+			extractionTime.recordSince(startNanos);
 		}
 		return ret;
 	}
@@ -166,4 +225,116 @@ public class LandmarkManager {
 		return points;
 	}
 
+
+	public static final class SavedState {
+		private final ArrayList<Landmark> landmarks;
+		private final List<Vector2D> dataPoints;
+		private final List<Sample> samples;
+		private final List<Robot> states;
+		private final int sampleCounter;
+
+		private SavedState(LandmarkManager manager) {
+			landmarks = SerializationUtils.clone(new ArrayList<Landmark>(manager.landmarks));
+			dataPoints = new ArrayList<Vector2D>(CollectionUtil.takeLast(manager.dataPoints, 4 * RANSAC_SAMPLES));
+			samples = new ArrayList<Sample>(CollectionUtil.takeLast(manager.samples, SPIKE_SAMPLES));
+			states = new ArrayList<Robot>(CollectionUtil.takeLast(manager.states, SPIKE_SAMPLES));
+			sampleCounter = manager.sampleCounter;
+		}
+
+		private SavedState(ArrayList<Landmark> landmarks, List<Vector2D> dataPoints, List<Sample> samples, List<Robot> states,
+				int sampleCounter) {
+			this.landmarks = landmarks;
+			this.dataPoints = dataPoints;
+			this.samples = samples;
+			this.states = states;
+			this.sampleCounter = sampleCounter;
+		}
+
+		public void write(CheckpointOutput output) throws IOException {
+			output.writeInt(landmarks.size());
+			for (Landmark landmark : landmarks) {
+				writeLandmark(output, landmark);
+			}
+			output.writePoints(dataPoints);
+			output.writeSamples(samples);
+			output.writeRobots(states);
+			output.writeInt(sampleCounter);
+		}
+
+		public static SavedState read(CheckpointInput input) throws IOException {
+			int count = input.readInt();
+			if (count < 0) {
+				throw new IOException("Corrupted checkpoint, " + count + " landmarks");
+			}
+			ArrayList<Landmark> landmarks = new ArrayList<Landmark>();
+			for (int i = 0; i < count; ++i) {
+				Landmark landmark = readLandmark(input);
+				if (landmark == null) {
+					throw new IOException("Corrupted checkpoint, missing landmark");
+				}
+				landmarks.add(landmark);
+			}
+			return new SavedState(landmarks, input.readPoints(), input.readSamples(), input.readRobots(), input.readInt());
+		}
+
+		/**
+		 * Type, position, life, SLAM id and adjusted position, the segment of
+		 * a line, and the last detected landmark written the same way.
+		 */
+		private static void writeLandmark(CheckpointOutput output, Landmark landmark) throws IOException {
+			if (landmark == null) {
+				output.writeInt(NO_LANDMARK);
+				return;
+			}
+			output.writeInt(landmark instanceof LineLandmark ? LINE_LANDMARK : SPIKE_LANDMARK);
+			output.writeFloat(landmark.x);
+			output.writeFloat(landmark.y);
+			output.writeInt(landmark.life);
+			output.writeInt(landmark.slamId == null ? -1 : landmark.slamId);
+			Vector2D adjustedPosition = landmark.getAdjustedPosition();
+			output.writePoints(adjustedPosition == null ? Collections.<Vector2D> emptyList() : Collections.singletonList(adjustedPosition));
+			if (landmark instanceof LineLandmark) {
+				Segment2D segment = ((LineLandmark) landmark).getSegment();
+				output.writeFloats(new float[] { segment.x1, segment.y1, segment.x2, segment.y2, segment.getSlope(), segment.getIntersect() }, 6);
+			}
+			writeLandmark(output, landmark.getDetectedLandmark());
+		}
+
+		private static Landmark readLandmark(CheckpointInput input) throws IOException {
+			int type = input.readInt();
+			if (type == NO_LANDMARK) {
+				return null;
+			}
+			if (type != SPIKE_LANDMARK && type != LINE_LANDMARK) {
+				throw new IOException("Corrupted checkpoint, unknown landmark type " + type);
+			}
+			float x = input.readFloat();
+			float y = input.readFloat();
+			int life = input.readInt();
+			int slamId = input.readInt();
+			List<Vector2D> adjustedPosition = input.readPoints();
+			Landmark landmark;
+			if (type == LINE_LANDMARK) {
+				float[] values = input.readFloats();
+				if (values.length != 6) {
+					throw new IOException("Corrupted checkpoint, line landmark with " + values.length + " values");
+				}
+				Segment2D segment = new Segment2D(values[4], values[5], values[0], values[1], values[2], values[3]);
+				// the constructor clips the line to a box, the saved end points are already clipped
+				segment.setLine(values[0], values[1], values[2], values[3]);
+				landmark = new LineLandmark(segment);
+				landmark.x = x;
+				landmark.y = y;
+			} else {
+				landmark = new SpikeLandmark(x, y);
+			}
+			landmark.life = life;
+			landmark.slamId = slamId < 0 ? null : slamId;
+			if (!adjustedPosition.isEmpty()) {
+				landmark.setAdjustedPosition(adjustedPosition.get(0));
+			}
+			landmark.setDetectedLandmark(readLandmark(input));
+			return landmark;
+		}
+	}
 }
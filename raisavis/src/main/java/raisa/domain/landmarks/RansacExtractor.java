@@ -3,6 +3,7 @@ package raisa.domain.landmarks;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.stat.regression.SimpleRegression;
 
 import raisa.util.RandomUtil;
@@ -31,6 +32,11 @@ public class RansacExtractor {
 	private final static int RANSAC_CONSENSUS = 50;
 
 	private List<Vector2D> allPoints = new ArrayList<Vector2D>();
+	private final RandomGenerator random;
+
+	public RansacExtractor(RandomGenerator random) {
+		this.random = random;
+	}
 
 	public void reset() {
 		allPoints.clear();
@@ -141,7 +147,7 @@ public class RansacExtractor {
 	private List<Vector2D> getRandomLinePoints(List<Vector2D> points) {
 		List<Vector2D> result = new ArrayList<Vector2D>();
 		for (int i=0; i<MAX_SAMPLE; i++) {
-			RandomUtil.shuffle(points);
+			RandomUtil.shuffle(points, random);
 			result.add(points.get(0));
 		}
 		return result;
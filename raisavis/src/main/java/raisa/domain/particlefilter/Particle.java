@@ -3,16 +3,44 @@ package raisa.domain.particlefilter;
 import java.util.ArrayList;
 import java.util.List;
 
+import raisa.domain.Grid;
 import raisa.domain.WorldModel;
 import raisa.domain.robot.RobotState;
 import raisa.domain.samples.Sample;
 import raisa.util.CollectionUtil;
 
 public class Particle {
+	private static final float MAX_RANGE = Grid.GRID_SIZE * Grid.CELL_SIZE;
 	private int maxStates = 15;
 	private List<RobotState> states = new ArrayList<RobotState>();
 	private int age = 0;
 
+	public Particle() {
+	}
+
+	/**
+	 * Exact copy, unlike {@link #copy()} which is for resampling.
+	 */
+	Particle(Particle particle) {
+		this.maxStates = particle.maxStates;
+		this.states = new ArrayList<RobotState>(particle.states);
+		this.age = particle.age;
+	}
+
+	Particle(int maxStates, List<RobotState> states, int age) {
+		this.maxStates = maxStates;
+		this.states = states;
+		this.age = age;
+	}
+
+	int getMaxStates() {
+		return maxStates;
+	}
+
+	List<RobotState> getStates() {
+		return states;
+	}
+
 	public Particle copy() {
 		Particle newParticle = new Particle();
 		newParticle.maxStates = maxStates;
@@ -39,6 +67,10 @@ public class Particle {
 		}
 		
 		float weights = 0.0f;
+		float[] angles = new float[4];
+		float[] measuredDistances = new float[4];
+		boolean[] otherSensorValid = new boolean[4];
+		float[] expectedDistances = new float[4];
 		
 		for (int i = 0; i < windowLength; ++i) {
 			
@@ -46,25 +78,40 @@ public class Particle {
 			Sample sample = samples.get(i);
 			RobotState state = states.get(i);
 			
+			// all sensors of a sample are traced from the same position at once
+			int count = 0;
 			if (sample.isInfrared1MeasurementValid()) {
-				weights += calculateSingleWeight(world, state, sample.getCompassDirection(), sample.getInfrared1Angle(), sample.getInfrared1Distance(), sample.isUltrasound1MeasurementValid());
+				angles[count] = state.getHeading() + sample.getInfrared1Angle();
+				measuredDistances[count] = sample.getInfrared1Distance();
+				otherSensorValid[count++] = sample.isUltrasound1MeasurementValid();
 			} 
 			if (sample.isUltrasound1MeasurementValid()) {
-				weights += calculateSingleWeight(world, state, sample.getCompassDirection(), sample.getUltrasound1Angle(), sample.getUltrasound1Distance(), sample.isInfrared1MeasurementValid());
+				angles[count] = state.getHeading() + sample.getUltrasound1Angle();
+				measuredDistances[count] = sample.getUltrasound1Distance();
+				otherSensorValid[count++] = sample.isInfrared1MeasurementValid();
 			}
 			if (sample.isInfrared2MeasurementValid()) {
-				weights += calculateSingleWeight(world, state, sample.getCompassDirection(), sample.getInfrared2Angle(), sample.getInfrared2Distance(), sample.isUltrasound2MeasurementValid());
+				angles[count] = state.getHeading() + sample.getInfrared2Angle();
+				measuredDistances[count] = sample.getInfrared2Distance();
+				otherSensorValid[count++] = sample.isUltrasound2MeasurementValid();
 			} 
 			if (sample.isUltrasound2MeasurementValid()) {
-				weights += calculateSingleWeight(world, state, sample.getCompassDirection(), sample.getUltrasound2Angle(), sample.getUltrasound2Distance(), sample.isInfrared2MeasurementValid());
+				angles[count] = state.getHeading() + sample.getUltrasound2Angle();
+				measuredDistances[count] = sample.getUltrasound2Distance();
+				otherSensorValid[count++] = sample.isInfrared2MeasurementValid();
+			}
+			if (count == 0) {
+				continue;
+			}
+			world.traceRays(state.getPosition(), angles, count, MAX_RANGE, expectedDistances);
+			for (int j = 0; j < count; ++j) {
+				weights += calculateSingleWeight(state, sample.getCompassDirection(), expectedDistances[j], measuredDistances[j], otherSensorValid[j]);
 			}
 		}
 		return weights + (0.2f * missingStatesCount * (weights / (float)windowLength));
 	}
 	
-	private float calculateSingleWeight(WorldModel world, RobotState state, float compassDirection, float angle, float distance, boolean otherSensorMeasurementValid) {
-		float expectedDistance = world.traceRay(state.getPosition(), state.getHeading() + angle);			
-		float measuredDistance = distance;	
+	private float calculateSingleWeight(RobotState state, float compassDirection, float expectedDistance, float measuredDistance, boolean otherSensorMeasurementValid) {
 		float ratio = Math.min(expectedDistance, measuredDistance) / Math.max(expectedDistance, measuredDistance);
 
 		// weight based on compass reading (take angle between unit vectors)
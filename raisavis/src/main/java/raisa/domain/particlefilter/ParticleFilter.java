@@ -1,27 +1,41 @@
 package raisa.domain.particlefilter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.math3.random.RandomGenerator;
+import raisa.domain.Restorable;
 import raisa.domain.WorldModel;
+import raisa.domain.checkpoint.CheckpointInput;
+import raisa.domain.checkpoint.CheckpointOutput;
 import raisa.domain.robot.RobotMovementEstimator;
 import raisa.domain.robot.RobotState;
 import raisa.domain.robot.SimpleRobotMovementEstimator;
 import raisa.domain.samples.Sample;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
 import raisa.util.CollectionUtil;
-import raisa.util.RandomUtil;
 import raisa.util.Vector2D;
 
-public class ParticleFilter {
+public class ParticleFilter implements Restorable<ParticleFilter.SavedState> {
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private static final Histogram updateTime = metrics.histogram("pipeline.particleFilter");
 
 	private final WorldModel world;
+	private final RandomGenerator random;
 	private List<Particle> particles;
 	private List<Sample> samples = new ArrayList<Sample>();
 
-	public ParticleFilter(WorldModel world, int nparticles) {
+	/**
+	 * @param random used only by this filter, so that robots simulated in
+	 * parallel stay repeatable
+	 */
+	public ParticleFilter(WorldModel world, int nparticles, RandomGenerator random) {
 		this.world = world;
+		this.random = random;
 		randomizeParticles(nparticles);
 	}
 
@@ -44,11 +58,11 @@ public class ParticleFilter {
 		boolean ok = false;
 		Particle particle = new Particle();
 		while (!ok) {
-			float x = (float) RandomUtil.random() * width - 0.5f * width;
-			float y = (float) RandomUtil.random() * height - 0.5f * height;
+			float x = random.nextFloat() * width - 0.5f * width;
+			float y = random.nextFloat() * height - 0.5f * height;
 			Vector2D position = new Vector2D(x, y);
 			if (world.isClear(position)) {
-				float heading = (float) RandomUtil.random() * (float) Math.PI * 2.0f;
+				float heading = random.nextFloat() * (float) Math.PI * 2.0f;
 				RobotState robot = new RobotState(position, heading);
 				particle.addState(robot);
 				ok = true;
@@ -63,7 +77,7 @@ public class ParticleFilter {
 		}
 
 		// estimate movement
-		RobotMovementEstimator estimator = new SimpleRobotMovementEstimator(true);
+		RobotMovementEstimator estimator = new SimpleRobotMovementEstimator(true, random);
 		Sample lastSample = samples.get(samples.size() - 1);
 		for (Particle particle : particles) {
 			RobotState newState = estimator.moveRobot(particle.getLastState(), lastSample);
@@ -129,10 +143,10 @@ public class ParticleFilter {
 			// this may happen when particle filter has just started
 			return;
 		}
-		int index = (int)RandomUtil.random() * particles.size();
+		int index = random.nextInt(particles.size());
 		float beta = 0.0f;
 		for (int i = 0; i < particles.size(); i++) {
-			beta += RandomUtil.random() * 2.0 * maxWeight;
+			beta += random.nextDouble() * 2.0 * maxWeight;
 			float weight = weights.get(particles.get(index));
 			while (beta > weight) {
 				beta -= weight;
@@ -143,6 +157,25 @@ public class ParticleFilter {
 		}
 	}
 
+	@Override
+	public synchronized SavedState saveState() {
+		return new SavedState(copyParticles(particles), new ArrayList<Sample>(samples));
+	}
+
+	@Override
+	public synchronized void restoreState(SavedState state) {
+		particles = copyParticles(state.particles);
+		samples = new ArrayList<Sample>(state.samples);
+	}
+
+	private static List<Particle> copyParticles(List<Particle> particles) {
+		List<Particle> copies = new ArrayList<Particle>(particles.size());
+		for (Particle particle : particles) {
+			copies.add(new Particle(particle));
+		}
+		return copies;
+	}
+
 	public List<Particle> getParticles() {
 		return particles;
 	}
@@ -150,7 +183,60 @@ public class ParticleFilter {
 	public void updateParticles(Sample sample) {
 		samples.add(sample);
 		samples = CollectionUtil.takeLast(samples, 50);
+		long startNanos = metrics.startTimer();
 		updateParticles(samples);
+		updateTime.recordSince(startNanos);
 	}
 
+	public static final class SavedState {
+		private final List<Particle> particles;
+		private final List<Sample> samples;
+
+		private SavedState(List<Particle> particles, List<Sample> samples) {
+			this.particles = particles;
+			this.samples = samples;
+		}
+
+		/**
+		 * The states of all particles are written as one list.
+		 */
+		public void write(CheckpointOutput output) throws IOException {
+			int[] ages = new int[particles.size()];
+			int[] maxStates = new int[particles.size()];
+			int[] stateCounts = new int[particles.size()];
+			List<RobotState> states = new ArrayList<RobotState>();
+			for (int i = 0; i < particles.size(); ++i) {
+				Particle particle = particles.get(i);
+				ages[i] = particle.getAge();
+				maxStates[i] = particle.getMaxStates();
+				stateCounts[i] = particle.getStates().size();
+				states.addAll(particle.getStates());
+			}
+			output.writeInts(ages, ages.length);
+			output.writeInts(maxStates, maxStates.length);
+			output.writeInts(stateCounts, stateCounts.length);
+			output.writeRobotStates(states);
+			output.writeSamples(samples);
+		}
+
+		public static SavedState read(CheckpointInput input) throws IOException {
+			int[] ages = input.readInts();
+			int[] maxStates = input.readInts();
+			int[] stateCounts = input.readInts();
+			List<RobotState> states = input.readRobotStates();
+			if (maxStates.length != ages.length || stateCounts.length != ages.length) {
+				throw new IOException("Corrupted checkpoint, particle columns do not match");
+			}
+			List<Particle> particles = new ArrayList<Particle>(ages.length);
+			int offset = 0;
+			for (int i = 0; i < ages.length; ++i) {
+				if (stateCounts[i] < 0 || offset + stateCounts[i] > states.size()) {
+					throw new IOException("Corrupted checkpoint, particle states do not match");
+				}
+				particles.add(new Particle(maxStates[i], new ArrayList<RobotState>(states.subList(offset, offset + stateCounts[i])), ages[i]));
+				offset += stateCounts[i];
+			}
+			return new SavedState(particles, input.readSamples());
+		}
+	}
 }
@@ -0,0 +1,269 @@
+package raisa.domain.plan;
+
+import java.util.Arrays;
+
+import raisa.domain.Costmap;
+import raisa.domain.Grid;
+import raisa.util.algorithm.search.IndexedMinHeap;
+
+/**
+ * D* Lite (Koenig and Likhachev) on grid cells. Searches backwards from the
+ * goal so that the search tree stays valid while the start moves along the
+ * route, and only the vertices affected by changed cell costs are repaired.
+ * Not thread safe, and a repair is cancelled by interrupting the thread.
+ */
+public class DStarLitePlanner {
+	private static final float INFINITY = Float.POSITIVE_INFINITY;
+	private static final float SQRT2 = (float) Math.sqrt(2.0);
+	private static final int[] NEIGHBOR_DX = { 1, 0, -1, 0, 1, -1, -1, 1 };
+	private static final int[] NEIGHBOR_DY = { 0, 1, 0, -1, 1, 1, -1, -1 };
+	private static final int INTERRUPT_CHECK_INTERVAL = 4096;
+
+	private final int size = Grid.GRID_SIZE;
+	private final float[] g = new float[size * size];
+	private final float[] rhs = new float[size * size];
+	/** Values of g and rhs are valid only for cells stamped by the current search */
+	private final int[] stamps = new int[size * size];
+	private int stamp = 0;
+	private final IndexedMinHeap open = new IndexedMinHeap(size * size);
+
+	private Costmap costmap;
+	private int start = -1;
+	private int goal = -1;
+	private float km;
+
+	public boolean isInitialized() {
+		return costmap != null;
+	}
+
+	public int getGoal() {
+		return goal;
+	}
+
+	public void initialize(Costmap costmap, int startCell, int goalCell) {
+		this.costmap = costmap;
+		this.start = startCell;
+		this.goal = goalCell;
+		this.km = 0.0f;
+		++stamp;
+		open.clear();
+		touch(goal);
+		rhs[goal] = 0.0f;
+		insert(goal);
+	}
+
+	/**
+	 * Moves the start of the search. Must be called before the changed costs
+	 * seen from the new position are reported.
+	 */
+	public void moveStart(int startCell) {
+		if (startCell == start) {
+			return;
+		}
+		int previousStart = start;
+		km += heuristic(start, startCell);
+		start = startCell;
+		// the start cell is never lethal, so edges around both cells may have changed
+		updateCells(new int[] { previousStart, startCell }, 2);
+	}
+
+	/**
+	 * Repairs the vertices whose edge costs changed with the given cells.
+	 */
+	public void updateCells(int[] cells, int count) {
+		for (int i = 0; i < count; ++i) {
+			int cell = cells[i];
+			updateVertex(cell);
+			int x = cell % size;
+			int y = cell / size;
+			for (int j = 0; j < NEIGHBOR_DX.length; ++j) {
+				int nx = x + NEIGHBOR_DX[j];
+				int ny = y + NEIGHBOR_DY[j];
+				if (nx >= 0 && ny >= 0 && nx < size && ny < size) {
+					updateVertex(ny * size + nx);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns false if the thread was interrupted before the search was complete.
+	 */
+	public boolean computeShortestPath() {
+		int iterations = 0;
+		while (!open.isEmpty() && (isTopKeyLessThanStart() || rhs(start) > g(start))) {
+			if (++iterations % INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+			int u = open.peek();
+			float oldPrimaryKey = open.peekPrimaryKey();
+			float oldSecondaryKey = open.peekSecondaryKey();
+			float newPrimaryKey = primaryKey(u);
+			float newSecondaryKey = secondaryKey(u);
+			if (oldPrimaryKey < newPrimaryKey || (oldPrimaryKey == newPrimaryKey && oldSecondaryKey < newSecondaryKey)) {
+				open.insertOrUpdate(u, newPrimaryKey, newSecondaryKey);
+			} else if (g(u) > rhs(u)) {
+				g[u] = rhs[u];
+				open.remove(u);
+				updateNeighbors(u);
+			} else {
+				g[u] = INFINITY;
+				updateVertex(u);
+				updateNeighbors(u);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the cells from start to goal, or null if the goal is unreachable.
+	 */
+	public int[] extractPath() {
+		if (g(start) == INFINITY && rhs(start) == INFINITY) {
+			return null;
+		}
+		int[] path = new int[64];
+		int length = 0;
+		int cell = start;
+		path[length++] = cell;
+		while (cell != goal) {
+			int next = -1;
+			float best = INFINITY;
+			int x = cell % size;
+			int y = cell / size;
+			for (int i = 0; i < NEIGHBOR_DX.length; ++i) {
+				int nx = x + NEIGHBOR_DX[i];
+				int ny = y + NEIGHBOR_DY[i];
+				if (nx < 0 || ny < 0 || nx >= size || ny >= size) {
+					continue;
+				}
+				int neighbor = ny * size + nx;
+				float value = edgeCost(x, y, i) + g(neighbor);
+				if (value < best) {
+					best = value;
+					next = neighbor;
+				}
+			}
+			if (next < 0 || length >= size * size) {
+				return null;
+			}
+			if (length == path.length) {
+				path = Arrays.copyOf(path, path.length * 2);
+			}
+			path[length++] = next;
+			cell = next;
+		}
+		return Arrays.copyOf(path, length);
+	}
+
+	private void updateNeighbors(int cell) {
+		int x = cell % size;
+		int y = cell / size;
+		for (int i = 0; i < NEIGHBOR_DX.length; ++i) {
+			int nx = x + NEIGHBOR_DX[i];
+			int ny = y + NEIGHBOR_DY[i];
+			if (nx >= 0 && ny >= 0 && nx < size && ny < size) {
+				updateVertex(ny * size + nx);
+			}
+		}
+	}
+
+	private void updateVertex(int cell) {
+		touch(cell);
+		if (cell != goal) {
+			float best = INFINITY;
+			int x = cell % size;
+			int y = cell / size;
+			for (int i = 0; i < NEIGHBOR_DX.length; ++i) {
+				int nx = x + NEIGHBOR_DX[i];
+				int ny = y + NEIGHBOR_DY[i];
+				if (nx < 0 || ny < 0 || nx >= size || ny >= size) {
+					continue;
+				}
+				float value = edgeCost(x, y, i) + g(ny * size + nx);
+				if (value < best) {
+					best = value;
+				}
+			}
+			rhs[cell] = best;
+		}
+		open.remove(cell);
+		if (g[cell] != rhs[cell]) {
+			insert(cell);
+		}
+	}
+
+	/**
+	 * Cost of moving from the cell to its neighbour in the given direction.
+	 * Symmetric, so predecessors and successors are the same.
+	 */
+	private float edgeCost(int x, int y, int direction) {
+		int nx = x + NEIGHBOR_DX[direction];
+		int ny = y + NEIGHBOR_DY[direction];
+		float from = getCellCost(x, y);
+		float to = getCellCost(nx, ny);
+		if (from == Costmap.LETHAL_COST || to == Costmap.LETHAL_COST) {
+			return INFINITY;
+		}
+		boolean diagonal = direction >= 4;
+		if (diagonal && (costmap.isLethal(nx, y) || costmap.isLethal(x, ny))) {
+			return INFINITY;
+		}
+		return (diagonal ? SQRT2 : 1.0f) * Grid.CELL_SIZE * (from + to) * 0.5f;
+	}
+
+	/**
+	 * The robot may already be too close to an obstacle, it must still be able to leave.
+	 */
+	private float getCellCost(int x, int y) {
+		float cost = costmap.getCost(x, y);
+		if (cost == Costmap.LETHAL_COST && y * size + x == start) {
+			return Costmap.CIRCUMSCRIBED_COST;
+		}
+		return cost;
+	}
+
+	private boolean isTopKeyLessThanStart() {
+		float startPrimaryKey = primaryKey(start);
+		float topPrimaryKey = open.peekPrimaryKey();
+		return topPrimaryKey < startPrimaryKey
+				|| (topPrimaryKey == startPrimaryKey && open.peekSecondaryKey() < secondaryKey(start));
+	}
+
+	private void insert(int cell) {
+		open.insertOrUpdate(cell, primaryKey(cell), secondaryKey(cell));
+	}
+
+	private float primaryKey(int cell) {
+		return Math.min(g(cell), rhs(cell)) + heuristic(start, cell) + km;
+	}
+
+	private float secondaryKey(int cell) {
+		return Math.min(g(cell), rhs(cell));
+	}
+
+	/**
+	 * Octile distance, admissible because no cell costs less than one.
+	 */
+	private float heuristic(int from, int to) {
+		int dx = Math.abs(from % size - to % size);
+		int dy = Math.abs(from / size - to / size);
+		return (Math.max(dx, dy) + (SQRT2 - 1.0f) * Math.min(dx, dy)) * Grid.CELL_SIZE;
+	}
+
+	private float g(int cell) {
+		return stamps[cell] == stamp ? g[cell] : INFINITY;
+	}
+
+	private float rhs(int cell) {
+		return stamps[cell] == stamp ? rhs[cell] : INFINITY;
+	}
+
+	private void touch(int cell) {
+		if (stamps[cell] != stamp) {
+			stamps[cell] = stamp;
+			g[cell] = INFINITY;
+			rhs[cell] = INFINITY;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package raisa.domain.plan;
+
+/**
+ * Walks the grid cells crossed by a line between two cell centers.
+ */
+/* package */ abstract class GridLine {
+
+	/**
+	 * Called for each cell from start to end, return false to stop the walk.
+	 */
+	protected abstract boolean visit(int x, int y);
+
+	/**
+	 * Returns false if the walk was stopped before reaching the end.
+	 */
+	public boolean walk(int x0, int y0, int x1, int y1) {
+		int dx = Math.abs(x1 - x0);
+		int dy = Math.abs(y1 - y0);
+		int stepX = x0 < x1 ? 1 : -1;
+		int stepY = y0 < y1 ? 1 : -1;
+		int error = dx - dy;
+		int x = x0;
+		int y = y0;
+		if (!visit(x, y)) {
+			return false;
+		}
+		while (x != x1 || y != y1) {
+			int doubleError = 2 * error;
+			if (doubleError > -dy && doubleError < dx) {
+				// the line passes a corner, visit both cells touching it
+				if (!visit(x + stepX, y) || !visit(x, y + stepY)) {
+					return false;
+				}
+			}
+			if (doubleError > -dy) {
+				error -= dy;
+				x += stepX;
+			}
+			if (doubleError < dx) {
+				error += dx;
+				y += stepY;
+			}
+			if (!visit(x, y)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
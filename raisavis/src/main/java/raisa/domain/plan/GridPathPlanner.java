@@ -0,0 +1,136 @@
+package raisa.domain.plan;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import raisa.domain.Costmap;
+import raisa.domain.Grid;
+import raisa.util.Vector2D;
+import raisa.util.algorithm.search.IndexedMinHeap;
+
+/**
+ * A* search on grid cell indices. All search state lives in arrays that are
+ * reused between searches, so one instance must not be used by several
+ * threads at the same time. A search is cancelled by interrupting the thread.
+ */
+public class GridPathPlanner {
+	private static final float MAXIMUM_DISTANCE_TO_SEARCH = 10000.0f;
+	private static final int PROGRESS_INTERVAL = 4096;
+	private static final float SQRT2 = (float) Math.sqrt(2.0);
+	private static final int[] NEIGHBOR_DX = { 1, 0, -1, 0, 1, -1, -1, 1 };
+	private static final int[] NEIGHBOR_DY = { 0, 1, 0, -1, 1, 1, -1, -1 };
+
+	private final int size = Grid.GRID_SIZE;
+	private final IndexedMinHeap open = new IndexedMinHeap(size * size);
+	private final BitSet closed = new BitSet(size * size);
+	private final float[] costs = new float[size * size];
+	private final int[] parents = new int[size * size];
+	private final int[] searchIds = new int[size * size];
+	private int searchId = 0;
+
+	/**
+	 * Returns the centers of the cells from start to goal, or null if there is
+	 * no path or the search was interrupted.
+	 */
+	public List<Vector2D> findPath(Grid grid, Vector2D start, Vector2D goal, RoutePlanningListener listener) {
+		Costmap costmap = grid.getCostmap();
+		int startX = clampToGrid(Grid.toCell(start.x));
+		int startY = clampToGrid(Grid.toCell(start.y));
+		int goalX = Grid.toCell(goal.x);
+		int goalY = Grid.toCell(goal.y);
+		if (costmap.isLethal(goalX, goalY)) {
+			return null;
+		}
+		int startCell = startY * size + startX;
+		int goalCell = goalY * size + goalX;
+
+		++searchId;
+		open.clear();
+		closed.clear();
+		visit(startCell, 0.0f, -1);
+		open.insertOrUpdate(startCell, heuristic(startX, startY, goalX, goalY), 0.0f);
+
+		int expanded = 0;
+		while (!open.isEmpty()) {
+			int cell = open.pop();
+			if (cell == goalCell) {
+				return toPath(goalCell);
+			}
+			closed.set(cell);
+			if (++expanded % PROGRESS_INTERVAL == 0) {
+				if (Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				if (listener != null) {
+					listener.planningProgress(expanded);
+				}
+			}
+			float cost = costs[cell];
+			if (cost >= MAXIMUM_DISTANCE_TO_SEARCH) {
+				continue;
+			}
+			float fromCost = costmap.getCost(cell);
+			if (fromCost == Costmap.LETHAL_COST) {
+				// only the start can be lethal, the robot must still be able to leave it
+				fromCost = Costmap.CIRCUMSCRIBED_COST;
+			}
+			int x = cell % size;
+			int y = cell / size;
+			for (int i = 0; i < NEIGHBOR_DX.length; ++i) {
+				int nx = x + NEIGHBOR_DX[i];
+				int ny = y + NEIGHBOR_DY[i];
+				int neighbor = ny * size + nx;
+				if (nx < 0 || ny < 0 || nx >= size || ny >= size || closed.get(neighbor)) {
+					continue;
+				}
+				float cellCost = costmap.getCost(neighbor);
+				if (cellCost == Costmap.LETHAL_COST) {
+					continue;
+				}
+				boolean diagonal = i >= 4;
+				if (diagonal && (costmap.isLethal(nx, y) || costmap.isLethal(x, ny))) {
+					// do not cut corners of obstacles
+					continue;
+				}
+				// same edge costs as DStarLitePlanner, so that repairs keep the cost of planned routes
+				float newCost = cost + (diagonal ? SQRT2 : 1.0f) * Grid.CELL_SIZE * (fromCost + cellCost) * 0.5f;
+				if (searchIds[neighbor] != searchId || newCost < costs[neighbor]) {
+					visit(neighbor, newCost, cell);
+					float h = heuristic(nx, ny, goalX, goalY);
+					open.insertOrUpdate(neighbor, newCost + h, h);
+				}
+			}
+		}
+		return null;
+	}
+
+	private void visit(int cell, float cost, int parent) {
+		searchIds[cell] = searchId;
+		costs[cell] = cost;
+		parents[cell] = parent;
+	}
+
+	private List<Vector2D> toPath(int goalCell) {
+		List<Vector2D> path = new ArrayList<Vector2D>();
+		for (int cell = goalCell; cell >= 0; cell = parents[cell]) {
+			path.add(new Vector2D(Grid.toWorld(cell % size), Grid.toWorld(cell / size)));
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Octile distance, admissible because no cell costs less than one.
+	 */
+	private float heuristic(int x, int y, int goalX, int goalY) {
+		int dx = Math.abs(goalX - x);
+		int dy = Math.abs(goalY - y);
+		return (Math.max(dx, dy) + (SQRT2 - 1.0f) * Math.min(dx, dy)) * Grid.CELL_SIZE;
+	}
+
+	private int clampToGrid(int cell) {
+		return Math.max(0, Math.min(size - 1, cell));
+	}
+}
@@ -0,0 +1,593 @@
+package raisa.domain.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import raisa.domain.Costmap;
+import raisa.domain.CostmapListener;
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.util.Vector2D;
+import raisa.util.algorithm.search.IndexedMinHeap;
+
+/**
+ * HPA* style planner. The grid is partitioned into square clusters, and the
+ * passable stretches of each border between two clusters get transition
+ * nodes. The costs between the nodes of one cluster are precomputed, so a
+ * route is first searched on this small abstract graph and only the chosen
+ * cluster crossings are refined to cells. Clusters touched by costmap changes
+ * are recalculated lazily before the next query. Not thread safe, and a
+ * search is cancelled by interrupting the thread.
+ */
+public class HierarchicalPathPlanner implements CostmapListener {
+	public static final int CLUSTER_SIZE = 16;
+	/** Longer passable stretches of a border get a transition at both ends */
+	private static final int MAX_SINGLE_TRANSITION_LENGTH = 6;
+	private static final int PROGRESS_INTERVAL = 4096;
+	private static final float SQRT2 = (float) Math.sqrt(2.0);
+	private static final int[] NEIGHBOR_DX = { 1, 0, -1, 0, 1, -1, -1, 1 };
+	private static final int[] NEIGHBOR_DY = { 0, 1, 0, -1, 1, 1, -1, -1 };
+
+	private final WorldModel world;
+	private final int size = Grid.GRID_SIZE;
+	private final int clustersPerSide = (size + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+	private final Cluster[] clusters = new Cluster[clustersPerSide * clustersPerSide];
+	/** Border between clusters (cx, cy) and (cx + 1, cy) */
+	private final Border[] verticalBorders = new Border[clustersPerSide * clustersPerSide];
+	/** Border between clusters (cx, cy) and (cx, cy + 1) */
+	private final Border[] horizontalBorders = new Border[clustersPerSide * clustersPerSide];
+	private final BitSet dirtyClusters = new BitSet(clustersPerSide * clustersPerSide);
+	private final ClusterSearch clusterSearch = new ClusterSearch();
+	/** Positions of the transitions along the border being rebuilt */
+	private final int[] transitions = new int[CLUSTER_SIZE];
+	private int transitionCount = 0;
+	private Costmap costmap;
+	private int searchStamp = 0;
+	/** Cells expanded by the cluster searches of the current query */
+	private int expandedCells;
+	private RoutePlanningListener listener;
+
+	public HierarchicalPathPlanner(WorldModel world) {
+		this.world = world;
+		for (int cy = 0; cy < clustersPerSide; ++cy) {
+			for (int cx = 0; cx < clustersPerSide; ++cx) {
+				clusters[cy * clustersPerSide + cx] = new Cluster(cx, cy);
+				verticalBorders[cy * clustersPerSide + cx] = new Border();
+				horizontalBorders[cy * clustersPerSide + cx] = new Border();
+			}
+		}
+		dirtyClusters.set(0, clusters.length);
+		world.addCostmapListener(this);
+	}
+
+	@Override
+	public void costsChanged(int[] cells, int count) {
+		synchronized (dirtyClusters) {
+			for (int i = 0; i < count; ++i) {
+				int x = cells[i] % size;
+				int y = cells[i] / size;
+				int cx = x / CLUSTER_SIZE;
+				int cy = y / CLUSTER_SIZE;
+				markDirty(cx, cy);
+				// border cells also belong to the transitions of the neighbouring cluster
+				if (x % CLUSTER_SIZE == 0) {
+					markDirty(cx - 1, cy);
+				} else if (x % CLUSTER_SIZE == CLUSTER_SIZE - 1) {
+					markDirty(cx + 1, cy);
+				}
+				if (y % CLUSTER_SIZE == 0) {
+					markDirty(cx, cy - 1);
+				} else if (y % CLUSTER_SIZE == CLUSTER_SIZE - 1) {
+					markDirty(cx, cy + 1);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void costmapRebuilt() {
+		synchronized (dirtyClusters) {
+			dirtyClusters.set(0, clusters.length);
+		}
+	}
+
+	private void markDirty(int cx, int cy) {
+		if (cx >= 0 && cy >= 0 && cx < clustersPerSide && cy < clustersPerSide) {
+			dirtyClusters.set(cy * clustersPerSide + cx);
+		}
+	}
+
+	/**
+	 * Returns the centers of the cells from start to goal, or null if no path
+	 * was found or the search was interrupted.
+	 */
+	public List<Vector2D> findPath(Vector2D start, Vector2D goal, RoutePlanningListener listener) {
+		this.listener = listener;
+		expandedCells = 0;
+		if (!updateAbstraction()) {
+			return null;
+		}
+		int startX = Grid.toCell(start.x);
+		int startY = Grid.toCell(start.y);
+		int goalX = Grid.toCell(goal.x);
+		int goalY = Grid.toCell(goal.y);
+		if (!isInGrid(startX, startY) || !isInGrid(goalX, goalY) || costmap.isLethal(goalX, goalY)) {
+			return null;
+		}
+		Cluster startCluster = getCluster(startX, startY);
+		Cluster goalCluster = getCluster(goalX, goalY);
+		Node startNode = new Node(startY * size + startX, startCluster);
+		Node goalNode = new Node(goalY * size + goalX, goalCluster);
+		++searchStamp;
+
+		// temporary edges from the start to its cluster, and from the goal cluster to the goal
+		clusterSearch.search(startCluster, startNode.cell, startCluster.nodes, startCluster == goalCluster ? goalNode.cell : -1);
+		connectToClusterNodes(startNode, startCluster);
+		if (startCluster == goalCluster && clusterSearch.getCost(goalNode.cell) < Float.POSITIVE_INFINITY) {
+			startNode.addEdge(goalNode, clusterSearch.getCost(goalNode.cell));
+		}
+		clusterSearch.search(goalCluster, goalNode.cell, goalCluster.nodes, -1);
+		for (Node node : goalCluster.nodes) {
+			float cost = clusterSearch.getCost(node.cell);
+			if (cost < Float.POSITIVE_INFINITY) {
+				// approximation of the reverse direction, refinement calculates the exact path
+				node.goalCost = cost;
+				node.goalStamp = searchStamp;
+			}
+		}
+
+		List<Node> abstractPath = searchAbstractGraph(startNode, goalNode);
+		if (abstractPath == null || Thread.currentThread().isInterrupted()) {
+			return null;
+		}
+		return refine(abstractPath);
+	}
+
+	private void connectToClusterNodes(Node node, Cluster cluster) {
+		for (Node clusterNode : cluster.nodes) {
+			float cost = clusterSearch.getCost(clusterNode.cell);
+			if (cost < Float.POSITIVE_INFINITY) {
+				node.addEdge(clusterNode, cost);
+			}
+		}
+	}
+
+	private List<Node> searchAbstractGraph(Node startNode, Node goalNode) {
+		PriorityQueue<SearchEntry> open = new PriorityQueue<SearchEntry>();
+		startNode.visit(searchStamp, 0.0f, null);
+		open.add(new SearchEntry(startNode, heuristic(startNode, goalNode)));
+		int expandedNodes = 0;
+		while (!open.isEmpty()) {
+			Node node = open.poll().node;
+			if (node.closed) {
+				continue;
+			}
+			if (++expandedNodes % PROGRESS_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			if (node == goalNode) {
+				List<Node> path = new ArrayList<Node>();
+				for (Node n = goalNode; n != null; n = n.parent) {
+					path.add(n);
+				}
+				Collections.reverse(path);
+				return path;
+			}
+			node.closed = true;
+			for (int i = 0; i < node.edgeCount; ++i) {
+				relax(open, node, node.edges[i], node.edgeCosts[i], goalNode);
+			}
+			if (node.partner != null) {
+				relax(open, node, node.partner, node.partnerCost, goalNode);
+			}
+			if (node.goalStamp == searchStamp) {
+				relax(open, node, goalNode, node.goalCost, goalNode);
+			}
+		}
+		return null;
+	}
+
+	private void relax(PriorityQueue<SearchEntry> open, Node from, Node to, float edgeCost, Node goalNode) {
+		float cost = from.cost + edgeCost;
+		if (to.stamp != searchStamp) {
+			to.visit(searchStamp, cost, from);
+		} else if (to.closed || cost >= to.cost) {
+			return;
+		} else {
+			to.cost = cost;
+			to.parent = from;
+		}
+		open.add(new SearchEntry(to, cost + heuristic(to, goalNode)));
+	}
+
+	private List<Vector2D> refine(List<Node> abstractPath) {
+		List<Vector2D> path = new ArrayList<Vector2D>();
+		path.add(toWorld(abstractPath.get(0).cell));
+		for (int i = 1; i < abstractPath.size(); ++i) {
+			Node from = abstractPath.get(i - 1);
+			Node to = abstractPath.get(i);
+			if (from.partner == to) {
+				path.add(toWorld(to.cell));
+				continue;
+			}
+			clusterSearch.search(to.cluster, from.cell, Collections.<Node> emptyList(), to.cell);
+			int[] cells = clusterSearch.getPath(to.cell);
+			for (int j = 1; j < cells.length; ++j) {
+				path.add(toWorld(cells[j]));
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Returns false if interrupted, the clusters not recalculated yet are
+	 * then left dirty.
+	 */
+	private boolean updateAbstraction() {
+		BitSet dirty;
+		synchronized (dirtyClusters) {
+			if (costmap != world.getCostmap()) {
+				costmap = world.getCostmap();
+				dirtyClusters.set(0, clusters.length);
+			}
+			dirty = (BitSet) dirtyClusters.clone();
+			dirtyClusters.clear();
+		}
+		if (dirty.isEmpty()) {
+			return true;
+		}
+		BitSet rebuiltVerticalBorders = new BitSet(clusters.length);
+		BitSet rebuiltHorizontalBorders = new BitSet(clusters.length);
+		BitSet affectedClusters = new BitSet(clusters.length);
+		for (int c = dirty.nextSetBit(0); c >= 0; c = dirty.nextSetBit(c + 1)) {
+			int cx = c % clustersPerSide;
+			int cy = c / clustersPerSide;
+			affectedClusters.set(c);
+			rebuildVerticalBorder(cx - 1, cy, rebuiltVerticalBorders, affectedClusters);
+			rebuildVerticalBorder(cx, cy, rebuiltVerticalBorders, affectedClusters);
+			rebuildHorizontalBorder(cx, cy - 1, rebuiltHorizontalBorders, affectedClusters);
+			rebuildHorizontalBorder(cx, cy, rebuiltHorizontalBorders, affectedClusters);
+		}
+		for (int c = affectedClusters.nextSetBit(0); c >= 0; c = affectedClusters.nextSetBit(c + 1)) {
+			if (Thread.currentThread().isInterrupted()) {
+				synchronized (dirtyClusters) {
+					// the borders were rebuilt, but the edges of these clusters were not
+					dirtyClusters.or(affectedClusters);
+				}
+				return false;
+			}
+			rebuildIntraEdges(clusters[c]);
+			affectedClusters.clear(c);
+		}
+		return true;
+	}
+
+	private void rebuildVerticalBorder(int cx, int cy, BitSet rebuilt, BitSet affectedClusters) {
+		if (cx < 0 || cx + 1 >= clustersPerSide) {
+			return;
+		}
+		int index = cy * clustersPerSide + cx;
+		if (rebuilt.get(index)) {
+			return;
+		}
+		rebuilt.set(index);
+		Cluster left = clusters[index];
+		Cluster right = clusters[index + 1];
+		transitionCount = 0;
+		int runStart = -1;
+		for (int y = left.y0; y <= left.y1 + 1; ++y) {
+			boolean passable = y <= left.y1 && !costmap.isLethal(left.x1, y) && !costmap.isLethal(right.x0, y);
+			if (passable && runStart < 0) {
+				runStart = y;
+			} else if (!passable && runStart >= 0) {
+				addTransitions(runStart, y - 1);
+				runStart = -1;
+			}
+		}
+		if (verticalBorders[index].update(left, right, true)) {
+			affectedClusters.set(index);
+			affectedClusters.set(index + 1);
+		}
+	}
+
+	private void rebuildHorizontalBorder(int cx, int cy, BitSet rebuilt, BitSet affectedClusters) {
+		if (cy < 0 || cy + 1 >= clustersPerSide) {
+			return;
+		}
+		int index = cy * clustersPerSide + cx;
+		if (rebuilt.get(index)) {
+			return;
+		}
+		rebuilt.set(index);
+		Cluster top = clusters[index];
+		Cluster bottom = clusters[index + clustersPerSide];
+		transitionCount = 0;
+		int runStart = -1;
+		for (int x = top.x0; x <= top.x1 + 1; ++x) {
+			boolean passable = x <= top.x1 && !costmap.isLethal(x, top.y1) && !costmap.isLethal(x, bottom.y0);
+			if (passable && runStart < 0) {
+				runStart = x;
+			} else if (!passable && runStart >= 0) {
+				addTransitions(runStart, x - 1);
+				runStart = -1;
+			}
+		}
+		if (horizontalBorders[index].update(top, bottom, false)) {
+			affectedClusters.set(index);
+			affectedClusters.set(index + clustersPerSide);
+		}
+	}
+
+	private void addTransitions(int runStart, int runEnd) {
+		if (runEnd - runStart + 1 <= MAX_SINGLE_TRANSITION_LENGTH) {
+			transitions[transitionCount++] = (runStart + runEnd) / 2;
+		} else {
+			transitions[transitionCount++] = runStart;
+			transitions[transitionCount++] = runEnd;
+		}
+	}
+
+	private void rebuildIntraEdges(Cluster cluster) {
+		List<Node> nodes = new ArrayList<Node>();
+		int index = cluster.cy * clustersPerSide + cluster.cx;
+		collectNodes(nodes, cluster, cluster.cx > 0 ? verticalBorders[index - 1] : null);
+		collectNodes(nodes, cluster, verticalBorders[index]);
+		collectNodes(nodes, cluster, cluster.cy > 0 ? horizontalBorders[index - clustersPerSide] : null);
+		collectNodes(nodes, cluster, horizontalBorders[index]);
+		cluster.nodes = nodes;
+		for (Node node : nodes) {
+			node.edgeCount = 0;
+			clusterSearch.search(cluster, node.cell, nodes, -1);
+			for (Node other : nodes) {
+				float cost = clusterSearch.getCost(other.cell);
+				if (other != node && cost < Float.POSITIVE_INFINITY) {
+					node.addEdge(other, cost);
+				}
+			}
+		}
+	}
+
+	private void collectNodes(List<Node> nodes, Cluster cluster, Border border) {
+		if (border == null) {
+			return;
+		}
+		for (Node node : border.nodes) {
+			if (node.cluster == cluster) {
+				nodes.add(node);
+			}
+		}
+	}
+
+	private float heuristic(Node from, Node to) {
+		int dx = Math.abs(from.cell % size - to.cell % size);
+		int dy = Math.abs(from.cell / size - to.cell / size);
+		return (Math.max(dx, dy) + (SQRT2 - 1.0f) * Math.min(dx, dy)) * Grid.CELL_SIZE;
+	}
+
+	private Cluster getCluster(int x, int y) {
+		return clusters[(y / CLUSTER_SIZE) * clustersPerSide + x / CLUSTER_SIZE];
+	}
+
+	private boolean isInGrid(int x, int y) {
+		return x >= 0 && y >= 0 && x < size && y < size;
+	}
+
+	private Vector2D toWorld(int cell) {
+		return new Vector2D(Grid.toWorld(cell % size), Grid.toWorld(cell / size));
+	}
+
+	private class Cluster {
+		private final int cx;
+		private final int cy;
+		private final int x0;
+		private final int y0;
+		private final int x1;
+		private final int y1;
+		private List<Node> nodes = new ArrayList<Node>();
+
+		public Cluster(int cx, int cy) {
+			this.cx = cx;
+			this.cy = cy;
+			this.x0 = cx * CLUSTER_SIZE;
+			this.y0 = cy * CLUSTER_SIZE;
+			this.x1 = Math.min(x0 + CLUSTER_SIZE, size) - 1;
+			this.y1 = Math.min(y0 + CLUSTER_SIZE, size) - 1;
+		}
+	}
+
+	private class Border {
+		private final List<Node> nodes = new ArrayList<Node>();
+		private int[] positions = new int[0];
+
+		/**
+		 * Takes the current transitions into use. Returns true if the nodes
+		 * changed, otherwise only the crossing costs are refreshed.
+		 */
+		public boolean update(Cluster cluster1, Cluster cluster2, boolean vertical) {
+			boolean changed = !Arrays.equals(positions, Arrays.copyOf(transitions, transitionCount));
+			if (changed) {
+				positions = Arrays.copyOf(transitions, transitionCount);
+				nodes.clear();
+				for (int position : positions) {
+					Node node1 = vertical ? new Node(position * size + cluster1.x1, cluster1) : new Node(cluster1.y1 * size + position, cluster1);
+					Node node2 = vertical ? new Node(position * size + cluster2.x0, cluster2) : new Node(cluster2.y0 * size + position, cluster2);
+					node1.partner = node2;
+					node2.partner = node1;
+					nodes.add(node1);
+					nodes.add(node2);
+				}
+			}
+			for (Node node : nodes) {
+				node.partnerCost = Grid.CELL_SIZE * (costmap.getCost(node.cell) + costmap.getCost(node.partner.cell)) * 0.5f;
+			}
+			return changed;
+		}
+	}
+
+	private static class Node {
+		private final int cell;
+		private final Cluster cluster;
+		private Node partner;
+		private float partnerCost;
+		private Node[] edges = new Node[4];
+		private float[] edgeCosts = new float[4];
+		private int edgeCount = 0;
+
+		private int stamp = -1;
+		private float cost;
+		private Node parent;
+		private boolean closed;
+		private int goalStamp = -1;
+		private float goalCost;
+
+		public Node(int cell, Cluster cluster) {
+			this.cell = cell;
+			this.cluster = cluster;
+		}
+
+		public void addEdge(Node node, float edgeCost) {
+			if (edgeCount == edges.length) {
+				edges = Arrays.copyOf(edges, edges.length * 2);
+				edgeCosts = Arrays.copyOf(edgeCosts, edgeCosts.length * 2);
+			}
+			edges[edgeCount] = node;
+			edgeCosts[edgeCount] = edgeCost;
+			++edgeCount;
+		}
+
+		public void visit(int stamp, float cost, Node parent) {
+			this.stamp = stamp;
+			this.cost = cost;
+			this.parent = parent;
+			this.closed = false;
+		}
+	}
+
+	private static class SearchEntry implements Comparable<SearchEntry> {
+		private final Node node;
+		private final float estimate;
+
+		public SearchEntry(Node node, float estimate) {
+			this.node = node;
+			this.estimate = estimate;
+		}
+
+		@Override
+		public int compareTo(SearchEntry other) {
+			return Float.compare(estimate, other.estimate);
+		}
+	}
+
+	/**
+	 * Dijkstra limited to the cells of one cluster.
+	 */
+	private class ClusterSearch {
+		private final int capacity = CLUSTER_SIZE * CLUSTER_SIZE;
+		private final IndexedMinHeap open = new IndexedMinHeap(capacity);
+		private final float[] costs = new float[capacity];
+		private final int[] parents = new int[capacity];
+		private final int[] targetStamps = new int[capacity];
+		private int targetStamp = 0;
+		private Cluster cluster;
+
+		/**
+		 * Searches until the costs of the given nodes and the extra target cell (or -1) are known.
+		 */
+		public void search(Cluster searchedCluster, int startCell, List<Node> targets, int targetCell) {
+			this.cluster = searchedCluster;
+			Arrays.fill(costs, Float.POSITIVE_INFINITY);
+			open.clear();
+			++targetStamp;
+			int remainingTargets = 0;
+			for (Node target : targets) {
+				remainingTargets += markTarget(target.cell);
+			}
+			if (targetCell >= 0) {
+				remainingTargets += markTarget(targetCell);
+			}
+			int start = toLocal(startCell);
+			costs[start] = 0.0f;
+			parents[start] = -1;
+			open.insertOrUpdate(start, 0.0f, 0.0f);
+			int width = cluster.x1 - cluster.x0 + 1;
+			int height = cluster.y1 - cluster.y0 + 1;
+			while (!open.isEmpty()) {
+				int local = open.pop();
+				if (targetStamps[local] == targetStamp && --remainingTargets <= 0) {
+					return;
+				}
+				if (++expandedCells % PROGRESS_INTERVAL == 0 && listener != null) {
+					listener.planningProgress(expandedCells);
+				}
+				int lx = local % CLUSTER_SIZE;
+				int ly = local / CLUSTER_SIZE;
+				float fromCost = costmap.getCost(cluster.x0 + lx, cluster.y0 + ly);
+				if (fromCost == Costmap.LETHAL_COST) {
+					// only the start can be lethal, the robot must still be able to leave it
+					fromCost = Costmap.CIRCUMSCRIBED_COST;
+				}
+				for (int i = 0; i < NEIGHBOR_DX.length; ++i) {
+					int nlx = lx + NEIGHBOR_DX[i];
+					int nly = ly + NEIGHBOR_DY[i];
+					if (nlx < 0 || nly < 0 || nlx >= width || nly >= height) {
+						continue;
+					}
+					int x = cluster.x0 + nlx;
+					int y = cluster.y0 + nly;
+					float cellCost = costmap.getCost(x, y);
+					if (cellCost == Costmap.LETHAL_COST) {
+						continue;
+					}
+					boolean diagonal = i >= 4;
+					if (diagonal && (costmap.isLethal(x, cluster.y0 + ly) || costmap.isLethal(cluster.x0 + lx, y))) {
+						continue;
+					}
+					int neighbor = nly * CLUSTER_SIZE + nlx;
+					// same edge costs as GridPathPlanner
+					float cost = costs[local] + (diagonal ? SQRT2 : 1.0f) * Grid.CELL_SIZE * (fromCost + cellCost) * 0.5f;
+					if (cost < costs[neighbor]) {
+						costs[neighbor] = cost;
+						parents[neighbor] = local;
+						open.insertOrUpdate(neighbor, cost, 0.0f);
+					}
+				}
+			}
+		}
+
+		private int markTarget(int cell) {
+			int local = toLocal(cell);
+			if (targetStamps[local] == targetStamp) {
+				return 0;
+			}
+			targetStamps[local] = targetStamp;
+			return 1;
+		}
+
+		public float getCost(int cell) {
+			return costs[toLocal(cell)];
+		}
+
+		/**
+		 * Cells from the search start to the given cell.
+		 */
+		public int[] getPath(int cell) {
+			int length = 0;
+			for (int local = toLocal(cell); local >= 0; local = parents[local]) {
+				++length;
+			}
+			int[] path = new int[length];
+			for (int local = toLocal(cell); local >= 0; local = parents[local]) {
+				path[--length] = (cluster.y0 + local / CLUSTER_SIZE) * size + cluster.x0 + local % CLUSTER_SIZE;
+			}
+			return path;
+		}
+
+		private int toLocal(int cell) {
+			return (cell / size - cluster.y0) * CLUSTER_SIZE + cell % size - cluster.x0;
+		}
+	}
+}
@@ -31,6 +31,14 @@ public class Route {
 		removeRedundantWaypoints();
 	}
 
+	/**
+	 * Appends waypoints that have already been simplified, for example by a
+	 * {@link RouteSmoother}, without the redundancy check of single waypoints.
+	 */
+	public synchronized void addWaypoints(List<Waypoint> points) {
+		waypoints.addAll(points);
+	}
+
 	/**
 	 * Loop through the waypoints starting from the end. If three points are in
 	 * the same line, the middle point is redundant.
@@ -66,6 +74,42 @@ public class Route {
 		currentWaypointIndex++;
 	}
 
+	/**
+	 * Replaces the waypoints that have not been reached yet on the leg to the
+	 * given goal with already simplified waypoints. The goal itself and the
+	 * other legs are kept. Returns false if the goal is no longer ahead.
+	 */
+	public synchronized boolean replaceLeg(Waypoint legGoal, List<Waypoint> newWaypoints) {
+		int end = waypoints.indexOf(legGoal);
+		if (end < currentWaypointIndex) {
+			return false;
+		}
+		int begin = end;
+		while (begin > currentWaypointIndex && !waypoints.get(begin - 1).isLegGoal()) {
+			--begin;
+		}
+		waypoints.subList(begin, end).clear();
+		waypoints.addAll(begin, newWaypoints);
+		return true;
+	}
+
+	/**
+	 * Returns a copy of the waypoints that have not been reached yet.
+	 */
+	public synchronized List<Waypoint> getRemainingWaypoints() {
+		if (currentWaypointIndex >= waypoints.size()) {
+			return new ArrayList<Waypoint>();
+		}
+		return new ArrayList<Waypoint>(waypoints.subList(currentWaypointIndex, waypoints.size()));
+	}
+
+	public synchronized Waypoint getLastWaypoint() {
+		if (waypoints.isEmpty()) {
+			return null;
+		}
+		return waypoints.get(waypoints.size() - 1);
+	}
+
 	public synchronized void removeLastWaypoint() {
 		waypoints.remove(waypoints.size() - 1);
 	}
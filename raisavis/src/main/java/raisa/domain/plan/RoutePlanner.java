@@ -0,0 +1,112 @@
+package raisa.domain.plan;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.util.NamedThreadFactory;
+import raisa.util.Vector2D;
+
+/**
+ * Plans route legs in the background and appends them to the selected route
+ * of the motion plan. Legs are planned in the order they were requested, each
+ * one starting from the end of the route at the time it is planned. Planned
+ * routes are kept valid by a {@link RouteReplanner} while they are followed.
+ * Long legs are planned on the cluster abstraction of a
+ * {@link HierarchicalPathPlanner}, short ones with a plain grid search.
+ */
+public class RoutePlanner {
+	/** Legs longer than this in world units are planned hierarchically */
+	private static final float HIERARCHICAL_PLANNING_DISTANCE = 4 * HierarchicalPathPlanner.CLUSTER_SIZE * Grid.CELL_SIZE;
+
+	private final WorldModel world;
+	private final GridPathPlanner gridPathPlanner = new GridPathPlanner();
+	private final HierarchicalPathPlanner hierarchicalPathPlanner;
+	private final RouteSmoother routeSmoother = new RouteSmoother(Grid.CELL_SIZE / 2.0f);
+	private final RouteReplanner routeReplanner;
+	private final ExecutorService planningExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-RoutePlanner", true));
+	private final List<Future<?>> pendingPlans = new ArrayList<Future<?>>();
+
+	public RoutePlanner(WorldModel world) {
+		this.world = world;
+		this.hierarchicalPathPlanner = new HierarchicalPathPlanner(world);
+		this.routeReplanner = new RouteReplanner(world);
+	}
+
+	public Future<?> planRouteTo(final Vector2D goal, final RoutePlanningListener listener) {
+		final Route route = world.getMotionPlan().getSelectedRoute();
+		Future<?> plan = planningExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				planLeg(route, goal, listener);
+			}
+		});
+		synchronized (pendingPlans) {
+			removeCompletedPlans();
+			pendingPlans.add(plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Cancels all queued and running plans.
+	 */
+	public void cancelAll() {
+		synchronized (pendingPlans) {
+			for (Future<?> plan : pendingPlans) {
+				plan.cancel(true);
+			}
+			pendingPlans.clear();
+		}
+		routeReplanner.stop();
+	}
+
+	private void planLeg(Route route, Vector2D goal, RoutePlanningListener listener) {
+		Waypoint lastWaypoint = route.getLastWaypoint();
+		Vector2D start = lastWaypoint != null ? lastWaypoint.getPosition() : world.getLatestState().getEstimatedState().getPosition();
+		List<Vector2D> path = null;
+		if (start.distance(goal) > HIERARCHICAL_PLANNING_DISTANCE) {
+			path = hierarchicalPathPlanner.findPath(start, goal, listener);
+		}
+		if (path == null && !Thread.currentThread().isInterrupted()) {
+			path = gridPathPlanner.findPath(world.getGrid(), start, goal, listener);
+		}
+		if (Thread.currentThread().isInterrupted() || route != world.getMotionPlan().getSelectedRoute()) {
+			// cancelled or the route was cleared while planning
+			return;
+		}
+		if (path == null) {
+			listener.planningFailed(goal);
+			return;
+		}
+		// the first and last cells are replaced by the exact start and goal
+		path.set(0, start);
+		if (path.size() == 1) {
+			path.add(goal);
+		} else {
+			path.set(path.size() - 1, goal);
+		}
+		List<Vector2D> smoothedPath = routeSmoother.smooth(world.getCostmap(), path);
+		List<Waypoint> waypoints = new ArrayList<Waypoint>();
+		for (int i = lastWaypoint == null ? 0 : 1; i < smoothedPath.size(); ++i) {
+			waypoints.add(new Waypoint(smoothedPath.get(i), i == smoothedPath.size() - 1));
+		}
+		route.addWaypoints(waypoints);
+		routeReplanner.followRoute(route);
+		listener.routePlanned(route);
+	}
+
+	private void removeCompletedPlans() {
+		Iterator<Future<?>> plans = pendingPlans.iterator();
+		while (plans.hasNext()) {
+			if (plans.next().isDone()) {
+				plans.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package raisa.domain.plan;
+
+import raisa.util.Vector2D;
+
+/**
+ * Notified from the planning thread.
+ */
+public interface RoutePlanningListener {
+
+	void planningProgress(int expandedCells);
+
+	void routePlanned(Route route);
+
+	void planningFailed(Vector2D goal);
+
+}
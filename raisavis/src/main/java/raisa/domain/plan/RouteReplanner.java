@@ -0,0 +1,266 @@
+package raisa.domain.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import raisa.domain.CostmapListener;
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.util.NamedThreadFactory;
+import raisa.util.Vector2D;
+
+/**
+ * Keeps the followed route valid while the map changes. The route is
+ * repaired leg by leg, a leg ending at a goal the user placed. A D* Lite
+ * search towards the goal of the current leg is kept between changes, so
+ * that only the part of the search affected by the changed cells is
+ * repaired. Later legs touched by the changes are searched again from their
+ * start. Only the planned waypoints of the affected legs are replaced, the
+ * goals and the other legs are kept.
+ */
+public class RouteReplanner implements CostmapListener {
+	private static final Logger log = LoggerFactory.getLogger(RouteReplanner.class);
+
+	private final WorldModel world;
+	private final DStarLitePlanner planner = new DStarLitePlanner();
+	/** Searches the legs after the current one */
+	private final DStarLitePlanner legPlanner = new DStarLitePlanner();
+	private final RouteSmoother routeSmoother = new RouteSmoother(Grid.CELL_SIZE / 2.0f);
+	private final ExecutorService replanningExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-RouteReplanner", true));
+
+	private final Object pendingLock = new Object();
+	private int[] pendingCells = new int[64];
+	private int pendingCellCount = 0;
+	private boolean rebuildPending = false;
+	private boolean replanScheduled = false;
+
+	/** Accessed only from the replanning thread */
+	private Route route;
+	/** Goal of the leg the D* Lite search is for */
+	private Waypoint goal;
+	/** Goals of the remaining legs when the route cells were marked, and the cells of each leg */
+	private final List<Waypoint> markedLegGoals = new ArrayList<Waypoint>();
+	private final List<BitSet> markedLegCells = new ArrayList<BitSet>();
+
+	public RouteReplanner(WorldModel world) {
+		this.world = world;
+		world.addCostmapListener(this);
+	}
+
+	/**
+	 * Starts keeping the given route valid until it is finished, cleared or another route is followed.
+	 */
+	public void followRoute(final Route followedRoute) {
+		replanningExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				route = followedRoute;
+				List<List<Waypoint>> legs = getLegs();
+				if (legs.isEmpty()) {
+					route = null;
+					return;
+				}
+				goal = getLegGoal(legs.get(0));
+				planner.initialize(world.getCostmap(), getRobotCell(), toCell(goal.getPosition()));
+				planner.computeShortestPath();
+				markRouteCells(legs);
+			}
+		});
+	}
+
+	public void stop() {
+		replanningExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				route = null;
+			}
+		});
+	}
+
+	@Override
+	public void costsChanged(int[] cells, int count) {
+		synchronized (pendingLock) {
+			if (pendingCellCount + count > pendingCells.length) {
+				pendingCells = Arrays.copyOf(pendingCells, Math.max(pendingCells.length * 2, pendingCellCount + count));
+			}
+			System.arraycopy(cells, 0, pendingCells, pendingCellCount, count);
+			pendingCellCount += count;
+			scheduleReplan();
+		}
+	}
+
+	@Override
+	public void costmapRebuilt() {
+		synchronized (pendingLock) {
+			rebuildPending = true;
+			scheduleReplan();
+		}
+	}
+
+	private void scheduleReplan() {
+		if (!replanScheduled) {
+			replanScheduled = true;
+			replanningExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					replan();
+				}
+			});
+		}
+	}
+
+	private void replan() {
+		int[] cells;
+		int cellCount;
+		boolean rebuild;
+		synchronized (pendingLock) {
+			cells = pendingCells;
+			cellCount = pendingCellCount;
+			rebuild = rebuildPending;
+			pendingCells = new int[64];
+			pendingCellCount = 0;
+			rebuildPending = false;
+			replanScheduled = false;
+		}
+		if (route == null || route != world.getMotionPlan().getSelectedRoute() || route.getNextWaypoint() == null) {
+			route = null;
+			return;
+		}
+		List<List<Waypoint>> legs = getLegs();
+		Waypoint legGoal = getLegGoal(legs.get(0));
+		if (rebuild || legGoal != goal) {
+			// the robot has reached the previous goal, or everything changed
+			goal = legGoal;
+			planner.initialize(world.getCostmap(), getRobotCell(), toCell(goal.getPosition()));
+		} else {
+			planner.moveStart(getRobotCell());
+			planner.updateCells(cells, cellCount);
+		}
+		if (!planner.computeShortestPath()) {
+			return;
+		}
+		boolean routeChanged = false;
+		Vector2D legStart = world.getLatestState().getEstimatedState().getPosition();
+		for (int i = 0; i < legs.size(); ++i) {
+			Waypoint currentGoal = getLegGoal(legs.get(i));
+			if (rebuild || isLegAffected(currentGoal, cells, cellCount)) {
+				int[] path;
+				if (i == 0) {
+					path = planner.extractPath();
+				} else {
+					legPlanner.initialize(world.getCostmap(), toCell(legStart), toCell(currentGoal.getPosition()));
+					// an unfinished search leaves the leg as it was, the legs replaced
+					// before it still have to be marked
+					path = legPlanner.computeShortestPath() ? legPlanner.extractPath() : null;
+				}
+				if (path == null) {
+					log.info("Route to ({}, {}) is blocked", currentGoal.getPosition().x, currentGoal.getPosition().y);
+				} else {
+					routeChanged |= route.replaceLeg(currentGoal, toWaypoints(legStart, path, currentGoal.getPosition()));
+				}
+			}
+			legStart = currentGoal.getPosition();
+		}
+		if (routeChanged) {
+			markRouteCells(getLegs());
+		}
+	}
+
+	/**
+	 * Splits the remaining waypoints into legs, each ending at a goal.
+	 */
+	private List<List<Waypoint>> getLegs() {
+		List<List<Waypoint>> legs = new ArrayList<List<Waypoint>>();
+		List<Waypoint> leg = new ArrayList<Waypoint>();
+		for (Waypoint waypoint : route.getRemainingWaypoints()) {
+			leg.add(waypoint);
+			if (waypoint.isLegGoal()) {
+				legs.add(leg);
+				leg = new ArrayList<Waypoint>();
+			}
+		}
+		if (!leg.isEmpty()) {
+			legs.add(leg);
+		}
+		return legs;
+	}
+
+	private Waypoint getLegGoal(List<Waypoint> leg) {
+		return leg.get(leg.size() - 1);
+	}
+
+	private boolean isLegAffected(Waypoint legGoal, int[] cells, int cellCount) {
+		int leg = markedLegGoals.indexOf(legGoal);
+		if (leg < 0) {
+			return false;
+		}
+		BitSet legCells = markedLegCells.get(leg);
+		for (int i = 0; i < cellCount; ++i) {
+			if (legCells.get(cells[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the waypoints planned between the start and the goal of a leg.
+	 * The first cell of the path is the start and the last one the goal.
+	 */
+	private List<Waypoint> toWaypoints(Vector2D start, int[] path, Vector2D goalPosition) {
+		List<Vector2D> points = new ArrayList<Vector2D>();
+		points.add(start);
+		for (int i = 1; i < path.length - 1; ++i) {
+			points.add(new Vector2D(Grid.toWorld(path[i] % Grid.GRID_SIZE), Grid.toWorld(path[i] / Grid.GRID_SIZE)));
+		}
+		points.add(goalPosition);
+		List<Vector2D> smoothedPoints = routeSmoother.smooth(world.getCostmap(), points);
+		List<Waypoint> waypoints = new ArrayList<Waypoint>();
+		for (int i = 1; i < smoothedPoints.size() - 1; ++i) {
+			waypoints.add(new Waypoint(smoothedPoints.get(i)));
+		}
+		return waypoints;
+	}
+
+	private void markRouteCells(List<List<Waypoint>> legs) {
+		markedLegGoals.clear();
+		markedLegCells.clear();
+		Vector2D previous = world.getLatestState().getEstimatedState().getPosition();
+		for (List<Waypoint> leg : legs) {
+			final BitSet legCells = new BitSet(Grid.GRID_SIZE * Grid.GRID_SIZE);
+			GridLine line = new GridLine() {
+				@Override
+				protected boolean visit(int x, int y) {
+					if (x >= 0 && y >= 0 && x < Grid.GRID_SIZE && y < Grid.GRID_SIZE) {
+						legCells.set(y * Grid.GRID_SIZE + x);
+					}
+					return true;
+				}
+			};
+			for (Waypoint waypoint : leg) {
+				Vector2D position = waypoint.getPosition();
+				line.walk(Grid.toCell(previous.x), Grid.toCell(previous.y), Grid.toCell(position.x), Grid.toCell(position.y));
+				previous = position;
+			}
+			markedLegGoals.add(getLegGoal(leg));
+			markedLegCells.add(legCells);
+		}
+	}
+
+	private int getRobotCell() {
+		return toCell(world.getLatestState().getEstimatedState().getPosition());
+	}
+
+	private int toCell(Vector2D position) {
+		int x = Math.max(0, Math.min(Grid.GRID_SIZE - 1, Grid.toCell(position.x)));
+		int y = Math.max(0, Math.min(Grid.GRID_SIZE - 1, Grid.toCell(position.y)));
+		return y * Grid.GRID_SIZE + x;
+	}
+}
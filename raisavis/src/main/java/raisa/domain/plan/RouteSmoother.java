@@ -0,0 +1,146 @@
+package raisa.domain.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import raisa.domain.Costmap;
+import raisa.domain.Grid;
+import raisa.util.Vector2D;
+
+/**
+ * Turns the cell by cell output of the grid planners into a few long
+ * segments. Points are first pulled tight with line of sight checks on the
+ * costmap, and the remaining points can optionally be simplified further with
+ * Douglas-Peucker. A shortcut never crosses cells that are more expensive than
+ * the worst cell of the part of the path it replaces, so smoothing does not
+ * pull routes closer to obstacles. Not thread safe.
+ */
+public class RouteSmoother {
+	private final float tolerance;
+	private Costmap costmap;
+	private float maxCost;
+	private int startCellX;
+	private int startCellY;
+	/** Worst cell cost between each pulled point and the next one */
+	private float[] pulledCosts;
+
+	private final GridLine lineOfSight = new GridLine() {
+		@Override
+		protected boolean visit(int x, int y) {
+			if (x == startCellX && y == startCellY) {
+				// the robot may already be too close to an obstacle
+				return true;
+			}
+			return costmap.getCost(x, y) <= maxCost;
+		}
+	};
+
+	/**
+	 * @param tolerance maximum deviation of removed points in Douglas-Peucker
+	 *            simplification, zero to only pull the path tight
+	 */
+	public RouteSmoother(float tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public List<Vector2D> smooth(Costmap costmap, List<Vector2D> path) {
+		if (path.size() <= 2) {
+			return new ArrayList<Vector2D>(path);
+		}
+		this.costmap = costmap;
+		startCellX = Grid.toCell(path.get(0).x);
+		startCellY = Grid.toCell(path.get(0).y);
+		float[] segmentCosts = getSegmentCosts(path);
+		List<Vector2D> pulled = pullTight(path, segmentCosts);
+		if (tolerance <= 0.0f || pulled.size() <= 2) {
+			return pulled;
+		}
+		List<Vector2D> simplified = new ArrayList<Vector2D>();
+		simplified.add(pulled.get(0));
+		simplify(pulled, 0, pulled.size() - 1, simplified);
+		return simplified;
+	}
+
+	/**
+	 * Cost of the most expensive cell on the way from each point to the next one.
+	 */
+	private float[] getSegmentCosts(List<Vector2D> path) {
+		float[] segmentCosts = new float[path.size() - 1];
+		for (int i = 0; i < segmentCosts.length; ++i) {
+			Vector2D to = path.get(i + 1);
+			segmentCosts[i] = Math.max(Costmap.FREE_COST, costmap.getCost(to.x, to.y));
+		}
+		return segmentCosts;
+	}
+
+	private List<Vector2D> pullTight(List<Vector2D> path, float[] segmentCosts) {
+		List<Vector2D> pulled = new ArrayList<Vector2D>();
+		pulledCosts = new float[path.size()];
+		int anchor = 0;
+		pulled.add(path.get(anchor));
+		while (anchor < path.size() - 1) {
+			int next = anchor + 1;
+			float nextCost = segmentCosts[anchor];
+			float replacedCost = nextCost;
+			for (int candidate = anchor + 2; candidate < path.size(); ++candidate) {
+				replacedCost = Math.max(replacedCost, segmentCosts[candidate - 1]);
+				if (!isVisible(path.get(anchor), path.get(candidate), replacedCost)) {
+					break;
+				}
+				next = candidate;
+				nextCost = replacedCost;
+			}
+			pulledCosts[pulled.size() - 1] = nextCost;
+			pulled.add(path.get(next));
+			anchor = next;
+		}
+		return pulled;
+	}
+
+	/**
+	 * Douglas-Peucker, appends the kept points after the first one to the result.
+	 */
+	private void simplify(List<Vector2D> points, int first, int last, List<Vector2D> result) {
+		Vector2D start = points.get(first);
+		Vector2D end = points.get(last);
+		int farthest = -1;
+		double farthestDistance = 0.0;
+		for (int i = first + 1; i < last; ++i) {
+			double distance = distanceToSegment(points.get(i), start, end);
+			if (distance > farthestDistance) {
+				farthestDistance = distance;
+				farthest = i;
+			}
+		}
+		if (farthest < 0 || (farthestDistance <= tolerance && isVisible(start, end, getMaxCost(first, last)))) {
+			result.add(end);
+			return;
+		}
+		simplify(points, first, farthest, result);
+		simplify(points, farthest, last, result);
+	}
+
+	private float getMaxCost(int first, int last) {
+		float cost = Costmap.FREE_COST;
+		for (int i = first; i < last; ++i) {
+			cost = Math.max(cost, pulledCosts[i]);
+		}
+		return cost;
+	}
+
+	private boolean isVisible(Vector2D from, Vector2D to, float allowedCost) {
+		maxCost = allowedCost;
+		return lineOfSight.walk(Grid.toCell(from.x), Grid.toCell(from.y), Grid.toCell(to.x), Grid.toCell(to.y));
+	}
+
+	private static double distanceToSegment(Vector2D point, Vector2D start, Vector2D end) {
+		double dx = end.x - start.x;
+		double dy = end.y - start.y;
+		double lengthSquared = dx * dx + dy * dy;
+		if (lengthSquared == 0.0) {
+			return point.distance(start);
+		}
+		double t = Math.max(0.0, Math.min(1.0, ((point.x - start.x) * dx + (point.y - start.y) * dy) / lengthSquared));
+		return Math.hypot(point.x - (start.x + t * dx), point.y - (start.y + t * dy));
+	}
+}
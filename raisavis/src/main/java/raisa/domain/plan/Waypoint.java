@@ -10,11 +10,18 @@ public class Waypoint {
 
 	private final Vector2D position;
 	private final int id;
+	/** True for the goals the user placed, false for the waypoints planned between them */
+	private final boolean legGoal;
 	private boolean reached;
 
 	public Waypoint(Vector2D position) {
+		this(position, false);
+	}
+
+	public Waypoint(Vector2D position, boolean legGoal) {
 		this.position = position;
 		this.id = waypointSeq.getAndIncrement();
+		this.legGoal = legGoal;
 		this.reached = false;
 	}
 
@@ -30,6 +37,10 @@ public class Waypoint {
 		return this.reached;
 	}
 
+	public boolean isLegGoal() {
+		return this.legGoal;
+	}
+
 	public int getId() {
 		return this.id;
 	}
@@ -4,17 +4,23 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.math3.random.RandomGenerator;
 import raisa.util.RandomUtil;
 import raisa.util.Vector2D;
 
 public class ClusteringRobotStateEstimator implements RobotStateEstimator {
 	private final static class KMeansClustering {
+		private final RandomGenerator random;
 		private List<Vector2D> clusterCenters = new ArrayList<Vector2D>();
-		private final Map<RobotState, Integer> clusterOfRobot = new HashMap<RobotState, Integer>();
+		private final Map<RobotState, Integer> clusterOfRobot = new LinkedHashMap<RobotState, Integer>();
+
+		public KMeansClustering(RandomGenerator random) {
+			this.random = random;
+		}
 
 		public boolean iterate(int k) {
 			// assign robots to clusters
@@ -70,7 +76,7 @@ public class ClusteringRobotStateEstimator implements RobotStateEstimator {
 			List<List<RobotState>> clusters = new ArrayList<List<RobotState>>();
 			initClusterCenters(states, k);
 			for (RobotState state : states) {
-				clusterOfRobot.put(state, (int)(RandomUtil.random() * k));
+				clusterOfRobot.put(state, random.nextInt(k));
 			}
 			while (iterate(k))
 				;
@@ -96,16 +102,21 @@ public class ClusteringRobotStateEstimator implements RobotStateEstimator {
 
 		private List<RobotState> shuffleStates(List<RobotState> states) {
 			List<RobotState> shuffledStates = new ArrayList<RobotState>(states);
-			RandomUtil.shuffle(shuffledStates);
+			RandomUtil.shuffle(shuffledStates, random);
 			return shuffledStates;
 		}
 	}
 
 	private final AveragingRobotStateEstimator averagingRobotStateEstimator = new AveragingRobotStateEstimator();
+	private final RandomGenerator random;
+
+	public ClusteringRobotStateEstimator(RandomGenerator random) {
+		this.random = random;
+	}
 
 	@Override
 	public RobotState estimateState(List<RobotState> states) {
-		KMeansClustering clustering = new KMeansClustering();
+		KMeansClustering clustering = new KMeansClustering(random);
 		List<List<RobotState>> clusters = clustering.calculateClusters(states, 3);
 		List<RobotState> largestCluster = clusters.get(0);
 
@@ -8,6 +8,8 @@ public class Robot {
 	public final static float TICK_RADIANS = (float) Math.PI / 8.0f;
 
 	private long timestampMillis;
+	/** Arrival time of the sample the state was estimated from, see {@link raisa.domain.samples.Sample#getReceivedNanos()} */
+	private long sampleReceivedNanos;
 	private RobotState measuredState;
 	private RobotState estimatedState;
 
@@ -44,5 +46,13 @@ public class Robot {
 	public void setTimestampMillis(long timestamp) {
 		timestampMillis = timestamp;
 	}
+
+	public long getSampleReceivedNanos() {
+		return sampleReceivedNanos;
+	}
+
+	public void setSampleReceivedNanos(long sampleReceivedNanos) {
+		this.sampleReceivedNanos = sampleReceivedNanos;
+	}
 	
 }
\ No newline at end of file
@@ -1,34 +1,58 @@
 package raisa.domain.robot;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.math3.random.RandomGenerator;
+import raisa.config.LocalizationModeEnum;
 import raisa.config.VisualizerConfig;
 import raisa.domain.AlgorithmTypeEnum;
+import raisa.domain.Restorable;
+import raisa.domain.checkpoint.CheckpointInput;
+import raisa.domain.checkpoint.CheckpointOutput;
 import raisa.domain.WorldModel;
 import raisa.domain.landmarks.LandmarkManager;
 import raisa.domain.particlefilter.Particle;
 import raisa.domain.particlefilter.ParticleFilter;
 import raisa.domain.samples.Sample;
 import raisa.domain.samples.SampleListener;
+import raisa.domain.scanmatching.CorrelativeScanMatcher;
+import raisa.domain.scanmatching.SweepAssembler;
 import raisa.domain.slam.SlamManager;
-import raisa.util.CollectionUtil;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+import raisa.metrics.PipelineEvent;
+import raisa.metrics.PipelineEventEnum;
+import raisa.metrics.PipelineEvents;
 import raisa.util.Vector2D;
 
-public class RobotStateAggregator implements SampleListener {
+public class RobotStateAggregator implements SampleListener, Restorable<RobotStateAggregator.SavedState> {
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private static final Histogram movementTime = metrics.histogram("pipeline.movement");
+	private static final Histogram clusteringTime = metrics.histogram("pipeline.clustering");
+	private static final Histogram scanMatchingTime = metrics.histogram("pipeline.scanMatching");
+	private static final Histogram stateListenerTime = metrics.histogram("pipeline.stateListeners");
+	/** Age of the sample when the state estimated from it is ready */
+	private static final Histogram estimationAge = metrics.histogram("latency.sampleAge.estimation");
 	
 	private SimpleRobotMovementEstimator simpleRobotMovementEstimator;
 	private ClusteringRobotStateEstimator clusteringRobotStateEstimator;
 	private LandmarkManager landmarkManager;
 	private ParticleFilter particleFilter;
 	private SlamManager slam;
+	private CorrelativeScanMatcher scanMatcher;
 	private WorldModel world;
 	
-	public RobotStateAggregator(WorldModel world, ParticleFilter particleFilter, LandmarkManager landmarkManager) {
-		this.simpleRobotMovementEstimator = new SimpleRobotMovementEstimator(false);
-		this.clusteringRobotStateEstimator = new ClusteringRobotStateEstimator();
-		this.slam = new SlamManager();
+	/**
+	 * @param random used only by the estimators of this aggregator
+	 */
+	public RobotStateAggregator(WorldModel world, ParticleFilter particleFilter, LandmarkManager landmarkManager, RandomGenerator random) {
+		this.simpleRobotMovementEstimator = new SimpleRobotMovementEstimator(false, random);
+		this.clusteringRobotStateEstimator = new ClusteringRobotStateEstimator(random);
+		this.slam = new SlamManager(random);
+		this.scanMatcher = new CorrelativeScanMatcher(world);
 		this.landmarkManager = landmarkManager;
 		this.particleFilter = particleFilter;
 		this.world = world;
@@ -39,10 +63,13 @@ public class RobotStateAggregator implements SampleListener {
 		RobotState measuredState, estimatedState;	
 		
 		// calculate new robot state straight from the measurements
+		PipelineEvent event = PipelineEvents.begin(PipelineEventEnum.STATE_ESTIMATED);
+		long startNanos = metrics.startTimer();
 		Robot lastRobot = world.getLatestState();
 		measuredState = simpleRobotMovementEstimator.moveRobot(lastRobot.getMeasuredState(), sample);
 		measuredState.setOdometer(calculateOdometer(measuredState, lastRobot.getMeasuredState()));
 		estimatedState = simpleRobotMovementEstimator.moveRobot(lastRobot.getEstimatedState(), sample);
+		movementTime.recordSince(startNanos);
 		
 		// compute landmarks 
 		Set<AlgorithmTypeEnum> activatedAlgorithms = VisualizerConfig.getInstance().getActivatedAlgorithms();
@@ -62,13 +89,20 @@ public class RobotStateAggregator implements SampleListener {
 				RobotState robot = particle.getLastState();
 				states.add(robot);
 			}
+			startNanos = metrics.startTimer();
 			estimatedState = clusteringRobotStateEstimator.estimateState(states);
+			clusteringTime.recordSince(startNanos);
 			break;
 		case SLAM:
 			if (executeSlam) {
 				estimatedState = slam.update(estimatedState, landmarkManager.getLandmarks());
 			}			
 			break;
+		case SCAN_MATCHING:
+			startNanos = metrics.startTimer();
+			estimatedState = scanMatcher.update(estimatedState, sample);
+			scanMatchingTime.recordSince(startNanos);
+			break;
 		default:
 			estimatedState = measuredState;
 		}
@@ -77,10 +111,36 @@ public class RobotStateAggregator implements SampleListener {
 		// aggregate robot states and misc state calculations
 		Robot newRobot = new Robot(measuredState, estimatedState);
 		newRobot.setTimestampMillis(sample.getTimestampMillis());
+		newRobot.setSampleReceivedNanos(sample.getReceivedNanos());
 		calculateSpeed(newRobot);
+		estimationAge.recordSince(sample.getReceivedNanos());
+		startNanos = metrics.startTimer();
 		world.addState(newRobot);
+		stateListenerTime.recordSince(startNanos);
+		int particleCount = VisualizerConfig.getInstance().getLocalizationMode() == LocalizationModeEnum.PARTICLE_FILTER ? particleFilter
+				.getParticles().size() : 0;
+		event.commit(sample.getMessageNumber(), particleCount, landmarkManager.getLandmarks().size());
 	}	
 	
+	public void reset() {
+		scanMatcher.reset();
+	}
+
+	/**
+	 * Saves the state of the localization algorithms. The particle filter and
+	 * the landmarks are saved on their own.
+	 */
+	@Override
+	public SavedState saveState() {
+		return new SavedState(slam.saveState(), scanMatcher.saveState());
+	}
+
+	@Override
+	public void restoreState(SavedState state) {
+		slam.restoreState(state.slam);
+		scanMatcher.restoreState(state.sweep);
+	}
+
 	private float calculateOdometer(RobotState newState, RobotState oldState) {
 		return oldState.getOdometer() + (float)newState.getPosition().distance(oldState.getPosition());
 	}
@@ -91,7 +151,7 @@ public class RobotStateAggregator implements SampleListener {
 	private void calculateSpeed(Robot robot) {
 		float currentMeasuredSpeedLeftTrack = 0.0f, currentMeasuredSpeedRightTrack = 0.0f,
 				currentEstimatedSpeedLeftTrack = 0.0f, currentEstimatedSpeedRightTrack = 0.0f;
-		List<Robot> pastStates = CollectionUtil.takeLast(world.getStates(), 5);
+		List<Robot> pastStates = world.getLastStates(5);
 		if (pastStates.size() > 1) {
 			boolean isFirst = true;
 			Vector2D previousMeasuredPositionLeftTrack = new Vector2D(), previousMeasuredPositionRightTrack = new Vector2D(),
@@ -127,5 +187,22 @@ public class RobotStateAggregator implements SampleListener {
 		robot.getEstimatedState().setSpeedLeftTrack(currentEstimatedSpeedLeftTrack);
 		robot.getEstimatedState().setSpeedRightTrack(currentEstimatedSpeedRightTrack);		
 	}
-		
+
+	public static final class SavedState {
+		private final SlamManager.SavedState slam;
+		private final SweepAssembler.SavedState sweep;
+
+		private SavedState(SlamManager.SavedState slam, SweepAssembler.SavedState sweep) {
+			this.slam = slam;
+			this.sweep = sweep;
+		}
+		public void write(CheckpointOutput output) throws IOException {
+			slam.write(output);
+			sweep.write(output);
+		}
+
+		public static SavedState read(CheckpointInput input) throws IOException {
+			return new SavedState(SlamManager.SavedState.read(input), SweepAssembler.SavedState.read(input));
+		}
+	}
 }
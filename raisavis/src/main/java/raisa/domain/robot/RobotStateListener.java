@@ -1,7 +1,15 @@
 package raisa.domain.robot;
 
+import java.util.List;
+
 public interface RobotStateListener {
 
 	public void robotStateChanged(Robot newRobotState);
+
+	/**
+	 * Called when the whole state history is replaced, such as when a replay
+	 * seeks to another position.
+	 */
+	public void robotStatesReplaced(List<Robot> states);
 	
 }
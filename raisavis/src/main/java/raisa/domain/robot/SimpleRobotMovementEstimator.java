@@ -1,16 +1,18 @@
 package raisa.domain.robot;
 
+import org.apache.commons.math3.random.RandomGenerator;
 import raisa.config.VisualizerConfig;
 import raisa.domain.samples.Sample;
-import raisa.util.RandomUtil;
 import raisa.util.Vector2D;
 
 public class SimpleRobotMovementEstimator implements RobotMovementEstimator {
 
 	private boolean usingParticleFilter;
+	private final RandomGenerator random;
 	
-	public SimpleRobotMovementEstimator(boolean usingParticleFilter) {
+	public SimpleRobotMovementEstimator(boolean usingParticleFilter, RandomGenerator random) {
 		this.usingParticleFilter = usingParticleFilter;
+		this.random = random;
 	}
 	
 	@Override
@@ -43,13 +45,13 @@ public class SimpleRobotMovementEstimator implements RobotMovementEstimator {
 		// add noise	
 		if (usingParticleFilter) {
 			float noiseMagnitude = 5.0f;
-			float a = (float)(RandomUtil.random() * Math.PI * 2.0f);
-			float r = (float)RandomUtil.random() * noiseMagnitude;
+			float a = (float)(random.nextDouble() * Math.PI * 2.0f);
+			float r = (float)random.nextDouble() * noiseMagnitude;
 			positionLeftTrack.x += (float)Math.cos(a) * r;
 			positionLeftTrack.y += (float)Math.sin(a) * r;
 			positionRightTrack.x += (float)Math.cos(a) * r;
 			positionRightTrack.y += (float)Math.sin(a) * r;
-			h += (float)((RandomUtil.random() * 8.0f - 4.0f) / 180.0f * Math.PI);
+			h += (float)((random.nextDouble() * 8.0f - 4.0f) / 180.0f * Math.PI);
 		}
 		robot.setHeading(h);
 
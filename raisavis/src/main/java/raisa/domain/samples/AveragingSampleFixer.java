@@ -1,11 +1,15 @@
 package raisa.domain.samples;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import raisa.domain.Restorable;
+import raisa.domain.checkpoint.CheckpointInput;
+import raisa.domain.checkpoint.CheckpointOutput;
 import raisa.util.CollectionUtil;
 
-public class AveragingSampleFixer implements SampleFixer {
+public class AveragingSampleFixer implements SampleFixer, Restorable<AveragingSampleFixer.SavedState> {
 	private float lastKnownDirection;
 	private List<Sample> lastSamples = new ArrayList<Sample>();
 	private int windowLength;
@@ -21,6 +25,17 @@ public class AveragingSampleFixer implements SampleFixer {
 		lastSamples = new ArrayList<Sample>();
 	}
 	
+	@Override
+	public SavedState saveState() {
+		return new SavedState(new ArrayList<Sample>(lastSamples), lastKnownDirection);
+	}
+
+	@Override
+	public void restoreState(SavedState state) {
+		lastSamples = new ArrayList<Sample>(state.lastSamples);
+		lastKnownDirection = state.lastKnownDirection;
+	}
+
 	@Override
 	public Sample fix(Sample sample) {
 		Sample fixedSample = new Sample(sample);
@@ -83,4 +98,23 @@ public class AveragingSampleFixer implements SampleFixer {
 		}
 		return difference;
 	}
+
+	public static final class SavedState {
+		private final List<Sample> lastSamples;
+		private final float lastKnownDirection;
+
+		private SavedState(List<Sample> lastSamples, float lastKnownDirection) {
+			this.lastSamples = lastSamples;
+			this.lastKnownDirection = lastKnownDirection;
+		}
+
+		public void write(CheckpointOutput output) throws IOException {
+			output.writeSamples(lastSamples);
+			output.writeFloat(lastKnownDirection);
+		}
+
+		public static SavedState read(CheckpointInput input) throws IOException {
+			return new SavedState(input.readSamples(), input.readFloat());
+		}
+	}
 }
@@ -1,7 +1,5 @@
 package raisa.domain.samples;
 
-import java.awt.image.BufferedImage;
-
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import raisa.util.Vector3D;
@@ -9,6 +7,7 @@ import raisa.util.Vector3D;
 
 public class Sample {
 	private String sampleString;
+	private SampleStringSource sampleStringSource;
 	private float infrared1Angle;
 	private float infrared1Distance;
 	private boolean infrared1MeasurementValid;
@@ -28,8 +27,9 @@ public class Sample {
 	private int rightTrackTicks;
 	private int soundIntensity;
 	private long timestampMillis;
+	/** System.nanoTime() when the sample arrived, 0 if not known */
+	private long receivedNanos;
 	private int messageNumber;
-	private BufferedImage image;
 	private byte[] imageBytes;
 	
 	public Sample() {
@@ -38,6 +38,7 @@ public class Sample {
 	
 	public Sample(Sample copy) {
 		this.sampleString = copy.sampleString;
+		this.sampleStringSource = copy.sampleStringSource;
 		this.infrared1Angle = copy.infrared1Angle;
 		this.infrared1Distance = copy.infrared1Distance;
 		this.infrared1MeasurementValid = copy.infrared1MeasurementValid;
@@ -57,17 +58,32 @@ public class Sample {
 		this.rightTrackTicks = copy.rightTrackTicks;
 		this.soundIntensity = copy.soundIntensity;
 		this.timestampMillis = copy.timestampMillis;
+		this.receivedNanos = copy.receivedNanos;
 		this.messageNumber = copy.messageNumber;
-		this.image = copy.image;
+		this.imageBytes = copy.imageBytes;
 	}
 	
 
-	public String getSampleString() {
+	/**
+	 * Text form of the sample. Created on first call for samples that were
+	 * not parsed from text.
+	 */
+	public synchronized String getSampleString() {
+		if (sampleString == null && sampleStringSource != null) {
+			sampleString = sampleStringSource.toSampleString();
+			sampleStringSource = null;
+		}
 		return sampleString;
 	}
 
-	public void setSampleString(String sampleString) {
+	public synchronized void setSampleString(String sampleString) {
 		this.sampleString = sampleString;
+		this.sampleStringSource = null;
+	}
+
+	public synchronized void setSampleStringSource(SampleStringSource sampleStringSource) {
+		this.sampleString = null;
+		this.sampleStringSource = sampleStringSource;
 	}
 
 	public boolean isUltrasound1MeasurementValid() {
@@ -190,6 +206,14 @@ public class Sample {
 		return timestampMillis;
 	}
 
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
+	public void setReceivedNanos(long receivedNanos) {
+		this.receivedNanos = receivedNanos;
+	}
+
 	public int getMessageNumber() {
 		return messageNumber;
 	}
@@ -246,14 +270,9 @@ public class Sample {
 		this.ultrasound2MeasurementValid = ultrasound2MeasurementValid;
 	}
 	
-	public void setImage(BufferedImage image) {
-		this.image = image;
-	}
-	
-	public BufferedImage getImage() {
-		return image;
-	}
-	
+	/**
+	 * @param imageBytes encoded camera frame, not changed afterwards
+	 */
 	public void setImageBytes(byte[] imageBytes) {
 		this.imageBytes = imageBytes;  
 	}
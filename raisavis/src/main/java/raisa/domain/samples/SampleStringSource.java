@@ -0,0 +1,8 @@
+package raisa.domain.samples;
+
+/**
+ * Creates the text form of a sample that was not parsed from text.
+ */
+public interface SampleStringSource {
+	String toSampleString();
+}
@@ -0,0 +1,230 @@
+package raisa.domain.scanmatching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.domain.robot.RobotState;
+import raisa.domain.samples.Sample;
+import raisa.util.NamedThreadFactory;
+import raisa.util.Vector2D;
+
+/**
+ * Multi-resolution correlative scan matcher. Each completed servo sweep is
+ * aligned against the user drawn occupancy map. Candidate translations are
+ * first scored against the low resolution max-map and only the promising ones
+ * are refined at full resolution (branch and bound). Rotations are evaluated
+ * in parallel.
+ */
+public class CorrelativeScanMatcher {
+	private static final Logger log = LoggerFactory.getLogger(CorrelativeScanMatcher.class);
+
+	private static final int COARSE_STEP = 4;
+	private static final int LINEAR_WINDOW_CELLS = 6;
+	private static final float ANGULAR_WINDOW = (float) Math.toRadians(8.0);
+	private static final float ANGULAR_STEP = (float) Math.toRadians(1.0);
+	private static final int MIN_POINTS = 20;
+	/** Minimum average likelihood of a scan point for the match to be accepted */
+	private static final float MIN_MATCH_SCORE = 0.3f;
+	/** Required improvement over the odometry pose before it is corrected */
+	private static final float MIN_IMPROVEMENT = 0.02f;
+
+	/** Shared by all matchers, simulated robots would otherwise each have a pool per core */
+	private static final ExecutorService matchExecutor = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("raisavis-CorrelativeScanMatcher", true));
+
+	private final WorldModel world;
+	private final SweepAssembler sweepAssembler = new SweepAssembler();
+
+	private Grid likelihoodGrid;
+	private int likelihoodVersion;
+	private LikelihoodField likelihoodField;
+
+	public CorrelativeScanMatcher(WorldModel world) {
+		this.world = world;
+	}
+
+	public void reset() {
+		sweepAssembler.reset();
+	}
+
+	/**
+	 * The likelihood field is derived from the map and is not saved.
+	 */
+	public SweepAssembler.SavedState saveState() {
+		return sweepAssembler.saveState();
+	}
+
+	public void restoreState(SweepAssembler.SavedState state) {
+		sweepAssembler.restoreState(state);
+	}
+
+	/**
+	 * Adds a sample measured at the given odometry based pose. Returns the
+	 * corrected pose if a sweep was completed and matched, otherwise the given pose.
+	 */
+	public RobotState update(RobotState estimatedState, Sample sample) {
+		Scan scan = sweepAssembler.addSample(sample, estimatedState);
+		if (scan == null || scan.size() < MIN_POINTS) {
+			return estimatedState;
+		}
+		Candidate best = match(scan, estimatedState);
+		if (best == null) {
+			return estimatedState;
+		}
+		Vector2D position = estimatedState.getPosition();
+		Vector2D correctedPosition = new Vector2D(position.x + best.dx * Grid.CELL_SIZE, position.y + best.dy * Grid.CELL_SIZE);
+		RobotState correctedState = new RobotState(correctedPosition, estimatedState.getHeading() + best.rotation);
+		correctedState.setDirectionLeftTrackForward(estimatedState.isDirectionLeftTrackForward());
+		correctedState.setDirectionRightTrackForward(estimatedState.isDirectionRightTrackForward());
+		log.debug("Scan matched with score {}, correction ({}, {}, {})", best.score, best.dx, best.dy, best.rotation);
+		return correctedState;
+	}
+
+	private Candidate match(final Scan scan, final RobotState state) {
+		final LikelihoodField field = getLikelihoodField();
+		float priorScore = new RotatedScan(scan, state, 0.0f).scoreFine(field, 0, 0);
+
+		List<Callable<Candidate>> tasks = new ArrayList<Callable<Candidate>>();
+		for (float rotation = -ANGULAR_WINDOW; rotation <= ANGULAR_WINDOW + 1e-6f; rotation += ANGULAR_STEP) {
+			final float taskRotation = rotation;
+			tasks.add(new Callable<Candidate>() {
+				@Override
+				public Candidate call() {
+					return new RotatedScan(scan, state, taskRotation).search(field);
+				}
+			});
+		}
+
+		Candidate best = null;
+		try {
+			for (Future<Candidate> result : matchExecutor.invokeAll(tasks)) {
+				Candidate candidate = result.get();
+				if (best == null || candidate.score > best.score) {
+					best = candidate;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			log.error("Scan matching failed", e);
+			return null;
+		}
+		if (best == null || best.score < MIN_MATCH_SCORE || best.score < priorScore + MIN_IMPROVEMENT) {
+			return null;
+		}
+		return best;
+	}
+
+	private synchronized LikelihoodField getLikelihoodField() {
+		Grid grid = world.getGrid();
+		if (likelihoodField == null || grid != likelihoodGrid || grid.getUserImageVersion() != likelihoodVersion) {
+			likelihoodVersion = grid.getUserImageVersion();
+			likelihoodGrid = grid;
+			likelihoodField = new LikelihoodField(grid, COARSE_STEP);
+		}
+		return likelihoodField;
+	}
+
+	/**
+	 * Scan points rotated around the robot and converted to grid cells, ready
+	 * to be scored at different translations.
+	 */
+	private static class RotatedScan {
+		private final float rotation;
+		private final int[] cellXs;
+		private final int[] cellYs;
+
+		public RotatedScan(Scan scan, RobotState state, float rotation) {
+			this.rotation = rotation;
+			Vector2D position = state.getPosition();
+			float cos = (float) Math.cos(state.getHeading() + rotation);
+			float sin = (float) Math.sin(state.getHeading() + rotation);
+			cellXs = new int[scan.size()];
+			cellYs = new int[scan.size()];
+			for (int i = 0; i < scan.size(); ++i) {
+				float x = position.x + cos * scan.getX(i) - sin * scan.getY(i);
+				float y = position.y + sin * scan.getX(i) + cos * scan.getY(i);
+				cellXs[i] = Grid.toCell(x);
+				cellYs[i] = Grid.toCell(y);
+			}
+		}
+
+		public Candidate search(LikelihoodField field) {
+			int step = field.getCoarseStep();
+			List<Candidate> coarseCandidates = new ArrayList<Candidate>();
+			for (int dy = -LINEAR_WINDOW_CELLS; dy <= LINEAR_WINDOW_CELLS; dy += step) {
+				for (int dx = -LINEAR_WINDOW_CELLS; dx <= LINEAR_WINDOW_CELLS; dx += step) {
+					coarseCandidates.add(new Candidate(dx, dy, rotation, scoreCoarse(field, dx, dy)));
+				}
+			}
+			Collections.sort(coarseCandidates);
+
+			Candidate best = new Candidate(0, 0, rotation, -1.0f);
+			for (Candidate coarseCandidate : coarseCandidates) {
+				if (coarseCandidate.score <= best.score) {
+					// the rest are bounded by an even lower score
+					break;
+				}
+				int maxY = Math.min(coarseCandidate.dy + step - 1, LINEAR_WINDOW_CELLS);
+				int maxX = Math.min(coarseCandidate.dx + step - 1, LINEAR_WINDOW_CELLS);
+				for (int dy = coarseCandidate.dy; dy <= maxY; ++dy) {
+					for (int dx = coarseCandidate.dx; dx <= maxX; ++dx) {
+						float score = scoreFine(field, dx, dy);
+						if (score > best.score) {
+							best = new Candidate(dx, dy, rotation, score);
+						}
+					}
+				}
+			}
+			return best;
+		}
+
+		public float scoreFine(LikelihoodField field, int dx, int dy) {
+			float sum = 0.0f;
+			for (int i = 0; i < cellXs.length; ++i) {
+				sum += field.getFine(cellXs[i] + dx, cellYs[i] + dy);
+			}
+			return sum / cellXs.length;
+		}
+
+		private float scoreCoarse(LikelihoodField field, int dx, int dy) {
+			float sum = 0.0f;
+			for (int i = 0; i < cellXs.length; ++i) {
+				sum += field.getCoarse(cellXs[i] + dx, cellYs[i] + dy);
+			}
+			return sum / cellXs.length;
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+		private final int dx;
+		private final int dy;
+		private final float rotation;
+		private final float score;
+
+		public Candidate(int dx, int dy, float rotation, float score) {
+			this.dx = dx;
+			this.dy = dy;
+			this.rotation = rotation;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			// highest score first
+			return Float.compare(other.score, score);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package raisa.domain.scanmatching;
+
+import raisa.domain.Grid;
+
+/**
+ * Likelihood of hitting an obstacle in each grid cell, blurred with a gaussian
+ * kernel, together with a low resolution max-map. Each max-map value is the
+ * maximum likelihood over the window of cells starting at that cell, so it is
+ * an upper bound for every translation inside a coarse search step.
+ */
+public class LikelihoodField {
+	private static final int KERNEL_RADIUS = 3;
+	private static final float KERNEL_SIGMA = 1.0f;
+
+	private final int size = Grid.GRID_SIZE;
+	private final int coarseStep;
+	private final float[] fine;
+	private final float[] coarse;
+
+	public LikelihoodField(Grid grid, int coarseStep) {
+		this.coarseStep = coarseStep;
+		this.fine = new float[size * size];
+		this.coarse = new float[size * size];
+		buildFine(grid);
+		buildCoarse();
+	}
+
+	public int getCoarseStep() {
+		return coarseStep;
+	}
+
+	public float getFine(int x, int y) {
+		if (x < 0 || y < 0 || x >= size || y >= size) {
+			return 0.0f;
+		}
+		return fine[y * size + x];
+	}
+
+	public float getCoarse(int x, int y) {
+		if (x < 0 || y < 0 || x >= size || y >= size) {
+			return 0.0f;
+		}
+		return coarse[y * size + x];
+	}
+
+	private void buildFine(Grid grid) {
+		float[] kernel = new float[(2 * KERNEL_RADIUS + 1) * (2 * KERNEL_RADIUS + 1)];
+		int k = 0;
+		for (int dy = -KERNEL_RADIUS; dy <= KERNEL_RADIUS; ++dy) {
+			for (int dx = -KERNEL_RADIUS; dx <= KERNEL_RADIUS; ++dx) {
+				kernel[k++] = (float) Math.exp(-(dx * dx + dy * dy) / (2.0f * KERNEL_SIGMA * KERNEL_SIGMA));
+			}
+		}
+		// the border is treated as blocked by the grid, skip it so that scans are not pulled outwards
+		for (int y = 1; y < size - 1; ++y) {
+			for (int x = 1; x < size - 1; ++x) {
+				if (!grid.isUserCellBlocked(x, y)) {
+					continue;
+				}
+				k = 0;
+				for (int dy = -KERNEL_RADIUS; dy <= KERNEL_RADIUS; ++dy) {
+					for (int dx = -KERNEL_RADIUS; dx <= KERNEL_RADIUS; ++dx, ++k) {
+						int nx = x + dx;
+						int ny = y + dy;
+						if (nx < 0 || ny < 0 || nx >= size || ny >= size) {
+							continue;
+						}
+						int index = ny * size + nx;
+						if (kernel[k] > fine[index]) {
+							fine[index] = kernel[k];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void buildCoarse() {
+		float[] rows = new float[size * size];
+		for (int y = 0; y < size; ++y) {
+			for (int x = 0; x < size; ++x) {
+				float max = 0.0f;
+				for (int i = 0; i < coarseStep && x + i < size; ++i) {
+					max = Math.max(max, fine[y * size + x + i]);
+				}
+				rows[y * size + x] = max;
+			}
+		}
+		for (int y = 0; y < size; ++y) {
+			for (int x = 0; x < size; ++x) {
+				float max = 0.0f;
+				for (int i = 0; i < coarseStep && y + i < size; ++i) {
+					max = Math.max(max, rows[(y + i) * size + x]);
+				}
+				coarse[y * size + x] = max;
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package raisa.domain.scanmatching;
+
+/**
+ * Range points of one servo sweep in the local frame of the robot at the end
+ * of the sweep. The robot is at the origin heading towards negative y.
+ */
+public class Scan {
+	private final float[] xs;
+	private final float[] ys;
+
+	public Scan(float[] xs, float[] ys) {
+		this.xs = xs;
+		this.ys = ys;
+	}
+
+	public int size() {
+		return xs.length;
+	}
+
+	public float getX(int index) {
+		return xs[index];
+	}
+
+	public float getY(int index) {
+		return ys[index];
+	}
+}
@@ -0,0 +1,126 @@
+package raisa.domain.scanmatching;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import raisa.domain.Restorable;
+import raisa.domain.checkpoint.CheckpointInput;
+import raisa.domain.checkpoint.CheckpointOutput;
+import raisa.domain.robot.RobotState;
+import raisa.domain.samples.Sample;
+import raisa.util.Vector2D;
+
+/**
+ * Collects infrared range points until the servo turns around and the sweep
+ * is complete. Points are stored in world coordinates using the pose at the
+ * time of each sample, so that robot movement during the sweep is accounted for.
+ */
+public class SweepAssembler implements Restorable<SweepAssembler.SavedState> {
+	private static final int MAX_SAMPLES_PER_SWEEP = 400;
+
+	private List<Vector2D> points = new ArrayList<Vector2D>();
+	private int samplesInSweep = 0;
+	private float lastAngle = Float.NaN;
+	private float lastDirection = 0.0f;
+
+	public void reset() {
+		points = new ArrayList<Vector2D>();
+		samplesInSweep = 0;
+		lastAngle = Float.NaN;
+		lastDirection = 0.0f;
+	}
+
+	@Override
+	public SavedState saveState() {
+		return new SavedState(new ArrayList<Vector2D>(points), samplesInSweep, lastAngle, lastDirection);
+	}
+
+	@Override
+	public void restoreState(SavedState state) {
+		points = new ArrayList<Vector2D>(state.points);
+		samplesInSweep = state.samplesInSweep;
+		lastAngle = state.lastAngle;
+		lastDirection = state.lastDirection;
+	}
+
+	/**
+	 * Adds a sample measured at the given pose. Returns the completed sweep in the
+	 * local frame of the given pose when the servo changed direction, otherwise null.
+	 */
+	public Scan addSample(Sample sample, RobotState state) {
+		boolean sweepCompleted = isTurningAround(sample.getInfrared1Angle());
+		Scan scan = null;
+		if (sweepCompleted || samplesInSweep >= MAX_SAMPLES_PER_SWEEP) {
+			scan = toLocalScan(state);
+			points = new ArrayList<Vector2D>();
+			samplesInSweep = 0;
+		}
+		Vector2D position = state.getPosition();
+		float heading = state.getHeading();
+		if (sample.isInfrared1MeasurementValid()) {
+			points.add(toWorld(position, heading, sample.getInfrared1Angle(), sample.getInfrared1Distance()));
+		}
+		if (sample.isInfrared2MeasurementValid()) {
+			points.add(toWorld(position, heading, sample.getInfrared2Angle(), sample.getInfrared2Distance()));
+		}
+		++samplesInSweep;
+		return scan;
+	}
+
+	private boolean isTurningAround(float angle) {
+		boolean turning = false;
+		if (!Float.isNaN(lastAngle) && angle != lastAngle) {
+			float direction = Math.signum(angle - lastAngle);
+			turning = lastDirection != 0.0f && direction != lastDirection;
+			lastDirection = direction;
+		}
+		lastAngle = angle;
+		return turning;
+	}
+
+	private Vector2D toWorld(Vector2D position, float heading, float angle, float distance) {
+		return new Vector2D(
+				(float) (position.x + Math.sin(heading + angle) * distance),
+				(float) (position.y - Math.cos(heading + angle) * distance));
+	}
+
+	private Scan toLocalScan(RobotState state) {
+		Vector2D position = state.getPosition();
+		float cos = (float) Math.cos(state.getHeading());
+		float sin = (float) Math.sin(state.getHeading());
+		float[] xs = new float[points.size()];
+		float[] ys = new float[points.size()];
+		for (int i = 0; i < points.size(); ++i) {
+			float dx = points.get(i).x - position.x;
+			float dy = points.get(i).y - position.y;
+			xs[i] = cos * dx + sin * dy;
+			ys[i] = -sin * dx + cos * dy;
+		}
+		return new Scan(xs, ys);
+	}
+
+	public static final class SavedState {
+		private final List<Vector2D> points;
+		private final int samplesInSweep;
+		private final float lastAngle;
+		private final float lastDirection;
+
+		private SavedState(List<Vector2D> points, int samplesInSweep, float lastAngle, float lastDirection) {
+			this.points = points;
+			this.samplesInSweep = samplesInSweep;
+			this.lastAngle = lastAngle;
+			this.lastDirection = lastDirection;
+		}
+		public void write(CheckpointOutput output) throws IOException {
+			output.writePoints(points);
+			output.writeInt(samplesInSweep);
+			output.writeFloat(lastAngle);
+			output.writeFloat(lastDirection);
+		}
+
+		public static SavedState read(CheckpointInput input) throws IOException {
+			return new SavedState(input.readPoints(), input.readInt(), input.readFloat(), input.readFloat());
+		}
+	}
+}
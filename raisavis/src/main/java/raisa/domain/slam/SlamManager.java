@@ -1,6 +1,9 @@
 package raisa.domain.slam;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
@@ -11,9 +14,18 @@ import org.apache.commons.math3.linear.LUDecomposition;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.random.RandomGenerator;
 
+import raisa.domain.Restorable;
+import raisa.domain.checkpoint.CheckpointInput;
+import raisa.domain.checkpoint.CheckpointOutput;
 import raisa.domain.landmarks.Landmark;
 import raisa.domain.robot.RobotState;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+import raisa.metrics.PipelineEvent;
+import raisa.metrics.PipelineEventEnum;
+import raisa.metrics.PipelineEvents;
 import raisa.util.RandomUtil;
 import raisa.util.Vector2D;
 
@@ -21,7 +33,9 @@ import raisa.util.Vector2D;
  * Implementation based on "Probabilistic Robotics".
  * Not working yet.
  */
-public class SlamManager {
+public class SlamManager implements Restorable<SlamManager.SavedState> {
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private static final Histogram updateTime = metrics.histogram("pipeline.slam");
 
 	private RobotState previousState;
 	private RealMatrix I2, I3, sigma;
@@ -29,22 +43,37 @@ public class SlamManager {
 	private RealVector X;
 	private int slamIdSeq = 0;
 	
-	public SlamManager() {
+	public SlamManager(RandomGenerator random) {
 		X = new ArrayRealVector(new double[] { 0.0d, 0.0d, -Math.PI / 2.0d });
 		I2 = new Array2DRowRealMatrix(new double[][] { { 1.0d, 0.0d }, { 0.0d, 1.0d }});		
 		I3 = new Array2DRowRealMatrix(new double[][] { { 1.0d, 0.0d, 0.0d }, { 0.0d, 1.0d, 0.0d }, { 0.0d, 0.0d, 1.0d } });		
 		sigma = new Array2DRowRealMatrix(new double[][] { { 1.0d, 0.0d, 0.0d }, { 0.0d, 1.0d, 0.0d }, { 0.0d, 0.0d, 1.0d } });		
-		odometryNoise = RandomUtil.normalDistribution(0.0d, 0.1d);
-		headingNoise = RandomUtil.normalDistribution(0.0d, 0.05d);
+		odometryNoise = RandomUtil.normalDistribution(random, 0.0d, 0.1d);
+		headingNoise = RandomUtil.normalDistribution(random, 0.0d, 0.05d);
 //		sensorRangeNoise = RandomUtil.normalDistribution(0.0d, 1.0d);
 //		sensorDirectionNoise = RandomUtil.normalDistribution(0.0d, 0.3d);
 
 		previousState = new RobotState(new Vector2D(0.0f, 0.0f), 0.0f);
 	}
 	
+	@Override
+	public synchronized SavedState saveState() {
+		return new SavedState(previousState, sigma.copy(), X.copy(), slamIdSeq);
+	}
+
+	@Override
+	public synchronized void restoreState(SavedState state) {
+		previousState = state.previousState;
+		sigma = state.sigma.copy();
+		X = state.X.copy();
+		slamIdSeq = state.slamIdSeq;
+	}
+
 	public synchronized RobotState update(
 			RobotState estimatedState,
 			List<Landmark> landmarks) {
+		long startNanos = metrics.startTimer();
+		PipelineEvent event = PipelineEvents.begin(PipelineEventEnum.SLAM_UPDATE);
 		
 		System.out.println("--------------------------------------------------------");
 		System.out.println("------------------ SLAM EXECUTING ----------------------");
@@ -190,6 +219,8 @@ public class SlamManager {
 		
 		previousState = new RobotState(new Vector2D((float)X.getEntry(0), (float)X.getEntry(1)), (float)this.polarAngleToHeading(X.getEntry(2)));	
 
+		event.commit(landmarks.size());
+		updateTime.recordSince(startNanos);
 		return previousState;
 	}
 	
@@ -253,7 +284,7 @@ public class SlamManager {
 	}	
 	
 	public static void main(String[] arg) {
-		SlamManager test = new SlamManager();
+		SlamManager test = new SlamManager(RandomUtil.newRandomGenerator());
 		System.out.println(test.calculateDifferenceBetweenAngles(0.1d, 2.0d));
 		System.out.println(test.calculateDifferenceBetweenAngles(0.1d, 5.0d));
 		System.out.println(test.calculateDifferenceBetweenAngles(0.1d, 3.0d));
@@ -264,4 +295,52 @@ public class SlamManager {
 		
 	}
 	
+
+	public static final class SavedState {
+		private final RobotState previousState;
+		private final RealMatrix sigma;
+		private final RealVector X;
+		private final int slamIdSeq;
+
+		private SavedState(RobotState previousState, RealMatrix sigma, RealVector X, int slamIdSeq) {
+			this.previousState = previousState;
+			this.sigma = sigma;
+			this.X = X;
+			this.slamIdSeq = slamIdSeq;
+		}
+
+		/**
+		 * The covariance is written row by row.
+		 */
+		public void write(CheckpointOutput output) throws IOException {
+			output.writeRobotStates(Collections.singletonList(previousState));
+			int rows = sigma.getRowDimension();
+			int columns = sigma.getColumnDimension();
+			double[] covariance = new double[rows * columns];
+			for (int row = 0; row < rows; ++row) {
+				System.arraycopy(sigma.getRow(row), 0, covariance, row * columns, columns);
+			}
+			output.writeInt(rows);
+			output.writeInt(columns);
+			output.writeDoubles(covariance);
+			output.writeDoubles(X.toArray());
+			output.writeInt(slamIdSeq);
+		}
+
+		public static SavedState read(CheckpointInput input) throws IOException {
+			List<RobotState> previousStates = input.readRobotStates();
+			int rows = input.readInt();
+			int columns = input.readInt();
+			double[] covariance = input.readDoubles();
+			if (previousStates.size() != 1 || rows <= 0 || columns <= 0 || covariance.length != rows * columns) {
+				throw new IOException("Corrupted checkpoint, SLAM state does not match");
+			}
+			RealMatrix sigma = new Array2DRowRealMatrix(rows, columns);
+			for (int row = 0; row < rows; ++row) {
+				sigma.setRow(row, Arrays.copyOfRange(covariance, row * columns, (row + 1) * columns));
+			}
+			RealVector X = new ArrayRealVector(input.readDoubles());
+			return new SavedState(previousStates.get(0), sigma, X, input.readInt());
+		}
+	}
 }
@@ -0,0 +1,217 @@
+package raisa.domain.vectormap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Tree of axis aligned boxes over the primitives, so a query only tests the
+ * primitives whose boxes it reaches. Nodes are kept in flat arrays, the two
+ * children of a node are stored next to each other.
+ */
+class BoundingVolumeHierarchy {
+	private static final int MAX_LEAF_SIZE = 4;
+	private static final int MAX_DEPTH = 64;
+
+	private final VectorPrimitive[] primitives;
+	private final float[] minX;
+	private final float[] minY;
+	private final float[] maxX;
+	private final float[] maxY;
+	/** Index of the first child of an inner node */
+	private final int[] firstChild;
+	/** Index of the first primitive of a leaf */
+	private final int[] firstPrimitive;
+	/** Number of primitives of a leaf, zero for inner nodes */
+	private final int[] primitiveCount;
+	private int nodeCount = 0;
+
+	public BoundingVolumeHierarchy(VectorPrimitive[] primitives) {
+		this.primitives = primitives.clone();
+		int maxNodes = Math.max(1, 2 * primitives.length);
+		minX = new float[maxNodes];
+		minY = new float[maxNodes];
+		maxX = new float[maxNodes];
+		maxY = new float[maxNodes];
+		firstChild = new int[maxNodes];
+		firstPrimitive = new int[maxNodes];
+		primitiveCount = new int[maxNodes];
+		nodeCount = 1;
+		build(0, 0, this.primitives.length, 0);
+	}
+
+	private void build(int node, int from, int to, int depth) {
+		float nodeMinX = Float.POSITIVE_INFINITY;
+		float nodeMinY = Float.POSITIVE_INFINITY;
+		float nodeMaxX = Float.NEGATIVE_INFINITY;
+		float nodeMaxY = Float.NEGATIVE_INFINITY;
+		float centerMinX = Float.POSITIVE_INFINITY;
+		float centerMinY = Float.POSITIVE_INFINITY;
+		float centerMaxX = Float.NEGATIVE_INFINITY;
+		float centerMaxY = Float.NEGATIVE_INFINITY;
+		for (int i = from; i < to; ++i) {
+			VectorPrimitive primitive = primitives[i];
+			nodeMinX = Math.min(nodeMinX, primitive.getMinX());
+			nodeMinY = Math.min(nodeMinY, primitive.getMinY());
+			nodeMaxX = Math.max(nodeMaxX, primitive.getMaxX());
+			nodeMaxY = Math.max(nodeMaxY, primitive.getMaxY());
+			centerMinX = Math.min(centerMinX, centerX(primitive));
+			centerMinY = Math.min(centerMinY, centerY(primitive));
+			centerMaxX = Math.max(centerMaxX, centerX(primitive));
+			centerMaxY = Math.max(centerMaxY, centerY(primitive));
+		}
+		minX[node] = nodeMinX;
+		minY[node] = nodeMinY;
+		maxX[node] = nodeMaxX;
+		maxY[node] = nodeMaxY;
+		if (to - from <= MAX_LEAF_SIZE || depth >= MAX_DEPTH - 2) {
+			firstPrimitive[node] = from;
+			primitiveCount[node] = to - from;
+			return;
+		}
+		// split at the median along the axis the primitives are spread the most
+		Comparator<VectorPrimitive> comparator = centerMaxX - centerMinX >= centerMaxY - centerMinY ? X_ORDER : Y_ORDER;
+		Arrays.sort(primitives, from, to, comparator);
+		int middle = (from + to) / 2;
+		int child = nodeCount;
+		nodeCount += 2;
+		firstChild[node] = child;
+		build(child, from, middle, depth + 1);
+		build(child + 1, middle, to, depth + 1);
+	}
+
+	/**
+	 * Returns the distance to the first primitive along the ray, or
+	 * maxDistance if there is none closer.
+	 */
+	public float intersectRay(float x, float y, float dx, float dy, float maxDistance) {
+		if (primitives.length == 0) {
+			return maxDistance;
+		}
+		float nearest = maxDistance;
+		int[] stack = new int[MAX_DEPTH];
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			if (boxEntryDistance(node, x, y, dx, dy) >= nearest) {
+				continue;
+			}
+			if (primitiveCount[node] > 0) {
+				int last = firstPrimitive[node] + primitiveCount[node];
+				for (int i = firstPrimitive[node]; i < last; ++i) {
+					nearest = Math.min(nearest, primitives[i].intersectRay(x, y, dx, dy));
+				}
+			} else {
+				// the nearer child is popped first, which makes the farther one likely to be skipped
+				int child = firstChild[node];
+				if (boxEntryDistance(child, x, y, dx, dy) <= boxEntryDistance(child + 1, x, y, dx, dy)) {
+					stack[stackSize++] = child + 1;
+					stack[stackSize++] = child;
+				} else {
+					stack[stackSize++] = child;
+					stack[stackSize++] = child + 1;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Returns the distance to the nearest point of any primitive inside the
+	 * sector, or maxDistance if there is none closer.
+	 */
+	public float nearestInSector(float x, float y, float edge1X, float edge1Y, float edge2X, float edge2Y, float maxDistance) {
+		if (primitives.length == 0) {
+			return maxDistance;
+		}
+		float nearest = maxDistance;
+		int[] stack = new int[MAX_DEPTH];
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			if (boxDistance(node, x, y) >= nearest || isBoxOutsideSector(node, x, y, edge1X, edge1Y, edge2X, edge2Y)) {
+				continue;
+			}
+			if (primitiveCount[node] > 0) {
+				int last = firstPrimitive[node] + primitiveCount[node];
+				for (int i = firstPrimitive[node]; i < last; ++i) {
+					nearest = Math.min(nearest, primitives[i].nearestInSector(x, y, edge1X, edge1Y, edge2X, edge2Y));
+				}
+			} else {
+				int child = firstChild[node];
+				if (boxDistance(child, x, y) <= boxDistance(child + 1, x, y)) {
+					stack[stackSize++] = child + 1;
+					stack[stackSize++] = child;
+				} else {
+					stack[stackSize++] = child;
+					stack[stackSize++] = child + 1;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	private float boxEntryDistance(int node, float x, float y, float dx, float dy) {
+		float near = 0.0f;
+		float far = Float.POSITIVE_INFINITY;
+		if (dx != 0.0f) {
+			float t1 = (minX[node] - x) / dx;
+			float t2 = (maxX[node] - x) / dx;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		} else if (x < minX[node] || x > maxX[node]) {
+			return Float.POSITIVE_INFINITY;
+		}
+		if (dy != 0.0f) {
+			float t1 = (minY[node] - y) / dy;
+			float t2 = (maxY[node] - y) / dy;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		} else if (y < minY[node] || y > maxY[node]) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return near <= far ? near : Float.POSITIVE_INFINITY;
+	}
+
+	private float boxDistance(int node, float x, float y) {
+		float dx = Math.max(0.0f, Math.max(minX[node] - x, x - maxX[node]));
+		float dy = Math.max(0.0f, Math.max(minY[node] - y, y - maxY[node]));
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private boolean isBoxOutsideSector(int node, float x, float y, float edge1X, float edge1Y, float edge2X, float edge2Y) {
+		float left = minX[node] - x;
+		float right = maxX[node] - x;
+		float top = minY[node] - y;
+		float bottom = maxY[node] - y;
+		// the box is outside if all of its corners are on the outer side of either edge
+		boolean outside1 = edge1X * top - edge1Y * left < 0.0f && edge1X * top - edge1Y * right < 0.0f
+				&& edge1X * bottom - edge1Y * left < 0.0f && edge1X * bottom - edge1Y * right < 0.0f;
+		boolean outside2 = left * edge2Y - top * edge2X < 0.0f && right * edge2Y - top * edge2X < 0.0f
+				&& left * edge2Y - bottom * edge2X < 0.0f && right * edge2Y - bottom * edge2X < 0.0f;
+		return outside1 || outside2;
+	}
+
+	private static float centerX(VectorPrimitive primitive) {
+		return (primitive.getMinX() + primitive.getMaxX()) * 0.5f;
+	}
+
+	private static float centerY(VectorPrimitive primitive) {
+		return (primitive.getMinY() + primitive.getMaxY()) * 0.5f;
+	}
+
+	private static final Comparator<VectorPrimitive> X_ORDER = new Comparator<VectorPrimitive>() {
+		@Override
+		public int compare(VectorPrimitive a, VectorPrimitive b) {
+			return Float.compare(centerX(a), centerX(b));
+		}
+	};
+
+	private static final Comparator<VectorPrimitive> Y_ORDER = new Comparator<VectorPrimitive>() {
+		@Override
+		public int compare(VectorPrimitive a, VectorPrimitive b) {
+			return Float.compare(centerY(a), centerY(b));
+		}
+	};
+}
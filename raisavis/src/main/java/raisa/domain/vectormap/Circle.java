@@ -0,0 +1,75 @@
+package raisa.domain.vectormap;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+
+/**
+ * A solid round obstacle. Rays starting inside it hit it at once.
+ */
+public class Circle implements VectorPrimitive {
+	private final float centerX;
+	private final float centerY;
+	private final float radius;
+
+	public Circle(float centerX, float centerY, float radius) {
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.radius = radius;
+	}
+
+	@Override
+	public float getMinX() {
+		return centerX - radius;
+	}
+
+	@Override
+	public float getMinY() {
+		return centerY - radius;
+	}
+
+	@Override
+	public float getMaxX() {
+		return centerX + radius;
+	}
+
+	@Override
+	public float getMaxY() {
+		return centerY + radius;
+	}
+
+	@Override
+	public float intersectRay(float x, float y, float dx, float dy) {
+		float ox = x - centerX;
+		float oy = y - centerY;
+		float c = ox * ox + oy * oy - radius * radius;
+		if (c <= 0.0f) {
+			return 0.0f;
+		}
+		float b = ox * dx + oy * dy;
+		float discriminant = b * b - c;
+		if (b > 0.0f || discriminant < 0.0f) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return -b - (float) Math.sqrt(discriminant);
+	}
+
+	@Override
+	public float nearestInSector(float x, float y, float edge1X, float edge1Y, float edge2X, float edge2Y) {
+		float cx = centerX - x;
+		float cy = centerY - y;
+		float centerDistance = (float) Math.sqrt(cx * cx + cy * cy);
+		if (centerDistance <= radius) {
+			return 0.0f;
+		}
+		if (edge1X * cy - edge1Y * cx >= 0.0f && cx * edge2Y - cy * edge2X >= 0.0f) {
+			return centerDistance - radius;
+		}
+		// otherwise the nearest point inside the sector is on one of its edges
+		return Math.min(intersectRay(x, y, edge1X, edge1Y), intersectRay(x, y, edge2X, edge2Y));
+	}
+
+	@Override
+	public void draw(Graphics2D g) {
+		g.fill(new Ellipse2D.Float(centerX - radius, centerY - radius, 2.0f * radius, 2.0f * radius));
+	}
+}
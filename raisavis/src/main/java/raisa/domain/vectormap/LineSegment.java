@@ -0,0 +1,107 @@
+package raisa.domain.vectormap;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Line2D;
+
+/**
+ * A wall of zero thickness.
+ */
+public class LineSegment implements VectorPrimitive {
+	private final float x1;
+	private final float y1;
+	private final float x2;
+	private final float y2;
+
+	public LineSegment(float x1, float y1, float x2, float y2) {
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+	}
+
+	@Override
+	public float getMinX() {
+		return Math.min(x1, x2);
+	}
+
+	@Override
+	public float getMinY() {
+		return Math.min(y1, y2);
+	}
+
+	@Override
+	public float getMaxX() {
+		return Math.max(x1, x2);
+	}
+
+	@Override
+	public float getMaxY() {
+		return Math.max(y1, y2);
+	}
+
+	@Override
+	public float intersectRay(float x, float y, float dx, float dy) {
+		float ex = x2 - x1;
+		float ey = y2 - y1;
+		float denominator = dx * ey - dy * ex;
+		if (denominator == 0.0f) {
+			// parallel, grazing along the segment does not count as a hit
+			return Float.POSITIVE_INFINITY;
+		}
+		float px = x1 - x;
+		float py = y1 - y;
+		float t = (px * ey - py * ex) / denominator;
+		float s = (px * dy - py * dx) / denominator;
+		if (t < 0.0f || s < 0.0f || s > 1.0f) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return t;
+	}
+
+	@Override
+	public float nearestInSector(float x, float y, float edge1X, float edge1Y, float edge2X, float edge2Y) {
+		float px = x1 - x;
+		float py = y1 - y;
+		float ex = x2 - x1;
+		float ey = y2 - y1;
+		// clip the segment parameter to the part on the inner side of both edges
+		float low = 0.0f;
+		float high = 1.0f;
+		float a = edge1X * py - edge1Y * px;
+		float b = edge1X * ey - edge1Y * ex;
+		if (b == 0.0f) {
+			if (a < 0.0f) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else if (b > 0.0f) {
+			low = Math.max(low, -a / b);
+		} else {
+			high = Math.min(high, -a / b);
+		}
+		a = px * edge2Y - py * edge2X;
+		b = ex * edge2Y - ey * edge2X;
+		if (b == 0.0f) {
+			if (a < 0.0f) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else if (b > 0.0f) {
+			low = Math.max(low, -a / b);
+		} else {
+			high = Math.min(high, -a / b);
+		}
+		if (low > high) {
+			return Float.POSITIVE_INFINITY;
+		}
+		float lengthSquared = ex * ex + ey * ey;
+		float s = lengthSquared > 0.0f ? -(px * ex + py * ey) / lengthSquared : low;
+		s = Math.max(low, Math.min(high, s));
+		float nearestX = px + s * ex;
+		float nearestY = py + s * ey;
+		return (float) Math.sqrt(nearestX * nearestX + nearestY * nearestY);
+	}
+
+	@Override
+	public void draw(Graphics2D g) {
+		g.draw(new Line2D.Float(x1, y1, x2, y2));
+	}
+}
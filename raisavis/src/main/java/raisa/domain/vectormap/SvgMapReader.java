@@ -0,0 +1,378 @@
+package raisa.domain.vectormap;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the outlines of the shapes of an SVG drawing into a
+ * {@link VectorWorld}. Paths, lines, rectangles, circles, ellipses, polygons
+ * and polylines are supported, with their transforms. Curves are flattened
+ * to segments and elliptical arcs are replaced by a straight line.
+ * <p>
+ * The drawing is centered on the origin, where the robot starts.
+ */
+public class SvgMapReader {
+	/** World units per SVG unit, the bundled maps are drawn in centimeters */
+	public static final float DEFAULT_SCALE = 1.0f;
+	/** Maximum distance of the flattened segments from a curve, in world units */
+	private static final float FLATNESS = 0.5f;
+	private static final Pattern TRANSFORM_PATTERN = Pattern.compile("(matrix|translate|scale|rotate)\\s*\\(([^)]*)\\)");
+	private static final Pattern NUMBER_PATTERN = Pattern.compile("[-+]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][-+]?\\d+)?");
+
+	private final float scale;
+
+	public SvgMapReader() {
+		this(DEFAULT_SCALE);
+	}
+
+	public SvgMapReader(float scale) {
+		this.scale = scale;
+	}
+
+	public VectorWorld read(File file) throws IOException {
+		Element root;
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			root = builder.parse(file).getDocumentElement();
+		} catch (ParserConfigurationException e) {
+			throw new IOException("Failed to create XML parser", e);
+		} catch (SAXException e) {
+			throw new IOException("Invalid SVG file " + file, e);
+		}
+		List<Line2D.Float> segments = new ArrayList<Line2D.Float>();
+		readElement(root, AffineTransform.getScaleInstance(scale, scale), segments);
+		Rectangle2D bounds = null;
+		for (Line2D.Float segment : segments) {
+			if (bounds == null) {
+				bounds = segment.getBounds2D();
+			} else {
+				bounds.add(segment.getBounds2D());
+			}
+		}
+		VectorWorldBuilder builder = new VectorWorldBuilder();
+		if (bounds != null) {
+			float centerX = (float) bounds.getCenterX();
+			float centerY = (float) bounds.getCenterY();
+			for (Line2D.Float segment : segments) {
+				builder.addSegment(segment.x1 - centerX, segment.y1 - centerY, segment.x2 - centerX, segment.y2 - centerY);
+			}
+		}
+		return builder.build();
+	}
+
+	private void readElement(Element element, AffineTransform parentTransform, List<Line2D.Float> segments) {
+		String name = element.getLocalName() != null ? element.getLocalName() : element.getTagName();
+		if ("defs".equals(name) || "metadata".equals(name) || "namedview".equals(name)) {
+			return;
+		}
+		AffineTransform transform = parentTransform;
+		if (element.hasAttribute("transform")) {
+			transform = new AffineTransform(parentTransform);
+			transform.concatenate(parseTransform(element.getAttribute("transform")));
+		}
+		Shape shape = toShape(name, element);
+		if (shape != null) {
+			addOutline(transform.createTransformedShape(shape), segments);
+		}
+		NodeList children = element.getChildNodes();
+		for (int i = 0; i < children.getLength(); ++i) {
+			Node child = children.item(i);
+			if (child instanceof Element) {
+				readElement((Element) child, transform, segments);
+			}
+		}
+	}
+
+	private Shape toShape(String name, Element element) {
+		if ("path".equals(name)) {
+			return parsePath(element.getAttribute("d"));
+		} else if ("line".equals(name)) {
+			return new Line2D.Float(number(element, "x1"), number(element, "y1"), number(element, "x2"), number(element, "y2"));
+		} else if ("rect".equals(name)) {
+			return new Rectangle2D.Float(number(element, "x"), number(element, "y"), number(element, "width"), number(element, "height"));
+		} else if ("circle".equals(name)) {
+			float r = number(element, "r");
+			return new Ellipse2D.Float(number(element, "cx") - r, number(element, "cy") - r, 2.0f * r, 2.0f * r);
+		} else if ("ellipse".equals(name)) {
+			float rx = number(element, "rx");
+			float ry = number(element, "ry");
+			return new Ellipse2D.Float(number(element, "cx") - rx, number(element, "cy") - ry, 2.0f * rx, 2.0f * ry);
+		} else if ("polygon".equals(name) || "polyline".equals(name)) {
+			Path2D.Float path = new Path2D.Float();
+			List<String> tokens = tokenize(element.getAttribute("points"));
+			for (int i = 0; i + 1 < tokens.size(); i += 2) {
+				float x = Float.parseFloat(tokens.get(i));
+				float y = Float.parseFloat(tokens.get(i + 1));
+				if (i == 0) {
+					path.moveTo(x, y);
+				} else {
+					path.lineTo(x, y);
+				}
+			}
+			if ("polygon".equals(name) && tokens.size() >= 2) {
+				path.closePath();
+			}
+			return path;
+		}
+		return null;
+	}
+
+	private void addOutline(Shape shape, List<Line2D.Float> segments) {
+		float[] coordinates = new float[6];
+		float startX = 0.0f;
+		float startY = 0.0f;
+		float x = 0.0f;
+		float y = 0.0f;
+		for (PathIterator i = shape.getPathIterator(null, FLATNESS); !i.isDone(); i.next()) {
+			switch (i.currentSegment(coordinates)) {
+			case PathIterator.SEG_MOVETO:
+				startX = x = coordinates[0];
+				startY = y = coordinates[1];
+				break;
+			case PathIterator.SEG_LINETO:
+				if (x != coordinates[0] || y != coordinates[1]) {
+					segments.add(new Line2D.Float(x, y, coordinates[0], coordinates[1]));
+				}
+				x = coordinates[0];
+				y = coordinates[1];
+				break;
+			case PathIterator.SEG_CLOSE:
+				if (x != startX || y != startY) {
+					segments.add(new Line2D.Float(x, y, startX, startY));
+				}
+				x = startX;
+				y = startY;
+				break;
+			}
+		}
+	}
+
+	private Path2D parsePath(String data) {
+		Path2D.Float path = new Path2D.Float();
+		PathScanner scanner = new PathScanner(data);
+		char command = 'M';
+		float x = 0.0f;
+		float y = 0.0f;
+		float startX = 0.0f;
+		float startY = 0.0f;
+		// second control point of the previous curve, reflected by the smooth curve commands
+		float controlX = 0.0f;
+		float controlY = 0.0f;
+		char previousCommand = ' ';
+		while (scanner.hasNext()) {
+			if (scanner.isCommandNext()) {
+				command = scanner.nextCommand();
+				if (command == 'Z' || command == 'z') {
+					path.closePath();
+					x = startX;
+					y = startY;
+					previousCommand = command;
+				}
+				continue;
+			}
+			boolean relative = Character.isLowerCase(command);
+			float baseX = relative ? x : 0.0f;
+			float baseY = relative ? y : 0.0f;
+			switch (Character.toUpperCase(command)) {
+			case 'M':
+				x = baseX + scanner.nextNumber();
+				y = baseY + scanner.nextNumber();
+				path.moveTo(x, y);
+				startX = x;
+				startY = y;
+				// coordinates following a move are lines
+				command = relative ? 'l' : 'L';
+				break;
+			case 'L':
+				x = baseX + scanner.nextNumber();
+				y = baseY + scanner.nextNumber();
+				path.lineTo(x, y);
+				break;
+			case 'H':
+				x = baseX + scanner.nextNumber();
+				path.lineTo(x, y);
+				break;
+			case 'V':
+				y = baseY + scanner.nextNumber();
+				path.lineTo(x, y);
+				break;
+			case 'C': {
+				float x1 = baseX + scanner.nextNumber();
+				float y1 = baseY + scanner.nextNumber();
+				controlX = baseX + scanner.nextNumber();
+				controlY = baseY + scanner.nextNumber();
+				x = baseX + scanner.nextNumber();
+				y = baseY + scanner.nextNumber();
+				path.curveTo(x1, y1, controlX, controlY, x, y);
+				break;
+			}
+			case 'S': {
+				boolean smooth = "CcSs".indexOf(previousCommand) >= 0;
+				float x1 = smooth ? 2.0f * x - controlX : x;
+				float y1 = smooth ? 2.0f * y - controlY : y;
+				controlX = baseX + scanner.nextNumber();
+				controlY = baseY + scanner.nextNumber();
+				x = baseX + scanner.nextNumber();
+				y = baseY + scanner.nextNumber();
+				path.curveTo(x1, y1, controlX, controlY, x, y);
+				break;
+			}
+			case 'Q':
+				controlX = baseX + scanner.nextNumber();
+				controlY = baseY + scanner.nextNumber();
+				x = baseX + scanner.nextNumber();
+				y = baseY + scanner.nextNumber();
+				path.quadTo(controlX, controlY, x, y);
+				break;
+			case 'T': {
+				boolean smooth = "QqTt".indexOf(previousCommand) >= 0;
+				controlX = smooth ? 2.0f * x - controlX : x;
+				controlY = smooth ? 2.0f * y - controlY : y;
+				x = baseX + scanner.nextNumber();
+				y = baseY + scanner.nextNumber();
+				path.quadTo(controlX, controlY, x, y);
+				break;
+			}
+			case 'A':
+				// radii, rotation and flags are skipped, the arc becomes a line
+				scanner.nextNumber();
+				scanner.nextNumber();
+				scanner.nextNumber();
+				scanner.nextFlag();
+				scanner.nextFlag();
+				x = baseX + scanner.nextNumber();
+				y = baseY + scanner.nextNumber();
+				path.lineTo(x, y);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported path command " + command);
+			}
+			previousCommand = command;
+		}
+		return path;
+	}
+
+	private AffineTransform parseTransform(String value) {
+		AffineTransform transform = new AffineTransform();
+		Matcher matcher = TRANSFORM_PATTERN.matcher(value);
+		while (matcher.find()) {
+			List<String> tokens = tokenize(matcher.group(2));
+			double[] args = new double[tokens.size()];
+			for (int i = 0; i < args.length; ++i) {
+				args[i] = Double.parseDouble(tokens.get(i));
+			}
+			String type = matcher.group(1);
+			if ("matrix".equals(type) && args.length == 6) {
+				transform.concatenate(new AffineTransform(args));
+			} else if ("translate".equals(type) && args.length >= 1) {
+				transform.translate(args[0], args.length > 1 ? args[1] : 0.0);
+			} else if ("scale".equals(type) && args.length >= 1) {
+				transform.scale(args[0], args.length > 1 ? args[1] : args[0]);
+			} else if ("rotate".equals(type) && args.length >= 1) {
+				if (args.length >= 3) {
+					transform.rotate(Math.toRadians(args[0]), args[1], args[2]);
+				} else {
+					transform.rotate(Math.toRadians(args[0]));
+				}
+			}
+		}
+		return transform;
+	}
+
+	private static List<String> tokenize(String value) {
+		List<String> tokens = new ArrayList<String>();
+		Matcher matcher = NUMBER_PATTERN.matcher(value);
+		while (matcher.find()) {
+			tokens.add(matcher.group());
+		}
+		return tokens;
+	}
+
+	/**
+	 * Reads path data one value at a time. The flags of arcs are single
+	 * digits that may be written without separators, as in "a1,1 0 011,1",
+	 * so they cannot be split into tokens without knowing the command.
+	 */
+	private static class PathScanner {
+		private final String data;
+		private final Matcher numberMatcher;
+		private int position = 0;
+
+		public PathScanner(String data) {
+			this.data = data;
+			this.numberMatcher = NUMBER_PATTERN.matcher(data);
+		}
+
+		public boolean hasNext() {
+			skipSeparators();
+			return position < data.length();
+		}
+
+		public boolean isCommandNext() {
+			return hasNext() && Character.isLetter(data.charAt(position));
+		}
+
+		public char nextCommand() {
+			skipSeparators();
+			return data.charAt(position++);
+		}
+
+		public float nextNumber() {
+			skipSeparators();
+			numberMatcher.region(position, data.length());
+			if (!numberMatcher.lookingAt()) {
+				throw new IllegalArgumentException("Expected a number at " + position + " in path " + data);
+			}
+			position = numberMatcher.end();
+			return Float.parseFloat(numberMatcher.group());
+		}
+
+		public boolean nextFlag() {
+			skipSeparators();
+			char flag = position < data.length() ? data.charAt(position) : ' ';
+			if (flag != '0' && flag != '1') {
+				throw new IllegalArgumentException("Expected an arc flag at " + position + " in path " + data);
+			}
+			++position;
+			return flag == '1';
+		}
+
+		private void skipSeparators() {
+			while (position < data.length() && (Character.isWhitespace(data.charAt(position)) || data.charAt(position) == ',')) {
+				++position;
+			}
+		}
+	}
+
+	private static float number(Element element, String attribute) {
+		String value = element.getAttribute(attribute);
+		if (value.isEmpty()) {
+			return 0.0f;
+		}
+		List<String> tokens = tokenize(value);
+		return tokens.isEmpty() ? 0.0f : Float.parseFloat(tokens.get(0));
+	}
+}
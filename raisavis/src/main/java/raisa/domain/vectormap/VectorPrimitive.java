@@ -0,0 +1,33 @@
+package raisa.domain.vectormap;
+
+import java.awt.Graphics2D;
+
+/**
+ * Obstacle of a {@link VectorWorld}. Directions passed in are unit vectors
+ * and distances are in world units.
+ */
+public interface VectorPrimitive {
+	float getMinX();
+
+	float getMinY();
+
+	float getMaxX();
+
+	float getMaxY();
+
+	/**
+	 * Returns the distance along the ray to the first point of the
+	 * primitive, or infinity if the ray misses it.
+	 */
+	float intersectRay(float x, float y, float dx, float dy);
+
+	/**
+	 * Returns the distance to the nearest point of the primitive inside the
+	 * sector between the two edge directions, or infinity if there is none.
+	 * The second edge is clockwise from the first and the sector is narrower
+	 * than half a turn.
+	 */
+	float nearestInSector(float x, float y, float edge1X, float edge1Y, float edge2X, float edge2Y);
+
+	void draw(Graphics2D g);
+}
@@ -0,0 +1,91 @@
+package raisa.domain.vectormap;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import raisa.domain.Grid;
+import raisa.domain.RayCaster;
+import raisa.util.Vector2D;
+
+/**
+ * Map made of line segments and circles. Rays are intersected with the
+ * primitives exactly, going through a bounding volume hierarchy, so the
+ * distances do not depend on any cell size. Immutable and safe to share
+ * between simulated robots.
+ * <p>
+ * Unlike {@link Grid} there is nothing outside the map, rays that hit
+ * nothing return the maximum range.
+ */
+public class VectorWorld implements RayCaster {
+	/** Range of {@link #traceRay(Vector2D, float)}, same as tracing across the grid */
+	private static final float MAX_RANGE = Grid.GRID_SIZE * Grid.CELL_SIZE;
+
+	private final List<VectorPrimitive> primitives;
+	private final BoundingVolumeHierarchy hierarchy;
+
+	public VectorWorld(List<VectorPrimitive> primitives) {
+		VectorPrimitive[] array = primitives.toArray(new VectorPrimitive[primitives.size()]);
+		this.primitives = Arrays.asList(array);
+		this.hierarchy = new BoundingVolumeHierarchy(array);
+	}
+
+	public List<VectorPrimitive> getPrimitives() {
+		return primitives;
+	}
+
+	@Override
+	public float traceRay(Vector2D from, float angle) {
+		return hierarchy.intersectRay(from.x, from.y, (float) Math.sin(angle), (float) -Math.cos(angle), MAX_RANGE);
+	}
+
+	@Override
+	public void traceRays(Vector2D from, float[] angles, int count, float maxRange, float[] distances) {
+		for (int i = 0; i < count; ++i) {
+			distances[i] = hierarchy.intersectRay(from.x, from.y, (float) Math.sin(angles[i]), (float) -Math.cos(angles[i]), maxRange);
+		}
+	}
+
+	/**
+	 * Exact nearest distance within the sector.
+	 *
+	 * @param halfWidth less than a quarter turn
+	 */
+	@Override
+	public float traceCone(Vector2D from, float angle, float halfWidth, float maxRange) {
+		if (halfWidth <= 0.0f) {
+			return hierarchy.intersectRay(from.x, from.y, (float) Math.sin(angle), (float) -Math.cos(angle), maxRange);
+		}
+		if (halfWidth >= Math.PI * 0.5) {
+			throw new IllegalArgumentException("Cone half width must be less than 90 degrees, was " + Math.toDegrees(halfWidth));
+		}
+		float edge1 = angle - halfWidth;
+		float edge2 = angle + halfWidth;
+		return hierarchy.nearestInSector(from.x, from.y, (float) Math.sin(edge1), (float) -Math.cos(edge1), (float) Math.sin(edge2),
+				(float) -Math.cos(edge2), maxRange);
+	}
+
+	/**
+	 * Rasterizes the primitives into an image that can be set as the user
+	 * map of a {@link Grid}, for the estimators and the map view.
+	 */
+	public BufferedImage toMapImage() {
+		BufferedImage image = new BufferedImage(Grid.GRID_SIZE, Grid.GRID_SIZE, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.translate(Grid.GRID_SIZE * 0.5, Grid.GRID_SIZE * 0.5);
+			g.scale(1.0 / Grid.CELL_SIZE, 1.0 / Grid.CELL_SIZE);
+			g.setColor(Color.red);
+			g.setStroke(new BasicStroke(Grid.CELL_SIZE));
+			for (VectorPrimitive primitive : primitives) {
+				primitive.draw(g);
+			}
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+}
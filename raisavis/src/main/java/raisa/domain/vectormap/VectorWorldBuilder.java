@@ -0,0 +1,49 @@
+package raisa.domain.vectormap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the obstacles of a {@link VectorWorld}. Polygons and rectangles
+ * are added as their outlines.
+ */
+public class VectorWorldBuilder {
+	private final List<VectorPrimitive> primitives = new ArrayList<VectorPrimitive>();
+
+	public VectorWorldBuilder addPrimitive(VectorPrimitive primitive) {
+		primitives.add(primitive);
+		return this;
+	}
+
+	public VectorWorldBuilder addSegment(float x1, float y1, float x2, float y2) {
+		return addPrimitive(new LineSegment(x1, y1, x2, y2));
+	}
+
+	public VectorWorldBuilder addCircle(float centerX, float centerY, float radius) {
+		return addPrimitive(new Circle(centerX, centerY, radius));
+	}
+
+	/**
+	 * @param coordinates x and y of each corner in turn, the last corner is
+	 *            joined to the first
+	 */
+	public VectorWorldBuilder addPolygon(float... coordinates) {
+		if (coordinates.length < 6 || coordinates.length % 2 != 0) {
+			throw new IllegalArgumentException("Polygon needs at least three corners");
+		}
+		int corners = coordinates.length / 2;
+		for (int i = 0; i < corners; ++i) {
+			int next = (i + 1) % corners;
+			addSegment(coordinates[2 * i], coordinates[2 * i + 1], coordinates[2 * next], coordinates[2 * next + 1]);
+		}
+		return this;
+	}
+
+	public VectorWorldBuilder addRectangle(float x, float y, float width, float height) {
+		return addPolygon(x, y, x + width, y, x + width, y + height, x, y + height);
+	}
+
+	public VectorWorld build() {
+		return new VectorWorld(primitives);
+	}
+}
@@ -0,0 +1,35 @@
+package raisa.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count of events, only counted while metrics are enabled.
+ */
+public class Counter {
+	private final MetricsRegistry registry;
+	private final AtomicLong value = new AtomicLong();
+
+	Counter(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	public void increment() {
+		if (registry.isEnabled()) {
+			value.incrementAndGet();
+		}
+	}
+
+	public void add(long amount) {
+		if (registry.isEnabled()) {
+			value.addAndGet(amount);
+		}
+	}
+
+	public long get() {
+		return value.get();
+	}
+
+	public void reset() {
+		value.set(0);
+	}
+}
@@ -0,0 +1,8 @@
+package raisa.metrics;
+
+/**
+ * Destination of {@link PipelineEvent}s, such as a profiler.
+ */
+public interface EventSink {
+	PipelineEvent begin(PipelineEventEnum type);
+}
@@ -0,0 +1,179 @@
+package raisa.metrics;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends pipeline events to Java Flight Recorder as custom events named
+ * after {@link PipelineEventEnum#getEventName()}, in the "Raisa" category
+ * and without stack traces. JFR is only available on Java 11 and later, so
+ * the event types are made with jdk.jfr.EventFactory and the events are
+ * called through method handles bound once here. Values are only set when
+ * the recording wants the event.
+ */
+public class FlightRecorderSink implements EventSink {
+	private static final Logger log = LoggerFactory.getLogger(FlightRecorderSink.class);
+	private static final String CATEGORY = "Raisa";
+	/** JFR configuration used for the recordings started here */
+	private static final String CONFIGURATION = "profile";
+
+	/** New event of each type, bound to its factory */
+	private final Map<PipelineEventEnum, MethodHandle> newEvents = new EnumMap<PipelineEventEnum, MethodHandle>(PipelineEventEnum.class);
+	private final MethodHandle isEnabled;
+	private final MethodHandle begin;
+	private final MethodHandle end;
+	private final MethodHandle shouldCommit;
+	private final MethodHandle commit;
+	private final MethodHandle set;
+	private volatile boolean failed = false;
+
+	/**
+	 * Registers the event types.
+	 * 
+	 * @throws ReflectiveOperationException if JFR is not available
+	 */
+	public FlightRecorderSink() throws ReflectiveOperationException {
+		Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+		Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+		Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+		Class<?> eventClass = Class.forName("jdk.jfr.Event");
+		Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+		Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class);
+		Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		MethodHandle newEvent = lookup.unreflect(eventFactoryClass.getMethod("newEvent"));
+		for (PipelineEventEnum type : PipelineEventEnum.values()) {
+			List<Object> annotations = new ArrayList<Object>();
+			annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Name"), type.getEventName()));
+			annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Label"), type.getLabel()));
+			annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Category"), new String[] { CATEGORY }));
+			annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.StackTrace"), Boolean.FALSE));
+			List<Object> fields = new ArrayList<Object>();
+			for (String fieldName : type.getFieldNames()) {
+				fields.add(valueDescriptor.newInstance(long.class, fieldName));
+			}
+			Object factory = create.invoke(null, annotations, fields);
+			newEvents.put(type, newEvent.bindTo(factory).asType(MethodType.methodType(Object.class)));
+		}
+		isEnabled = eventHandle(lookup, eventClass, "isEnabled");
+		begin = eventHandle(lookup, eventClass, "begin");
+		end = eventHandle(lookup, eventClass, "end");
+		shouldCommit = eventHandle(lookup, eventClass, "shouldCommit");
+		commit = eventHandle(lookup, eventClass, "commit");
+		set = eventHandle(lookup, eventClass, "set", int.class, Object.class);
+	}
+
+	/**
+	 * Handle of an event method taking the event as an Object, so that it can
+	 * be called exactly without the JFR classes.
+	 */
+	private static MethodHandle eventHandle(MethodHandles.Lookup lookup, Class<?> eventClass, String name, Class<?>... parameterTypes)
+			throws ReflectiveOperationException {
+		MethodHandle handle = lookup.unreflect(eventClass.getMethod(name, parameterTypes));
+		return handle.asType(handle.type().changeParameterType(0, Object.class));
+	}
+
+	/**
+	 * Starts a recording that is written to the file when the application
+	 * exits, and sends the pipeline events to it.
+	 * 
+	 * @return false if JFR is not available
+	 */
+	public static boolean startRecording(File file) {
+		try {
+			FlightRecorderSink sink = new FlightRecorderSink();
+			Class<?> configurationClass = Class.forName("jdk.jfr.Configuration");
+			Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+			Object configuration = configurationClass.getMethod("getConfiguration", String.class).invoke(null, CONFIGURATION);
+			Object recording = recordingClass.getConstructor(configurationClass).newInstance(configuration);
+			recordingClass.getMethod("setName", String.class).invoke(recording, "raisavis");
+			recordingClass.getMethod("setDestination", Path.class).invoke(recording, file.toPath());
+			recordingClass.getMethod("setDumpOnExit", boolean.class).invoke(recording, true);
+			recordingClass.getMethod("start").invoke(recording);
+			PipelineEvents.setSink(sink);
+			log.info("Recording flight recorder events to {}", file);
+			return true;
+		} catch (ReflectiveOperationException e) {
+			log.warn("Flight recorder is not available, Java 11 or later is needed", e);
+			return false;
+		}
+	}
+
+	@Override
+	public PipelineEvent begin(PipelineEventEnum type) {
+		try {
+			Object event = (Object) newEvents.get(type).invokeExact();
+			if (!(boolean) isEnabled.invokeExact(event)) {
+				return PipelineEvents.NO_EVENT;
+			}
+			begin.invokeExact(event);
+			return new FlightRecorderEvent(event);
+		} catch (Throwable e) {
+			fail(e);
+			return PipelineEvents.NO_EVENT;
+		}
+	}
+
+	private void fail(Throwable e) {
+		if (!failed) {
+			failed = true;
+			log.error("Sending flight recorder event failed, events are no longer sent", e);
+			PipelineEvents.setSink(null);
+		}
+	}
+
+	private class FlightRecorderEvent implements PipelineEvent {
+		private final Object event;
+
+		FlightRecorderEvent(Object event) {
+			this.event = event;
+		}
+
+		@Override
+		public void commit() {
+			commitValues();
+		}
+
+		@Override
+		public void commit(long value1) {
+			commitValues(value1);
+		}
+
+		@Override
+		public void commit(long value1, long value2) {
+			commitValues(value1, value2);
+		}
+
+		@Override
+		public void commit(long value1, long value2, long value3) {
+			commitValues(value1, value2, value3);
+		}
+
+		private void commitValues(long... values) {
+			try {
+				end.invokeExact(event);
+				if (!(boolean) shouldCommit.invokeExact(event)) {
+					return;
+				}
+				for (int i = 0; i < values.length; ++i) {
+					set.invokeExact(event, i, (Object) values[i]);
+				}
+				commit.invokeExact(event);
+			} catch (Throwable e) {
+				fail(e);
+			}
+		}
+	}
+}
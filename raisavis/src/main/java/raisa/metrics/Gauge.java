@@ -0,0 +1,8 @@
+package raisa.metrics;
+
+/**
+ * Value read from its owner whenever the metrics are looked at.
+ */
+public interface Gauge {
+	long getValue();
+}
@@ -0,0 +1,117 @@
+package raisa.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values, usually durations in nanoseconds.
+ * Values are counted in buckets whose width grows with the value, 16 for
+ * each power of two, so percentiles are within about 6% of the recorded
+ * values whatever their magnitude. Recording only increments counters and
+ * is safe from any thread without locking.
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final MetricsRegistry registry;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	Histogram(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	public void record(long value) {
+		if (!registry.isEnabled()) {
+			return;
+		}
+		value = Math.max(0, value);
+		buckets.incrementAndGet(toBucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long previousMax = max.get();
+		while (value > previousMax && !max.compareAndSet(previousMax, value)) {
+			previousMax = max.get();
+		}
+	}
+
+	/**
+	 * Records the nanoseconds elapsed since a time got from
+	 * {@link MetricsRegistry#startTimer()}, nothing if metrics were disabled
+	 * then.
+	 */
+	public void recordSince(long startNanos) {
+		if (startNanos != 0) {
+			record(System.nanoTime() - startNanos);
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long currentCount = count.get();
+		return currentCount > 0 ? sum.get() / currentCount : 0;
+	}
+
+	/**
+	 * Returns the largest value of the bucket the percentile falls in, or 0
+	 * when nothing has been recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			cumulative += counts[i];
+			if (cumulative >= target) {
+				return Math.min(getBucketMax(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; ++i) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int toBucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	static long getBucketMax(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,116 @@
+package raisa.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only JMX view of the registry. Every counter and gauge is an
+ * attribute of its own name, and every histogram gives the attributes
+ * name.count, name.mean, name.p50, name.p99 and name.max. The attributes
+ * are listed again on every request, so metrics created later show up.
+ */
+class MetricsMBean implements DynamicMBean {
+	private static final String[] HISTOGRAM_ATTRIBUTES = { "count", "mean", "p50", "p99", "max" };
+	private static final String RESET_OPERATION = "reset";
+
+	private final MetricsRegistry registry;
+
+	MetricsMBean(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Counter counter = registry.getCounters().get(attribute);
+		if (counter != null) {
+			return counter.get();
+		}
+		Gauge gauge = registry.getGauges().get(attribute);
+		if (gauge != null) {
+			return gauge.getValue();
+		}
+		int separator = attribute.lastIndexOf('.');
+		if (separator > 0) {
+			Histogram histogram = registry.getHistograms().get(attribute.substring(0, separator));
+			if (histogram != null) {
+				String statistic = attribute.substring(separator + 1);
+				if ("count".equals(statistic)) {
+					return histogram.getCount();
+				} else if ("mean".equals(statistic)) {
+					return histogram.getMean();
+				} else if ("p50".equals(statistic)) {
+					return histogram.getPercentile(50.0);
+				} else if ("p99".equals(statistic)) {
+					return histogram.getPercentile(99.0);
+				} else if ("max".equals(statistic)) {
+					return histogram.getMax();
+				}
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException e) {
+				// left out as the interface expects
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		if (RESET_OPERATION.equals(actionName)) {
+			registry.reset();
+			return null;
+		}
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (String name : registry.getCounters().keySet()) {
+			attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), "Counter", true, false, false));
+		}
+		for (String name : registry.getGauges().keySet()) {
+			attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), "Gauge", true, false, false));
+		}
+		for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+			for (String statistic : HISTOGRAM_ATTRIBUTES) {
+				attributes.add(new MBeanAttributeInfo(entry.getKey() + "." + statistic, Long.class.getName(),
+						"Histogram " + statistic + ", nanoseconds for durations", true, false, false));
+			}
+		}
+		MBeanOperationInfo reset = new MBeanOperationInfo(RESET_OPERATION, "Zeroes the counters and histograms",
+				new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+		return new MBeanInfo(getClass().getName(), "Sample pipeline metrics", attributes.toArray(new MBeanAttributeInfo[attributes
+				.size()]), null, new MBeanOperationInfo[] { reset }, null);
+	}
+}
@@ -0,0 +1,143 @@
+package raisa.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Named counters, gauges and histograms of the sample pipeline. Metrics are
+ * created on first use and kept sorted by name. Until metrics are enabled
+ * recording costs one volatile read, and {@link #startTimer()} does not even
+ * read the clock.
+ */
+public class MetricsRegistry {
+	private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+	public static final String OBJECT_NAME = "raisa:type=Metrics";
+	private static final MetricsRegistry instance = new MetricsRegistry();
+
+	private volatile boolean enabled = false;
+	/** Those that have metrics turned on, see {@link #setEnabled(Object, boolean)} */
+	private final Set<Object> users = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+	private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+
+	public static MetricsRegistry getInstance() {
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns metrics on or off for good, as the command line does.
+	 */
+	public void setEnabled(boolean enabled) {
+		setEnabled(this, enabled);
+	}
+
+	/**
+	 * Turns metrics on for a user such as a display, and off again once no
+	 * user wants them any more.
+	 */
+	public synchronized void setEnabled(Object user, boolean enabled) {
+		if (enabled) {
+			users.add(user);
+		} else {
+			users.remove(user);
+		}
+		this.enabled = !users.isEmpty();
+	}
+
+	/**
+	 * @return the current time in nanoseconds for
+	 *         {@link Histogram#recordSince(long)}, or 0 if metrics are
+	 *         disabled
+	 */
+	public long startTimer() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	public Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			Counter newCounter = new Counter(this);
+			counter = counters.putIfAbsent(name, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+
+	public Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			Histogram newHistogram = new Histogram(this);
+			histogram = histograms.putIfAbsent(name, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Adds the gauge, replacing an earlier one of the same name.
+	 */
+	public void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	public void removeGauge(String name) {
+		gauges.remove(name);
+	}
+
+	public Map<String, Counter> getCounters() {
+		return Collections.unmodifiableMap(counters);
+	}
+
+	public Map<String, Gauge> getGauges() {
+		return Collections.unmodifiableMap(gauges);
+	}
+
+	public Map<String, Histogram> getHistograms() {
+		return Collections.unmodifiableMap(histograms);
+	}
+
+	public void reset() {
+		for (Counter counter : counters.values()) {
+			counter.reset();
+		}
+		for (Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Makes the metrics readable through JMX as {@link #OBJECT_NAME}.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(new MetricsMBean(this), objectName);
+			}
+		} catch (JMException e) {
+			log.warn("Could not register metrics to JMX", e);
+		}
+	}
+}
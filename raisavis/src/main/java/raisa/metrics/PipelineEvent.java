@@ -0,0 +1,16 @@
+package raisa.metrics;
+
+/**
+ * Event begun at the start of a stage and committed at its end with the
+ * values of the fields of its type, in the order of
+ * {@link PipelineEventEnum#getFieldNames()}. Missing values are left 0.
+ */
+public interface PipelineEvent {
+	void commit();
+
+	void commit(long value1);
+
+	void commit(long value1, long value2);
+
+	void commit(long value1, long value2, long value3);
+}
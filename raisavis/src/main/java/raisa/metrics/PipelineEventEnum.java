@@ -0,0 +1,39 @@
+package raisa.metrics;
+
+/**
+ * Stages of the sample pipeline recorded as profiling events, with the
+ * names of the long fields each event carries.
+ */
+public enum PipelineEventEnum {
+	SAMPLE_RECEIVED("raisa.SampleReceived", "Sample Received", "length"),
+	SAMPLE_PARSED("raisa.SampleParsed", "Sample Parsed", "messageNumber"),
+	SAMPLE_FIXED("raisa.SampleFixed", "Sample Fixed", "messageNumber"),
+	STATE_ESTIMATED("raisa.StateEstimated", "State Estimated", "messageNumber", "particleCount", "landmarkCount"),
+	LANDMARKS_RECALCULATED("raisa.LandmarksRecalculated", "Landmarks Recalculated", "landmarkCount", "dataPointCount"),
+	SLAM_UPDATE("raisa.SlamUpdate", "SLAM Update", "landmarkCount"),
+	CONTROL_MESSAGE_SENT("raisa.ControlMessageSent", "Control Message Sent", "messageId", "retryCount"),
+	/** Lasts from the first send of the message to its acknowledgement */
+	CONTROL_MESSAGE_ACKNOWLEDGED("raisa.ControlMessageAcknowledged", "Control Message Acknowledged", "messageId");
+
+	private final String eventName;
+	private final String label;
+	private final String[] fieldNames;
+
+	private PipelineEventEnum(String eventName, String label, String... fieldNames) {
+		this.eventName = eventName;
+		this.label = label;
+		this.fieldNames = fieldNames;
+	}
+
+	public String getEventName() {
+		return eventName;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public String[] getFieldNames() {
+		return fieldNames.clone();
+	}
+}
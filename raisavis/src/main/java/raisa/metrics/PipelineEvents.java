@@ -0,0 +1,43 @@
+package raisa.metrics;
+
+/**
+ * Where the stages of the sample pipeline send their events. Until a sink
+ * is set the events go nowhere, and beginning one returns a shared event
+ * whose commits do nothing.
+ */
+public class PipelineEvents {
+	static final PipelineEvent NO_EVENT = new PipelineEvent() {
+		@Override
+		public void commit() {
+		}
+
+		@Override
+		public void commit(long value1) {
+		}
+
+		@Override
+		public void commit(long value1, long value2) {
+		}
+
+		@Override
+		public void commit(long value1, long value2, long value3) {
+		}
+	};
+
+	private static volatile EventSink sink = null;
+
+	private PipelineEvents() {
+	}
+
+	public static PipelineEvent begin(PipelineEventEnum type) {
+		EventSink currentSink = sink;
+		return currentSink == null ? NO_EVENT : currentSink.begin(type);
+	}
+
+	/**
+	 * @param eventSink null to stop sending events
+	 */
+	public static void setSink(EventSink eventSink) {
+		sink = eventSink;
+	}
+}
@@ -0,0 +1,63 @@
+package raisa.session;
+
+/**
+ * Index entry of a block in a session archive.
+ */
+public class ArchiveBlock {
+	private final ArchiveStreamEnum stream;
+	private final long offset;
+	private final int compressedLength;
+	private final int length;
+	private final int recordCount;
+	private final long firstTimestamp;
+	private final long lastTimestamp;
+
+	public ArchiveBlock(ArchiveStreamEnum stream, long offset, int compressedLength, int length, int recordCount, long firstTimestamp,
+			long lastTimestamp) {
+		this.stream = stream;
+		this.offset = offset;
+		this.compressedLength = compressedLength;
+		this.length = length;
+		this.recordCount = recordCount;
+		this.firstTimestamp = firstTimestamp;
+		this.lastTimestamp = lastTimestamp;
+	}
+
+	public ArchiveStreamEnum getStream() {
+		return stream;
+	}
+
+	/**
+	 * Position of the compressed data in the archive file.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getCompressedLength() {
+		return compressedLength;
+	}
+
+	/**
+	 * Length of the data once decompressed.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	public long getFirstTimestamp() {
+		return firstTimestamp;
+	}
+
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	public boolean overlaps(long fromTimestamp, long toTimestamp) {
+		return lastTimestamp >= fromTimestamp && firstTimestamp <= toTimestamp;
+	}
+}
@@ -0,0 +1,22 @@
+package raisa.session;
+
+/**
+ * A file of the session directory stored in a session archive.
+ */
+public class ArchiveFile {
+	private final String name;
+	private final byte[] contents;
+
+	public ArchiveFile(String name, byte[] contents) {
+		this.name = name;
+		this.contents = contents;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public byte[] getContents() {
+		return contents;
+	}
+}
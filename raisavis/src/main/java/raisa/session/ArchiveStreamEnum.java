@@ -0,0 +1,32 @@
+package raisa.session;
+
+/**
+ * Kinds of blocks in a session archive. The id is stored in the file.
+ */
+public enum ArchiveStreamEnum {
+	/** Sample lines, camera frames of the lines in binary */
+	SENSOR(1),
+	/** Control messages as JSON lines */
+	CONTROL(2),
+	/** Any other file of the session directory, one per block */
+	FILE(3);
+
+	private final int id;
+
+	private ArchiveStreamEnum(int id) {
+		this.id = id;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public static ArchiveStreamEnum fromId(int id) {
+		for (ArchiveStreamEnum stream : values()) {
+			if (stream.id == id) {
+				return stream;
+			}
+		}
+		throw new IllegalArgumentException("Unknown archive stream " + id);
+	}
+}
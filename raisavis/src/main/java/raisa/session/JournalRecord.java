@@ -0,0 +1,17 @@
+package raisa.session;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entry queued to a {@link JournalWriter}. Both methods are called in the
+ * writer thread, first {@link #getMaxLength()} and then
+ * {@link #writeTo(ByteBuffer)}.
+ */
+public interface JournalRecord {
+	/**
+	 * Returns an upper bound for the number of bytes the record writes.
+	 */
+	int getMaxLength();
+
+	void writeTo(ByteBuffer buffer);
+}
@@ -0,0 +1,303 @@
+package raisa.session;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+import raisa.util.NamedThreadFactory;
+
+/**
+ * Appends records to a file in a thread of its own. Records are queued
+ * without locking and collected in a buffer, which is written to the file
+ * with a single call when it has grown large enough or its oldest record
+ * has waited long enough. When the queue is full new records are dropped
+ * and counted, so a slow disk never blocks the caller.
+ * <p>
+ * The file is rotated when it would grow over the maximum size, the later
+ * files get a running number after the prefix.
+ */
+public class JournalWriter implements Closeable {
+	private static final Logger log = LoggerFactory.getLogger(JournalWriter.class);
+	private static final Histogram commitTime = MetricsRegistry.getInstance().histogram("session.commit");
+	public static final int DEFAULT_QUEUE_CAPACITY = 16384;
+	public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 200;
+	public static final int DEFAULT_COMMIT_SIZE = 64 * 1024;
+	public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+	/** How long the writer sleeps when there is nothing to do */
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	private final File directory;
+	private final String prefix;
+	private final String extension;
+	private final int queueCapacity;
+	private final long commitIntervalNanos;
+	private final int commitSize;
+	private final long maxFileSize;
+
+	private final Queue<JournalRecord> queue = new ConcurrentLinkedQueue<JournalRecord>();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong appendedRecords = new AtomicLong();
+	private final AtomicLong droppedRecords = new AtomicLong();
+	/** Appends in progress, the writer waits for them when closing */
+	private final AtomicInteger activeAppends = new AtomicInteger();
+	private volatile long committedRecords = 0;
+	private volatile long writtenBytes = 0;
+	private volatile long commits = 0;
+	private volatile long totalCommitNanos = 0;
+	private volatile long maxCommitNanos = 0;
+	private volatile boolean flushRequested = false;
+	private volatile boolean closed = false;
+	private final Thread writerThread;
+
+	// used only by the writer thread
+	private final ByteBuffer buffer;
+	private FileChannel channel;
+	private long fileSize = 0;
+	private int fileNumber = 0;
+	private long pendingRecords = 0;
+	private long firstPendingNanos = 0;
+
+	public JournalWriter(File directory, String prefix, String extension) throws IOException {
+		this(directory, prefix, extension, DEFAULT_QUEUE_CAPACITY, DEFAULT_COMMIT_INTERVAL_MILLIS, DEFAULT_COMMIT_SIZE, DEFAULT_MAX_FILE_SIZE);
+	}
+
+	/**
+	 * @param extension of the files without the dot
+	 */
+	public JournalWriter(File directory, String prefix, String extension, int queueCapacity, long commitIntervalMillis, int commitSize,
+			long maxFileSize) throws IOException {
+		this.directory = directory;
+		this.prefix = prefix;
+		this.extension = extension;
+		this.queueCapacity = queueCapacity;
+		this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+		this.commitSize = commitSize;
+		this.maxFileSize = maxFileSize;
+		this.buffer = ByteBuffer.allocateDirect(commitSize);
+		openNextFile();
+		writerThread = new NamedThreadFactory("raisavis-JournalWriter-" + extension).newThread(new Runnable() {
+			@Override
+			public void run() {
+				writeRecords();
+			}
+		});
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Queues the record to be written.
+	 *
+	 * @return false if the record was dropped because the queue was full
+	 *         or the journal closed
+	 */
+	public boolean append(JournalRecord record) {
+		activeAppends.incrementAndGet();
+		try {
+			if (closed) {
+				return false;
+			}
+			if (queueDepth.incrementAndGet() > queueCapacity) {
+				queueDepth.decrementAndGet();
+				droppedRecords.incrementAndGet();
+				return false;
+			}
+			queue.offer(record);
+			appendedRecords.incrementAndGet();
+			return true;
+		} finally {
+			activeAppends.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Waits until the records appended so far have been written to the file.
+	 */
+	public void flush() {
+		long target = appendedRecords.get();
+		while (committedRecords < target && writerThread.isAlive()) {
+			flushRequested = true;
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+	}
+
+	/**
+	 * Writes the queued records and closes the file.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.info("Journal {}.{} closed, {} records and {} bytes in {} commits, {} dropped, average commit {} us", new Object[] { prefix,
+				extension, committedRecords, writtenBytes, commits, droppedRecords.get(), getAverageCommitMicros() });
+	}
+
+	private void writeRecords() {
+		try {
+			while (true) {
+				JournalRecord record = queue.poll();
+				if (record != null) {
+					queueDepth.decrementAndGet();
+					write(record);
+					continue;
+				}
+				if (buffer.position() > 0 && (flushRequested || closed || System.nanoTime() - firstPendingNanos >= commitIntervalNanos)) {
+					commit();
+				}
+				// appends that saw the journal open may still be queueing their records
+				if (closed && activeAppends.get() == 0 && queue.isEmpty()) {
+					break;
+				}
+				if (flushRequested && buffer.position() == 0) {
+					flushRequested = false;
+				}
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+			channel.force(false);
+		} catch (IOException e) {
+			log.error("Writing journal failed", e);
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.error("Closing journal failed", e);
+			}
+		}
+	}
+
+	private void write(JournalRecord record) throws IOException {
+		int maxLength = record.getMaxLength();
+		if (maxLength > buffer.remaining()) {
+			commit();
+		}
+		if (maxLength > buffer.capacity()) {
+			// too large to be batched, written on its own
+			ByteBuffer largeBuffer = ByteBuffer.allocate(maxLength);
+			record.writeTo(largeBuffer);
+			largeBuffer.flip();
+			++pendingRecords;
+			writeToChannel(largeBuffer);
+			return;
+		}
+		if (buffer.position() == 0) {
+			firstPendingNanos = System.nanoTime();
+		}
+		record.writeTo(buffer);
+		++pendingRecords;
+		if (buffer.position() >= commitSize) {
+			commit();
+		}
+	}
+
+	private void commit() throws IOException {
+		buffer.flip();
+		writeToChannel(buffer);
+		buffer.clear();
+	}
+
+	private void writeToChannel(ByteBuffer data) throws IOException {
+		int length = data.remaining();
+		if (length == 0) {
+			return;
+		}
+		if (fileSize > 0 && fileSize + length > maxFileSize) {
+			channel.close();
+			openNextFile();
+		}
+		long started = System.nanoTime();
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+		long elapsed = System.nanoTime() - started;
+		fileSize += length;
+		writtenBytes += length;
+		committedRecords += pendingRecords;
+		pendingRecords = 0;
+		++commits;
+		totalCommitNanos += elapsed;
+		maxCommitNanos = Math.max(maxCommitNanos, elapsed);
+		commitTime.record(elapsed);
+	}
+
+	private void openNextFile() throws IOException {
+		++fileNumber;
+		String name = fileNumber == 1 ? prefix + "." + extension : prefix + "-" + fileNumber + "." + extension;
+		channel = FileChannel.open(new File(directory, name).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		fileSize = 0;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	public long getAppendedRecords() {
+		return appendedRecords.get();
+	}
+
+	public long getCommittedRecords() {
+		return committedRecords;
+	}
+
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	public long getCommits() {
+		return commits;
+	}
+
+	public long getAverageCommitMicros() {
+		long count = commits;
+		return count > 0 ? TimeUnit.NANOSECONDS.toMicros(totalCommitNanos / count) : 0;
+	}
+
+	public long getMaxCommitMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxCommitNanos);
+	}
+
+	/**
+	 * Writes the characters of the string as ASCII bytes, others as '?'.
+	 */
+	public static void putAscii(ByteBuffer buffer, CharSequence text) {
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			buffer.put(c < 128 ? (byte) c : (byte) '?');
+		}
+	}
+
+	/**
+	 * Writes the decimal digits of a non-negative number without creating
+	 * a string.
+	 */
+	public static void putDecimal(ByteBuffer buffer, long value) {
+		if (value >= 10) {
+			putDecimal(buffer, value / 10);
+		}
+		buffer.put((byte) ('0' + value % 10));
+	}
+}
@@ -0,0 +1,42 @@
+package raisa.session;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import raisa.comms.TypedSensorListener;
+import raisa.domain.samples.Sample;
+
+/**
+ * Writes samples to a sensor file as they are, keeping their own timestamps.
+ * Unlike {@link SessionWriter} it writes in the calling thread, which suits
+ * simulations running faster than real time.
+ */
+public class SensorFileWriter implements TypedSensorListener, Closeable {
+	private final PrintWriter output;
+
+	public SensorFileWriter(File file) throws IOException {
+		output = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), US_ASCII));
+	}
+
+	@Override
+	public void sampleReceived(String sample) {
+		output.println(sample);
+	}
+
+	@Override
+	public void sampleReceived(Sample sample) {
+		output.println(sample.getSampleString());
+	}
+
+	@Override
+	public void close() {
+		output.close();
+	}
+}
@@ -0,0 +1,169 @@
+package raisa.session;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts between session directories written by {@link SessionWriter}
+ * and session archives.
+ * <p>
+ * Usage: SessionArchive import &lt;session directory&gt; &lt;archive&gt;
+ * or SessionArchive export &lt;archive&gt; &lt;directory&gt;
+ */
+public class SessionArchive {
+	private static final Logger log = LoggerFactory.getLogger(SessionArchive.class);
+	private static final String SENSOR_EXTENSION = "sensor";
+	private static final String CONTROL_EXTENSION = "control";
+
+	/**
+	 * Stores the stream files of the directory, rotated ones in order, and
+	 * all its other files in the archive.
+	 */
+	public static void importSession(File directory, File archive) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Not a directory " + directory);
+		}
+		List<File> sensorFiles = new ArrayList<File>();
+		List<File> controlFiles = new ArrayList<File>();
+		List<File> otherFiles = new ArrayList<File>();
+		for (File file : files) {
+			String extension = FilenameUtils.getExtension(file.getName());
+			if (!file.isFile()) {
+				continue;
+			} else if (SENSOR_EXTENSION.equals(extension)) {
+				sensorFiles.add(file);
+			} else if (CONTROL_EXTENSION.equals(extension)) {
+				controlFiles.add(file);
+			} else {
+				otherFiles.add(file);
+			}
+		}
+		Collections.sort(sensorFiles, ROTATION_ORDER);
+		Collections.sort(controlFiles, ROTATION_ORDER);
+		Collections.sort(otherFiles);
+		String prefix = sensorFiles.isEmpty() ? "data" : FilenameUtils.getBaseName(sensorFiles.get(0).getName());
+		try (SessionArchiveWriter writer = new SessionArchiveWriter(archive, prefix)) {
+			for (File file : sensorFiles) {
+				appendLines(file, ArchiveStreamEnum.SENSOR, writer);
+			}
+			for (File file : controlFiles) {
+				appendLines(file, ArchiveStreamEnum.CONTROL, writer);
+			}
+			for (File file : otherFiles) {
+				writer.addFile(file.getName(), FileUtils.readFileToByteArray(file));
+			}
+		}
+		log.info("Archived {} to {}, {} bytes", new Object[] { directory, archive, archive.length() });
+	}
+
+	/**
+	 * Writes the streams of the archive to a sensor and a control file and
+	 * the other files as they were. Blocks are written one at a time.
+	 */
+	public static void exportSession(File archive, File directory) throws IOException {
+		FileUtils.forceMkdir(directory);
+		try (SessionArchiveReader reader = new SessionArchiveReader(archive);
+				PrintWriter sensorWriter = new PrintWriter(new File(directory, reader.getPrefix() + "." + SENSOR_EXTENSION), US_ASCII.name());
+				PrintWriter controlWriter = new PrintWriter(new File(directory, reader.getPrefix() + "." + CONTROL_EXTENSION), US_ASCII.name())) {
+			for (ArchiveBlock block : reader.getBlocks()) {
+				switch (block.getStream()) {
+				case SENSOR:
+					writeLines(sensorWriter, reader.readLines(block));
+					break;
+				case CONTROL:
+					writeLines(controlWriter, reader.readLines(block));
+					break;
+				case FILE:
+					ArchiveFile file = reader.readFile(block);
+					FileUtils.writeByteArrayToFile(new File(directory, file.getName()), file.getContents());
+					break;
+				}
+			}
+			if (sensorWriter.checkError() || controlWriter.checkError()) {
+				throw new IOException("Writing the streams of " + archive + " failed");
+			}
+		}
+		log.info("Exported {} to {}", archive, directory);
+	}
+
+	/**
+	 * Returns true if the file looks like a session archive by its name.
+	 */
+	public static boolean isArchive(String fileName) {
+		return SessionArchiveWriter.EXTENSION.equals(FilenameUtils.getExtension(fileName));
+	}
+
+	private static void appendLines(File file, ArchiveStreamEnum stream, SessionArchiveWriter writer) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), US_ASCII))) {
+			String line = reader.readLine();
+			while (line != null) {
+				if (line.isEmpty()) {
+					// skipped
+				} else if (stream == ArchiveStreamEnum.SENSOR) {
+					writer.appendSensorLine(line);
+				} else {
+					writer.appendControlLine(line);
+				}
+				line = reader.readLine();
+			}
+		}
+	}
+
+	private static void writeLines(PrintWriter writer, List<String> lines) {
+		for (String line : lines) {
+			writer.println(line);
+		}
+	}
+
+	/**
+	 * Rotated files are named prefix-2.ext, prefix-3.ext and so on after
+	 * prefix.ext.
+	 */
+	private static int getRotationNumber(File file) {
+		String baseName = FilenameUtils.getBaseName(file.getName());
+		int dash = baseName.lastIndexOf('-');
+		if (dash >= 0) {
+			try {
+				return Integer.parseInt(baseName.substring(dash + 1));
+			} catch (NumberFormatException e) {
+				// not rotated
+			}
+		}
+		return 1;
+	}
+
+	private static final Comparator<File> ROTATION_ORDER = new Comparator<File>() {
+		@Override
+		public int compare(File a, File b) {
+			return Integer.compare(getRotationNumber(a), getRotationNumber(b));
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && "import".equals(args[0])) {
+			importSession(new File(args[1]), new File(args[2]));
+		} else if (args.length == 3 && "export".equals(args[0])) {
+			exportSession(new File(args[1]), new File(args[2]));
+		} else {
+			System.err.println("Usage: SessionArchive import <session directory> <archive>");
+			System.err.println("       SessionArchive export <archive> <directory>");
+			System.exit(1);
+		}
+	}
+}
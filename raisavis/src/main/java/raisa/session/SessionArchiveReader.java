@@ -0,0 +1,231 @@
+package raisa.session;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import raisa.util.HexToBinaryUtil;
+
+/**
+ * Reads a session archive made by {@link SessionArchiveWriter}. Only the
+ * index is read when opened, blocks are decompressed when their records
+ * are asked for.
+ */
+public class SessionArchiveReader implements Closeable {
+	private final RandomAccessFile file;
+	private final String prefix;
+	private final List<ArchiveBlock> blocks = new ArrayList<ArchiveBlock>();
+
+	public SessionArchiveReader(File archive) throws IOException {
+		file = new RandomAccessFile(archive, "r");
+		try {
+			if (file.readInt() != SessionArchiveWriter.MAGIC) {
+				throw new IOException("Not a session archive " + archive);
+			}
+			int version = file.readInt();
+			if (version != SessionArchiveWriter.VERSION) {
+				throw new IOException("Unsupported session archive version " + version);
+			}
+			prefix = file.readUTF();
+			file.seek(file.length() - SessionArchiveWriter.TRAILER_LENGTH);
+			long indexOffset = file.readLong();
+			if (file.readInt() != SessionArchiveWriter.INDEX_MAGIC) {
+				throw new IOException("Session archive " + archive + " has no index, it was not closed");
+			}
+			file.seek(indexOffset);
+			int blockCount = file.readInt();
+			for (int i = 0; i < blockCount; ++i) {
+				ArchiveStreamEnum stream = ArchiveStreamEnum.fromId(file.readByte());
+				long offset = file.readLong();
+				int compressedLength = file.readInt();
+				int length = file.readInt();
+				int records = file.readInt();
+				long firstTimestamp = file.readLong();
+				long lastTimestamp = file.readLong();
+				blocks.add(new ArchiveBlock(stream, offset, compressedLength, length, records, firstTimestamp, lastTimestamp));
+			}
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Name of the stream files the archive was made from.
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public List<ArchiveBlock> getBlocks() {
+		return Collections.unmodifiableList(blocks);
+	}
+
+	public List<String> readSensorLines() throws IOException {
+		return readSensorLines(Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the sample lines with timestamps within the range, inclusive.
+	 */
+	public List<String> readSensorLines(long fromTimestamp, long toTimestamp) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (ArchiveBlock block : blocks) {
+			if (block.getStream() == ArchiveStreamEnum.SENSOR && block.overlaps(fromTimestamp, toTimestamp)) {
+				readSensorLines(block, fromTimestamp, toTimestamp, lines);
+			}
+		}
+		return lines;
+	}
+
+	public List<String> readControlLines() throws IOException {
+		return readControlLines(Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the control message lines with timestamps within the range,
+	 * inclusive.
+	 */
+	public List<String> readControlLines(long fromTimestamp, long toTimestamp) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (ArchiveBlock block : blocks) {
+			if (block.getStream() == ArchiveStreamEnum.CONTROL && block.overlaps(fromTimestamp, toTimestamp)) {
+				readControlLines(block, fromTimestamp, toTimestamp, lines);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Returns the lines of a single sensor or control block, so that a
+	 * whole stream can be gone through without holding it in memory.
+	 */
+	public List<String> readLines(ArchiveBlock block) throws IOException {
+		List<String> lines = new ArrayList<String>(block.getRecordCount());
+		if (block.getStream() == ArchiveStreamEnum.SENSOR) {
+			readSensorLines(block, Long.MIN_VALUE, Long.MAX_VALUE, lines);
+		} else if (block.getStream() == ArchiveStreamEnum.CONTROL) {
+			readControlLines(block, Long.MIN_VALUE, Long.MAX_VALUE, lines);
+		} else {
+			throw new IllegalArgumentException("Block of " + block.getStream() + " has no lines");
+		}
+		return lines;
+	}
+
+	/**
+	 * Names of the other files of the session, in the order they were added.
+	 */
+	public List<String> getFileNames() throws IOException {
+		List<String> names = new ArrayList<String>();
+		for (ArchiveBlock block : blocks) {
+			if (block.getStream() == ArchiveStreamEnum.FILE) {
+				names.add(readFile(block).getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @return contents of the file, or null if there is no such file
+	 */
+	public byte[] readFile(String name) throws IOException {
+		for (ArchiveBlock block : blocks) {
+			if (block.getStream() == ArchiveStreamEnum.FILE) {
+				ArchiveFile file = readFile(block);
+				if (name.equals(file.getName())) {
+					return file.getContents();
+				}
+			}
+		}
+		return null;
+	}
+
+	public ArchiveFile readFile(ArchiveBlock block) throws IOException {
+		if (block.getStream() != ArchiveStreamEnum.FILE) {
+			throw new IllegalArgumentException("Block of " + block.getStream() + " is not a file");
+		}
+		DataInputStream data = readBlock(block);
+		data.readLong();
+		String name = data.readUTF();
+		byte[] contents = new byte[data.available()];
+		data.readFully(contents);
+		return new ArchiveFile(name, contents);
+	}
+
+	private void readSensorLines(ArchiveBlock block, long fromTimestamp, long toTimestamp, List<String> lines) throws IOException {
+		DataInputStream data = readBlock(block);
+		for (int i = 0; i < block.getRecordCount(); ++i) {
+			long timestamp = data.readLong();
+			String line = readAscii(data);
+			int imageLength = data.readInt();
+			if (imageLength >= 0) {
+				byte[] image = new byte[imageLength];
+				data.readFully(image);
+				int valueStart = line.indexOf(";CA") + 3;
+				line = line.substring(0, valueStart) + HexToBinaryUtil.byteArrayToHexString(image) + line.substring(valueStart);
+			}
+			if (timestamp >= fromTimestamp && timestamp <= toTimestamp) {
+				lines.add(line);
+			}
+		}
+	}
+
+	private void readControlLines(ArchiveBlock block, long fromTimestamp, long toTimestamp, List<String> lines) throws IOException {
+		DataInputStream data = readBlock(block);
+		for (int i = 0; i < block.getRecordCount(); ++i) {
+			long timestamp = data.readLong();
+			String line = readAscii(data);
+			if (timestamp >= fromTimestamp && timestamp <= toTimestamp) {
+				lines.add(line);
+			}
+		}
+	}
+
+	private synchronized DataInputStream readBlock(ArchiveBlock block) throws IOException {
+		byte[] compressed = new byte[block.getCompressedLength()];
+		file.seek(block.getOffset());
+		file.readFully(compressed);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			byte[] data = new byte[block.getLength()];
+			int length = 0;
+			while (length < data.length && !inflater.finished()) {
+				int inflated = inflater.inflate(data, length, data.length - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != data.length) {
+				throw new IOException("Truncated block at " + block.getOffset());
+			}
+			return new DataInputStream(new ByteArrayInputStream(data));
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted block at " + block.getOffset(), e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static String readAscii(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return new String(bytes, US_ASCII);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,232 @@
+package raisa.session;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import raisa.util.HexToBinaryUtil;
+
+/**
+ * Writes a session archive. The sensor and control streams are collected
+ * into blocks of about {@link #BLOCK_SIZE} bytes, each compressed on its
+ * own, and an index of the blocks with their timestamp ranges is written
+ * at the end, so a reader only decompresses the blocks it needs. Camera
+ * frames of samples are stored as binary instead of hex.
+ * <p>
+ * File layout, big-endian:
+ * <pre>
+ * header  int magic, int version, UTF prefix
+ * block   byte stream, int length, int compressed length, int records,
+ *         long first timestamp, long last timestamp, compressed data
+ * index   int blocks, then for each block: byte stream, long offset of the
+ *         compressed data, int compressed length, int length, int records,
+ *         long first timestamp, long last timestamp
+ * trailer long index offset, int index magic
+ * </pre>
+ * Sensor records are long timestamp, int line length, the line with the
+ * camera frame taken out of its CA field, int frame length or -1 and the
+ * frame. Control records are long timestamp, int line length and the line.
+ * File blocks hold a UTF name and the contents of the file.
+ */
+public class SessionArchiveWriter implements Closeable {
+	public static final String EXTENSION = "session";
+	/** "RSAR" */
+	static final int MAGIC = 0x52534152;
+	/** "RSIX" */
+	static final int INDEX_MAGIC = 0x52534958;
+	static final int VERSION = 1;
+	/** Index offset and index magic at the end of the file */
+	static final int TRAILER_LENGTH = 12;
+	public static final int BLOCK_SIZE = 64 * 1024;
+	private static final String SENSOR_TIMESTAMP_KEY = ";TI";
+	private static final String CONTROL_TIMESTAMP_KEY = "\"timestamp\":";
+	private static final String CAMERA_KEY = ";CA";
+
+	private final DataOutputStream output;
+	private long offset = 0;
+	private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+	private final List<ArchiveBlock> blocks = new ArrayList<ArchiveBlock>();
+	private final PendingBlock sensorBlock = new PendingBlock(ArchiveStreamEnum.SENSOR);
+	private final PendingBlock controlBlock = new PendingBlock(ArchiveStreamEnum.CONTROL);
+	private long lastSensorTimestamp = 0;
+	private long lastControlTimestamp = 0;
+
+	/**
+	 * @param prefix name of the stream files the archive was made from
+	 */
+	public SessionArchiveWriter(File file, String prefix) throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeUTF(prefix);
+		offset = output.size();
+	}
+
+	public void appendSensorLine(String line) throws IOException {
+		lastSensorTimestamp = parseTimestamp(line, SENSOR_TIMESTAMP_KEY, lastSensorTimestamp);
+		DataOutputStream data = sensorBlock.startRecord(lastSensorTimestamp);
+		int cameraStart = line.indexOf(CAMERA_KEY);
+		if (cameraStart < 0) {
+			writeAscii(data, line);
+			data.writeInt(-1);
+		} else {
+			int valueStart = cameraStart + CAMERA_KEY.length();
+			int valueEnd = line.indexOf(';', valueStart);
+			if (valueEnd < 0) {
+				valueEnd = line.length();
+			}
+			writeAscii(data, line.substring(0, valueStart) + line.substring(valueEnd));
+			byte[] image = HexToBinaryUtil.hexStringToByteArray(line.substring(valueStart, valueEnd));
+			data.writeInt(image.length);
+			data.write(image);
+		}
+		if (sensorBlock.bytes.size() >= BLOCK_SIZE) {
+			writeBlock(sensorBlock);
+		}
+	}
+
+	public void appendControlLine(String line) throws IOException {
+		lastControlTimestamp = parseTimestamp(line, CONTROL_TIMESTAMP_KEY, lastControlTimestamp);
+		writeAscii(controlBlock.startRecord(lastControlTimestamp), line);
+		if (controlBlock.bytes.size() >= BLOCK_SIZE) {
+			writeBlock(controlBlock);
+		}
+	}
+
+	/**
+	 * Stores a file of the session directory, such as a camera capture.
+	 */
+	public void addFile(String name, byte[] contents) throws IOException {
+		PendingBlock fileBlock = new PendingBlock(ArchiveStreamEnum.FILE);
+		DataOutputStream data = fileBlock.startRecord(0);
+		data.writeUTF(name);
+		data.write(contents);
+		writeBlock(fileBlock);
+	}
+
+	/**
+	 * Writes the remaining blocks and the index.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBlock(sensorBlock);
+			writeBlock(controlBlock);
+			long indexOffset = offset;
+			output.writeInt(blocks.size());
+			for (ArchiveBlock block : blocks) {
+				output.writeByte(block.getStream().getId());
+				output.writeLong(block.getOffset());
+				output.writeInt(block.getCompressedLength());
+				output.writeInt(block.getLength());
+				output.writeInt(block.getRecordCount());
+				output.writeLong(block.getFirstTimestamp());
+				output.writeLong(block.getLastTimestamp());
+			}
+			output.writeLong(indexOffset);
+			output.writeInt(INDEX_MAGIC);
+		} finally {
+			output.close();
+			deflater.end();
+		}
+	}
+
+	private void writeBlock(PendingBlock block) throws IOException {
+		if (block.records == 0) {
+			return;
+		}
+		byte[] data = block.bytes.toByteArray();
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+		byte[] buffer = new byte[8192];
+		while (!deflater.finished()) {
+			int length = deflater.deflate(buffer);
+			compressed.write(buffer, 0, length);
+		}
+		output.writeByte(block.stream.getId());
+		output.writeInt(data.length);
+		output.writeInt(compressed.size());
+		output.writeInt(block.records);
+		output.writeLong(block.firstTimestamp);
+		output.writeLong(block.lastTimestamp);
+		offset += 1 + 4 + 4 + 4 + 8 + 8;
+		blocks.add(new ArchiveBlock(block.stream, offset, compressed.size(), data.length, block.records, block.firstTimestamp,
+				block.lastTimestamp));
+		compressed.writeTo(output);
+		offset += compressed.size();
+		block.clear();
+	}
+
+	private static void writeAscii(DataOutputStream data, String line) throws IOException {
+		byte[] bytes = line.getBytes(US_ASCII);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	/**
+	 * Reads the digits following the key, or returns the default if there
+	 * are none.
+	 */
+	static long parseTimestamp(String line, String key, long defaultTimestamp) {
+		int index = line.indexOf(key);
+		if (index < 0) {
+			return defaultTimestamp;
+		}
+		int start = index + key.length();
+		int end = start;
+		while (end < line.length() && Character.isDigit(line.charAt(end))) {
+			++end;
+		}
+		if (end == start) {
+			return defaultTimestamp;
+		}
+		try {
+			return Long.parseLong(line.substring(start, end));
+		} catch (NumberFormatException e) {
+			return defaultTimestamp;
+		}
+	}
+
+	private static class PendingBlock {
+		private final ArchiveStreamEnum stream;
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4);
+		private final DataOutputStream data = new DataOutputStream(bytes);
+		private int records = 0;
+		private long firstTimestamp;
+		private long lastTimestamp;
+
+		public PendingBlock(ArchiveStreamEnum stream) {
+			this.stream = stream;
+		}
+
+		public DataOutputStream startRecord(long timestamp) throws IOException {
+			if (records == 0) {
+				firstTimestamp = timestamp;
+				lastTimestamp = timestamp;
+			} else {
+				// kept as a range, timestamps of separate recordings may go back
+				firstTimestamp = Math.min(firstTimestamp, timestamp);
+				lastTimestamp = Math.max(lastTimestamp, timestamp);
+			}
+			++records;
+			data.writeLong(timestamp);
+			return data;
+		}
+
+		public void clear() {
+			bytes.reset();
+			records = 0;
+		}
+	}
+}
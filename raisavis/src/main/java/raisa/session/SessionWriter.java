@@ -1,19 +1,16 @@
 package raisa.session;
 
-import static java.nio.charset.StandardCharsets.US_ASCII;
-
-import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -24,26 +21,35 @@ import raisa.comms.Communicator;
 import raisa.comms.ControlMessage;
 import raisa.comms.SampleParser;
 import raisa.comms.SensorListener;
+import raisa.comms.TypedSensorListener;
 import raisa.domain.samples.Sample;
+import raisa.metrics.Gauge;
+import raisa.metrics.MetricsRegistry;
 import raisa.util.NamedThreadFactory;
 import edu.umd.cs.findbugs.annotations.SuppressWarnings;
 
-public class SessionWriter implements Communicator, SensorListener, Closeable, Flushable {
+/**
+ * Records the control messages and sensor samples of a session to files in
+ * a directory of its own. Both streams are timestamped with the same
+ * monotonic clock when they arrive and written by {@link JournalWriter}s.
+ */
+public class SessionWriter implements Communicator, TypedSensorListener, Closeable, Flushable {
 	private static final Logger logger = LoggerFactory.getLogger(SessionWriter.class);
-	private File controlDataFile;
-	private File sensorDataFile;
-	private PrintWriter controlDataOutput;
-	private PrintWriter sensorDataOutput;
-	private long start;
+	private static final String SENSOR_GAUGE_PREFIX = "session.sensor.";
+	private static final String CONTROL_GAUGE_PREFIX = "session.control.";
+	private static final String[] JOURNAL_GAUGES = { "queueDepth", "appendedRecords", "droppedRecords", "writtenBytes" };
+	private volatile JournalWriter controlJournal;
+	private volatile JournalWriter sensorJournal;
+	private volatile long startNanos;
 	private final String prefix;
 	private File sessionDirectory;
 	private final File mainDirectory;
-	private final ExecutorService sessionWriterExecutor;
+	private final ExecutorService imageWriterExecutor;
 
 	public SessionWriter(File mainDirectory, String prefix) {
 		this.mainDirectory = mainDirectory;
 		this.prefix = prefix;
-		sessionWriterExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-SessionWriter"));
+		imageWriterExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-SessionWriter"));
 	}
 
 	synchronized public void start() throws IOException {
@@ -54,8 +60,6 @@ public class SessionWriter implements Communicator, SensorListener, Closeable, F
 		}
 
 		sessionDirectory = getSubDirectory(mainDirectory);
-		controlDataFile = new File(sessionDirectory, prefix + ".control");
-		sensorDataFile = new File(sessionDirectory, prefix + ".sensor");
 
 		if (!sessionDirectory.exists()) {
 			try {
@@ -66,108 +70,174 @@ public class SessionWriter implements Communicator, SensorListener, Closeable, F
 			}
 		}
 
-		controlDataOutput = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(controlDataFile)), US_ASCII));
-		sensorDataOutput = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(sensorDataFile)), US_ASCII));
-		start = System.currentTimeMillis();
+		startNanos = System.nanoTime();
+		sensorJournal = new JournalWriter(sessionDirectory, prefix, "sensor");
+		controlJournal = new JournalWriter(sessionDirectory, prefix, "control");
+		addJournalGauges(SENSOR_GAUGE_PREFIX, sensorJournal);
+		addJournalGauges(CONTROL_GAUGE_PREFIX, controlJournal);
 	}
 
-	@Override
-	@SuppressWarnings(value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE", justification="Future value is uninteresting")
-	public void sendPackage(final ControlMessage message) {
-		sessionWriterExecutor.submit(new Runnable() {
+	private static void removeJournalGauges(String prefix) {
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		for (String name : JOURNAL_GAUGES) {
+			metrics.removeGauge(prefix + name);
+		}
+	}
+
+	private static void addJournalGauges(String prefix, final JournalWriter journal) {
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		metrics.gauge(prefix + "queueDepth", new Gauge() {
 			@Override
-			public void run() {
-				writeControlMessage(message);
+			public long getValue() {
+				return journal.getQueueDepth();
+			}
+		});
+		metrics.gauge(prefix + "appendedRecords", new Gauge() {
+			@Override
+			public long getValue() {
+				return journal.getAppendedRecords();
+			}
+		});
+		metrics.gauge(prefix + "droppedRecords", new Gauge() {
+			@Override
+			public long getValue() {
+				return journal.getDroppedRecords();
+			}
+		});
+		metrics.gauge(prefix + "writtenBytes", new Gauge() {
+			@Override
+			public long getValue() {
+				return journal.getWrittenBytes();
 			}
 		});
 	}
 
-	synchronized private void writeControlMessage(ControlMessage message) {
-		if (!isCapturingData()) {
+	@Override
+	public void sendPackage(ControlMessage message) {
+		JournalWriter journal = controlJournal;
+		if (journal == null) {
 			return;
 		}
 		// synchronize control messages using same clock as sensor readings
-		message.setTimestamp(getTimestamp());
-		controlDataOutput.println(message.toJson());
-		controlDataOutput.flush();
+		journal.append(new ControlMessageRecord(message, getTimestamp()));
 	}
 
 	@Override
-	@SuppressWarnings(value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE", justification="Future value is uninteresting")
 	public void sampleReceived(final String sample) {
-		sessionWriterExecutor.submit(new Runnable() {
-			@Override
-			public void run() {
-				writeSample(sample);
-			}
-		});
-	}
-
-	synchronized private void writeSample(String sample) {
-		if (!isCapturingData()) {
+		JournalWriter journal = sensorJournal;
+		if (journal == null) {
 			return;
 		}
 		// synchronize sensor readings using same clock as control messages
-		String timestampedSample = sample.replaceAll("TI\\d+", "TI" + getTimestamp());
-		sensorDataOutput.println(timestampedSample);
-		sensorDataOutput.flush();
-		writeImage(sample);
+		journal.append(new SampleRecord(sample, getTimestamp()));
+		if (new SampleParser().mayContainImage(sample)) {
+			writeImage(new Callable<byte[]>() {
+				@Override
+				public byte[] call() {
+					// TODO sample is also parsed in WorldModel.java
+					return new SampleParser().parse(sample).getImageBytes();
+				}
+			});
+		}
 	}
 
-	private void writeImage(String sample) {
-		SampleParser sampleParser = new SampleParser();
-		// first make a fast check
-		if(!sampleParser.mayContainImage(sample)) {
-			return;
-		}
-		// TODO sample is also parsed in WorldModel.java
-		Sample parsedSample = sampleParser.parse(sample);
-		if(parsedSample.getImage() == null && parsedSample.getImageBytes() == null) {
+	@Override
+	public void sampleReceived(final Sample sample) {
+		JournalWriter journal = sensorJournal;
+		if (journal == null) {
+			// typed samples are only turned into text when written
 			return;
 		}
-		String timestamp = new SimpleDateFormat("yyyy-MM-dd_HHmmss").format(new Date());
-		File imageFile = new File(sessionDirectory, prefix + "-camera-" + timestamp + ".jpeg");
-		try {
-			FileUtils.writeByteArrayToFile(imageFile, parsedSample.getImageBytes());
-		} catch (IOException e) {
-			logger.error("Failed to store image capture file " + imageFile.getPath(), e);
+		journal.append(new SampleRecord(sample, getTimestamp()));
+		final byte[] imageBytes = sample.getImageBytes();
+		if (imageBytes != null) {
+			writeImage(new Callable<byte[]>() {
+				@Override
+				public byte[] call() {
+					return imageBytes;
+				}
+			});
 		}
 	}
 
+	@SuppressWarnings(value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE", justification="Future value is uninteresting")
+	private void writeImage(final Callable<byte[]> imageBytesSource) {
+		final File directory = sessionDirectory;
+		imageWriterExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				byte[] imageBytes;
+				try {
+					imageBytes = imageBytesSource.call();
+				} catch (Exception e) {
+					logger.error("Failed to read image capture", e);
+					return;
+				}
+				if (imageBytes == null) {
+					return;
+				}
+				String timestamp = new SimpleDateFormat("yyyy-MM-dd_HHmmss").format(new Date());
+				File imageFile = new File(directory, prefix + "-camera-" + timestamp + ".jpeg");
+				try {
+					FileUtils.writeByteArrayToFile(imageFile, imageBytes);
+				} catch (IOException e) {
+					logger.error("Failed to store image capture file " + imageFile.getPath(), e);
+				}
+			}
+		});
+	}
+
 	@Override
 	public boolean connect() {
 		return true;
 	}
 
 	private long getTimestamp() {
-		return System.currentTimeMillis() - start;
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 	}
 
 	@Override
 	synchronized public void close() {
-		IOUtils.closeQuietly(controlDataOutput);
-		IOUtils.closeQuietly(sensorDataOutput);
-		controlDataOutput = null;
-		sensorDataOutput = null;
+		IOUtils.closeQuietly(controlJournal);
+		IOUtils.closeQuietly(sensorJournal);
+		controlJournal = null;
+		sensorJournal = null;
+		// the gauges would keep the closed journals alive
+		removeJournalGauges(SENSOR_GAUGE_PREFIX);
+		removeJournalGauges(CONTROL_GAUGE_PREFIX);
 		logger.info("SessionWriter closed");
 	}
 
 	synchronized public boolean isCapturingData() {
-		return controlDataOutput != null;
+		return controlJournal != null;
 	}
 
 	@Override
-	synchronized public void flush() throws IOException {
-		flush(controlDataOutput);
-		flush(sensorDataOutput);
+	synchronized public void flush() {
+		flush(controlJournal);
+		flush(sensorJournal);
 	}
 
-	private void flush(Flushable flushable) throws IOException {
-		if (flushable != null) {
-			flushable.flush();
+	private void flush(JournalWriter journal) {
+		if (journal != null) {
+			journal.flush();
 		}
 	}
 
+	/**
+	 * @return the journal of the samples, or null if not capturing
+	 */
+	public JournalWriter getSensorJournal() {
+		return sensorJournal;
+	}
+
+	/**
+	 * @return the journal of the control messages, or null if not capturing
+	 */
+	public JournalWriter getControlJournal() {
+		return controlJournal;
+	}
+
 	@Override
 	public Communicator addSensorListener(SensorListener... sensorListener) {
 		// no-op
@@ -189,4 +259,93 @@ public class SessionWriter implements Communicator, SensorListener, Closeable, F
 		;
 	}
 
+	/**
+	 * Sample line with its timestamp replaced, written straight into the
+	 * journal buffer.
+	 */
+	private static class SampleRecord implements JournalRecord {
+		private static final int MAX_DIGITS = 19;
+		private final long timestamp;
+		private Sample sample;
+		private String sampleString;
+
+		public SampleRecord(String sampleString, long timestamp) {
+			this.sampleString = sampleString;
+			this.timestamp = timestamp;
+		}
+
+		public SampleRecord(Sample sample, long timestamp) {
+			this.sample = sample;
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public int getMaxLength() {
+			if (sampleString == null) {
+				sampleString = sample.getSampleString();
+			}
+			int timestamps = 0;
+			for (int i = timestampFieldEnd(0); i >= 0; i = timestampFieldEnd(i)) {
+				++timestamps;
+			}
+			return sampleString.length() + timestamps * MAX_DIGITS + 1;
+		}
+
+		@Override
+		public void writeTo(ByteBuffer buffer) {
+			int written = 0;
+			for (int end = timestampFieldEnd(0); end >= 0; end = timestampFieldEnd(end)) {
+				int start = sampleString.lastIndexOf("TI", end - 1) + 2;
+				JournalWriter.putAscii(buffer, sampleString.subSequence(written, start));
+				JournalWriter.putDecimal(buffer, timestamp);
+				written = end;
+			}
+			JournalWriter.putAscii(buffer, sampleString.subSequence(written, sampleString.length()));
+			buffer.put((byte) '\n');
+		}
+
+		/**
+		 * Finds the next "TI" followed by digits starting from the index.
+		 *
+		 * @return index after the digits, or -1 if there is none
+		 */
+		private int timestampFieldEnd(int from) {
+			int index = sampleString.indexOf("TI", from);
+			while (index >= 0) {
+				int end = index + 2;
+				while (end < sampleString.length() && Character.isDigit(sampleString.charAt(end))) {
+					++end;
+				}
+				if (end > index + 2) {
+					return end;
+				}
+				index = sampleString.indexOf("TI", index + 1);
+			}
+			return -1;
+		}
+	}
+
+	private static class ControlMessageRecord implements JournalRecord {
+		private final ControlMessage message;
+		private final long timestamp;
+		private String json;
+
+		public ControlMessageRecord(ControlMessage message, long timestamp) {
+			this.message = message;
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public int getMaxLength() {
+			message.setTimestamp(timestamp);
+			json = message.toJson();
+			return json.length() + 1;
+		}
+
+		@Override
+		public void writeTo(ByteBuffer buffer) {
+			JournalWriter.putAscii(buffer, json);
+			buffer.put((byte) '\n');
+		}
+	}
 }
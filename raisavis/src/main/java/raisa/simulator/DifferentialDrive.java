@@ -1,10 +1,10 @@
 package raisa.simulator;
 
+import org.apache.commons.math3.random.RandomGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import raisa.domain.robot.Robot;
-import raisa.util.RandomUtil;
 
 
 /**
@@ -20,12 +20,14 @@ public class DifferentialDrive implements DriveSystem {
 	private float rightSpeed;
 	private final float axisWidth;
 	private final float wheelDiameter;
+	private final RandomGenerator random;
 	private float leftWheelDistanceSinceLastRead = 0.0f;
 	private float rightWheelDistanceSinceLastRead = 0.0f;	
 	
-	public DifferentialDrive(float axisWidth, float wheelDiameter) {
+	public DifferentialDrive(float axisWidth, float wheelDiameter, RandomGenerator random) {
 		this.axisWidth = axisWidth;
 		this.wheelDiameter = wheelDiameter;
+		this.random = random;
 	}
 
 	@Override
@@ -87,7 +89,7 @@ public class DifferentialDrive implements DriveSystem {
 	}
 
 	private int getErrorTicks(int ticks) {
-		double rnd = RandomUtil.random();
+		double rnd = random.nextDouble();
 		if (rnd < 0.005d * ticks) {
 			return -1;
 		} else if (rnd < 0.01d * ticks) {
@@ -1,8 +1,13 @@
 package raisa.simulator;
 
-import raisa.domain.WorldModel;
+import raisa.domain.RayCaster;
 
 
 public interface DistanceScanner {	
-	float scanDistance(WorldModel worldModel, SimulatorState roverState, float heading);
+	float scanDistance(RayCaster map, SimulatorState roverState, float heading);
+
+	/**
+	 * Scans several directions from the same position at once.
+	 */
+	void scanDistances(RayCaster map, SimulatorState roverState, float[] headings, int count, float[] distances);
 }
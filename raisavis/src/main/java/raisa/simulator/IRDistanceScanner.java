@@ -1,19 +1,44 @@
 package raisa.simulator;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
 
-import raisa.domain.WorldModel;
+import raisa.domain.RayCaster;
 import raisa.util.RandomUtil;
 
 public class IRDistanceScanner implements DistanceScanner {
+	/** Well beyond the 150 cm that the sensor can measure */
+	private static final float MAX_RANGE = 300.0f;
+
+	private final NormalDistribution noise;
+	private float[] angles = new float[2];
+
+	public IRDistanceScanner(RandomGenerator random) {
+		noise = RandomUtil.normalDistribution(random, 0.0d, 5.0d);
+	}
+
+	@Override
+	public float scanDistance(RayCaster map, SimulatorState roverState, float heading) {
+		return map.traceRay(roverState.getPosition(), toRayAngle(roverState, heading)) + (float)noise.sample();
+	}
 
-	private NormalDistribution noise = RandomUtil.normalDistribution(0.0d, 5.0d);
-	
 	@Override
-	public float scanDistance(WorldModel worldModel, SimulatorState roverState, float heading) {
+	public void scanDistances(RayCaster map, SimulatorState roverState, float[] headings, int count, float[] distances) {
+		if (angles.length < count) {
+			angles = new float[count];
+		}
+		for (int i = 0; i < count; ++i) {
+			angles[i] = toRayAngle(roverState, headings[i]);
+		}
+		map.traceRays(roverState.getPosition(), angles, count, MAX_RANGE, distances);
+		for (int i = 0; i < count; ++i) {
+			distances[i] += (float)noise.sample();
+		}
+	}
+
+	/* package */ static float toRayAngle(SimulatorState roverState, float heading) {
 		float angle = 360 - roverState.getHeading() + heading;
-		float rad = (float)Math.toRadians(angle);
-		return worldModel.traceRay(roverState.getPosition(), rad) + (float)noise.sample();
+		return (float)Math.toRadians(angle);
 	}
 
 }
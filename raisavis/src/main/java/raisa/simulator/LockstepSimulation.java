@@ -0,0 +1,128 @@
+package raisa.simulator;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import raisa.comms.SensorListener;
+import raisa.domain.RayCaster;
+import raisa.domain.WorldModel;
+import raisa.domain.particlefilter.ParticleFilter;
+import raisa.domain.robot.Robot;
+import raisa.domain.robot.RobotState;
+import raisa.domain.robot.RobotStateAggregator;
+import raisa.util.Vector2D;
+
+/**
+ * Runs the simulated robot and the whole estimation pipeline in the calling
+ * thread on a virtual clock. Each tick advances the clock by one time step
+ * and returns only after the samples of the tick have been processed, so a
+ * run is as fast as the CPU allows. The simulated sensors, the driving and
+ * the estimators draw from generators of their own derived from the seed, so
+ * the samples and the estimates repeat exactly with the same seed and map.
+ * The robot wanders around and turns away from obstacles.
+ */
+public class LockstepSimulation {
+	private static final Logger log = LoggerFactory.getLogger(LockstepSimulation.class);
+	private static final int PARTICLES = 1000;
+	/** Samples and states kept in the world model, older ones are dropped to bound memory */
+	private static final int KEPT_SAMPLES = 1000;
+	private static final int KEPT_STATES = 1000;
+	private static final float FORWARD_SPEED = 0.2f;
+	private static final float TURNING_SPEED = 0.1f;
+	private static final float MIN_CLEARANCE = 40.0f;
+	private static final float MAX_LEG_SECONDS = 20.0f;
+
+	private final WorldModel worldModel;
+	private final RayCaster map;
+	private final RobotSimulator robotSimulator;
+	private final VirtualClock clock = new VirtualClock(0);
+	private final float timeStep;
+	private final RandomGenerator random;
+	private long ticks = 0;
+	private float legSecondsLeft = 0.0f;
+	private boolean turning = false;
+
+	/**
+	 * @param worldModel receives the samples and the estimated states
+	 * @param map what the sensors see, may be shared with other simulations if immutable
+	 * @param heading degrees, like in {@link RobotSimulator}
+	 */
+	public LockstepSimulation(WorldModel worldModel, RayCaster map, Vector2D position, float heading, long seed, int ticksPerSecond) {
+		this.worldModel = worldModel;
+		this.map = map;
+		this.timeStep = 1.0f / ticksPerSecond;
+		this.random = new Well19937c(seed);
+		float stateHeading = (float) Math.toRadians(360 - heading);
+		worldModel.addState(new Robot(new RobotState(new Vector2D(position.x, position.y), stateHeading), new RobotState(new Vector2D(position.x, position.y), stateHeading)));
+		ParticleFilter particleFilter = new ParticleFilter(worldModel, PARTICLES, new Well19937c(random.nextLong()));
+		RobotStateAggregator robotStateAggregator = new RobotStateAggregator(worldModel, particleFilter, worldModel.getLandmarkManager(),
+				new Well19937c(random.nextLong()));
+		worldModel.addSampleListener(robotStateAggregator);
+		robotSimulator = RobotSimulator.createHeadlessInstance(new Vector2D(position.x, position.y), heading, map, clock, random);
+		robotSimulator.addSensorListener(worldModel);
+	}
+
+	public LockstepSimulation addSensorListener(SensorListener sensorListener) {
+		robotSimulator.addSensorListener(sensorListener);
+		return this;
+	}
+
+	/**
+	 * Runs the simulation for the given amount of simulated time.
+	 */
+	public void run(float seconds) {
+		long lastTick = ticks + Math.round(seconds / timeStep);
+		long started = System.currentTimeMillis();
+		while (ticks < lastTick) {
+			tick();
+		}
+		log.info("Simulated {} s in {} ms", seconds, System.currentTimeMillis() - started);
+	}
+
+	public void tick() {
+		steer();
+		robotSimulator.tick(timeStep);
+		clock.advance(timeStep);
+		++ticks;
+		if (worldModel.getSamples().size() > 2 * KEPT_SAMPLES) {
+			worldModel.removeOldSamples(KEPT_SAMPLES);
+		}
+		if (worldModel.getStateCount() > 2 * KEPT_STATES) {
+			worldModel.removeOldStates(KEPT_STATES);
+		}
+	}
+
+	private void steer() {
+		legSecondsLeft -= timeStep;
+		float headingRadians = (float) Math.toRadians(360 - robotSimulator.getHeading());
+		boolean blocked = map.traceRay(robotSimulator.getPosition(), headingRadians) < MIN_CLEARANCE;
+		if (turning && legSecondsLeft > 0.0f) {
+			return;
+		}
+		if (blocked) {
+			float direction = random.nextBoolean() ? 1.0f : -1.0f;
+			robotSimulator.setWheelSpeeds(direction * TURNING_SPEED, -direction * TURNING_SPEED);
+			legSecondsLeft = 0.5f + random.nextFloat() * 2.0f;
+			turning = true;
+		} else if (turning || legSecondsLeft <= 0.0f) {
+			float curve = (random.nextFloat() - 0.5f) * 0.2f * FORWARD_SPEED;
+			robotSimulator.setWheelSpeeds(FORWARD_SPEED + curve, FORWARD_SPEED - curve);
+			legSecondsLeft = random.nextFloat() * MAX_LEG_SECONDS;
+			turning = false;
+		}
+	}
+
+	public long getSimulatedMillis() {
+		return clock.currentTimeMillis();
+	}
+
+	public WorldModel getWorldModel() {
+		return worldModel;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+}
@@ -0,0 +1,106 @@
+package raisa.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import raisa.domain.Grid;
+import raisa.domain.MapSnapshot;
+import raisa.domain.RayCaster;
+import raisa.domain.WorldModel;
+import raisa.util.NamedThreadFactory;
+import raisa.util.Vector2D;
+
+/**
+ * Several simulated robots in the same map, each with its own noise, world
+ * model and estimators. The robots only share an immutable snapshot of the
+ * map, so they are run in parallel, one robot per task.
+ */
+public class MultiRobotSimulation {
+	private static final Logger log = LoggerFactory.getLogger(MultiRobotSimulation.class);
+	private static final int MAX_START_POSITION_TRIES = 1000;
+	/** Start positions are picked within this distance from the origin */
+	private static final float START_AREA = 1000.0f;
+
+	private final List<LockstepSimulation> robots = new ArrayList<LockstepSimulation>();
+
+	/**
+	 * @param grid its user drawn map is shared by every robot
+	 */
+	public MultiRobotSimulation(Grid grid, int robotCount, long seed, int ticksPerSecond) {
+		this(grid, grid.getUserMapSnapshot(), robotCount, seed, ticksPerSecond);
+	}
+
+	/**
+	 * @param grid user drawn map given to the estimators of every robot
+	 * @param map what the sensors see, must be immutable
+	 */
+	public MultiRobotSimulation(Grid grid, RayCaster map, int robotCount, long seed, int ticksPerSecond) {
+		MapSnapshot userMap = grid.getUserMapSnapshot();
+		Random random = new Random(seed);
+		for (int i = 0; i < robotCount; ++i) {
+			Vector2D position = findStartPosition(userMap, random);
+			float heading = random.nextFloat() * 360.0f;
+			// the generators of each robot are derived from a seed of its own
+			RandomGenerator robotRandom = new Well19937c(random.nextLong());
+			WorldModel worldModel = new WorldModel(new Well19937c(robotRandom.nextLong()));
+			worldModel.getGrid().setUserImage(grid.getUserImage());
+			robots.add(new LockstepSimulation(worldModel, map, position, heading, robotRandom.nextLong(), ticksPerSecond));
+		}
+	}
+
+	private Vector2D findStartPosition(MapSnapshot map, Random random) {
+		for (int i = 0; i < MAX_START_POSITION_TRIES; ++i) {
+			Vector2D position = new Vector2D((random.nextFloat() * 2.0f - 1.0f) * START_AREA, (random.nextFloat() * 2.0f - 1.0f) * START_AREA);
+			if (map.isClear(position)) {
+				return position;
+			}
+		}
+		return new Vector2D(0, 0);
+	}
+
+	public List<LockstepSimulation> getRobots() {
+		return robots;
+	}
+
+	/**
+	 * Runs every robot for the given amount of simulated time and waits for
+	 * all of them to finish.
+	 */
+	public void run(final float seconds, int threads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("raisavis-MultiRobotSimulation"));
+		try {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (final LockstepSimulation robot : robots) {
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						robot.run(seconds);
+						return null;
+					}
+				});
+			}
+			long started = System.currentTimeMillis();
+			for (Future<Void> result : executor.invokeAll(tasks)) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Simulated robot failed", e.getCause());
+				}
+			}
+			log.info("Simulated {} robots for {} s in {} ms", new Object[] { robots.size(), seconds, System.currentTimeMillis() - started });
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -1,23 +1,26 @@
 package raisa.simulator;
 
 import static java.lang.Math.round;
-import static java.lang.System.currentTimeMillis;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import raisa.comms.Communicator;
 import raisa.comms.ControlMessage;
 import raisa.comms.SensorListener;
+import raisa.comms.TypedSensorListener;
 import raisa.config.VisualizerConfig;
 import raisa.config.VisualizerConfigListener;
+import raisa.domain.RayCaster;
 import raisa.domain.WorldModel;
 import raisa.domain.robot.Robot;
 import raisa.domain.robot.RobotState;
+import raisa.domain.samples.Sample;
 import raisa.util.RandomUtil;
 import raisa.util.Vector2D;
 import raisa.util.Vector3D;
@@ -35,36 +38,67 @@ public class RobotSimulator implements SimulatorState, ServoScanListener, Commun
 	private float heading;
 	private Vector2D position;
 	private final RotatingServo rotatingServo = new RotatingServo(this);
-	private final DistanceScanner irScanner1 = new IRDistanceScanner();
-	private final DistanceScanner sonarScanner1 = new SonarDistanceScanner();
-	private final DistanceScanner irScanner2 = new IRDistanceScanner();
-	private final DistanceScanner sonarScanner2 = new SonarDistanceScanner();
+	/** Both infrared sensors, pointing to opposite directions */
+	private final DistanceScanner irScanner;
+	/** Both sonars, pointing to opposite directions */
+	private final DistanceScanner sonarScanner;
+	private final float[] scanHeadings = new float[2];
+	private final float[] irDistances = new float[2];
+	private final float[] sonarDistances = new float[2];
 	private final DriveSystem driveSystem;
 	private final WorldModel worldModel;
+	private final RayCaster map;
 	private final List<SensorListener> sensorListeners = new ArrayList<SensorListener>();
-	private final long startTime = System.currentTimeMillis();
+	private final SimulationClock clock;
+	private final long startTime;
 	private int messageNumber = 1;
 
-	private final NormalDistribution sensorDirectionNoise = RandomUtil.normalDistribution(0.0d, 0.5d);
-	private final NormalDistribution headingNoise = RandomUtil.normalDistribution(0.0d, 0.5d);
+	private final RandomGenerator random;
+	private final NormalDistribution sensorDirectionNoise;
+	private final NormalDistribution headingNoise;
 
 	private Thread simulatorThread;
 	private boolean simulatorActive = false;
 
 	private final VisualizerConfig config;
 
-	public RobotSimulator(Vector2D position, float heading, DriveSystem driveSystem, WorldModel worldModel) {
+	public RobotSimulator(Vector2D position, float heading, DriveSystem driveSystem, WorldModel worldModel, RandomGenerator random) {
+		this(position, heading, driveSystem, worldModel, worldModel, new WallClock(), random);
+		config.addVisualizerConfigListener(this);
+	}
+
+	private RobotSimulator(Vector2D position, float heading, DriveSystem driveSystem, WorldModel worldModel, RayCaster map,
+			SimulationClock clock, RandomGenerator random) {
 		this.position = position;
 		this.heading = heading;
 		this.driveSystem = driveSystem;
 		this.worldModel = worldModel;
+		this.map = map;
+		this.clock = clock;
+		this.startTime = clock.currentTimeMillis();
+		this.random = random;
+		irScanner = new IRDistanceScanner(random);
+		sonarScanner = new SonarDistanceScanner(random);
+		sensorDirectionNoise = RandomUtil.normalDistribution(random, 0.0d, 0.5d);
+		headingNoise = RandomUtil.normalDistribution(random, 0.0d, 0.5d);
 		config = VisualizerConfig.getInstance();
-		config.addVisualizerConfigListener(this);
 	}
 
 	public static RobotSimulator createRaisaInstance(Vector2D position, float heading, WorldModel worldModel) {
-		DifferentialDrive driveSystem = new DifferentialDrive(Robot.ROBOT_WIDTH, Robot.WHEEL_DIAMETER);
-		return new RobotSimulator(position, heading, driveSystem, worldModel);
+		RandomGenerator random = RandomUtil.newRandomGenerator();
+		DifferentialDrive driveSystem = new DifferentialDrive(Robot.ROBOT_WIDTH, Robot.WHEEL_DIAMETER, random);
+		return new RobotSimulator(position, heading, driveSystem, worldModel, random);
+	}
+
+	/**
+	 * Simulator that is not started by the configuration but ticked by the
+	 * caller, with sample timestamps taken from the given clock. All noise
+	 * is drawn from the given generator, so a simulator only reading an
+	 * immutable map can run in its own thread.
+	 */
+	public static RobotSimulator createHeadlessInstance(Vector2D position, float heading, RayCaster map, SimulationClock clock, RandomGenerator random) {
+		DifferentialDrive driveSystem = new DifferentialDrive(Robot.ROBOT_WIDTH, Robot.WHEEL_DIAMETER, random);
+		return new RobotSimulator(position, heading, driveSystem, null, map, clock, random);
 	}
 
 	public RobotSimulator tick(float timestep) {
@@ -78,11 +112,11 @@ public class RobotSimulator implements SimulatorState, ServoScanListener, Commun
 	}
 
 	public float getIRDistance1() {
-		return irScanner1.scanDistance(worldModel, this, rotatingServo.getHeading());
+		return irScanner.scanDistance(map, this, rotatingServo.getHeading());
 	}
 
 	public float getSonarDistance1() {
-		return sonarScanner1.scanDistance(worldModel, this, rotatingServo.getHeading());
+		return sonarScanner.scanDistance(map, this, rotatingServo.getHeading());
 	}
 
 	/**
@@ -115,10 +149,14 @@ public class RobotSimulator implements SimulatorState, ServoScanListener, Commun
 	@Override
 	public void scan(float servoHeading) {
 		SensorReading reading = new SensorReading();
-		float irDistance1 = irScanner1.scanDistance(worldModel, this, servoHeading);
-		float sonarDistance1 = sonarScanner1.scanDistance(worldModel, this, servoHeading);
-		float irDistance2 = irScanner2.scanDistance(worldModel, this, servoHeading + 180);
-		float sonarDistance2 = sonarScanner2.scanDistance(worldModel, this, servoHeading + 180);
+		scanHeadings[0] = servoHeading;
+		scanHeadings[1] = servoHeading + 180;
+		irScanner.scanDistances(map, this, scanHeadings, 2, irDistances);
+		sonarScanner.scanDistances(map, this, scanHeadings, 2, sonarDistances);
+		float irDistance1 = irDistances[0];
+		float sonarDistance1 = sonarDistances[0];
+		float irDistance2 = irDistances[1];
+		float sonarDistance2 = sonarDistances[1];
 		int directionNoiseSample = (int)sensorDirectionNoise.sample();
 		if(irDistance1 > 0 ) {
 			reading.setIrDistance1(round(irDistance1));
@@ -138,19 +176,19 @@ public class RobotSimulator implements SimulatorState, ServoScanListener, Commun
 		}
 
 		reading.setCompassHeading(360-round(heading - (int)headingNoise.sample()));
-		reading.setTimestamp(System.currentTimeMillis() - startTime).setMessageNumber(messageNumber++);
+		reading.setTimestamp(clock.currentTimeMillis() - startTime).setMessageNumber(messageNumber++);
 
 		Vector3D gyro = new Vector3D();
 		reading.setGyro(gyro);
-		gyro.setX((float) RandomUtil.nextGaussian());
-		gyro.setY((float) RandomUtil.nextGaussian());
-		gyro.setZ((float) RandomUtil.nextGaussian());
+		gyro.setX((float) random.nextGaussian());
+		gyro.setY((float) random.nextGaussian());
+		gyro.setZ((float) random.nextGaussian());
 
 		Vector3D acceleration = new Vector3D();
 		reading.setAcceleration(acceleration);
-		acceleration.setX((float) RandomUtil.nextGaussian());
-		acceleration.setY((float)(-9.81 + RandomUtil.nextGaussian()));
-		acceleration.setZ((float) RandomUtil.nextGaussian());
+		acceleration.setX((float) random.nextGaussian());
+		acceleration.setY((float)(-9.81 + random.nextGaussian()));
+		acceleration.setZ((float) random.nextGaussian());
 
 		reading.setRightEncoder(driveSystem.readRightWheelEncoderTicks());
 		reading.setLeftEncoder(driveSystem.readLeftWheelEncoderTicks());
@@ -159,10 +197,23 @@ public class RobotSimulator implements SimulatorState, ServoScanListener, Commun
 	}
 
 	private void sendSendorReading(SensorReading sensorReading) {
-		log.trace("Sendor reading: {}", sensorReading.toString());
+		log.trace("Sendor reading: {}", sensorReading);
 
+		Sample sample = null;
+		String sampleString = null;
 		for (SensorListener sensorListener : sensorListeners) {
-			sensorListener.sampleReceived(sensorReading.toString());
+			if (sensorListener instanceof TypedSensorListener) {
+				if (sample == null) {
+					sample = sensorReading.toSample();
+					sample.setReceivedNanos(System.nanoTime());
+				}
+				((TypedSensorListener) sensorListener).sampleReceived(sample);
+			} else {
+				if (sampleString == null) {
+					sampleString = sensorReading.toString();
+				}
+				sensorListener.sampleReceived(sampleString);
+			}
 		}
 	}
 
@@ -177,6 +228,15 @@ public class RobotSimulator implements SimulatorState, ServoScanListener, Commun
 		}
 	}
 
+	/**
+	 * Sets wheel speeds directly in rotations per second, for callers that
+	 * drive the simulator without control messages.
+	 */
+	public void setWheelSpeeds(float leftSpeed, float rightSpeed) {
+		driveSystem.setLeftWheelSpeed(leftSpeed);
+		driveSystem.setRightWheelSpeed(rightSpeed);
+	}
+
 	/**
 	 * Maps the control signal back to fractional gear value (e.g. 3,25).
 	 */
@@ -262,9 +322,9 @@ public class RobotSimulator implements SimulatorState, ServoScanListener, Commun
 	public void run() {
 		log.info("Simulator thread starting");
 		while(this.simulatorActive) {
-			long start = currentTimeMillis();
+			long start = clock.currentTimeMillis();
 			tick(getTimeStepLengthInSeconds());
-			sleep(getTimeStepLengthInMillis(), currentTimeMillis() - start);
+			sleep(getTimeStepLengthInMillis(), clock.currentTimeMillis() - start);
 		}
 		log.info("Simulator thread stopping");
 	}
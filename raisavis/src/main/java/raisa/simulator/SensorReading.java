@@ -1,8 +1,11 @@
 package raisa.simulator;
 
+import raisa.comms.SampleParser;
+import raisa.domain.samples.Sample;
+import raisa.domain.samples.SampleStringSource;
 import raisa.util.Vector3D;
 
-public class SensorReading {
+public class SensorReading implements SampleStringSource {
 	private Long timestamp;
 	private Integer messageNumber;
 	private Vector3D gyro;
@@ -49,6 +52,87 @@ public class SensorReading {
 		return builder.toString();
 	}
 
+	@Override
+	public String toSampleString() {
+		return toString();
+	}
+
+	/**
+	 * Converts the reading to a sample the same way as
+	 * {@link raisa.comms.SampleParser} converts its text form, but without
+	 * creating the text. The reading must not be changed afterwards.
+	 */
+	public Sample toSample() {
+		Sample sample = new Sample();
+		sample.setSampleStringSource(this);
+		if (messageNumber != null) {
+			sample.setMessageNumber(messageNumber);
+		}
+		if (timestamp != null) {
+			sample.setTimestampMillis(timestamp);
+		}
+		if (rightEncoder != null) {
+			sample.setRightTrackTicks(rightEncoder);
+		}
+		if (leftEncoder != null) {
+			sample.setLeftTrackTicks(leftEncoder);
+		}
+		if (irDirection1 != null) {
+			sample.setInfrared1Angle(toSampleAngle(irDirection1));
+		}
+		if (isValidIrDistance(irDistance1)) {
+			sample.setInfrared1Distance(irDistance1);
+		}
+		sample.setInfrared1MeasurementValid(irDirection1 != null && isValidIrDistance(irDistance1));
+		if (sonarDirection1 != null) {
+			sample.setUltrasound1Angle(toSampleAngle(sonarDirection1));
+		}
+		if (isValidSonarDistance(sonarDistance1)) {
+			sample.setUltrasound1Distance(sonarDistance1);
+		}
+		sample.setUltrasound1MeasurementValid(sonarDirection1 != null && isValidSonarDistance(sonarDistance1));
+		if (irDirection2 != null) {
+			sample.setInfrared2Angle(toSampleAngle(irDirection2));
+		}
+		if (isValidIrDistance(irDistance2)) {
+			sample.setInfrared2Distance(irDistance2);
+		}
+		sample.setInfrared2MeasurementValid(irDirection2 != null && isValidIrDistance(irDistance2));
+		if (sonarDirection2 != null) {
+			sample.setUltrasound2Angle(toSampleAngle(sonarDirection2));
+		}
+		if (isValidSonarDistance(sonarDistance2)) {
+			sample.setUltrasound2Distance(sonarDistance2);
+		}
+		sample.setUltrasound2MeasurementValid(sonarDirection2 != null && isValidSonarDistance(sonarDistance2));
+		if (compassHeading != null) {
+			sample.setCompassDirection((float) Math.toRadians(compassHeading));
+		}
+		if (gyro != null) {
+			sample.setGyroX(gyro.getX());
+			sample.setGyroY(gyro.getY());
+			sample.setGyroZ(gyro.getZ());
+		}
+		if (acceleration != null) {
+			sample.setAccelerationX(acceleration.getX());
+			sample.setAccelerationY(acceleration.getY());
+			sample.setAccelerationZ(acceleration.getZ());
+		}
+		return sample;
+	}
+
+	private static boolean isValidIrDistance(Integer distance) {
+		return distance != null && SampleParser.isValidIrDistance(distance);
+	}
+
+	private static boolean isValidSonarDistance(Integer distance) {
+		return distance != null && SampleParser.isValidSonarDistance(distance);
+	}
+
+	private static float toSampleAngle(int direction) {
+		return SampleParser.toSampleAngle(direction);
+	}
+
 	private StringBuilder addField(StringBuilder builder, String key, Object value) {
 		if (value == null) {
 			return builder;
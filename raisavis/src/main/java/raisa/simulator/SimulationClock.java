@@ -0,0 +1,8 @@
+package raisa.simulator;
+
+/**
+ * Source of time for the simulated robot.
+ */
+public interface SimulationClock {
+	long currentTimeMillis();
+}
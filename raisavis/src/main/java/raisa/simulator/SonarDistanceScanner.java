@@ -1,34 +1,38 @@
 package raisa.simulator;
 
-import java.util.Arrays;
-import java.util.List;
-
 import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
 
-import raisa.domain.WorldModel;
+import raisa.domain.RayCaster;
 import raisa.util.RandomUtil;
 
 /**
- * Makes scans to several directions around central heading and returns the
- * shortest value.
+ * Returns the distance to the nearest obstacle inside the beam around the
+ * central heading.
  * 
  */
-public class SonarDistanceScanner extends IRDistanceScanner {
-	// simulate wide beam by doing several scans and taking the minimum distance
-	private static final List<Float> beamHeadings = Arrays.asList(-5f, -2.5f, 0f, 2.5f, 5f); 
-	
-	private NormalDistribution noise = RandomUtil.normalDistribution(0.0d, 1.0d);
+public class SonarDistanceScanner implements DistanceScanner {
+	private static final float BEAM_HALF_WIDTH = (float)Math.toRadians(5.0);
+	/** Well beyond the 645 cm that the sensor can measure */
+	private static final float MAX_RANGE = 800.0f;
+
+	private final NormalDistribution noise;
+
+	public SonarDistanceScanner(RandomGenerator random) {
+		noise = RandomUtil.normalDistribution(random, 0.0d, 1.0d);
+	}
+
+	@Override
+	public float scanDistance(RayCaster map, SimulatorState roverState, float heading) {
+		float angle = IRDistanceScanner.toRayAngle(roverState, heading);
+		return map.traceCone(roverState.getPosition(), angle, BEAM_HALF_WIDTH, MAX_RANGE) + (float)noise.sample();
+	}
 
 	@Override
-	public float scanDistance(WorldModel worldModel, SimulatorState roverState, float heading) {
-		float min = -1;
-		for (float beamHeading : beamHeadings) {
-			float distance = super.scanDistance(worldModel, roverState, heading + beamHeading);
-			if(min < 0 || (distance > 0 && distance < min)) {
-				min = distance;
-			}
+	public void scanDistances(RayCaster map, SimulatorState roverState, float[] headings, int count, float[] distances) {
+		for (int i = 0; i < count; ++i) {
+			distances[i] = scanDistance(map, roverState, headings[i]);
 		}
-		return min + (float)noise.sample();
 	}
 
 }
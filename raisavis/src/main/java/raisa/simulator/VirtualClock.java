@@ -0,0 +1,23 @@
+package raisa.simulator;
+
+/**
+ * Time that only moves when advanced, so that a simulation runs in lockstep
+ * with its own ticks instead of the wall clock.
+ */
+public class VirtualClock implements SimulationClock {
+	private long nanos;
+
+	public VirtualClock(long startMillis) {
+		this.nanos = startMillis * 1000000l;
+	}
+
+	public synchronized void advance(float seconds) {
+		nanos += Math.round(seconds * 1.0e9d);
+	}
+
+	@Override
+	public synchronized long currentTimeMillis() {
+		return nanos / 1000000l;
+	}
+
+}
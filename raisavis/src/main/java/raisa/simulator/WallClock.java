@@ -0,0 +1,13 @@
+package raisa.simulator;
+
+/**
+ * Real time, used when the simulator runs alongside the user interface.
+ */
+public class WallClock implements SimulationClock {
+
+	@Override
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+}
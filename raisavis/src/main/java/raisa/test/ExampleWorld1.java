@@ -1,34 +1,27 @@
 package raisa.test;
 
-import java.awt.Shape;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.Rectangle2D;
-import java.util.ArrayList;
-import java.util.List;
+import raisa.domain.vectormap.VectorWorld;
+import raisa.domain.vectormap.VectorWorldBuilder;
+import raisa.util.Vector2D;
 
 public class ExampleWorld1 {
-	public String sample(float x, float y, float heading, float angle) {
-		List<Shape> scene = new ArrayList<Shape>();
-		scene.add(new Rectangle2D.Float(-150, -150, 100, 100));
-		scene.add(new Rectangle2D.Float(-50, 100, 300, 100));
-		scene.add(new Rectangle2D.Float(150, -150, 100, 100));
-		scene.add(new Rectangle2D.Float(0, 50, 25, 100));
-		scene.add(new Ellipse2D.Float(0, -120, 50, 50));
-		scene.add(new Ellipse2D.Float(200, -20, 80, 80));
+	private static final float MAX_RANGE = 250.0f;
+	private static final VectorWorld scene = new VectorWorldBuilder()
+			.addRectangle(-150, -150, 100, 100)
+			.addRectangle(-50, 100, 300, 100)
+			.addRectangle(150, -150, 100, 100)
+			.addRectangle(0, 50, 25, 100)
+			.addCircle(25, -95, 25)
+			.addCircle(240, 20, 40)
+			.build();
 
-		float shortestDistance = Float.MAX_VALUE;
-		for (Shape shape : scene) {
-			float distance = trace(x, y, heading + angle, shape, 250.0f);
-			if (distance < 250.0f) {
-				shortestDistance = Math.min(shortestDistance, distance);
-			}
-		}
-		shortestDistance = Math.min(250.0f, shortestDistance);
+	public String sample(float x, float y, float heading, float angle) {
+		float shortestDistance = Math.min(MAX_RANGE, scene.traceRay(new Vector2D(x, y), heading + angle));
 
 		float encodedDistance = 1.0f / (float)Math.pow((shortestDistance + 10.0f) / 10650.08f, 1.0f / 0.935f);
 		
 		String ir = "IR%d;";
-		if (shortestDistance < 250.0f) {
+		if (shortestDistance < MAX_RANGE) {
 			ir += "ID%d;";			
 		}
 				
@@ -47,20 +40,4 @@ public class ExampleWorld1 {
 		//System.out.print(sampleString);
 		return sampleString;
 	}
-
-	private float trace(float x, float y, float angle, Shape shape, float maxDistance) {
-		angle = angle - (float)Math.PI * 0.5f;
-		float dx = (float)Math.cos(angle);
-		float dy = (float)Math.sin(angle);
-		
-		for (float currentDistance = 0.0f; currentDistance < maxDistance; currentDistance += 1.0f) {
-			if (shape.contains(x, y)) {
-				return currentDistance;
-			}
-			x += dx;
-			y += dy;
-		}
-		
-		return maxDistance;
-	}
 }
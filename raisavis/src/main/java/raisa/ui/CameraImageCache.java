@@ -0,0 +1,162 @@
+package raisa.ui;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import raisa.util.NamedThreadFactory;
+import edu.umd.cs.findbugs.annotations.SuppressWarnings;
+
+/**
+ * Decodes camera frames of samples when they are first displayed. Decoding
+ * runs in a small pool of its own and the latest decoded frames are kept in
+ * a bounded cache, together with their thumbnails once asked for. Frames
+ * are identified by their byte arrays, which samples never change. Frames
+ * that fail to decode are cached too, so they are tried only once.
+ */
+public class CameraImageCache {
+	private static final Logger log = LoggerFactory.getLogger(CameraImageCache.class);
+	private static final int DECODER_THREADS = 2;
+	/** Frames waiting to be decoded, later requests are retried on the next call */
+	private static final int MAX_PENDING = 4;
+	public static final int DEFAULT_CAPACITY = 32;
+	public static final int THUMBNAIL_WIDTH = 160;
+	/** Cached for frames that could not be decoded */
+	private static final DecodedImage FAILED = new DecodedImage(null);
+
+	private final int capacity;
+	private final Runnable decodedListener;
+	private final Map<byte[], DecodedImage> cache;
+	private final Set<byte[]> pending = new HashSet<byte[]>();
+	private final ExecutorService decoderExecutor;
+
+	/**
+	 * @param decodedListener run in a decoder thread after a frame has been decoded
+	 */
+	public CameraImageCache(int capacity, Runnable decodedListener) {
+		this.capacity = capacity;
+		this.decodedListener = decodedListener;
+		this.cache = new LinkedHashMap<byte[], DecodedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<byte[], DecodedImage> eldest) {
+				return size() > CameraImageCache.this.capacity;
+			}
+		};
+		decoderExecutor = Executors.newFixedThreadPool(DECODER_THREADS, new NamedThreadFactory("raisavis-CameraImageCache"));
+	}
+
+	/**
+	 * Returns the decoded frame, or null if it has not been decoded yet or
+	 * could not be decoded. Decoding is started on the first call and the
+	 * listener is notified when done.
+	 */
+	public BufferedImage getImage(byte[] imageBytes) {
+		DecodedImage decoded = get(imageBytes);
+		return decoded != null ? decoded.image : null;
+	}
+
+	/**
+	 * Same as {@link #getImage(byte[])} but returns a frame scaled to
+	 * {@link #THUMBNAIL_WIDTH}. The frame is scaled in the calling thread
+	 * on the first call.
+	 */
+	public BufferedImage getThumbnail(byte[] imageBytes) {
+		DecodedImage decoded = get(imageBytes);
+		if (decoded == null || decoded == FAILED) {
+			return null;
+		}
+		synchronized (decoded) {
+			if (decoded.thumbnail == null) {
+				decoded.thumbnail = createThumbnail(decoded.image);
+			}
+			return decoded.thumbnail;
+		}
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	@SuppressWarnings(value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE", justification="Future value is uninteresting")
+	private DecodedImage get(final byte[] imageBytes) {
+		if (imageBytes == null) {
+			return null;
+		}
+		synchronized (this) {
+			DecodedImage decoded = cache.get(imageBytes);
+			if (decoded != null || pending.contains(imageBytes) || pending.size() >= MAX_PENDING) {
+				return decoded;
+			}
+			pending.add(imageBytes);
+		}
+		decoderExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				decode(imageBytes);
+			}
+		});
+		return null;
+	}
+
+	private void decode(byte[] imageBytes) {
+		DecodedImage decoded = FAILED;
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+			if (image != null) {
+				decoded = new DecodedImage(image);
+			} else {
+				log.error("Unsupported camera image format");
+			}
+		} catch (IOException e) {
+			log.error("Failed to decode camera image", e);
+		}
+		synchronized (this) {
+			pending.remove(imageBytes);
+			cache.put(imageBytes, decoded);
+		}
+		if (decoded != FAILED) {
+			decodedListener.run();
+		}
+	}
+
+	private BufferedImage createThumbnail(BufferedImage image) {
+		if (image.getWidth() <= THUMBNAIL_WIDTH) {
+			return image;
+		}
+		int height = Math.max(1, image.getHeight() * THUMBNAIL_WIDTH / image.getWidth());
+		BufferedImage thumbnail = new BufferedImage(THUMBNAIL_WIDTH, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = thumbnail.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, THUMBNAIL_WIDTH, height, null);
+		} finally {
+			g.dispose();
+		}
+		return thumbnail;
+	}
+
+	private static class DecodedImage {
+		private final BufferedImage image;
+		/** Guarded by the instance, made when first asked for */
+		private BufferedImage thumbnail;
+
+		public DecodedImage(BufferedImage image) {
+			this.image = image;
+		}
+	}
+}
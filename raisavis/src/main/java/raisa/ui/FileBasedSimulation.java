@@ -2,37 +2,90 @@ package raisa.ui;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import raisa.comms.SampleParser;
 import raisa.config.VisualizerConfig;
 import raisa.config.VisualizerConfigItemEnum;
 import raisa.config.VisualizerConfigListener;
+import raisa.domain.Restorable;
 import raisa.domain.WorldModel;
+import raisa.util.NamedThreadFactory;
 
+/**
+ * Replays sample lines to the world. While replaying, the state of the world
+ * and of the registered algorithms is saved to a keyframe whenever about
+ * {@link #KEYFRAME_INTERVAL_MILLIS} has been spent processing samples since
+ * the previous one, so that seeking restores the nearest keyframe before the
+ * target and replays only the samples after it. Seeking past the replayed
+ * samples has to replay all of the samples in between.
+ */
 public class FileBasedSimulation implements Runnable, VisualizerConfigListener {
 
 	private static final Logger log = LoggerFactory.getLogger(FileBasedSimulation.class);
+	public static final int KEYFRAME_INTERVAL_MILLIS = 200;
+	/** When there are more keyframes, every other one is dropped and the interval doubled */
+	private static final int MAX_KEYFRAMES = 256;
 
-	private boolean active = false;
+	private volatile boolean active = false;
 	private final WorldModel world;
 	private Thread simulationThread;
+	private final List<Restorable<?>> restorables = new ArrayList<Restorable<?>>();
 
-	private int nextSample = 0;
-	private List<String> samples = new ArrayList<String>();
+	/** Held while a sample is processed and for the whole of a seek */
+	private final Object replayLock = new Object();
+	private volatile int nextSample = 0;
+	private volatile List<String> samples = new ArrayList<String>();
 	private boolean delayed;
 	private boolean stepSimulation;
+	private final TreeMap<Integer, List<Object>> keyframes = new TreeMap<Integer, List<Object>>();
+	private long keyframeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(KEYFRAME_INTERVAL_MILLIS);
+	private long nanosSinceKeyframe = 0;
+
+	private final AtomicInteger requestedSeek = new AtomicInteger(-1);
+	private final ExecutorService seekExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-ReplaySeek"));
+	private final Runnable seekTask = new Runnable() {
+		@Override
+		public void run() {
+			int target = requestedSeek.getAndSet(-1);
+			if (target >= 0) {
+				seekNow(target);
+			}
+		}
+	};
 
 	public FileBasedSimulation(WorldModel world) {
 		this.world = world;
+		restorables.add(world);
 		VisualizerConfig.getInstance().addVisualizerConfigListener(this);
 	}
 
+	/**
+	 * Adds state to save in keyframes besides the world, such as the state
+	 * of the sample listeners of the world.
+	 */
+	public void addRestorable(Restorable<?> restorable) {
+		synchronized (replayLock) {
+			restorables.add(restorable);
+			clearKeyframes();
+		}
+	}
+
 	public void setSamples(List<String> samples, boolean delayed) {
-		this.samples = samples;
-		this.delayed = delayed;
-		this.nextSample = 0;
+		synchronized (replayLock) {
+			this.samples = samples;
+			this.delayed = delayed;
+			this.nextSample = 0;
+			clearKeyframes();
+		}
 	}
 
 	public void setStepSimulation(boolean stepSimulation) {
@@ -59,7 +112,139 @@ public class FileBasedSimulation implements Runnable, VisualizerConfigListener {
 		} catch (InterruptedException e) {
 			log.error("interrupted", e);
 		}
-		samples = new ArrayList<String>();
+		synchronized (replayLock) {
+			samples = new ArrayList<String>();
+			nextSample = 0;
+			clearKeyframes();
+		}
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Index of the sample replayed next.
+	 */
+	public int getPosition() {
+		return nextSample;
+	}
+
+	public int getSampleCount() {
+		return samples.size();
+	}
+
+	/**
+	 * Timestamp of the sample at the index, or 0 if there is no such sample.
+	 */
+	public long getTimestampMillis(int sampleIndex) {
+		List<String> currentSamples = samples;
+		if (sampleIndex < 0 || sampleIndex >= currentSamples.size()) {
+			return 0;
+		}
+		return new SampleParser().parse(currentSamples.get(sampleIndex)).getTimestampMillis();
+	}
+
+	/**
+	 * Moves the replay so that the sample at the index is replayed next. The
+	 * seek is done in the background, and only the latest of several seeks
+	 * requested meanwhile is done.
+	 */
+	public void seek(int sampleIndex) {
+		requestedSeek.set(Math.max(0, sampleIndex));
+		seekExecutor.submit(seekTask);
+	}
+
+	/**
+	 * Seeks to the first sample at or after the timestamp. Timestamps are
+	 * expected to grow through the samples.
+	 */
+	public void seekToTimestamp(long timestampMillis) {
+		int low = 0;
+		int high = samples.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getTimestampMillis(middle) < timestampMillis) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		seek(low);
+	}
+
+	private void seekNow(int target) {
+		long startNanos = System.nanoTime();
+		int replayed = 0;
+		synchronized (replayLock) {
+			target = Math.min(target, samples.size());
+			Map.Entry<Integer, List<Object>> keyframe = keyframes.floorEntry(target);
+			if (keyframe != null && (target < nextSample || keyframe.getKey() > nextSample)) {
+				restoreKeyframe(keyframe.getValue());
+				nextSample = keyframe.getKey();
+				nanosSinceKeyframe = 0;
+			} else if (target < nextSample) {
+				log.warn("No keyframe to seek back to sample {}", target);
+				return;
+			}
+			while (nextSample < target) {
+				processNextSample();
+				++replayed;
+			}
+		}
+		log.info("Seeked to sample {}, replayed {} samples in {} ms", new Object[] { target, replayed,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) });
+	}
+
+	/**
+	 * Saves a keyframe first if one is due at this sample.
+	 */
+	private void processNextSample() {
+		if (keyframes.containsKey(nextSample)) {
+			nanosSinceKeyframe = 0;
+		} else if (nextSample == 0 || nanosSinceKeyframe >= keyframeIntervalNanos) {
+			saveKeyframe(nextSample);
+			nanosSinceKeyframe = 0;
+		}
+		long startNanos = System.nanoTime();
+		world.sampleReceived(samples.get(nextSample));
+		nanosSinceKeyframe += System.nanoTime() - startNanos;
+		++nextSample;
+	}
+
+	private void clearKeyframes() {
+		keyframes.clear();
+		keyframeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(KEYFRAME_INTERVAL_MILLIS);
+		nanosSinceKeyframe = 0;
+	}
+
+	private void saveKeyframe(int sampleIndex) {
+		List<Object> states = new ArrayList<Object>(restorables.size());
+		for (Restorable<?> restorable : restorables) {
+			states.add(restorable.saveState());
+		}
+		keyframes.put(sampleIndex, states);
+		if (keyframes.size() > MAX_KEYFRAMES) {
+			keyframeIntervalNanos *= 2;
+			boolean keep = true;
+			for (Integer index : new ArrayList<Integer>(keyframes.keySet())) {
+				if (!keep) {
+					keyframes.remove(index);
+				}
+				keep = !keep;
+			}
+		}
+	}
+
+	private void restoreKeyframe(List<Object> states) {
+		for (int i = 0; i < restorables.size(); ++i) {
+			restore(restorables.get(i), states.get(i));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void restore(Restorable<T> restorable, Object state) {
+		restorable.restoreState((T) state);
 	}
 
 	@Override
@@ -76,8 +261,11 @@ public class FileBasedSimulation implements Runnable, VisualizerConfigListener {
 				}
 				stepSimulation = true;
 			}
-			world.sampleReceived(samples.get(nextSample));
-			++nextSample;
+			synchronized (replayLock) {
+				if (nextSample < samples.size()) {
+					processNextSample();
+				}
+			}
 		}
 		active = false;
 		log.info("Stopping simulation");
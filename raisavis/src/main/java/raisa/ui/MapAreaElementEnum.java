@@ -2,6 +2,6 @@ package raisa.ui;
 
 public enum MapAreaElementEnum {
 
-	PARTICLES, ROBOT_TRAIL, ROBOT, INFRARED_SCANNER, ULTRASONIC_SCANNER, MAP, LANDMARKS;
+	PARTICLES, ROBOT_TRAIL, ROBOT, INFRARED_SCANNER, ULTRASONIC_SCANNER, MAP, LANDMARKS, LATENCY;
 	
 }
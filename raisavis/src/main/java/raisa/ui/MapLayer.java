@@ -0,0 +1,90 @@
+package raisa.ui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import raisa.util.Vector2D;
+
+/**
+ * Screen sized offscreen buffer for a slowly changing part of the map view.
+ * The layer is painted again only when its data version or the camera
+ * changes, otherwise the buffer is just drawn. When only the data version
+ * changed, a layer whose data just grows may paint the additions on top of
+ * the buffer. Accessed only from the event dispatch thread.
+ */
+/* package */ abstract class MapLayer {
+	private BufferedImage buffer;
+	private boolean valid = false;
+	private long paintedVersion;
+	private float paintedCameraX;
+	private float paintedCameraY;
+	private float paintedScale;
+
+	/**
+	 * Paints the contents of the layer in screen coordinates.
+	 */
+	protected abstract void paintLayer(Graphics2D g2);
+
+	/**
+	 * Paints what was added to the data since the layer was last painted, on
+	 * top of the earlier contents.
+	 *
+	 * @return false if the whole layer has to be painted again
+	 */
+	protected boolean paintAppended(Graphics2D g2) {
+		return false;
+	}
+
+	public void draw(Graphics2D g2, GraphicsConfiguration configuration, int width, int height, long version, Vector2D camera, float scale) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		boolean stale = !valid || camera.x != paintedCameraX || camera.y != paintedCameraY || scale != paintedScale;
+		if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height) {
+			if (configuration != null) {
+				buffer = configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+			} else {
+				buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			}
+			stale = true;
+		}
+		if (!stale && version != paintedVersion) {
+			Graphics2D bufferGraphics = buffer.createGraphics();
+			try {
+				bufferGraphics.setFont(g2.getFont());
+				stale = !paintAppended(bufferGraphics);
+			} finally {
+				bufferGraphics.dispose();
+			}
+			paintedVersion = version;
+		}
+		if (stale) {
+			Graphics2D bufferGraphics = buffer.createGraphics();
+			try {
+				bufferGraphics.setComposite(AlphaComposite.Clear);
+				bufferGraphics.fillRect(0, 0, width, height);
+				bufferGraphics.setComposite(AlphaComposite.SrcOver);
+				bufferGraphics.setFont(g2.getFont());
+				paintLayer(bufferGraphics);
+			} finally {
+				bufferGraphics.dispose();
+			}
+			valid = true;
+			paintedVersion = version;
+			paintedCameraX = camera.x;
+			paintedCameraY = camera.y;
+			paintedScale = scale;
+		}
+		g2.drawImage(buffer, 0, 0, null);
+	}
+
+	/**
+	 * Forces the layer to be painted again on the next draw.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+}
@@ -0,0 +1,151 @@
+package raisa.ui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import raisa.domain.Grid;
+
+/**
+ * Cache of the user and sensed map images pre-scaled to power of two zoom
+ * levels and split into tiles. The map is drawn from the level closest to
+ * the current zoom, so panning and zooming only blit cached tiles. Tiles
+ * remember when they were painted and only the grid regions modified after
+ * that are painted again. Accessed only from the event dispatch thread.
+ */
+public class MapTilePyramid {
+	private static final int TILE_SIZE = 256;
+	/** A map pixel per eight cells */
+	private static final int MIN_LEVEL = -3;
+	/** 32 map pixels per cell */
+	private static final int MAX_LEVEL = 5;
+	private static final int MAX_CACHED_TILES = 96;
+
+	private final Map<Long, Tile> tiles = new LinkedHashMap<Long, Tile>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+			return size() > MAX_CACHED_TILES;
+		}
+	};
+	private Grid grid;
+
+	/**
+	 * Draws the visible part of the map.
+	 *
+	 * @param originX screen position of the left edge of the grid
+	 * @param originY screen position of the top edge of the grid
+	 * @param pixelsPerCell current zoom
+	 */
+	public void draw(Graphics2D g2, GraphicsConfiguration configuration, Grid currentGrid, float originX, float originY,
+			float pixelsPerCell, int screenWidth, int screenHeight) {
+		if (grid != currentGrid) {
+			grid = currentGrid;
+			tiles.clear();
+		}
+		int level = (int) Math.ceil(Math.log(pixelsPerCell) / Math.log(2.0));
+		level = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+		float levelPixelsPerCell = (float) Math.pow(2.0, level);
+		int cellsPerTile = (int) (TILE_SIZE / levelPixelsPerCell);
+		int tilesPerSide = (Grid.GRID_SIZE + cellsPerTile - 1) / cellsPerTile;
+		float screenTileSize = TILE_SIZE * pixelsPerCell / levelPixelsPerCell;
+		int firstTileX = Math.max(0, (int) Math.floor(-originX / screenTileSize));
+		int firstTileY = Math.max(0, (int) Math.floor(-originY / screenTileSize));
+		int lastTileX = Math.min(tilesPerSide - 1, (int) Math.floor((screenWidth - originX) / screenTileSize));
+		int lastTileY = Math.min(tilesPerSide - 1, (int) Math.floor((screenHeight - originY) / screenTileSize));
+		for (int tileY = firstTileY; tileY <= lastTileY; ++tileY) {
+			for (int tileX = firstTileX; tileX <= lastTileX; ++tileX) {
+				Tile tile = getTile(configuration, level, tileX, tileY, cellsPerTile, levelPixelsPerCell);
+				int x0 = Math.round(originX + tileX * screenTileSize);
+				int y0 = Math.round(originY + tileY * screenTileSize);
+				int x1 = Math.round(originX + (tileX + 1) * screenTileSize);
+				int y1 = Math.round(originY + (tileY + 1) * screenTileSize);
+				if (x1 - x0 == TILE_SIZE && y1 - y0 == TILE_SIZE) {
+					g2.drawImage(tile.image, x0, y0, null);
+				} else {
+					g2.drawImage(tile.image, x0, y0, x1 - x0, y1 - y0, null);
+				}
+			}
+		}
+	}
+
+	private Tile getTile(GraphicsConfiguration configuration, int level, int tileX, int tileY, int cellsPerTile, float levelPixelsPerCell) {
+		long key = ((long) (level - MIN_LEVEL) << 40) | ((long) tileY << 20) | tileX;
+		Tile tile = tiles.get(key);
+		if (tile == null) {
+			tile = new Tile(configuration, tileX * cellsPerTile, tileY * cellsPerTile, cellsPerTile, levelPixelsPerCell);
+			tiles.put(key, tile);
+		}
+		tile.update();
+		return tile;
+	}
+
+	private class Tile {
+		private final BufferedImage image;
+		private final int cellX;
+		private final int cellY;
+		private final int cells;
+		private final float pixelsPerCell;
+		private int paintedModification = -1;
+
+		public Tile(GraphicsConfiguration configuration, int cellX, int cellY, int cells, float pixelsPerCell) {
+			if (configuration != null) {
+				image = configuration.createCompatibleImage(TILE_SIZE, TILE_SIZE, Transparency.TRANSLUCENT);
+			} else {
+				image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+			}
+			this.cellX = cellX;
+			this.cellY = cellY;
+			this.cells = cells;
+			this.pixelsPerCell = pixelsPerCell;
+		}
+
+		public void update() {
+			int modification = grid.getModificationCount();
+			if (modification == paintedModification) {
+				return;
+			}
+			Graphics2D g2 = image.createGraphics();
+			try {
+				int firstRegionX = cellX / Grid.REGION_SIZE;
+				int firstRegionY = cellY / Grid.REGION_SIZE;
+				int lastRegionX = Math.min(Grid.REGIONS_PER_SIDE - 1, (cellX + cells - 1) / Grid.REGION_SIZE);
+				int lastRegionY = Math.min(Grid.REGIONS_PER_SIDE - 1, (cellY + cells - 1) / Grid.REGION_SIZE);
+				for (int regionY = firstRegionY; regionY <= lastRegionY; ++regionY) {
+					for (int regionX = firstRegionX; regionX <= lastRegionX; ++regionX) {
+						if (grid.getRegionModification(regionX, regionY) > paintedModification) {
+							paintRegion(g2, regionX, regionY);
+						}
+					}
+				}
+			} finally {
+				g2.dispose();
+			}
+			paintedModification = modification;
+		}
+
+		private void paintRegion(Graphics2D g2, int regionX, int regionY) {
+			int sx0 = Math.max(cellX, regionX * Grid.REGION_SIZE);
+			int sy0 = Math.max(cellY, regionY * Grid.REGION_SIZE);
+			int sx1 = Math.min(Math.min(cellX + cells, (regionX + 1) * Grid.REGION_SIZE), Grid.GRID_SIZE);
+			int sy1 = Math.min(Math.min(cellY + cells, (regionY + 1) * Grid.REGION_SIZE), Grid.GRID_SIZE);
+			int dx0 = Math.round((sx0 - cellX) * pixelsPerCell);
+			int dy0 = Math.round((sy0 - cellY) * pixelsPerCell);
+			int dx1 = Math.round((sx1 - cellX) * pixelsPerCell);
+			int dy1 = Math.round((sy1 - cellY) * pixelsPerCell);
+			if (dx1 <= dx0 || dy1 <= dy0) {
+				return;
+			}
+			g2.setComposite(AlphaComposite.Clear);
+			g2.fillRect(dx0, dy0, dx1 - dx0, dy1 - dy0);
+			g2.setComposite(AlphaComposite.SrcOver);
+			g2.drawImage(grid.getUserImage(), dx0, dy0, dx1, dy1, sx0, sy0, sx1, sy1, null);
+			g2.drawImage(grid.getBlockedImage(), dx0, dy0, dx1, dy1, sx0, sy0, sx1, sy1, null);
+		}
+	}
+}
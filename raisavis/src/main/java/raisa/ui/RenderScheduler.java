@@ -0,0 +1,148 @@
+package raisa.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import raisa.config.VisualizerConfig;
+import raisa.config.VisualizerConfigItemEnum;
+import raisa.config.VisualizerConfigListener;
+import raisa.metrics.Gauge;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+
+/**
+ * Coalesces repaint requests from samples, config changes and other
+ * producers, and paints the requested components at most at the configured
+ * frame rate. However fast data arrives, each component is painted at most
+ * once per frame.
+ */
+public class RenderScheduler implements ActionListener, VisualizerConfigListener {
+	private static final Histogram frameTimes = MetricsRegistry.getInstance().histogram("render.frame");
+	private final Timer timer;
+	private final Set<JComponent> dirtyComponents = new LinkedHashSet<JComponent>();
+	private long frameIntervalNanos;
+	private long previousFrameStart = 0;
+
+	private volatile long renderedFrames = 0;
+	private volatile long droppedFrames = 0;
+	private volatile long coalescedRequests = 0;
+	private volatile long lastFrameTimeNanos = 0;
+	private volatile long maxFrameTimeNanos = 0;
+
+	public RenderScheduler() {
+		int framesPerSecond = VisualizerConfig.getInstance().getMaxFramesPerSecond();
+		timer = new Timer(1000 / framesPerSecond, this);
+		timer.setCoalesce(true);
+		frameIntervalNanos = 1000000000L / framesPerSecond;
+		VisualizerConfig.getInstance().addVisualizerConfigListener(this);
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		metrics.gauge("render.renderedFrames", new Gauge() {
+			@Override
+			public long getValue() {
+				return renderedFrames;
+			}
+		});
+		metrics.gauge("render.droppedFrames", new Gauge() {
+			@Override
+			public long getValue() {
+				return droppedFrames;
+			}
+		});
+		metrics.gauge("render.coalescedRequests", new Gauge() {
+			@Override
+			public long getValue() {
+				return coalescedRequests;
+			}
+		});
+	}
+
+	public void start() {
+		timer.start();
+	}
+
+	public void stop() {
+		timer.stop();
+	}
+
+	/**
+	 * Marks the component to be painted on the next frame. May be called from any thread.
+	 */
+	public void requestRepaint(JComponent component) {
+		synchronized (dirtyComponents) {
+			if (!dirtyComponents.add(component)) {
+				++coalescedRequests;
+			}
+		}
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent event) {
+		long frameStart = System.nanoTime();
+		if (previousFrameStart > 0) {
+			// ticks that could not be served in time because the previous frames took too long
+			long missedFrames = (frameStart - previousFrameStart) / frameIntervalNanos - 1;
+			if (missedFrames > 0) {
+				droppedFrames += missedFrames;
+			}
+		}
+		previousFrameStart = frameStart;
+		JComponent[] components;
+		synchronized (dirtyComponents) {
+			if (dirtyComponents.isEmpty()) {
+				return;
+			}
+			components = dirtyComponents.toArray(new JComponent[dirtyComponents.size()]);
+			dirtyComponents.clear();
+		}
+		for (JComponent component : components) {
+			if (component.isShowing()) {
+				component.paintImmediately(0, 0, component.getWidth(), component.getHeight());
+			}
+		}
+		long frameTime = System.nanoTime() - frameStart;
+		lastFrameTimeNanos = frameTime;
+		maxFrameTimeNanos = Math.max(maxFrameTimeNanos, frameTime);
+		frameTimes.record(frameTime);
+		++renderedFrames;
+	}
+
+	@Override
+	public void visualizerConfigChanged(VisualizerConfig config) {
+		if (config.isChanged(VisualizerConfigItemEnum.MAX_FRAMES_PER_SECOND)) {
+			int framesPerSecond = config.getMaxFramesPerSecond();
+			frameIntervalNanos = 1000000000L / framesPerSecond;
+			timer.setDelay(1000 / framesPerSecond);
+		}
+	}
+
+	public long getRenderedFrames() {
+		return renderedFrames;
+	}
+
+	/**
+	 * Frames that were skipped because painting could not keep up with the frame rate.
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * Repaint requests merged into an already pending frame.
+	 */
+	public long getCoalescedRequests() {
+		return coalescedRequests;
+	}
+
+	public long getLastFrameTimeNanos() {
+		return lastFrameTimeNanos;
+	}
+
+	public long getMaxFrameTimeNanos() {
+		return maxFrameTimeNanos;
+	}
+}
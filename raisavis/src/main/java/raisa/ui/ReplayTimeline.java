@@ -0,0 +1,99 @@
+package raisa.ui;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import raisa.config.InputOutputTargetEnum;
+import raisa.config.VisualizerConfig;
+
+/**
+ * Scrubber for the replayed samples. Shows the replay position and seeks
+ * when the slider is released.
+ */
+public class ReplayTimeline extends JPanel {
+	private static final long serialVersionUID = 1L;
+	private static final int UPDATE_INTERVAL_MILLIS = 250;
+
+	private final FileBasedSimulation simulation;
+	private final JSlider slider = new JSlider(0, 0, 0);
+	private final JLabel timeLabel = new JLabel(formatTime(0) + " / " + formatTime(0));
+	private boolean updatingSlider = false;
+	private int sampleCount = -1;
+	private long firstTimestamp;
+	private long lastTimestamp;
+
+	public ReplayTimeline(FileBasedSimulation simulation) {
+		super(new BorderLayout(5, 0));
+		this.simulation = simulation;
+		setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+		slider.setFocusable(false);
+		slider.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent event) {
+				if (updatingSlider) {
+					return;
+				}
+				updateTimeLabel(slider.getValue());
+				if (!slider.getValueIsAdjusting()) {
+					seek(slider.getValue());
+				}
+			}
+		});
+		add(slider, BorderLayout.CENTER);
+		add(timeLabel, BorderLayout.EAST);
+		new Timer(UPDATE_INTERVAL_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				update();
+			}
+		}).start();
+	}
+
+	private void seek(int sampleIndex) {
+		simulation.seek(sampleIndex);
+		if (VisualizerConfig.getInstance().getInputOutputTarget() == InputOutputTargetEnum.FILE_SIMULATION) {
+			simulation.start();
+		}
+	}
+
+	private void update() {
+		int count = simulation.getSampleCount();
+		if (count != sampleCount) {
+			sampleCount = count;
+			firstTimestamp = simulation.getTimestampMillis(0);
+			lastTimestamp = simulation.getTimestampMillis(count - 1);
+			updatingSlider = true;
+			slider.setMaximum(count);
+			updatingSlider = false;
+			setVisible(count > 0);
+		}
+		if (!slider.getValueIsAdjusting()) {
+			int position = simulation.getPosition();
+			if (position != slider.getValue()) {
+				updatingSlider = true;
+				slider.setValue(position);
+				updatingSlider = false;
+				updateTimeLabel(position);
+			}
+		}
+	}
+
+	private void updateTimeLabel(int sampleIndex) {
+		long timestamp = simulation.getTimestampMillis(Math.min(sampleIndex, sampleCount - 1));
+		timeLabel.setText(formatTime(timestamp - firstTimestamp) + " / " + formatTime(lastTimestamp - firstTimestamp));
+	}
+
+	private static String formatTime(long millis) {
+		long seconds = Math.max(0, millis) / 1000;
+		return String.format("%d:%02d", seconds / 60, seconds % 60);
+	}
+}
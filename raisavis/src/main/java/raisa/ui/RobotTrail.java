@@ -0,0 +1,284 @@
+package raisa.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import raisa.domain.robot.Robot;
+import raisa.domain.robot.RobotStateListener;
+import raisa.util.Vector2D;
+
+/**
+ * Drawable geometry of the estimated robot trail, appended incrementally as
+ * states arrive. The trail is split into chunks with bounding boxes so that
+ * only visible chunks are drawn, and full chunks keep simplified copies of
+ * themselves for zoomed out views. Distance markers are calculated once when
+ * the trail passes them. Points added since a given point count can be
+ * drawn on their own, so that a buffered trail only needs the new segments.
+ */
+public class RobotTrail implements RobotStateListener {
+	private static final int CHUNK_SIZE = 256;
+	private static final float MARKER_INTERVAL = 100.0f;
+	/** Coarsest simplification, in world units */
+	private static final int MAX_DETAIL_LEVEL = 10;
+	private static final float MIN_MARKER_SPACING_PIXELS = 40.0f;
+	private static final float MARKER_SIZE = 4.0f;
+
+	private final Color trailColor = Color.gray;
+	private final Color markerColor;
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+	private float[] markerXs = new float[64];
+	private float[] markerYs = new float[64];
+	private final List<String> markerLabels = new ArrayList<String>();
+	/** Index of the point each marker was placed at */
+	private int[] markerPoints = new int[64];
+	private int pointCount = 0;
+	private int clearCount = 0;
+	private volatile long version = 0;
+	private float distanceSoFar = 0.0f;
+	private float lastMarkerDistance = -MARKER_INTERVAL;
+	private boolean empty = true;
+	private float lastX;
+	private float lastY;
+	private final int[] screenXs = new int[CHUNK_SIZE];
+	private final int[] screenYs = new int[CHUNK_SIZE];
+
+	public RobotTrail(Color markerColor) {
+		this.markerColor = markerColor;
+	}
+
+	@Override
+	public void robotStateChanged(Robot newRobotState) {
+		Vector2D position = newRobotState.getEstimatedState().getPosition();
+		add(position.x, position.y);
+	}
+
+	@Override
+	public synchronized void robotStatesReplaced(List<Robot> states) {
+		clear();
+		for (Robot state : states) {
+			robotStateChanged(state);
+		}
+	}
+
+	public synchronized void clear() {
+		chunks.clear();
+		markerLabels.clear();
+		pointCount = 0;
+		++clearCount;
+		++version;
+		distanceSoFar = 0.0f;
+		lastMarkerDistance = -MARKER_INTERVAL;
+		empty = true;
+	}
+
+	public synchronized void add(float x, float y) {
+		if (!empty) {
+			distanceSoFar += (float) Math.hypot(x - lastX, y - lastY);
+		}
+		Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (chunk == null || chunk.count == CHUNK_SIZE) {
+			Chunk next = new Chunk(chunk == null ? 0 : pointCount - 1);
+			if (chunk != null) {
+				// consecutive chunks share their end points so that the line is continuous
+				next.add(lastX, lastY);
+			}
+			chunks.add(next);
+			chunk = next;
+		}
+		chunk.add(x, y);
+		if (distanceSoFar - lastMarkerDistance >= MARKER_INTERVAL) {
+			addMarker(x, y);
+		}
+		empty = false;
+		lastX = x;
+		lastY = y;
+		++pointCount;
+		++version;
+	}
+
+	/**
+	 * Changes whenever points are added or the trail is cleared.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Number of points added since the trail was last cleared.
+	 */
+	public synchronized int getPointCount() {
+		return pointCount;
+	}
+
+	/**
+	 * Number of times the trail has been cleared or replaced.
+	 */
+	public synchronized int getClearCount() {
+		return clearCount;
+	}
+
+	private void addMarker(float x, float y) {
+		int index = markerLabels.size();
+		if (index == markerXs.length) {
+			markerXs = Arrays.copyOf(markerXs, index * 2);
+			markerYs = Arrays.copyOf(markerYs, index * 2);
+		}
+		if (index == markerPoints.length) {
+			markerPoints = Arrays.copyOf(markerPoints, index * 2);
+		}
+		markerXs[index] = x;
+		markerYs[index] = y;
+		markerPoints[index] = pointCount;
+		markerLabels.add(String.format("%3.1f m", distanceSoFar / 100));
+		lastMarkerDistance = distanceSoFar;
+	}
+
+	/**
+	 * Draws the parts of the trail visible in the given world area.
+	 *
+	 * @param scale screen pixels per world unit
+	 * @param originX screen x of world x zero
+	 * @param originY screen y of world y zero
+	 */
+	public synchronized void draw(Graphics2D g2, float scale, float originX, float originY, float minX, float minY, float maxX, float maxY) {
+		float pixelSize = 1.0f / scale;
+		int level = Math.max(0, Math.min(MAX_DETAIL_LEVEL, (int) Math.floor(Math.log(pixelSize) / Math.log(2.0))));
+		g2.setColor(trailColor);
+		for (Chunk chunk : chunks) {
+			if (chunk.maxX < minX || chunk.minX > maxX || chunk.maxY < minY || chunk.minY > maxY) {
+				continue;
+			}
+			float[] xs = chunk.xs;
+			float[] ys = chunk.ys;
+			int count = chunk.count;
+			if (level > 0 && chunk.count == CHUNK_SIZE) {
+				int[] detail = chunk.getDetail(level);
+				count = detail.length;
+				for (int i = 0; i < count; ++i) {
+					screenXs[i] = (int) (xs[detail[i]] * scale + originX);
+					screenYs[i] = (int) (ys[detail[i]] * scale + originY);
+				}
+			} else {
+				for (int i = 0; i < count; ++i) {
+					screenXs[i] = (int) (xs[i] * scale + originX);
+					screenYs[i] = (int) (ys[i] * scale + originY);
+				}
+			}
+			g2.drawPolyline(screenXs, screenYs, count);
+		}
+		float minSpacing = MIN_MARKER_SPACING_PIXELS * pixelSize;
+		float previousX = Float.NaN;
+		float previousY = Float.NaN;
+		for (int i = 0; i < markerLabels.size(); ++i) {
+			float x = markerXs[i];
+			float y = markerYs[i];
+			if (x < minX || x > maxX || y < minY || y > maxY) {
+				continue;
+			}
+			if (Math.abs(x - previousX) < minSpacing && Math.abs(y - previousY) < minSpacing) {
+				// labels would overlap when zoomed out
+				continue;
+			}
+			previousX = x;
+			previousY = y;
+			drawMarker(g2, i, scale, originX, originY);
+		}
+	}
+
+	/**
+	 * Draws only the segments and markers added after the given number of
+	 * points, at full detail.
+	 *
+	 * @param clearCount {@link #getClearCount()} when the earlier points were drawn
+	 * @return false if the trail was cleared since and has to be drawn whole
+	 */
+	public synchronized boolean drawAppended(Graphics2D g2, int fromPointCount, int clearCount, float scale, float originX, float originY) {
+		if (clearCount != this.clearCount || fromPointCount > pointCount) {
+			return false;
+		}
+		// the first segment starts from the last point drawn before
+		int firstPoint = Math.max(0, fromPointCount - 1);
+		g2.setColor(trailColor);
+		for (int c = chunks.size() - 1; c >= 0; --c) {
+			Chunk chunk = chunks.get(c);
+			if (chunk.start + chunk.count - 1 <= firstPoint) {
+				break;
+			}
+			int first = Math.max(0, firstPoint - chunk.start);
+			int count = chunk.count - first;
+			if (count < 2) {
+				continue;
+			}
+			for (int i = 0; i < count; ++i) {
+				screenXs[i] = (int) (chunk.xs[first + i] * scale + originX);
+				screenYs[i] = (int) (chunk.ys[first + i] * scale + originY);
+			}
+			g2.drawPolyline(screenXs, screenYs, count);
+		}
+		for (int i = markerLabels.size() - 1; i >= 0 && markerPoints[i] >= fromPointCount; --i) {
+			drawMarker(g2, i, scale, originX, originY);
+		}
+		return true;
+	}
+
+	private void drawMarker(Graphics2D g2, int index, float scale, float originX, float originY) {
+		int screenX = (int) (markerXs[index] * scale + originX);
+		int screenY = (int) (markerYs[index] * scale + originY);
+		g2.setColor(trailColor);
+		g2.fillRect((int) (screenX - 0.5f * MARKER_SIZE), (int) (screenY - 0.5f * MARKER_SIZE), (int) MARKER_SIZE, (int) MARKER_SIZE);
+		g2.setColor(markerColor);
+		g2.drawString(markerLabels.get(index), screenX, screenY);
+	}
+
+	private static class Chunk {
+		/** Index of the first point of the chunk in the whole trail */
+		private final int start;
+		private final float[] xs = new float[CHUNK_SIZE];
+		private final float[] ys = new float[CHUNK_SIZE];
+		private int count = 0;
+		private float minX = Float.POSITIVE_INFINITY;
+		private float minY = Float.POSITIVE_INFINITY;
+		private float maxX = Float.NEGATIVE_INFINITY;
+		private float maxY = Float.NEGATIVE_INFINITY;
+		/** Indices of the simplified polylines, calculated when first needed */
+		private final int[][] details = new int[MAX_DETAIL_LEVEL + 1][];
+
+		public Chunk(int start) {
+			this.start = start;
+		}
+
+		public void add(float x, float y) {
+			xs[count] = x;
+			ys[count] = y;
+			++count;
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+
+		/**
+		 * Drops points closer than 2^level world units to the previous kept point.
+		 */
+		public int[] getDetail(int level) {
+			if (details[level] == null) {
+				float tolerance = (float) Math.pow(2.0, level);
+				int[] indices = new int[count];
+				int kept = 0;
+				indices[kept++] = 0;
+				for (int i = 1; i < count - 1; ++i) {
+					int previous = indices[kept - 1];
+					if (Math.abs(xs[i] - xs[previous]) >= tolerance || Math.abs(ys[i] - ys[previous]) >= tolerance) {
+						indices[kept++] = i;
+					}
+				}
+				indices[kept++] = count - 1;
+				details[level] = Arrays.copyOf(indices, kept);
+			}
+			return details[level];
+		}
+	}
+}
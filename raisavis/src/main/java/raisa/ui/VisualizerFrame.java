@@ -14,6 +14,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.AbstractAction;
 import javax.swing.JComponent;
@@ -23,6 +25,7 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.apache.commons.io.IOUtils;
@@ -39,10 +42,15 @@ import raisa.comms.controller.PidController;
 import raisa.comms.controller.ReplayController;
 import raisa.comms.serial.JserialSerialCommunicator;
 import raisa.config.VisualizerConfig;
+import raisa.domain.MapFile;
 import raisa.domain.WorldModel;
+import raisa.domain.checkpoint.WorldCheckpoint;
 import raisa.domain.particlefilter.ParticleFilter;
 import raisa.domain.robot.RobotStateAggregator;
 import raisa.domain.samples.Sample;
+import raisa.session.SessionArchive;
+import raisa.session.SessionArchiveReader;
+import raisa.session.SessionArchiveWriter;
 import raisa.session.SessionWriter;
 import raisa.simulator.RobotSimulator;
 import raisa.ui.controls.ControlPanel;
@@ -53,6 +61,8 @@ import raisa.ui.tool.DrawTool;
 import raisa.ui.tool.MeasureTool;
 import raisa.ui.tool.Tool;
 import raisa.ui.tool.WaypointTool;
+import raisa.util.NamedThreadFactory;
+import raisa.util.RandomUtil;
 import raisa.util.Vector2D;
 
 @SuppressWarnings(value="SE_BAD_FIELD", justification="VisualizerFrame needs not to be serializable")
@@ -79,25 +89,34 @@ public class VisualizerFrame extends JFrame {
 	private final RobotSimulator robotSimulator;
 	private final FileBasedSimulation fileBasedSimulation;
 	private final VisualizationOptionsDialog visualizationOptionsDialog;
+	private final RenderScheduler renderScheduler;
+	private final MeasurementsPanel measurementsPanel;
+	private volatile String planningStatus;
+	private final ExecutorService checkpointExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-Checkpoint"));
 
-	private final FileNameExtensionFilter mapFileFilter = new FileNameExtensionFilter("Map file (png)", "png");
+	private final FileNameExtensionFilter mapFileFilter = new FileNameExtensionFilter("Map file (png, rmap)", "png", MapFile.EXTENSION);
+	private final FileNameExtensionFilter loadMapFileFilter = new FileNameExtensionFilter("Map file (png, svg, rmap)", "png", "svg", MapFile.EXTENSION);
 	private final FileNameExtensionFilter sensorFileFilter = new FileNameExtensionFilter("Sensor file", "sensor");
-	private final FileNameExtensionFilter controlFileFilter = new FileNameExtensionFilter("Control file", "control");
+	private final FileNameExtensionFilter loadSensorFileFilter = new FileNameExtensionFilter("Sensor file or session archive", "sensor", SessionArchiveWriter.EXTENSION);
+	private final FileNameExtensionFilter controlFileFilter = new FileNameExtensionFilter("Control file or session archive", "control", SessionArchiveWriter.EXTENSION);
+	private final FileNameExtensionFilter checkpointFileFilter = new FileNameExtensionFilter("World checkpoint", WorldCheckpoint.EXTENSION);
 
 	public VisualizerFrame(final WorldModel worldModel) {
 		addIcon();
 		this.worldModel = worldModel;
-		this.particleFilter = new ParticleFilter(worldModel, nparticles);
-		this.robotStateAggregator = new RobotStateAggregator(worldModel, particleFilter, worldModel.getLandmarkManager());
+		this.particleFilter = new ParticleFilter(worldModel, nparticles, RandomUtil.newRandomGenerator());
+		this.robotStateAggregator = new RobotStateAggregator(worldModel, particleFilter, worldModel.getLandmarkManager(),
+				RandomUtil.newRandomGenerator());
 		worldModel.addSampleListener(robotStateAggregator);
 
 		robotSimulator = RobotSimulator.createRaisaInstance(new Vector2D(0, 0), 0, worldModel);
 
-		visualizerPanel = new VisualizerPanel(this, worldModel, robotSimulator);
+		renderScheduler = new RenderScheduler();
+		visualizerPanel = new VisualizerPanel(this, worldModel, robotSimulator, renderScheduler);
 		VisualizerConfig.getInstance().addVisualizerConfigListener(visualizerPanel);
 		visualizationOptionsDialog = new VisualizationOptionsDialog(this);
 
-		MeasurementsPanel measurementsPanel = new MeasurementsPanel(worldModel);
+		measurementsPanel = new MeasurementsPanel(worldModel, renderScheduler);
 		JMenuBar menuBar = new JMenuBar();
 		createMainMenu(worldModel, menuBar);
 
@@ -109,6 +128,8 @@ public class VisualizerFrame extends JFrame {
 		communicator.connect();
 
 		fileBasedSimulation = new FileBasedSimulation(worldModel);
+		fileBasedSimulation.addRestorable(particleFilter);
+		fileBasedSimulation.addRestorable(robotStateAggregator);
 
 		robotSimulator.addSensorListener(sessionWriter, worldModel);
 		basicController = new BasicController(communicator, sessionWriter, robotSimulator);
@@ -130,6 +151,7 @@ public class VisualizerFrame extends JFrame {
 		getContentPane().add(visualizerPanel, BorderLayout.CENTER);
 		getContentPane().add(controlPanel, BorderLayout.WEST);
 		getContentPane().add(measurementsPanel, BorderLayout.EAST);
+		getContentPane().add(new ReplayTimeline(fileBasedSimulation), BorderLayout.SOUTH);
 		setJMenuBar(menuBar);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
@@ -405,6 +427,20 @@ public class VisualizerFrame extends JFrame {
 				saveMap(null);
 			}
 		});
+		JMenuItem saveCheckpoint = new JMenuItem("Save checkpoint as...");
+		saveCheckpoint.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				saveCheckpoint(null);
+			}
+		});
+		JMenuItem loadCheckpoint = new JMenuItem("Load checkpoint...");
+		loadCheckpoint.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				loadCheckpoint(null);
+			}
+		});
 		JMenuItem exit = new JMenuItem("Exit");
 		exit.setMnemonic('x');
 		exit.addActionListener(new ActionListener() {
@@ -423,6 +459,9 @@ public class VisualizerFrame extends JFrame {
 		mainMenu.add(loadMap);
 		mainMenu.add(saveMapAs);
 		mainMenu.addSeparator();
+		mainMenu.add(loadCheckpoint);
+		mainMenu.add(saveCheckpoint);
+		mainMenu.addSeparator();
 		mainMenu.add(exit);
 		menuBar.add(mainMenu);
 		return mainMenu;
@@ -434,13 +473,18 @@ public class VisualizerFrame extends JFrame {
 		setVisible(true);
 		setLocationRelativeTo(null);
 		setExtendedState(JFrame.MAXIMIZED_BOTH);
+		renderScheduler.start();
+	}
+
+	public RenderScheduler getRenderScheduler() {
+		return renderScheduler;
 	}
 
 	public void loadMap(String fileName) {
 		if (fileName == null) {
 			final JFileChooser chooser = new JFileChooser(defaultDirectory);
 			chooser.setDialogTitle("Open map file");
-			chooser.setFileFilter(mapFileFilter);
+			chooser.setFileFilter(loadMapFileFilter);
 			chooser.addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent arg0) {
@@ -526,7 +570,7 @@ public class VisualizerFrame extends JFrame {
 		if (filename == null) {
 			final JFileChooser chooser = new JFileChooser(defaultDirectory);
 			chooser.setDialogTitle("Open sensor file");
-			chooser.setFileFilter(sensorFileFilter);
+			chooser.setFileFilter(loadSensorFileFilter);
 			chooser.addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent arg0) {
@@ -549,6 +593,88 @@ public class VisualizerFrame extends JFrame {
 		}
 	}
 
+	/**
+	 * The state is copied right away and written in the background.
+	 */
+	public void saveCheckpoint(String fileName) {
+		if (fileName == null) {
+			final JFileChooser chooser = new JFileChooser(defaultDirectory);
+			chooser.setDialogTitle("Save checkpoint");
+			chooser.setFileFilter(checkpointFileFilter);
+			chooser.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent arg0) {
+					if (chooser.getSelectedFile() == null) {
+						return;
+					}
+					String fileName = chooser.getSelectedFile().getAbsolutePath();
+					saveDefaultDirectory(fileName);
+					internalSaveCheckpoint(fileName);
+				}
+			});
+			chooser.showSaveDialog(this);
+		} else {
+			internalSaveCheckpoint(fileName);
+		}
+	}
+
+	private void internalSaveCheckpoint(final String fileName) {
+		final WorldCheckpoint checkpoint = WorldCheckpoint.take(worldModel, particleFilter, robotStateAggregator);
+		checkpointExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					long start = System.currentTimeMillis();
+					checkpoint.write(new File(fileName));
+					log.info("Saved checkpoint {} in {} ms", fileName, System.currentTimeMillis() - start);
+				} catch (Exception e) {
+					log.error("Saving checkpoint failed", e);
+				}
+			}
+		});
+	}
+
+	public void loadCheckpoint(String fileName) {
+		if (fileName == null) {
+			final JFileChooser chooser = new JFileChooser(defaultDirectory);
+			chooser.setDialogTitle("Open checkpoint");
+			chooser.setFileFilter(checkpointFileFilter);
+			chooser.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent arg0) {
+					if (chooser.getSelectedFile() == null) {
+						return;
+					}
+					String fileName = chooser.getSelectedFile().getAbsolutePath();
+					try {
+						saveDefaultDirectory(fileName);
+						internalLoadCheckpoint(fileName);
+					} catch (Exception e) {
+						log.error("Opening file failed", e);
+					}
+				}
+			});
+			chooser.showOpenDialog(this);
+		} else {
+			try {
+				internalLoadCheckpoint(fileName);
+			} catch (Exception e) {
+				log.error("Loading checkpoint failed", e);
+			}
+		}
+	}
+
+	private void internalLoadCheckpoint(String fileName) throws IOException {
+		long start = System.currentTimeMillis();
+		WorldCheckpoint checkpoint = WorldCheckpoint.read(new File(fileName));
+		// a running replay would keep adding samples and its keyframes belong to the replaced state
+		fileBasedSimulation.reset();
+		checkpoint.restore(worldModel, particleFilter, robotStateAggregator);
+		notifyUserEditUndoAction();
+		repaint();
+		log.info("Loaded checkpoint {} in {} ms", fileName, System.currentTimeMillis() - start);
+	}
+
 	public void loadReplay(String filename) {
 		if (filename == null) {
 			final JFileChooser chooser = new JFileChooser(defaultDirectory);
@@ -583,15 +709,11 @@ public class VisualizerFrame extends JFrame {
 	private void internalLoadReplay(String fileName) throws FileNotFoundException, IOException {
 		log.debug("Loading replay file {}", fileName);
 		List<ControlMessage> controlMessages = new ArrayList<ControlMessage>();
-		try (BufferedReader fr = new BufferedReader(new FileReader(fileName))) {
-			String line = fr.readLine();
-			while (line != null) {
-				// TODO error handling
-				ControlMessage controlMessage = ControlMessage.fromJson(line);
-				if (controlMessage != null) {
-					controlMessages.add(controlMessage);
-				}
-				line = fr.readLine();
+		for (String line : readSessionLines(fileName, false)) {
+			// TODO error handling
+			ControlMessage controlMessage = ControlMessage.fromJson(line);
+			if (controlMessage != null) {
+				controlMessages.add(controlMessage);
 			}
 		}
 		log.info("Replaying {} control messages", controlMessages.size());
@@ -600,6 +722,27 @@ public class VisualizerFrame extends JFrame {
 		replayController.start();
 	}
 
+	/**
+	 * Reads the lines of a sensor or control file, or the stream of a
+	 * session archive.
+	 */
+	private List<String> readSessionLines(String fileName, boolean sensorLines) throws IOException {
+		if (SessionArchive.isArchive(fileName)) {
+			try (SessionArchiveReader reader = new SessionArchiveReader(new File(fileName))) {
+				return sensorLines ? reader.readSensorLines() : reader.readControlLines();
+			}
+		}
+		List<String> lines = new ArrayList<String>();
+		try (BufferedReader fr = new BufferedReader(new FileReader(fileName))) {
+			String line = fr.readLine();
+			while (line != null) {
+				lines.add(line);
+				line = fr.readLine();
+			}
+		}
+		return lines;
+	}
+
 	private void internalSaveSensorSamples(String fileName) throws Exception {
 		try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
 			for (Sample sample : worldModel.getSamples()) {
@@ -613,17 +756,13 @@ public class VisualizerFrame extends JFrame {
 		List<String> sampleStrings = new ArrayList<String>();
 		SampleParser parser = new SampleParser();
 
-		try (BufferedReader fr = new BufferedReader(new FileReader(fileName))) {
-			String line = fr.readLine();
-			while (line != null) {
-				if (!parser.isValid(line)) {
-					if(line.length() > 0) {
-						log.warn("Invalid sample! \"{}\"", line);
-					}
-				} else {
-					sampleStrings.add(line);
+		for (String line : readSessionLines(fileName, true)) {
+			if (!parser.isValid(line)) {
+				if(line.length() > 0) {
+					log.warn("Invalid sample! \"{}\"", line);
 				}
-				line = fr.readLine();
+			} else {
+				sampleStrings.add(line);
 			}
 		}
 		spawnSimulationThread(sampleStrings, delayed);
@@ -631,9 +770,13 @@ public class VisualizerFrame extends JFrame {
 
 
 	public void reset() {
+		// keyframes of the replay would bring back the state before the reset
+		fileBasedSimulation.reset();
 		visualizerPanel.reset();
+		measurementsPanel.reset();
 		robotSimulator.reset();
 		particleFilter.reset();
+		robotStateAggregator.reset();
 		updateTitle();
 	}
 
@@ -677,7 +820,30 @@ public class VisualizerFrame extends JFrame {
 	}
 
 	private void updateTitle() {
-		setTitle("Raisa Visualizer - " + Math.round(visualizerPanel.getScale() * 100.0f) + "%");
+		String title = "Raisa Visualizer - " + Math.round(visualizerPanel.getScale() * 100.0f) + "%";
+		if (planningStatus != null) {
+			title += " - " + planningStatus;
+		}
+		setTitle(title);
+	}
+
+	/**
+	 * May be called from any thread. Null clears the status.
+	 */
+	public void setPlanningStatus(String planningStatus) {
+		this.planningStatus = planningStatus;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				updateTitle();
+			}
+		});
+	}
+
+	public void clearRoute() {
+		waypointTool.cancelPlanning();
+		worldModel.getMotionPlan().clearRoute();
+		repaint();
 	}
 
 	public void selectedWaypointTool() {
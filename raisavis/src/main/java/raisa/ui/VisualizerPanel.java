@@ -44,6 +44,8 @@ import raisa.domain.robot.Robot;
 import raisa.domain.robot.RobotState;
 import raisa.domain.samples.Sample;
 import raisa.domain.samples.SampleListener;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
 import raisa.simulator.RobotSimulator;
 import raisa.util.CollectionUtil;
 import raisa.util.GeometryUtil;
@@ -56,6 +58,13 @@ import edu.umd.cs.findbugs.annotations.SuppressWarnings;
 @SuppressWarnings(value="SE_BAD_FIELD", justification="VisualizerPanel needs not to be serializable")
 public class VisualizerPanel extends JPanel implements SampleListener, VisualizerConfigListener {
 	private static final long serialVersionUID = 1L;
+	private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private static final Histogram paintTime = metrics.histogram("render.map");
+	private static final Histogram renderAge = metrics.histogram("latency.sampleAge.render");
+	private static final String[] LATENCY_LABELS = { "Sample age at estimation", "Sample age at control", "Sample age at render",
+			"Control round trip" };
+	private static final Histogram[] LATENCY_HISTOGRAMS = { metrics.histogram("latency.sampleAge.estimation"),
+			metrics.histogram("latency.sampleAge.control"), renderAge, metrics.histogram("latency.controlRoundTrip") };
 	private final Color measurementColor = new Color(0.4f, 0.4f, 0.4f);
 //	private Color particleColor = new Color(0.3f, 0.3f, 0.3f);
 	private final Color mapMarkerColor = new Color(0.8f, 0.2f, 0.2f);
@@ -66,19 +75,59 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 	private Vector2D mouseDragStart = new Vector2D();
 	private boolean mouseDragging = false;
 	private float scale = 1.0f;
+	private int renderedStateVersion = -1;
 	private List<Sample> latestIR = new ArrayList<Sample>();
 	private List<Sample> latestSR = new ArrayList<Sample>();
 	private final Stroke dashed;
 	private final Stroke arrow;
+	private final Stroke reachedWaypointStroke = new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1.0f, new float[] { 10.0f }, 0.0f);
+	private final Stroke unreachedWaypointStroke = new BasicStroke(2.0f);
+	private final Stroke landmarkLineStroke = new BasicStroke(3.0f);
+	private final Stroke lineLandmarkPositionStroke = new BasicStroke(8.0f);
+	private final Stroke spikeLandmarkStroke = new BasicStroke(7.0f);
+	private final MapTilePyramid mapTilePyramid = new MapTilePyramid();
+	private final RobotTrail robotTrail = new RobotTrail(trailMarkerColor);
+	private final MapLayer trailLayer = new MapLayer() {
+		private int paintedPoints;
+		private int paintedClearCount;
+
+		@Override
+		protected void paintLayer(Graphics2D g2) {
+			// taken first, points added meanwhile are just drawn twice
+			paintedPoints = robotTrail.getPointCount();
+			paintedClearCount = robotTrail.getClearCount();
+			drawRobotTrail(g2);
+		}
+
+		@Override
+		protected boolean paintAppended(Graphics2D g2) {
+			int points = robotTrail.getPointCount();
+			if (!robotTrail.drawAppended(g2, paintedPoints, paintedClearCount, scale, getScreenOriginX(), getScreenOriginY())) {
+				return false;
+			}
+			paintedPoints = points;
+			return true;
+		}
+	};
+	private final MapLayer landmarkLayer = new MapLayer() {
+		@Override
+		protected void paintLayer(Graphics2D g2) {
+			drawLandmarks(g2);
+		}
+	};
 	private final VisualizerFrame visualizerFrame;
 	private final WorldModel worldModel;
 	private final RobotSimulator robotSimulator;
+	private final CameraImageCache cameraImages;
+	private volatile byte[] currentImageBytes;
 	private BufferedImage currentImage;
 	private final PopupMenu popupMenu = new PopupMenu();
 	private final ExecutorService updateExecutor;
+	private final RenderScheduler renderScheduler;
 
 	public void reset() {
 		worldModel.reset();
+		robotTrail.clear();
 		camera = new Vector2D();
 		mouse = new Vector2D();
 		mouseDownPosition = new Vector2D();
@@ -86,18 +135,30 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 		scale = 1.0f;
 		latestIR = new ArrayList<Sample>();
 		latestSR = new ArrayList<Sample>();
+		currentImageBytes = null;
 		currentImage = null;
+		cameraImages.clear();
+		trailLayer.invalidate();
+		landmarkLayer.invalidate();
 	}
 
 	@Override
 	public void visualizerConfigChanged(VisualizerConfig config) {
-		repaint();
+		metrics.setEnabled(this, config.getDisplayedMapAreaElements().contains(MapAreaElementEnum.LATENCY));
+		renderScheduler.requestRepaint(this);
 	}
 
-	public VisualizerPanel(VisualizerFrame frame, WorldModel worldModel, RobotSimulator robotSimulator) {
+	public VisualizerPanel(VisualizerFrame frame, WorldModel worldModel, RobotSimulator robotSimulator, RenderScheduler renderScheduler) {
 		this.visualizerFrame = frame;
+		this.renderScheduler = renderScheduler;
 		this.worldModel = worldModel;
 		this.robotSimulator = robotSimulator;
+		this.cameraImages = new CameraImageCache(CameraImageCache.DEFAULT_CAPACITY, new Runnable() {
+			@Override
+			public void run() {
+				VisualizerPanel.this.renderScheduler.requestRepaint(VisualizerPanel.this);
+			}
+		});
 		setBackground(Color.gray);
 		setFocusable(true);
 		addHierarchyBoundsListener(new PanelSizeHandler());
@@ -109,6 +170,7 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 		arrow = new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f);
 		updateExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-VisualizerPanel"));
 		worldModel.addSampleListener(this);
+		worldModel.addRobotStateListener(robotTrail);
 	}
 
 	@Override
@@ -141,15 +203,16 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 			latestSR.add(sample);
 			latestSR = CollectionUtil.takeLast(latestSR, 10);
 		}
-		if (sample.getImage() != null) {
-			currentImage = sample.getImage();
+		if (sample.getImageBytes() != null) {
+			currentImageBytes = sample.getImageBytes();
 		}
-		repaint();
+		renderScheduler.requestRepaint(this);
 	}
 
 	@Override
 	@SuppressWarnings(value = "BC_UNCONFIRMED_CAST", justification="Cast required by Java backwards compatibility")
 	public void paintComponent(Graphics g) {
+		long startNanos = metrics.startTimer();
 		Graphics2D g2 = (Graphics2D) g;
 		clearScreen(g);
 		Set<MapAreaElementEnum> mapAreaElements = VisualizerConfig.getInstance().getDisplayedMapAreaElements();
@@ -160,8 +223,10 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 				&& mapAreaElements.contains(MapAreaElementEnum.PARTICLES)) {
 			drawParticles(g2);
 		}
+		int width = getWidth();
+		int height = getHeight();
 		if(mapAreaElements.contains(MapAreaElementEnum.ROBOT_TRAIL)) {
-			drawRobotTrail(g2, worldModel.getStates());
+			trailLayer.draw(g2, getGraphicsConfiguration(), width, height, robotTrail.getVersion(), camera, scale);
 		}
 		drawOriginArrows(g2);
 		if(VisualizerConfig.getInstance().getInputOutputTarget().equals(InputOutputTargetEnum.REALTIME_SIMULATOR)) {
@@ -187,9 +252,14 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 		}
 		drawCoordinates(g2, worldMouse);
 		if (mapAreaElements.contains(MapAreaElementEnum.LANDMARKS)) {
-			drawLandmarks(g2);
+			landmarkLayer.draw(g2, getGraphicsConfiguration(), width, height, worldModel.getLandmarkManager().getVersion(), camera, scale);
 		}
 		drawCurrentImage(g2);
+		if (mapAreaElements.contains(MapAreaElementEnum.LATENCY)) {
+			drawLatencies(g2, height);
+		}
+		recordRenderAge();
+		paintTime.recordSince(startNanos);
 	}
 
 	private void drawRobotWaypoints(Graphics2D g2) {
@@ -197,8 +267,6 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 		Route route = motionPlan.getSelectedRoute();
 		Color defaultColor = g2.getColor();
 		Stroke defaultStroke = g2.getStroke();
-		Stroke reachedLineStroke = new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1.0f, new float[] { 10.0f }, 0.0f);
-		Stroke unreachedLineStroke = new BasicStroke(2.0f);
 		g2.setColor(Color.GREEN);
 		Vector2D prevPosition = null;
 		int linePointOffset = 3;
@@ -216,9 +284,9 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 					(int)position.y - linePointOffset);
 			if (prevPosition != null) {
 				if (waypoint.isReached()) {
-					g2.setStroke(reachedLineStroke);
+					g2.setStroke(reachedWaypointStroke);
 				} else {
-					g2.setStroke(unreachedLineStroke);
+					g2.setStroke(unreachedWaypointStroke);
 				}
 				g2.drawLine(
 					(int)prevPosition.x,
@@ -234,7 +302,7 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 
 	private void drawLandmarks(Graphics2D g2) {
 		List<Landmark> landmarks = worldModel.getLandmarks();
-		g2.setStroke(new BasicStroke(3.0f));
+		g2.setStroke(landmarkLineStroke);
 		for (Vector2D v : worldModel.getLandmarkManager().getRansacExtractor().getAllPoints()) {
 			g2.setColor(Color.pink);
 			Vector2D s = toScreen(v);
@@ -247,13 +315,13 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 					c = c.brighter();
 				}
 				g2.setColor(c);
-				g2.setStroke(new BasicStroke(3.0f));
+				g2.setStroke(landmarkLineStroke);
 				Segment2D segment = ((LineLandmark)landmark).getSegment();
 				Vector2D startPoint = toScreen(segment.x1, segment.y1);
 				Vector2D endPoint = toScreen(segment.x2, segment.y2);
 				g2.drawLine((int)startPoint.x, (int)startPoint.y, (int)endPoint.x, (int)endPoint.y);
 
-				g2.setStroke(new BasicStroke(8.0f));
+				g2.setStroke(lineLandmarkPositionStroke);
 				Vector2D s = toScreen(landmark.getPosition());
 				g2.drawRect((int)s.x, (int)s.y, 1, 1);
 
@@ -276,7 +344,7 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 					c = c.brighter();
 				}
 				g2.setColor(c);
-				g2.setStroke(new BasicStroke(7.0f));
+				g2.setStroke(spikeLandmarkStroke);
 				Vector2D s = toScreen(landmark);
 				g2.drawRect((int)s.x, (int)s.y, 1, 1);
 			}
@@ -284,11 +352,47 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 	}
 
 	private void drawCurrentImage(Graphics2D g2) {
+		// the previous frame is shown until the latest one has been decoded
+		BufferedImage image = cameraImages.getImage(currentImageBytes);
+		if (image != null) {
+			currentImage = image;
+		}
 		if (currentImage != null) {
 			g2.drawImage(currentImage, 0, 0, null);
 		}
 	}
 
+	/**
+	 * Only the first frame showing a state counts, repainting an old state
+	 * while no samples arrive is not rendering latency.
+	 */
+	private void recordRenderAge() {
+		int stateVersion = worldModel.getStateVersion();
+		if (stateVersion != renderedStateVersion) {
+			renderedStateVersion = stateVersion;
+			renderAge.recordSince(worldModel.getLatestState().getSampleReceivedNanos());
+		}
+	}
+
+	private void drawLatencies(Graphics2D g2, int height) {
+		int lineHeight = g2.getFontMetrics().getHeight();
+		int top = height - lineHeight * LATENCY_LABELS.length - 10;
+		g2.setColor(new Color(1.0f, 1.0f, 1.0f, 0.7f));
+		g2.fillRect(5, top - 5, 420, lineHeight * LATENCY_LABELS.length + 10);
+		g2.setColor(Color.BLACK);
+		for (int i = 0; i < LATENCY_LABELS.length; ++i) {
+			Histogram histogram = LATENCY_HISTOGRAMS[i];
+			String text;
+			if (histogram.getCount() == 0) {
+				text = String.format("%s: -", LATENCY_LABELS[i]);
+			} else {
+				text = String.format("%s: p50 %.1f ms, p99 %.1f ms, max %.1f ms", LATENCY_LABELS[i],
+						histogram.getPercentile(50.0) / 1e6, histogram.getPercentile(99.0) / 1e6, histogram.getMax() / 1e6);
+			}
+			g2.drawString(text, 10, top + lineHeight * (i + 1) - 3);
+		}
+	}
+
 	private void drawOriginArrows(Graphics2D g2) {
 		Vector2D origin = toScreen(0, 0);
 		g2.setColor(mapMarkerColor);
@@ -348,33 +452,23 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 		}
 	}
 
-	private void drawRobotTrail(Graphics2D g2, List<Robot> states) {
-		RobotState lastState = null;
-		float distanceSoFar = 0.0f;
-		float lastDistanceString = -100.0f;
-		boolean drawDistanceString = false;
-		float distanceMarkerSize = 4.0f;
-		for (Robot state : states) {
-			RobotState estimatedState = state.getEstimatedState();
-			g2.setColor(Color.gray);
-			if (lastState != null) {
-				drawLine(g2, lastState.getPosition(), estimatedState.getPosition());
-				distanceSoFar += lastState.getPosition().distance(estimatedState.getPosition());
-			}
-			if (distanceSoFar - lastDistanceString >= 100.0f) {
-				drawDistanceString = true;
-			}
-			if (drawDistanceString) {
-				String distanceString = String.format("%3.1f m", distanceSoFar / 100);
-				Vector2D screenPosition = toScreen(estimatedState.getPosition());
-				g2.fillRect((int)(screenPosition.x - 0.5f * distanceMarkerSize), (int)(screenPosition.y - 0.5f * distanceMarkerSize), (int)distanceMarkerSize, (int)distanceMarkerSize);
-				g2.setColor(trailMarkerColor);
-				g2.drawString(distanceString, (int)screenPosition.x, (int)screenPosition.y);
-				drawDistanceString = false;
-				lastDistanceString = distanceSoFar;
-			}
-			lastState = estimatedState;
-		}
+	private void drawRobotTrail(Graphics2D g2) {
+		int screenWidth = getBounds().width;
+		int screenHeight = getBounds().height;
+		Vector2D topLeft = toWorld(new Vector2D(0.0f, 0.0f));
+		Vector2D bottomRight = toWorld(new Vector2D(screenWidth, screenHeight));
+		robotTrail.draw(g2, scale, getScreenOriginX(), getScreenOriginY(), topLeft.x, topLeft.y, bottomRight.x, bottomRight.y);
+	}
+
+	/**
+	 * Screen x of world x zero.
+	 */
+	private float getScreenOriginX() {
+		return 0.5f * getBounds().width - camera.x * scale;
+	}
+
+	private float getScreenOriginY() {
+		return 0.5f * getBounds().height - camera.y * scale;
 	}
 
 	private void drawLine(Graphics2D g2, Vector2D from, Vector2D to) {
@@ -392,9 +486,7 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 	private void drawGrid(Graphics2D g2) {
 		float size = Grid.GRID_SIZE * Grid.CELL_SIZE;
 		Vector2D screen = toScreen(new Vector2D(- size * 0.5f, - size * 0.5f));
-		int screenSize = (int)toScreen(size);
-		g2.drawImage(worldModel.getUserImage(), (int)screen.x, (int)screen.y, screenSize, screenSize, null);
-		g2.drawImage(worldModel.getBlockedImage(), (int)screen.x, (int)screen.y, screenSize, screenSize, null);
+		mapTilePyramid.draw(g2, getGraphicsConfiguration(), worldModel.getGrid(), screen.x, screen.y, toScreen(Grid.CELL_SIZE), getWidth(), getHeight());
 	}
 
 	private void drawIrResults(Graphics2D g2) {
@@ -642,7 +734,7 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 			mouse.x = mouseEvent.getX();
 			mouse.y = mouseEvent.getY();
 			visualizerFrame.getCurrentTool().mouseMoved(mouseEvent, mouse);
-			repaint();
+			renderScheduler.requestRepaint(VisualizerPanel.this);
 		}
 
 		@Override
@@ -652,7 +744,7 @@ public class VisualizerPanel extends JPanel implements SampleListener, Visualize
 			visualizerFrame.getCurrentTool().mouseDragged(mouseEvent, mouseDragStart, mouse);
 			mouseDragStart.x = mouse.x;
 			mouseDragStart.y = mouse.y;
-			repaint();
+			renderScheduler.requestRepaint(VisualizerPanel.this);
 		}
 	}
 
@@ -40,7 +40,7 @@ public class AlgorithmSelectionPanel extends ControlSubPanel implements Visualiz
 
 	private void createLocalizationModeControl() {
 		final JLabel label = new JLabel("Localization:");
-		final String[] targets = { "None", "Particle filter", "SLAM" };
+		final String[] targets = { "None", "Particle filter", "SLAM", "Scan matching" };
 		localizationModeBox = new JComboBox<>(targets);
 		localizationModeBox.setAlignmentX(Component.LEFT_ALIGNMENT);
 		final VisualizerConfig config = VisualizerConfig.getInstance();
@@ -55,9 +55,12 @@ public class AlgorithmSelectionPanel extends ControlSubPanel implements Visualiz
 				case 1:
 					config.setLocalizationMode(LocalizationModeEnum.PARTICLE_FILTER);
 					break;
-				default:
+				case 2:
 					config.setLocalizationMode(LocalizationModeEnum.SLAM);
 					break;
+				default:
+					config.setLocalizationMode(LocalizationModeEnum.SCAN_MATCHING);
+					break;
 				}
 				config.notifyVisualizerConfigListeners();
 			}
@@ -88,8 +88,7 @@ public class MovementPanel extends ControlSubPanel {
 		clearWaypoints.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent event) {
-				world.getMotionPlan().clearRoute();
-				frame.repaint();
+				frame.clearRoute();
 			}
 		});
 		clearWaypoints.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -19,8 +19,8 @@ public class DistanceSensorStatusPanel extends MeasurementSubPanel {
 	private SingleDistanceSensorStatusPanel ultrasonicSensor1Status = new SingleDistanceSensorStatusPanel("US1");
 	private SingleDistanceSensorStatusPanel ultrasonicSensor2Status = new SingleDistanceSensorStatusPanel("US2");
 	
-	public DistanceSensorStatusPanel(WorldModel worldModel) {
-		super(worldModel);
+	public DistanceSensorStatusPanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
 		TitledBorder border = new TitledBorder("Distance sensor status");
 		setBorder(border);
 		this.setLayout(new GridLayout(2,2));
@@ -45,7 +45,6 @@ public class DistanceSensorStatusPanel extends MeasurementSubPanel {
 		irSensor2Status.setStatusOk(sample.isInfrared2MeasurementValid());
 		ultrasonicSensor1Status.setStatusOk(sample.isUltrasound1MeasurementValid());
 		ultrasonicSensor2Status.setStatusOk(sample.isUltrasound2MeasurementValid());
-		repaint();
 	}
 
 	private class SingleDistanceSensorStatusPanel extends JPanel {
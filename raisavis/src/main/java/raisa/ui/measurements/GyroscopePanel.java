@@ -3,15 +3,11 @@ package raisa.ui.measurements;
 import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.text.DecimalFormat;
-import java.util.LinkedList;
-import java.util.List;
 
 import javax.swing.border.TitledBorder;
 
 import raisa.domain.WorldModel;
 import raisa.domain.samples.Sample;
-import raisa.ui.measurements.MeasurementGraphPanel;
-import raisa.util.Vector3D;
 
 /* package */ class GyroscopePanel extends MeasurementSubPanel {
 	private static final long serialVersionUID = 1L;
@@ -19,22 +15,23 @@ import raisa.util.Vector3D;
 	private MeasurementGraphPanel xPanel;
 	private MeasurementGraphPanel yPanel;
 	private MeasurementGraphPanel zPanel;
+	private final DecimalFormat format = new DecimalFormat("0.000");
 
-	public GyroscopePanel(WorldModel worldModel) {
-		super(worldModel);
+	public GyroscopePanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
 		this.setMinimumSize(new Dimension(190, 150));
 		this.setPreferredSize(new Dimension(190, 150));
 		this.setMaximumSize(new Dimension(190, 150));
 		TitledBorder border = new TitledBorder("Gyroscope (dps)");
 		setBorder(border);
 		setLayout(new GridLayout(3, 1));
-		xPanel = new MeasurementGraphPanel(20f);
+		xPanel = new MeasurementGraphPanel(telemetry.getChannel(TelemetryChannelEnum.GYRO_X), 20f);
 		xPanel.setTextValue("X: -");
 		xPanel.setAlignmentX(LEFT_ALIGNMENT);
-		yPanel = new MeasurementGraphPanel(20f);
+		yPanel = new MeasurementGraphPanel(telemetry.getChannel(TelemetryChannelEnum.GYRO_Y), 20f);
 		yPanel.setTextValue("Y: -");
 		yPanel.setAlignmentX(LEFT_ALIGNMENT);
-		zPanel = new MeasurementGraphPanel(20f);
+		zPanel = new MeasurementGraphPanel(telemetry.getChannel(TelemetryChannelEnum.GYRO_Z), 20f);
 		zPanel.setTextValue("Z: -");
 		zPanel.setAlignmentX(LEFT_ALIGNMENT);
 		this.add(xPanel);
@@ -44,25 +41,9 @@ import raisa.util.Vector3D;
 
 	@Override
 	public void update(Sample sample) {
-		DecimalFormat format = new DecimalFormat("0.000");
-		Vector3D latestRotation = sample.getGyro();
-		xPanel.setTextValue("X: " + format.format(latestRotation.getX()));
-		yPanel.setTextValue("Y: " + format.format(latestRotation.getY()));
-		zPanel.setTextValue("Z: " + format.format(latestRotation.getZ()));
-		List<Sample> samples = worldModel.getLastSamples(90);
-		List<Float> samplesX = new LinkedList<Float>();
-		List<Float> samplesY = new LinkedList<Float>();
-		List<Float> samplesZ = new LinkedList<Float>();
-		for (Sample s : samples) {
-			Vector3D sampleRotation = s.getGyro();
-			samplesX.add(sampleRotation.getX());
-			samplesY.add(sampleRotation.getY());
-			samplesZ.add(sampleRotation.getZ());
-		}
-		xPanel.setMeasurements(samplesX);
-		yPanel.setMeasurements(samplesY);
-		zPanel.setMeasurements(samplesZ);
-		repaint();
+		xPanel.setTextValue("X: " + format.format(telemetry.getChannel(TelemetryChannelEnum.GYRO_X).getLatest()));
+		yPanel.setTextValue("Y: " + format.format(telemetry.getChannel(TelemetryChannelEnum.GYRO_Y).getLatest()));
+		zPanel.setTextValue("Z: " + format.format(telemetry.getChannel(TelemetryChannelEnum.GYRO_Z).getLatest()));
 	}
 
 	@Override
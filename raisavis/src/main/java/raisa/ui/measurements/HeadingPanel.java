@@ -24,11 +24,12 @@ import raisa.domain.samples.Sample;
 	private JLabel headingMeasuredField;
 	private JLabel headingEstimatedField;		
 	private HeadingArrowDisplayPanel arrowDisplayPanel;
+	private final DecimalFormat format = new DecimalFormat("000");
 	private static final Color estimationColor = Color.blue;
 	private static final Color measurmentColor = new Color(10, 200, 10);
 	
-	public HeadingPanel(WorldModel worldModel) {
-		super(worldModel);
+	public HeadingPanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
 		this.setMinimumSize(new Dimension(190, 190));
 		this.setPreferredSize(getMinimumSize());
 		this.setMaximumSize(getMinimumSize());
@@ -57,18 +58,13 @@ import raisa.domain.samples.Sample;
 
 	@Override
 	public void update(Sample sample) {
-		double compassHeading = Math.toDegrees(sample.getCompassDirection()) % 360;
-		double estimatedHeading = Math.toDegrees(worldModel.getLatestState().getEstimatedState().getHeading()) % 360;
-		if (estimatedHeading < 0) {
-			estimatedHeading += 360;
-		}
+		double compassHeading = telemetry.getChannel(TelemetryChannelEnum.COMPASS_HEADING).getLatest();
+		double estimatedHeading = telemetry.getChannel(TelemetryChannelEnum.ESTIMATED_HEADING).getLatest();
 		updateLabels(compassHeading, estimatedHeading);
 		arrowDisplayPanel.update(compassHeading, estimatedHeading);
-		repaint();
 	}
 
 	private void updateLabels(double compassHeading, double estimatedHeading) {
-		DecimalFormat format = new DecimalFormat("000");
 		headingMeasuredField.setText("Comp: " + format.format(compassHeading));
 		headingEstimatedField.setText("Est: " + format.format(estimatedHeading));
 	}
@@ -88,7 +84,6 @@ import raisa.domain.samples.Sample;
 		public void update(double compassHeading, double estimatedHeading) {
 			this.compassHeading = compassHeading;
 			this.estimatedHeading = estimatedHeading;
-			repaint();
 		}
 		@Override
 		protected void paintComponent(Graphics g) {
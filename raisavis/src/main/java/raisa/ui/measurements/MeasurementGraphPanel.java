@@ -2,22 +2,33 @@ package raisa.ui.measurements;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.util.LinkedList;
-import java.util.List;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
+/**
+ * Label and a bar graph of the recent values of a telemetry channel. Each
+ * pixel column shows the range of the values it covers, so painting takes
+ * the same time however long the window is.
+ */
 public class MeasurementGraphPanel extends JPanel {
 	private static final long serialVersionUID = 1L;
+	private static final int GRAPH_X = 75;
+	private static final int GRAPH_WIDTH = 110;
+	private static final int BASELINE_Y = 20;
+	/** Samples shown in the graph */
+	private static final int DEFAULT_WINDOW_LENGTH = 440;
 
 	private JLabel textField;
-	private List<Float> measurements = new LinkedList<Float>();
+	private final TelemetryChannel channel;
 	private float scaleFactor;
+	private int windowLength = DEFAULT_WINDOW_LENGTH;
+	private final float[] columnMins = new float[GRAPH_WIDTH];
+	private final float[] columnMaxs = new float[GRAPH_WIDTH];
 
-	public MeasurementGraphPanel(float scaleFactor) {
+	public MeasurementGraphPanel(TelemetryChannel channel, float scaleFactor) {
 		setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
 		textField = new JLabel();
 		textField.setAlignmentX(LEFT_ALIGNMENT);
@@ -25,6 +36,7 @@ public class MeasurementGraphPanel extends JPanel {
 		this.add(textField);
 		this.setPreferredSize(new Dimension(190, 40));
 		this.setMaximumSize(new Dimension(190, 40));
+		this.channel = channel;
 		this.scaleFactor = scaleFactor;
 	}
 
@@ -32,20 +44,23 @@ public class MeasurementGraphPanel extends JPanel {
 		textField.setText(text);
 	}
 
+	public void setWindowLength(int windowLength) {
+		this.windowLength = Math.min(windowLength, channel.getCapacity());
+	}
+
 	@Override
 	public Dimension getPreferredSize() {
 		return new Dimension(190, 40);
 	}
 
-	public void setMeasurements(List<Float> measurements) {
-		this.measurements = measurements;
-	}
-
 	@Override
 	protected void paintComponent(Graphics g) {
 		super.paintComponent(g);
-		for (int i = 0; i < measurements.size(); i++) {
-			g.drawLine(75 + i, 20, 75 + i, 20 + (int) (scaleFactor * measurements.get(i).floatValue()));
+		int columns = channel.getColumns(windowLength, GRAPH_WIDTH, columnMins, columnMaxs);
+		for (int i = 0; i < columns; i++) {
+			int y0 = BASELINE_Y + (int) (scaleFactor * Math.min(0.0f, columnMins[i]));
+			int y1 = BASELINE_Y + (int) (scaleFactor * Math.max(0.0f, columnMaxs[i]));
+			g.drawLine(GRAPH_X + i, y0, GRAPH_X + i, y1);
 		}
 	}
 
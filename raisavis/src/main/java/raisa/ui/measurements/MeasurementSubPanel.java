@@ -9,12 +9,14 @@ import raisa.domain.samples.Sample;
 	private static final long serialVersionUID = 1L;
 	
 	protected WorldModel worldModel;
+	protected Telemetry telemetry;
 	protected MeasurementTypeEnum panelType;
 	protected boolean isDisplayed;
 	
-	public MeasurementSubPanel(WorldModel worldModel) {
+	public MeasurementSubPanel(WorldModel worldModel, Telemetry telemetry) {
 		super();
 		this.worldModel = worldModel;
+		this.telemetry = telemetry;
 	}
 		
 	public boolean isDisplayed() {
@@ -27,6 +29,11 @@ import raisa.domain.samples.Sample;
 	
 	protected abstract MeasurementTypeEnum getMeasurementSubPanelType();
 	
+	/**
+	 * Updates the displayed values. Called at most at the display frame rate
+	 * with the latest sample, older samples are only seen through the
+	 * telemetry channels.
+	 */
 	protected abstract void update(Sample sample);
 		
 }
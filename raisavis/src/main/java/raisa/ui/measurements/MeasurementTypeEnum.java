@@ -2,6 +2,6 @@ package raisa.ui.measurements;
 
 public enum MeasurementTypeEnum {
 
-	ACCELERATION, GYROSCOPE, HEADING, ODOMETER, SOUND, SPEED, SAMPLE_COUNTER, DISTANCE_SENSOR_STATUS;
+	ACCELERATION, GYROSCOPE, HEADING, ODOMETER, SOUND, SPEED, SAMPLE_COUNTER, DISTANCE_SENSOR_STATUS, PIPELINE_METRICS;
 	
 }
@@ -4,8 +4,9 @@ import java.awt.Dimension;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.BoxLayout;
 import javax.swing.JPanel;
@@ -17,15 +18,28 @@ import raisa.config.VisualizerConfigListener;
 import raisa.domain.WorldModel;
 import raisa.domain.samples.Sample;
 import raisa.domain.samples.SampleListener;
+import raisa.ui.RenderScheduler;
 import raisa.util.NamedThreadFactory;
 
 public class MeasurementsPanel extends JPanel implements SampleListener, VisualizerConfigListener {
 	private static final long serialVersionUID = 1L;
 
+	/** Samples kept for the graphs */
+	private static final int TELEMETRY_CAPACITY = 4096;
+
 	private final List<MeasurementSubPanel> subpanels = new ArrayList<MeasurementSubPanel>();
-	private final ExecutorService updateExecutor;
+	private final ScheduledExecutorService updateExecutor;
+	private final RenderScheduler renderScheduler;
+	private final WorldModel worldModel;
+	private final Telemetry telemetry = new Telemetry(TELEMETRY_CAPACITY);
+	// accessed only from the update executor
+	private Sample latestSample;
+	private boolean displayUpdateScheduled = false;
+	private long latestDisplayUpdateNanos = 0;
 
-	public MeasurementsPanel(WorldModel worldModel) {
+	public MeasurementsPanel(WorldModel worldModel, RenderScheduler renderScheduler) {
+		this.worldModel = worldModel;
+		this.renderScheduler = renderScheduler;
 		TitledBorder border = new TitledBorder("Measurements");
 		setBorder(border);
 		setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
@@ -34,18 +48,19 @@ public class MeasurementsPanel extends JPanel implements SampleListener, Visuali
 		this.setMinimumSize(getPreferredSize());
 		this.setMaximumSize(getPreferredSize());
 
-		subpanels.add(new HeadingPanel(worldModel));
-		subpanels.add(new SpeedPanel(worldModel));
-		subpanels.add(new OdometerPanel(worldModel));
-		subpanels.add(new DistanceSensorStatusPanel(worldModel));
-		subpanels.add(new AccelerationPanel(worldModel));
-		subpanels.add(new GyroscopePanel(worldModel));
-		subpanels.add(new SoundPanel(worldModel));
-		subpanels.add(new SampleCounterPanel(worldModel));
+		subpanels.add(new HeadingPanel(worldModel, telemetry));
+		subpanels.add(new SpeedPanel(worldModel, telemetry));
+		subpanels.add(new OdometerPanel(worldModel, telemetry));
+		subpanels.add(new DistanceSensorStatusPanel(worldModel, telemetry));
+		subpanels.add(new AccelerationPanel(worldModel, telemetry));
+		subpanels.add(new GyroscopePanel(worldModel, telemetry));
+		subpanels.add(new SoundPanel(worldModel, telemetry));
+		subpanels.add(new SampleCounterPanel(worldModel, telemetry));
+		subpanels.add(new PipelineMetricsPanel(worldModel, telemetry));
 
 		this.setDisplayedPanels(VisualizerConfig.getInstance());
 		VisualizerConfig.getInstance().addVisualizerConfigListener(this);
-		updateExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("raisavis-MeasurementsPanel"));
+		updateExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("raisavis-MeasurementsPanel"));
 		worldModel.addSampleListener(this);
 	}
 
@@ -54,12 +69,44 @@ public class MeasurementsPanel extends JPanel implements SampleListener, Visuali
 		updateExecutor.submit(new Runnable() {
 			@Override
 			public void run() {
-				for (MeasurementSubPanel subpanel : subpanels) {
-					if (subpanel.isDisplayed()) {
-						subpanel.update(sample);
-					}
+				telemetry.add(sample, worldModel.getLatestState());
+				latestSample = sample;
+				if (!displayUpdateScheduled) {
+					// values are formatted at most once per displayed frame
+					long interval = TimeUnit.SECONDS.toNanos(1) / VisualizerConfig.getInstance().getMaxFramesPerSecond();
+					long delay = Math.max(0, latestDisplayUpdateNanos + interval - System.nanoTime());
+					displayUpdateScheduled = true;
+					updateExecutor.schedule(displayUpdate, delay, TimeUnit.NANOSECONDS);
+				}
+			}
+		});
+	}
+
+	private final Runnable displayUpdate = new Runnable() {
+		@Override
+		public void run() {
+			displayUpdateScheduled = false;
+			latestDisplayUpdateNanos = System.nanoTime();
+			if (latestSample == null) {
+				return;
+			}
+			for (MeasurementSubPanel subpanel : subpanels) {
+				if (subpanel.isDisplayed()) {
+					subpanel.update(latestSample);
 				}
 			}
+			renderScheduler.requestRepaint(MeasurementsPanel.this);
+		}
+	};
+
+	public void reset() {
+		updateExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				telemetry.clear();
+				latestSample = null;
+				renderScheduler.requestRepaint(MeasurementsPanel.this);
+			}
 		});
 	}
 
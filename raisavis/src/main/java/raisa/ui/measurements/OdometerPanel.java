@@ -16,9 +16,10 @@ import raisa.domain.samples.Sample;
 	
 	private JLabel measuredDistance;
 	private JLabel estimatedDistance;
+	private final DecimalFormat format = new DecimalFormat("###.00");
 	
-	public OdometerPanel(WorldModel worldModel) {
-		super(worldModel);
+	public OdometerPanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
 		this.setMinimumSize(new Dimension(190, 60));
 		this.setPreferredSize(getMinimumSize());
 		this.setMaximumSize(getMinimumSize());
@@ -35,11 +36,9 @@ import raisa.domain.samples.Sample;
 	
 	@Override
 	public void update(Sample sample) {
-		DecimalFormat format = new DecimalFormat("###.00");
 		Robot lastRobot = worldModel.getLatestState();
 		measuredDistance.setText(format.format(lastRobot.getMeasuredState().getOdometer() / 100.0f) + " (encoders)");
 		estimatedDistance.setText(format.format(lastRobot.getEstimatedState().getOdometer() / 100.0f) + " (estimated)");
-		repaint();
 	}
 
 	@Override
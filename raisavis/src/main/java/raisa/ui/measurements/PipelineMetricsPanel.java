@@ -0,0 +1,66 @@
+package raisa.ui.measurements;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.util.Map;
+
+import javax.swing.JLabel;
+import javax.swing.border.TitledBorder;
+
+import raisa.domain.WorldModel;
+import raisa.domain.samples.Sample;
+import raisa.metrics.Histogram;
+import raisa.metrics.MetricsRegistry;
+
+/**
+ * Mean and 99th percentile time of each stage of the sample pipeline and
+ * of rendering. Displaying the panel turns metrics on, hiding it turns
+ * them off again unless something else still wants them.
+ */
+/* package */ class PipelineMetricsPanel extends MeasurementSubPanel {
+	private static final long serialVersionUID = 1L;
+
+	private final JLabel metricsField;
+
+	public PipelineMetricsPanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
+		this.setMinimumSize(new Dimension(220, 220));
+		this.setPreferredSize(getMinimumSize());
+		this.setMaximumSize(getMinimumSize());
+		TitledBorder border = new TitledBorder("Pipeline (mean / p99 ms)");
+		setBorder(border);
+		metricsField = new JLabel("-");
+		metricsField.setFont(metricsField.getFont().deriveFont(Font.PLAIN, 10.0f));
+		metricsField.setVerticalAlignment(JLabel.TOP);
+		metricsField.setToolTipText("Also readable through JMX as " + MetricsRegistry.OBJECT_NAME);
+		this.add(metricsField);
+	}
+
+	@Override
+	public void setDisplayed(boolean isDisplayed) {
+		super.setDisplayed(isDisplayed);
+		MetricsRegistry.getInstance().setEnabled(this, isDisplayed);
+	}
+
+	@Override
+	public void update(Sample sample) {
+		StringBuilder text = new StringBuilder("<html><table cellspacing=0 cellpadding=0>");
+		for (Map.Entry<String, Histogram> entry : MetricsRegistry.getInstance().getHistograms().entrySet()) {
+			Histogram histogram = entry.getValue();
+			if (histogram.getCount() == 0) {
+				continue;
+			}
+			text.append("<tr><td>").append(entry.getKey()).append("</td><td align=right>")
+					.append(String.format("%.2f / %.2f", histogram.getMean() / 1e6, histogram.getPercentile(99.0) / 1e6))
+					.append("</td></tr>");
+		}
+		text.append("</table></html>");
+		metricsField.setText(text.toString());
+	}
+
+	@Override
+	protected MeasurementTypeEnum getMeasurementSubPanelType() {
+		return MeasurementTypeEnum.PIPELINE_METRICS;
+	}
+
+}
@@ -1,7 +1,5 @@
 package raisa.ui.measurements;
 
-import static java.lang.System.currentTimeMillis;
-
 import java.awt.Dimension;
 import java.awt.GridLayout;
 
@@ -17,12 +15,9 @@ import raisa.domain.samples.Sample;
 	private final JLabel sentField;
 	private final JLabel receivedField;
 	private final JLabel receivedPerSecondField;
-	private int counter = 0;
-	private long windowStartTime = currentTimeMillis() / 1000;
-	private int samplesAfterWindowStart = 0;
 
-	public SampleCounterPanel(WorldModel worldModel) {
-		super(worldModel);
+	public SampleCounterPanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
 		this.setMinimumSize(new Dimension(220, 60));
 		this.setPreferredSize(getMinimumSize());
 		this.setMaximumSize(getMinimumSize());
@@ -45,18 +40,13 @@ import raisa.domain.samples.Sample;
 
 	@Override
 	public void update(Sample sample) {
-		long currentTime = currentTimeMillis() / 1000;
-		if (currentTime != windowStartTime) {
-			receivedPerSecondField.setText("Recv/s: " + samplesAfterWindowStart);
-			windowStartTime = currentTime;
-			samplesAfterWindowStart = 0;
+		float samplesPerSecond = telemetry.getChannel(TelemetryChannelEnum.SAMPLE_RATE).getLatest();
+		if (!Float.isNaN(samplesPerSecond)) {
+			receivedPerSecondField.setText("Recv/s: " + (int) samplesPerSecond);
 		}
-		samplesAfterWindowStart++;
-		counter++;
 		String sent = sample.getMessageNumber() > 0 ? "" + sample.getMessageNumber() : "-";
 		sentField.setText("Sent: " + sent);
-		receivedField.setText("Recv: " + counter);
-		repaint();
+		receivedField.setText("Recv: " + telemetry.getSampleCount());
 	}
 
 	@Override
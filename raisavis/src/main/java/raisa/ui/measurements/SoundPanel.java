@@ -3,8 +3,6 @@ package raisa.ui.measurements;
 import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.text.DecimalFormat;
-import java.util.LinkedList;
-import java.util.List;
 
 import javax.swing.border.TitledBorder;
 
@@ -15,16 +13,17 @@ import raisa.domain.samples.Sample;
 	private static final long serialVersionUID = 1L;
 
 	private MeasurementGraphPanel soundGraphPanel;
+	private final DecimalFormat format = new DecimalFormat("000");
 
-	public SoundPanel(WorldModel worldModel) {
-		super(worldModel);
+	public SoundPanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
 		this.setMinimumSize(new Dimension(190, 70));
 		this.setPreferredSize(new Dimension(190, 70));
 		this.setMaximumSize(new Dimension(190, 70));
 		TitledBorder border = new TitledBorder("Sound intensity");
 		setBorder(border);
 		setLayout(new GridLayout(1, 1));
-		soundGraphPanel = new MeasurementGraphPanel(-0.3f);
+		soundGraphPanel = new MeasurementGraphPanel(telemetry.getChannel(TelemetryChannelEnum.SOUND_INTENSITY), -0.3f);
 		soundGraphPanel.setTextValue("Value: -");
 		soundGraphPanel.setAlignmentX(LEFT_ALIGNMENT);
 		this.add(soundGraphPanel);
@@ -32,15 +31,7 @@ import raisa.domain.samples.Sample;
 
 	@Override
 	public void update(Sample sample) {
-		DecimalFormat format = new DecimalFormat("000");
 		soundGraphPanel.setTextValue("Value: " + format.format(sample.getSoundIntensity()));
-		List<Sample> samples = worldModel.getLastSamples(90);
-		List<Float> soundIntensities = new LinkedList<Float>();
-		for (Sample s : samples) {
-			soundIntensities.add((float) s.getSoundIntensity());
-		}
-		soundGraphPanel.setMeasurements(soundIntensities);
-		repaint();
 	}
 
 	@Override
@@ -8,7 +8,6 @@ import javax.swing.JLabel;
 import javax.swing.border.TitledBorder;
 
 import raisa.domain.WorldModel;
-import raisa.domain.robot.RobotState;
 import raisa.domain.samples.Sample;
 
 /* package */ class SpeedPanel extends MeasurementSubPanel {
@@ -16,9 +15,10 @@ import raisa.domain.samples.Sample;
 
 	private JLabel speedMeasuredField;
 	private JLabel speedEstimatedField;
+	private final DecimalFormat format = new DecimalFormat("0.000");
 
-	public SpeedPanel(WorldModel worldModel) {
-		super(worldModel);
+	public SpeedPanel(WorldModel worldModel, Telemetry telemetry) {
+		super(worldModel, telemetry);
 		this.setMinimumSize(new Dimension(190, 65));
 		this.setPreferredSize(getMinimumSize());
 		this.setMaximumSize(getMinimumSize());
@@ -35,12 +35,10 @@ import raisa.domain.samples.Sample;
 
 	@Override
 	public void update(Sample sample) {
-		DecimalFormat format = new DecimalFormat("0.000");
-		RobotState measuredState = worldModel.getLatestState().getMeasuredState();
-		RobotState estimatedState = worldModel.getLatestState().getEstimatedState();
-		speedMeasuredField.setText(format.format(measuredState.getSpeedLeftTrack()) + ", " + format.format(measuredState.getSpeedRightTrack()) + " (encoders)");
-		speedEstimatedField.setText(format.format(estimatedState.getSpeedLeftTrack()) + ", " + format.format(estimatedState.getSpeedRightTrack()) + " (estimated)");
-		repaint();
+		speedMeasuredField.setText(format.format(telemetry.getChannel(TelemetryChannelEnum.MEASURED_SPEED_LEFT).getLatest()) + ", "
+				+ format.format(telemetry.getChannel(TelemetryChannelEnum.MEASURED_SPEED_RIGHT).getLatest()) + " (encoders)");
+		speedEstimatedField.setText(format.format(telemetry.getChannel(TelemetryChannelEnum.ESTIMATED_SPEED_LEFT).getLatest()) + ", "
+				+ format.format(telemetry.getChannel(TelemetryChannelEnum.ESTIMATED_SPEED_RIGHT).getLatest()) + " (estimated)");
 	}
 
 	@Override
@@ -0,0 +1,82 @@
+package raisa.ui.measurements;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import raisa.domain.robot.Robot;
+import raisa.domain.samples.Sample;
+import raisa.util.Vector3D;
+
+/**
+ * Recent measurement history shared by the measurement panels. Every sample
+ * is appended once to the channels, and the panels only read from them.
+ */
+public class Telemetry {
+	private final Map<TelemetryChannelEnum, TelemetryChannel> channels = new EnumMap<TelemetryChannelEnum, TelemetryChannel>(
+			TelemetryChannelEnum.class);
+	private long sampleCount = 0;
+	private long windowStartTime = currentTimeMillis() / 1000;
+	private int samplesAfterWindowStart = 0;
+
+	public Telemetry(int capacity) {
+		for (TelemetryChannelEnum channel : TelemetryChannelEnum.values()) {
+			channels.put(channel, new TelemetryChannel(capacity));
+		}
+	}
+
+	public TelemetryChannel getChannel(TelemetryChannelEnum channel) {
+		return channels.get(channel);
+	}
+
+	public synchronized void add(Sample sample, Robot robot) {
+		long currentTime = currentTimeMillis() / 1000;
+		if (currentTime != windowStartTime) {
+			add(TelemetryChannelEnum.SAMPLE_RATE, samplesAfterWindowStart);
+			windowStartTime = currentTime;
+			samplesAfterWindowStart = 0;
+		}
+		++samplesAfterWindowStart;
+		++sampleCount;
+
+		add(TelemetryChannelEnum.COMPASS_HEADING, (float) (Math.toDegrees(sample.getCompassDirection()) % 360));
+		float estimatedHeading = (float) (Math.toDegrees(robot.getEstimatedState().getHeading()) % 360);
+		if (estimatedHeading < 0) {
+			estimatedHeading += 360;
+		}
+		add(TelemetryChannelEnum.ESTIMATED_HEADING, estimatedHeading);
+		add(TelemetryChannelEnum.MEASURED_SPEED_LEFT, robot.getMeasuredState().getSpeedLeftTrack());
+		add(TelemetryChannelEnum.MEASURED_SPEED_RIGHT, robot.getMeasuredState().getSpeedRightTrack());
+		add(TelemetryChannelEnum.ESTIMATED_SPEED_LEFT, robot.getEstimatedState().getSpeedLeftTrack());
+		add(TelemetryChannelEnum.ESTIMATED_SPEED_RIGHT, robot.getEstimatedState().getSpeedRightTrack());
+		Vector3D gyro = sample.getGyro();
+		add(TelemetryChannelEnum.GYRO_X, gyro.getX());
+		add(TelemetryChannelEnum.GYRO_Y, gyro.getY());
+		add(TelemetryChannelEnum.GYRO_Z, gyro.getZ());
+		Vector3D acceleration = sample.getAcceleration();
+		add(TelemetryChannelEnum.ACCELERATION_X, acceleration.getX());
+		add(TelemetryChannelEnum.ACCELERATION_Y, acceleration.getY());
+		add(TelemetryChannelEnum.ACCELERATION_Z, acceleration.getZ());
+		add(TelemetryChannelEnum.SOUND_INTENSITY, sample.getSoundIntensity());
+	}
+
+	private void add(TelemetryChannelEnum channel, float value) {
+		channels.get(channel).add(value);
+	}
+
+	/**
+	 * Number of samples received since the latest clear.
+	 */
+	public synchronized long getSampleCount() {
+		return sampleCount;
+	}
+
+	public synchronized void clear() {
+		for (TelemetryChannel channel : channels.values()) {
+			channel.clear();
+		}
+		sampleCount = 0;
+		samplesAfterWindowStart = 0;
+	}
+}
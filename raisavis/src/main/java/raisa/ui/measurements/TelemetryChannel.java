@@ -0,0 +1,113 @@
+package raisa.ui.measurements;
+
+/**
+ * Fixed size history of a single measured value, kept in a primitive ring
+ * buffer. Minimum and maximum of every block of samples are kept alongside
+ * so that long windows can be decimated to screen columns without visiting
+ * each sample.
+ */
+public class TelemetryChannel {
+	private static final int BLOCK_SIZE = 16;
+
+	private final float[] values;
+	private final float[] blockMins;
+	private final float[] blockMaxs;
+	private final int mask;
+	private final int blockMask;
+	/** Number of values added since the latest clear */
+	private long count = 0;
+
+	/**
+	 * @param capacity rounded up to a power of two of at least one block
+	 */
+	public TelemetryChannel(int capacity) {
+		int size = Integer.highestOneBit(Math.max(BLOCK_SIZE, capacity) - 1) << 1;
+		values = new float[size];
+		blockMins = new float[size / BLOCK_SIZE];
+		blockMaxs = new float[size / BLOCK_SIZE];
+		mask = size - 1;
+		blockMask = size / BLOCK_SIZE - 1;
+	}
+
+	public synchronized void add(float value) {
+		values[(int) (count & mask)] = value;
+		int block = (int) ((count / BLOCK_SIZE) & blockMask);
+		if (count % BLOCK_SIZE == 0) {
+			blockMins[block] = value;
+			blockMaxs[block] = value;
+		} else {
+			blockMins[block] = Math.min(blockMins[block], value);
+			blockMaxs[block] = Math.max(blockMaxs[block], value);
+		}
+		++count;
+	}
+
+	public synchronized void clear() {
+		count = 0;
+	}
+
+	public int getCapacity() {
+		return values.length;
+	}
+
+	public synchronized int size() {
+		return (int) Math.min(count, values.length);
+	}
+
+	/**
+	 * Returns the latest value or NaN if the channel is empty.
+	 */
+	public synchronized float getLatest() {
+		if (count == 0) {
+			return Float.NaN;
+		}
+		return values[(int) ((count - 1) & mask)];
+	}
+
+	/**
+	 * Decimates the newest values to at most the given number of columns,
+	 * oldest first. Each column gets the minimum and maximum of the values
+	 * it covers, so that peaks stay visible however long the window is.
+	 *
+	 * @return number of columns filled
+	 */
+	public synchronized int getColumns(int windowLength, int columns, float[] mins, float[] maxs) {
+		int length = (int) Math.min(Math.min(count, values.length), windowLength);
+		long first = count - length;
+		if (length <= columns) {
+			for (int i = 0; i < length; ++i) {
+				float value = values[(int) ((first + i) & mask)];
+				mins[i] = value;
+				maxs[i] = value;
+			}
+			return length;
+		}
+		for (int column = 0; column < columns; ++column) {
+			long from = first + (long) column * length / columns;
+			long to = first + (long) (column + 1) * length / columns;
+			fillRange(from, to, column, mins, maxs);
+		}
+		return columns;
+	}
+
+	private void fillRange(long from, long to, int column, float[] mins, float[] maxs) {
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		long i = from;
+		while (i < to) {
+			if (i % BLOCK_SIZE == 0 && i + BLOCK_SIZE <= to) {
+				int block = (int) ((i / BLOCK_SIZE) & blockMask);
+				min = Math.min(min, blockMins[block]);
+				max = Math.max(max, blockMaxs[block]);
+				i += BLOCK_SIZE;
+			} else {
+				float value = values[(int) (i & mask)];
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+				++i;
+			}
+		}
+		mins[column] = min;
+		maxs[column] = max;
+	}
+}
@@ -0,0 +1,11 @@
+package raisa.ui.measurements;
+
+public enum TelemetryChannelEnum {
+
+	COMPASS_HEADING, ESTIMATED_HEADING,
+	MEASURED_SPEED_LEFT, MEASURED_SPEED_RIGHT, ESTIMATED_SPEED_LEFT, ESTIMATED_SPEED_RIGHT,
+	GYRO_X, GYRO_Y, GYRO_Z,
+	ACCELERATION_X, ACCELERATION_Y, ACCELERATION_Z,
+	SOUND_INTENSITY, SAMPLE_RATE;
+
+}
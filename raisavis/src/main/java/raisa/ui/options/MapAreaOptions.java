@@ -35,6 +35,7 @@ class MapAreaOptions extends JPanel {
 		this.add(new MapAreaElementCheckBox("Ultrasonic scanner", MapAreaElementEnum.ULTRASONIC_SCANNER));
 		this.add(new MapAreaElementCheckBox("Map", MapAreaElementEnum.MAP));
 		this.add(new MapAreaElementCheckBox("Landmarks", MapAreaElementEnum.LANDMARKS));		
+		this.add(new MapAreaElementCheckBox("Latency", MapAreaElementEnum.LATENCY));
 		
 		JLabel particleAgeLabel = new JLabel("Min particle age"); 
 		particleAgeLabel.setToolTipText("Minimum age (in generations) for particles to display");
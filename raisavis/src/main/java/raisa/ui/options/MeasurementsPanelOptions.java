@@ -26,6 +26,7 @@ class MeasurementsOptions extends JPanel {
 		this.add(new MeasurementCheckBox("Gyroscope", MeasurementTypeEnum.GYROSCOPE));
 		this.add(new MeasurementCheckBox("Heading", MeasurementTypeEnum.HEADING));
 		this.add(new MeasurementCheckBox("Odometer", MeasurementTypeEnum.ODOMETER));
+		this.add(new MeasurementCheckBox("Pipeline metrics", MeasurementTypeEnum.PIPELINE_METRICS));
 		this.add(new MeasurementCheckBox("Sample counter", MeasurementTypeEnum.SAMPLE_COUNTER));
 		this.add(new MeasurementCheckBox("Sound", MeasurementTypeEnum.SOUND));
 		this.add(new MeasurementCheckBox("Speed", MeasurementTypeEnum.SPEED));
@@ -22,6 +22,15 @@ public class HexToBinaryUtil {
 	    return data;
 	}
 
+	public static String byteArrayToHexString(byte[] data) {
+		char[] hex = new char[data.length * 2];
+		for (int i = 0; i < data.length; ++i) {
+			hex[2 * i] = Character.toUpperCase(Character.forDigit((data[i] >> 4) & 0xF, 16));
+			hex[2 * i + 1] = Character.toUpperCase(Character.forDigit(data[i] & 0xF, 16));
+		}
+		return new String(hex);
+	}
+
 
 	/**
 	 * @param args
@@ -5,14 +5,25 @@ import java.util.concurrent.ThreadFactory;
 public class NamedThreadFactory implements ThreadFactory {
 
 	private final String threadName;
+	private final boolean daemon;
 
 	public NamedThreadFactory(String threadName) {
+		this(threadName, false);
+	}
+
+	/**
+	 * @param daemon true for threads that must not keep the application running
+	 */
+	public NamedThreadFactory(String threadName, boolean daemon) {
 		this.threadName = threadName;
+		this.daemon = daemon;
 	}
 
 	@Override
 	public Thread newThread(Runnable r) {
-		return new Thread(r, threadName);
+		Thread thread = new Thread(r, threadName);
+		thread.setDaemon(daemon);
+		return thread;
 	}
 
 }
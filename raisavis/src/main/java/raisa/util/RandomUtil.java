@@ -5,6 +5,9 @@ import java.util.List;
 import java.util.Random;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.random.RandomAdaptor;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
 
 /**
  * Utility that contains all random generators and distributions. 
@@ -19,7 +22,7 @@ public final class RandomUtil {
 		setSeed(System.currentTimeMillis());
 	}
 
-	public static void setSeed(long seed) {
+	public static synchronized void setSeed(long seed) {
 		RandomUtil.seed = seed;
 		RandomUtil.randomSeeder = new Random(seed);
 		RandomUtil.random = new Random(randomSeeder.nextLong());
@@ -61,10 +64,29 @@ public final class RandomUtil {
 		return dist;
 	}
 	
+	/**
+	 * Independent generator seeded from the current seed. Each simulated
+	 * robot has its own so that robots running in parallel stay repeatable.
+	 */
+	public static synchronized RandomGenerator newRandomGenerator() {
+		return new Well19937c(randomSeeder.nextLong());
+	}
+
+	public static NormalDistribution normalDistribution(RandomGenerator random, double mean, double sd) {
+		return new NormalDistribution(random, mean, sd, NormalDistribution.DEFAULT_INVERSE_ABSOLUTE_ACCURACY);
+	}
+
 	/**
 	 * Shuffle list in-place.
 	 */
 	public static void shuffle(List<?> list) {
 		Collections.shuffle(list, random);
 	}
+
+	/**
+	 * Shuffle list in-place with the given generator.
+	 */
+	public static void shuffle(List<?> list, RandomGenerator random) {
+		Collections.shuffle(list, RandomAdaptor.createAdaptor(random));
+	}
 }
@@ -0,0 +1,153 @@
+package raisa.util.algorithm.search;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of integer items in range [0, capacity[ with primitive float
+ * keys. Items are ordered by the primary key and ties are broken with the
+ * secondary key. Supports decrease-key and removal through an index of item
+ * positions, so no objects are allocated while searching.
+ */
+public class IndexedMinHeap {
+	private final int[] items;
+	private final int[] positions;
+	private final float[] primaryKeys;
+	private final float[] secondaryKeys;
+	private int size;
+
+	public IndexedMinHeap(int capacity) {
+		items = new int[capacity];
+		positions = new int[capacity];
+		primaryKeys = new float[capacity];
+		secondaryKeys = new float[capacity];
+		Arrays.fill(positions, -1);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int item) {
+		return positions[item] >= 0;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; ++i) {
+			positions[items[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Inserts the item or changes its keys if it is already in the heap.
+	 */
+	public void insertOrUpdate(int item, float primaryKey, float secondaryKey) {
+		int position = positions[item];
+		if (position < 0) {
+			position = size++;
+			items[position] = item;
+			positions[item] = position;
+			primaryKeys[item] = primaryKey;
+			secondaryKeys[item] = secondaryKey;
+			siftUp(position);
+		} else {
+			boolean decreased = isLess(primaryKey, secondaryKey, primaryKeys[item], secondaryKeys[item]);
+			primaryKeys[item] = primaryKey;
+			secondaryKeys[item] = secondaryKey;
+			if (decreased) {
+				siftUp(position);
+			} else {
+				siftDown(position);
+			}
+		}
+	}
+
+	public int peek() {
+		return items[0];
+	}
+
+	public float peekPrimaryKey() {
+		return primaryKeys[items[0]];
+	}
+
+	public float peekSecondaryKey() {
+		return secondaryKeys[items[0]];
+	}
+
+	public int pop() {
+		int top = items[0];
+		removeAt(0);
+		return top;
+	}
+
+	public void remove(int item) {
+		int position = positions[item];
+		if (position >= 0) {
+			removeAt(position);
+		}
+	}
+
+	private void removeAt(int position) {
+		int removed = items[position];
+		positions[removed] = -1;
+		--size;
+		if (position == size) {
+			return;
+		}
+		int last = items[size];
+		items[position] = last;
+		positions[last] = position;
+		siftUp(position);
+		siftDown(positions[last]);
+	}
+
+	private void siftUp(int position) {
+		int item = items[position];
+		while (position > 0) {
+			int parentPosition = (position - 1) >>> 1;
+			int parent = items[parentPosition];
+			if (!isLess(item, parent)) {
+				break;
+			}
+			items[position] = parent;
+			positions[parent] = position;
+			position = parentPosition;
+		}
+		items[position] = item;
+		positions[item] = position;
+	}
+
+	private void siftDown(int position) {
+		int item = items[position];
+		int half = size >>> 1;
+		while (position < half) {
+			int childPosition = 2 * position + 1;
+			int child = items[childPosition];
+			int rightPosition = childPosition + 1;
+			if (rightPosition < size && isLess(items[rightPosition], child)) {
+				childPosition = rightPosition;
+				child = items[childPosition];
+			}
+			if (!isLess(child, item)) {
+				break;
+			}
+			items[position] = child;
+			positions[child] = position;
+			position = childPosition;
+		}
+		items[position] = item;
+		positions[item] = position;
+	}
+
+	private boolean isLess(int item1, int item2) {
+		return isLess(primaryKeys[item1], secondaryKeys[item1], primaryKeys[item2], secondaryKeys[item2]);
+	}
+
+	private static boolean isLess(float primary1, float secondary1, float primary2, float secondary2) {
+		return primary1 < primary2 || (primary1 == primary2 && secondary1 < secondary2);
+	}
+}
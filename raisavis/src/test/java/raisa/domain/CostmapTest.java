@@ -0,0 +1,68 @@
+package raisa.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import raisa.util.Vector2D;
+
+public class CostmapTest {
+
+	private final Grid grid = new Grid();
+	private final Costmap costmap = grid.getCostmap();
+
+	@Test
+	public void incrementalUpdatesMatchRebuild() {
+		Random random = new Random(1);
+		for (int i = 0; i < 2000; ++i) {
+			Vector2D position = new Vector2D((random.nextInt(60) - 30) * Grid.CELL_SIZE, (random.nextInt(60) - 30) * Grid.CELL_SIZE);
+			if (random.nextInt(3) == 0) {
+				grid.setGridPosition(position, random.nextInt(4) != 0);
+			} else {
+				grid.setUserPosition(position, random.nextInt(3) != 0);
+			}
+		}
+		Costmap rebuilt = new Costmap(grid);
+		for (int cell = 0; cell < Grid.GRID_SIZE * Grid.GRID_SIZE; ++cell) {
+			assertThat("cost of cell " + cell, costmap.getCost(cell), is(rebuilt.getCost(cell)));
+		}
+	}
+
+	@Test
+	public void costsFallInBandsByObstacleDistance() {
+		grid.setUserPosition(new Vector2D(0.0f, 0.0f), true);
+		int center = Grid.toCell(0.0f);
+		for (int dx = 0; dx < 10; ++dx) {
+			float distance = dx * Grid.CELL_SIZE;
+			float cost = costmap.getCost(center + dx, center);
+			if (distance < Costmap.INSCRIBED_RADIUS) {
+				assertThat(costmap.isLethal(center + dx, center), is(true));
+			} else if (distance <= Costmap.CIRCUMSCRIBED_RADIUS) {
+				assertThat(cost, is(Costmap.CIRCUMSCRIBED_COST));
+			} else if (distance >= Costmap.INFLATION_RADIUS) {
+				assertThat(cost, is(Costmap.FREE_COST));
+			} else {
+				assertTrue(cost > Costmap.FREE_COST && cost < Costmap.CIRCUMSCRIBED_COST);
+				assertTrue(cost < costmap.getCost(center + dx - 1, center));
+			}
+		}
+	}
+
+	@Test
+	public void sensedCellsNeedSeveralHits() {
+		Vector2D position = new Vector2D(0.0f, 0.0f);
+		int cell = Grid.toCell(0.0f);
+		for (int i = 1; i < Grid.SENSED_OBSTACLE_HITS; ++i) {
+			grid.setGridPosition(position, true);
+			assertThat(costmap.getCost(cell, cell), is(Costmap.FREE_COST));
+		}
+		grid.setGridPosition(position, true);
+		assertThat(costmap.isLethal(cell, cell), is(true));
+		grid.setGridPosition(position, false);
+		assertThat(costmap.getCost(cell, cell), is(Costmap.FREE_COST));
+	}
+}
@@ -0,0 +1,133 @@
+package raisa.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import raisa.util.Vector2D;
+
+public class GridUndoTest {
+	private final Random random = new Random(5);
+	private final Grid grid = new Grid();
+
+	@Test
+	public void undoAndRedoRestorePixels() {
+		draw(500);
+		int[] first = pixels();
+		grid.pushUserUndoLevel();
+		draw(500);
+		int[] second = pixels();
+		assertFalse(Arrays.equals(first, second));
+
+		grid.popUserUndoLevel();
+		assertArrayEquals(first, pixels());
+		assertEquals(0, grid.getUserUndoLevels());
+		assertEquals(1, grid.getUserRedoLevels());
+
+		grid.redoUserUndoLevel();
+		assertArrayEquals(second, pixels());
+		assertEquals(1, grid.getUserUndoLevels());
+		assertEquals(0, grid.getUserRedoLevels());
+
+		grid.popUserUndoLevel();
+		assertArrayEquals(first, pixels());
+	}
+
+	@Test
+	public void pushAfterUndoDropsRedoLevels() {
+		draw(100);
+		grid.pushUserUndoLevel();
+		draw(100);
+		int[] second = pixels();
+		grid.pushUserUndoLevel();
+		draw(100);
+		grid.pushUserUndoLevel();
+		draw(100);
+
+		grid.popUserUndoLevel();
+		grid.popUserUndoLevel();
+		assertArrayEquals(second, pixels());
+		assertEquals(2, grid.getUserRedoLevels());
+
+		grid.pushUserUndoLevel();
+		draw(100);
+		int[] replaced = pixels();
+		assertFalse(grid.isUserEditRedoable());
+		assertEquals(0, grid.getUserRedoLevels());
+		assertEquals(2, grid.getUserUndoLevels());
+
+		grid.redoUserUndoLevel();
+		assertArrayEquals(replaced, pixels());
+		grid.popUserUndoLevel();
+		assertArrayEquals(second, pixels());
+		grid.redoUserUndoLevel();
+		assertArrayEquals(replaced, pixels());
+	}
+
+	@Test
+	public void oldestLevelIsEvicted() {
+		int pushes = Grid.MAX_UNDO_LEVELS + 5;
+		for (int i = 0; i < pushes; ++i) {
+			block(i);
+			grid.pushUserUndoLevel();
+		}
+		assertEquals(Grid.MAX_UNDO_LEVELS, grid.getUserUndoLevels());
+		for (int i = 0; i < Grid.MAX_UNDO_LEVELS; ++i) {
+			grid.popUserUndoLevel();
+		}
+		assertFalse(grid.isUserEditUndoable());
+		assertEquals(Grid.MAX_UNDO_LEVELS, grid.getUserRedoLevels());
+		// the levels before the first five edits were dropped
+		for (int i = 0; i < pushes; ++i) {
+			assertEquals("cell " + i, i <= pushes - Grid.MAX_UNDO_LEVELS, isBlocked(i));
+		}
+	}
+
+	@Test
+	public void undoUpdatesMapSnapshot() {
+		grid.getUserMapSnapshot();
+		grid.pushUserUndoLevel();
+		block(0);
+		assertFalse(grid.getUserMapSnapshot().isClear(cellPosition(0)));
+		grid.popUserUndoLevel();
+		assertTrue(grid.getUserMapSnapshot().isClear(cellPosition(0)));
+	}
+
+	private void draw(int cells) {
+		for (int i = 0; i < cells; ++i) {
+			float x = (random.nextFloat() * 2.0f - 1.0f) * 150 * Grid.CELL_SIZE;
+			float y = (random.nextFloat() * 2.0f - 1.0f) * 150 * Grid.CELL_SIZE;
+			grid.setUserPosition(new Vector2D(x, y), random.nextInt(4) != 0);
+		}
+	}
+
+	private void block(int index) {
+		grid.setUserPosition(cellPosition(index), true);
+	}
+
+	private boolean isBlocked(int index) {
+		return grid.isUserCellBlocked(cellX(index), cellY(index));
+	}
+
+	private Vector2D cellPosition(int index) {
+		return new Vector2D(Grid.toWorld(cellX(index)), Grid.toWorld(cellY(index)));
+	}
+
+	private int cellX(int index) {
+		return 50 + index % 300;
+	}
+
+	private int cellY(int index) {
+		return 50 + index / 300;
+	}
+
+	private int[] pixels() {
+		return grid.getUserImage().getRGB(0, 0, Grid.GRID_SIZE, Grid.GRID_SIZE, null, 0, Grid.GRID_SIZE);
+	}
+}
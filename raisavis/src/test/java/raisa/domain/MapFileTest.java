@@ -0,0 +1,230 @@
+package raisa.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import raisa.util.Vector2D;
+
+public class MapFileTest {
+	private static final int CELL_COUNT = Grid.GRID_SIZE * Grid.GRID_SIZE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Grid grid = new Grid();
+
+	@Test
+	public void readsBackAllLayers() throws IOException {
+		drawObstacles(grid);
+		File file = new File(folder.getRoot(), "map." + MapFile.EXTENSION);
+		MapFile.write(file, grid);
+		MapFile map = MapFile.open(file);
+		assertTrue(map.getLayer(MapLayerEnum.COST).isDirect());
+		assertReadsBackAllLayers(map);
+	}
+
+	@Test
+	public void readsBackAllLayersOfCopy() throws IOException {
+		drawObstacles(grid);
+		File file = new File(folder.getRoot(), "map." + MapFile.EXTENSION);
+		MapFile.write(file, grid);
+		MapFile map = MapFile.open(file, true);
+		// nothing of the file is held open or mapped
+		assertTrue(file.delete());
+		assertFalse(map.getLayer(MapLayerEnum.COST).isDirect());
+		assertReadsBackAllLayers(map);
+	}
+
+	private void assertReadsBackAllLayers(MapFile map) {
+		assertTrue(map.fitsGrid());
+		assertTrue(map.hasCostmapLayers());
+		for (MapLayerEnum layer : MapLayerEnum.values()) {
+			assertTrue(map.hasLayer(layer));
+			assertEquals(CELL_COUNT * layer.getBytesPerCell(), map.getLayer(layer).remaining());
+		}
+		int[] pixels = grid.getUserImage().getRGB(0, 0, Grid.GRID_SIZE, Grid.GRID_SIZE, null, 0, Grid.GRID_SIZE);
+		int[] readPixels = new int[CELL_COUNT];
+		map.getLayer(MapLayerEnum.USER_PIXELS).asIntBuffer().get(readPixels);
+		assertArrayEquals(pixels, readPixels);
+		ByteBuffer occupancy = map.getLayer(MapLayerEnum.OCCUPANCY);
+		for (int cell = 0; cell < CELL_COUNT; ++cell) {
+			assertEquals(Grid.toOccupancy(pixels[cell]), occupancy.get(cell));
+		}
+		FloatBuffer distances = FloatBuffer.allocate(CELL_COUNT);
+		grid.getCostmap().getDistances(distances);
+		assertEquals(distances.flip(), map.getLayer(MapLayerEnum.DISTANCE).asFloatBuffer());
+		IntBuffer nearestObstacles = IntBuffer.allocate(CELL_COUNT);
+		grid.getCostmap().getNearestObstacles(nearestObstacles);
+		assertEquals(nearestObstacles.flip(), map.getLayer(MapLayerEnum.NEAREST_OBSTACLE).asIntBuffer());
+		FloatBuffer costs = FloatBuffer.allocate(CELL_COUNT);
+		grid.getCostmap().getCosts(costs);
+		assertEquals(costs.flip(), map.getLayer(MapLayerEnum.COST).asFloatBuffer());
+	}
+
+	@Test
+	public void loadedCostmapMatchesRebuiltOne() throws IOException {
+		drawObstacles(grid);
+		File file = new File(folder.getRoot(), "map." + MapFile.EXTENSION);
+		MapFile.write(file, grid);
+		Grid loaded = new Grid();
+		loaded.setUserMap(MapFile.open(file));
+		assertSameCosts(new Costmap(loaded), loaded.getCostmap());
+
+		// incremental updates rely on the loaded nearest obstacles
+		loaded.setUserPosition(new Vector2D(0.0f, 0.0f), false);
+		loaded.setUserPosition(new Vector2D(5 * Grid.CELL_SIZE, 0.0f), true);
+		assertSameCosts(new Costmap(loaded), loaded.getCostmap());
+	}
+
+	@Test
+	public void refusesTruncatedFile() throws IOException {
+		drawObstacles(grid);
+		File file = new File(folder.getRoot(), "map." + MapFile.EXTENSION);
+		MapFile.write(file, grid);
+		try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+			truncated.setLength(truncated.length() - 100);
+		}
+		assertOpenFails(file);
+	}
+
+	@Test
+	public void refusesBadMagic() throws IOException {
+		File file = new File(folder.getRoot(), "map." + MapFile.EXTENSION);
+		MapFile.write(file, grid);
+		try (RandomAccessFile corrupted = new RandomAccessFile(file, "rw")) {
+			corrupted.writeInt(0x89504E47);
+		}
+		assertOpenFails(file);
+	}
+
+	@Test
+	public void skipsUnknownLayers() throws IOException {
+		byte[] occupancy = randomOccupancy();
+		File file = new File(folder.getRoot(), "map." + MapFile.EXTENSION);
+		writeMap(file, new int[] { 99, MapLayerEnum.OCCUPANCY.getId() }, new byte[][] { new byte[CELL_COUNT * 4], occupancy });
+		MapFile map = MapFile.open(file);
+		assertTrue(map.hasLayer(MapLayerEnum.OCCUPANCY));
+		assertFalse(map.hasLayer(MapLayerEnum.USER_PIXELS));
+		assertFalse(map.hasCostmapLayers());
+		byte[] readOccupancy = new byte[CELL_COUNT];
+		map.getLayer(MapLayerEnum.OCCUPANCY).get(readOccupancy);
+		assertArrayEquals(occupancy, readOccupancy);
+
+		writeMap(file, new int[] { 99 }, new byte[][] { new byte[CELL_COUNT * 4] });
+		assertOpenFails(file);
+	}
+
+	@Test
+	public void savesPngOfMapWithOnlyOccupancy() throws IOException {
+		byte[] occupancy = randomOccupancy();
+		File file = new File(folder.getRoot(), "map." + MapFile.EXTENSION);
+		writeMap(file, new int[] { MapLayerEnum.OCCUPANCY.getId() }, new byte[][] { occupancy });
+		WorldModel world = new WorldModel();
+		world.loadMap(file.getPath());
+		File png = new File(folder.getRoot(), "map.png");
+		world.saveMap(png.getPath());
+
+		BufferedImage image = ImageIO.read(png);
+		assertThat(image.getWidth(), is(Grid.GRID_SIZE));
+		assertThat(image.getHeight(), is(Grid.GRID_SIZE));
+		for (int cell = 0; cell < CELL_COUNT; ++cell) {
+			int rgb = image.getRGB(cell % Grid.GRID_SIZE, cell / Grid.GRID_SIZE);
+			assertEquals("pixel of cell " + cell, Grid.fromOccupancy(occupancy[cell]), rgb);
+		}
+		assertTrue(world.getGrid().isUserCellBlocked(Grid.GRID_SIZE / 2, Grid.GRID_SIZE / 2 + 10));
+	}
+
+	private static void drawObstacles(Grid grid) {
+		Random random = new Random(2);
+		for (int i = 0; i < 300; ++i) {
+			grid.setUserPosition(new Vector2D((random.nextInt(80) - 40) * Grid.CELL_SIZE, (random.nextInt(80) - 40) * Grid.CELL_SIZE), true);
+		}
+	}
+
+	private static byte[] randomOccupancy() {
+		Random random = new Random(3);
+		byte[] occupancy = new byte[CELL_COUNT];
+		for (int cell = 0; cell < CELL_COUNT; ++cell) {
+			int value = random.nextInt(20);
+			occupancy[cell] = value == 0 ? MapFile.OCCUPANCY_BLOCKED : value == 1 ? MapFile.OCCUPANCY_UNKNOWN : MapFile.OCCUPANCY_FREE;
+		}
+		occupancy[(Grid.GRID_SIZE / 2 + 10) * Grid.GRID_SIZE + Grid.GRID_SIZE / 2] = MapFile.OCCUPANCY_BLOCKED;
+		return occupancy;
+	}
+
+	/**
+	 * Writes a map file of the grid size with the given layers, as another
+	 * program might.
+	 */
+	private static void writeMap(File file, int[] layerIds, byte[][] layers) throws IOException {
+		int headerSize = 36 + 12 * layerIds.length;
+		int size = headerSize;
+		for (byte[] layer : layers) {
+			size += layer.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MapFile.MAGIC);
+		buffer.putInt(MapFile.VERSION);
+		buffer.putFloat(Grid.toWorld(0));
+		buffer.putFloat(Grid.toWorld(0));
+		buffer.putFloat(Grid.CELL_SIZE);
+		buffer.putInt(Grid.GRID_SIZE);
+		buffer.putInt(Grid.GRID_SIZE);
+		buffer.putFloat(Costmap.INFLATION_RADIUS);
+		buffer.putInt(layerIds.length);
+		long offset = headerSize;
+		for (int i = 0; i < layerIds.length; ++i) {
+			buffer.putInt(layerIds[i]);
+			buffer.putLong(offset);
+			offset += layers[i].length;
+		}
+		for (byte[] layer : layers) {
+			buffer.put(layer);
+		}
+		FileUtils.writeByteArrayToFile(file, buffer.array());
+	}
+
+	private static void assertOpenFails(File file) {
+		assertOpenFails(file, false);
+		assertOpenFails(file, true);
+	}
+
+	private static void assertOpenFails(File file, boolean copy) {
+		try {
+			MapFile.open(file, copy);
+			fail("opened " + file);
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static void assertSameCosts(Costmap expected, Costmap actual) {
+		for (int y = 0; y < Grid.GRID_SIZE; ++y) {
+			for (int x = 0; x < Grid.GRID_SIZE; ++x) {
+				assertThat("cost at " + x + ", " + y, actual.getCost(x, y), is(expected.getCost(x, y)));
+				assertThat("distance at " + x + ", " + y, actual.getObstacleDistance(x, y), is(expected.getObstacleDistance(x, y)));
+			}
+		}
+	}
+}
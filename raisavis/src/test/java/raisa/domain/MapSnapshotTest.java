@@ -0,0 +1,105 @@
+package raisa.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import raisa.util.Vector2D;
+
+public class MapSnapshotTest {
+	private static final int RAYS = 360;
+	private static final float MAX_RANGE = 400.0f;
+	private static final int FAN_RAYS_PER_CONE = 2000;
+
+	private final Random random = new Random(3);
+	private final Grid grid = new Grid();
+
+	public MapSnapshotTest() {
+		for (int i = 0; i < 300; ++i) {
+			grid.setUserPosition(randomPosition(60), true);
+		}
+	}
+
+	@Test
+	public void traceRaysMatchesTraceRay() {
+		MapSnapshot snapshot = grid.getUserMapSnapshot();
+		float[] angles = new float[RAYS];
+		for (int i = 0; i < RAYS; ++i) {
+			angles[i] = (float) (i * 2.0 * Math.PI / RAYS);
+		}
+		float[] distances = new float[RAYS];
+		for (int i = 0; i < 50; ++i) {
+			Vector2D from = randomPosition(50);
+			snapshot.traceRays(from, angles, RAYS, MAX_RANGE, distances);
+			for (int j = 0; j < RAYS; ++j) {
+				float expected = Math.min(snapshot.traceRay(from, angles[j]), MAX_RANGE);
+				assertEquals(from + " " + angles[j], expected, distances[j], 0.0f);
+			}
+		}
+	}
+
+	@Test
+	public void traceConeMatchesDenseFan() {
+		MapSnapshot snapshot = grid.getUserMapSnapshot();
+		for (int i = 0; i < 200; ++i) {
+			Vector2D from = randomPosition(50);
+			float angle = (float) (random.nextFloat() * 2.0 * Math.PI);
+			float halfWidth = 0.01f + random.nextFloat() * 0.3f;
+			float nearest = MAX_RANGE;
+			for (int j = 0; j < FAN_RAYS_PER_CONE; ++j) {
+				float rayAngle = angle - halfWidth + j * 2.0f * halfWidth / (FAN_RAYS_PER_CONE - 1);
+				nearest = Math.min(nearest, snapshot.traceRay(from, rayAngle));
+			}
+			float cone = snapshot.traceCone(from, angle, halfWidth, MAX_RANGE);
+			String message = from + " " + angle + " " + halfWidth + ": " + cone + " vs " + nearest;
+			// the cone may only miss the corner of a cell between two of its rays
+			assertTrue(message, cone >= nearest - 0.01f);
+			assertTrue(message, cone <= nearest + Grid.CELL_SIZE);
+		}
+	}
+
+	@Test
+	public void patchedSnapshotEqualsRebuiltSnapshot() {
+		grid.getUserMapSnapshot();
+		for (int i = 0; i < 200; ++i) {
+			grid.setUserPosition(randomPosition(60), random.nextBoolean());
+		}
+		// cells on the map border are always blocked in a snapshot
+		grid.setUserPosition(new Vector2D(Grid.toWorld(Grid.GRID_SIZE - 1), 0.0f), false);
+		assertSnapshotsEqual(new MapSnapshot(grid), grid.getUserMapSnapshot());
+	}
+
+	@Test
+	public void snapshotIsRebuiltAfterManyEdits() {
+		grid.getUserMapSnapshot();
+		for (int i = 0; i < Grid.GRID_SIZE * Grid.GRID_SIZE / 32; ++i) {
+			grid.setUserPosition(randomPosition(Grid.GRID_SIZE / 2), random.nextBoolean());
+		}
+		assertSnapshotsEqual(new MapSnapshot(grid), grid.getUserMapSnapshot());
+	}
+
+	private void assertSnapshotsEqual(MapSnapshot expected, MapSnapshot snapshot) {
+		for (int y = 0; y < Grid.GRID_SIZE; ++y) {
+			for (int x = 0; x < Grid.GRID_SIZE; ++x) {
+				Vector2D position = new Vector2D(Grid.toWorld(x), Grid.toWorld(y));
+				assertEquals(x + "," + y, expected.isClear(position), snapshot.isClear(position));
+			}
+		}
+		for (int i = 0; i < 50; ++i) {
+			Vector2D from = randomPosition(50);
+			float angle = (float) (random.nextFloat() * 2.0 * Math.PI);
+			assertEquals(expected.traceRay(from, angle), snapshot.traceRay(from, angle), 0.0f);
+		}
+	}
+
+	/**
+	 * Random world position within the given number of cells from the center.
+	 */
+	private Vector2D randomPosition(int cells) {
+		float range = cells * Grid.CELL_SIZE;
+		return new Vector2D((random.nextFloat() * 2.0f - 1.0f) * range, (random.nextFloat() * 2.0f - 1.0f) * range);
+	}
+}
@@ -0,0 +1,106 @@
+package raisa.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Test;
+
+import raisa.domain.robot.Robot;
+import raisa.domain.samples.Sample;
+import raisa.util.Vector2D;
+
+public class WorldModelStateTest {
+	private final Random random = new Random(6);
+	private final WorldModel world = new WorldModel(new Well19937c(6));
+	private final List<Saved> saves = new ArrayList<Saved>();
+
+	@Test
+	public void restoresSavedWindow() {
+		for (int i = 0; i < 50; ++i) {
+			world.addSample(new Sample());
+		}
+		save();
+		world.removeOldSamples(10);
+		for (int i = 0; i < 5; ++i) {
+			world.addSample(new Sample());
+		}
+		save();
+		world.addSample(new Sample());
+
+		saves.get(0).assertRestores();
+		assertEquals(50, world.getSamples().size());
+		saves.get(1).assertRestores();
+		// samples removed before the save do not come back
+		assertEquals(15, world.getSamples().size());
+	}
+
+	@Test
+	public void restoresEverySave() {
+		for (int i = 0; i < 200; ++i) {
+			edit();
+			save();
+			if (random.nextInt(20) == 0) {
+				saves.get(random.nextInt(saves.size())).assertRestores();
+			}
+		}
+		for (int i = saves.size() - 1; i >= 0; i -= 7) {
+			saves.get(i).assertRestores();
+		}
+	}
+
+	private void edit() {
+		for (int i = random.nextInt(20); i > 0; --i) {
+			world.addSample(new Sample());
+		}
+		for (int i = random.nextInt(5); i > 0; --i) {
+			world.addState(new Robot());
+		}
+		for (int i = random.nextInt(30); i > 0; --i) {
+			Vector2D position = new Vector2D(random.nextInt(100) * Grid.CELL_SIZE, random.nextInt(100) * Grid.CELL_SIZE);
+			world.setGridPosition(position, random.nextBoolean());
+		}
+		switch (random.nextInt(10)) {
+		case 0:
+			world.removeOldSamples(random.nextInt(100));
+			break;
+		case 1:
+			world.removeOldStates(1 + random.nextInt(30));
+			break;
+		case 2:
+			world.clearSamples();
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void save() {
+		saves.add(new Saved());
+	}
+
+	/**
+	 * Saved state of the world and what it should restore.
+	 */
+	private class Saved {
+		private final WorldModel.SavedState state = world.saveState();
+		private final List<Sample> samples = new ArrayList<Sample>(world.getSamples());
+		private final List<Robot> states = world.getStates();
+		private final int[] sensed = sensedPixels();
+
+		public void assertRestores() {
+			world.restoreState(state);
+			assertEquals(samples, world.getSamples());
+			assertEquals(states, world.getStates());
+			assertArrayEquals(sensed, sensedPixels());
+		}
+	}
+
+	private int[] sensedPixels() {
+		return world.getGrid().getBlockedImage().getRGB(0, 0, Grid.GRID_SIZE, Grid.GRID_SIZE, null, 0, Grid.GRID_SIZE);
+	}
+}
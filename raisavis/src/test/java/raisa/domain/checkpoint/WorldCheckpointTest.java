@@ -0,0 +1,197 @@
+package raisa.domain.checkpoint;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.domain.landmarks.Landmark;
+import raisa.domain.landmarks.LineLandmark;
+import raisa.domain.landmarks.SpikeLandmark;
+import raisa.domain.particlefilter.Particle;
+import raisa.domain.particlefilter.ParticleFilter;
+import raisa.domain.robot.Robot;
+import raisa.domain.robot.RobotStateAggregator;
+import raisa.domain.samples.Sample;
+import raisa.simulator.RobotSimulator;
+import raisa.simulator.VirtualClock;
+import raisa.util.Segment2D;
+import raisa.util.Vector2D;
+
+public class WorldCheckpointTest {
+	private static final int PARTICLES = 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void restoresWhatWasWritten() throws IOException {
+		Pipeline original = new Pipeline(1);
+		original.run(200);
+		assertTrue(original.world.getSamples().size() >= 100);
+		SpikeLandmark spike = new SpikeLandmark(120.0f, -40.0f);
+		spike.setSlamId(0);
+		spike.incLife();
+		spike.setAdjustedPosition(new Vector2D(118.0f, -41.0f));
+		spike.setDetectedLandmark(new SpikeLandmark(121.0f, -39.0f));
+		LineLandmark line = new LineLandmark(new Segment2D(0.5f, 10.0f, -100.0f, -100.0f, 100.0f, 100.0f));
+		original.world.getLandmarkManager().getLandmarks().add(spike);
+		original.world.getLandmarkManager().getLandmarks().add(line);
+		File file = folder.newFile("original." + WorldCheckpoint.EXTENSION);
+		WorldCheckpoint.take(original.world, original.particleFilter, original.robotStateAggregator).write(file);
+
+		Pipeline restored = new Pipeline(2);
+		restored.run(20);
+		WorldCheckpoint.read(file).restore(restored.world, restored.particleFilter, restored.robotStateAggregator);
+
+		assertEquals(original.world.getSamples().size(), restored.world.getSamples().size());
+		assertEquals(original.world.getStateCount(), restored.world.getStateCount());
+		Robot originalState = original.world.getLatestState();
+		Robot restoredState = restored.world.getLatestState();
+		assertEquals(originalState.getTimestampMillis(), restoredState.getTimestampMillis());
+		assertEquals(originalState.getEstimatedState().getPosition(), restoredState.getEstimatedState().getPosition());
+		assertEquals(originalState.getEstimatedState().getHeading(), restoredState.getEstimatedState().getHeading(), 0.0f);
+		List<Particle> originalParticles = original.particleFilter.getParticles();
+		List<Particle> restoredParticles = restored.particleFilter.getParticles();
+		assertEquals(originalParticles.size(), restoredParticles.size());
+		for (int i = 0; i < originalParticles.size(); ++i) {
+			assertEquals(originalParticles.get(i).getLastState().getPosition(), restoredParticles.get(i).getLastState().getPosition());
+		}
+		for (int x = 0; x < Grid.GRID_SIZE; x += 7) {
+			for (int y = 0; y < Grid.GRID_SIZE; y += 7) {
+				assertEquals(original.world.getGrid().isSensedCellBlocked(x, y), restored.world.getGrid().isSensedCellBlocked(x, y));
+				assertEquals(original.world.getGrid().isUserCellBlocked(x, y), restored.world.getGrid().isUserCellBlocked(x, y));
+			}
+		}
+
+		List<Landmark> landmarks = restored.world.getLandmarkManager().getLandmarks();
+		assertEquals(2, landmarks.size());
+		Landmark restoredSpike = landmarks.get(0);
+		assertTrue(restoredSpike instanceof SpikeLandmark);
+		assertEquals(spike.getPosition(), restoredSpike.getPosition());
+		assertEquals(2, restoredSpike.getLife());
+		assertEquals(Integer.valueOf(0), restoredSpike.getSlamId());
+		assertEquals(spike.getAdjustedPosition(), restoredSpike.getAdjustedPosition());
+		assertThat(restoredSpike.getDetectedLandmark(), is(notNullValue()));
+		assertEquals(spike.getDetectedLandmark().getPosition(), restoredSpike.getDetectedLandmark().getPosition());
+		LineLandmark restoredLine = (LineLandmark) landmarks.get(1);
+		assertThat(restoredLine.getSlamId(), is(nullValue()));
+		assertThat(restoredLine.getAdjustedPosition(), is(nullValue()));
+		assertEquals(line.getSegment().getP1(), restoredLine.getSegment().getP1());
+		assertEquals(line.getSegment().getP2(), restoredLine.getSegment().getP2());
+		assertEquals(line.getSegment().getSlope(), restoredLine.getSegment().getSlope(), 0.0f);
+		assertEquals(line.getSegment().getIntersect(), restoredLine.getSegment().getIntersect(), 0.0f);
+
+		// everything else written must come back the same as well
+		File rewritten = folder.newFile("restored." + WorldCheckpoint.EXTENSION);
+		WorldCheckpoint.take(restored.world, restored.particleFilter, restored.robotStateAggregator).write(rewritten);
+		assertArrayEquals(FileUtils.readFileToByteArray(file), FileUtils.readFileToByteArray(rewritten));
+	}
+
+	@Test
+	public void writesOnlyKeptSamplesAndStates() throws IOException {
+		Pipeline original = new Pipeline(1);
+		original.run(100);
+		WorldModel.SavedState keyframe = original.world.saveState();
+		original.run(100);
+		original.world.saveState();
+		original.world.removeOldSamples(20);
+		original.world.removeOldStates(10);
+		File file = folder.newFile("trimmed." + WorldCheckpoint.EXTENSION);
+		WorldCheckpoint.take(original.world, original.particleFilter, original.robotStateAggregator).write(file);
+
+		Pipeline restored = new Pipeline(2);
+		WorldCheckpoint.read(file).restore(restored.world, restored.particleFilter, restored.robotStateAggregator);
+		List<Sample> samples = original.world.getSamples();
+		List<Sample> restoredSamples = restored.world.getSamples();
+		assertEquals(20, restoredSamples.size());
+		for (int i = 0; i < samples.size(); ++i) {
+			assertEquals(samples.get(i).getMessageNumber(), restoredSamples.get(i).getMessageNumber());
+		}
+		assertEquals(10, restored.world.getStateCount());
+		assertEquals(original.world.getLatestState().getTimestampMillis(), restored.world.getLatestState().getTimestampMillis());
+
+		// taking the checkpoint leaves the saved states of the world as they were
+		original.world.restoreState(keyframe);
+		assertTrue(original.world.getSamples().size() > 20);
+	}
+
+	@Test
+	public void refusesTruncatedCheckpoint() throws IOException {
+		Pipeline pipeline = new Pipeline(1);
+		pipeline.run(50);
+		File file = folder.newFile("truncated." + WorldCheckpoint.EXTENSION);
+		WorldCheckpoint.take(pipeline.world, pipeline.particleFilter, pipeline.robotStateAggregator).write(file);
+		try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+			truncated.setLength(truncated.length() - 10);
+		}
+		try {
+			WorldCheckpoint.read(file);
+			fail("truncated checkpoint was read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * A simulated robot in a box feeding the world, the particle filter and
+	 * the localization.
+	 */
+	private static class Pipeline {
+		private final WorldModel map = new WorldModel(new Well19937c(0));
+		private final WorldModel world;
+		private final ParticleFilter particleFilter;
+		private final RobotStateAggregator robotStateAggregator;
+		private final VirtualClock clock = new VirtualClock(0);
+		private final RobotSimulator robotSimulator;
+
+		public Pipeline(long seed) {
+			for (int i = -30; i <= 30; ++i) {
+				block(i, -30);
+				block(i, 30);
+				block(-30, i);
+				block(30, i);
+			}
+			world = new WorldModel(new Well19937c(seed));
+			block(world, 10, 10);
+			particleFilter = new ParticleFilter(world, PARTICLES, new Well19937c(seed + 1));
+			robotStateAggregator = new RobotStateAggregator(world, particleFilter, world.getLandmarkManager(), new Well19937c(seed + 2));
+			world.addSampleListener(robotStateAggregator);
+			robotSimulator = RobotSimulator.createHeadlessInstance(new Vector2D(0.0f, 0.0f), 0.0f, map, clock, new Well19937c(seed + 3));
+			robotSimulator.addSensorListener(world);
+			robotSimulator.setWheelSpeeds(0.1f, 0.08f);
+		}
+
+		public void run(int ticks) {
+			for (int i = 0; i < ticks; ++i) {
+				robotSimulator.tick(0.05f);
+				clock.advance(0.05f);
+			}
+		}
+
+		private void block(int x, int y) {
+			block(map, x, y);
+		}
+
+		private static void block(WorldModel world, int x, int y) {
+			world.getGrid().setUserPosition(new Vector2D(x * Grid.CELL_SIZE, y * Grid.CELL_SIZE), true);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package raisa.domain.plan;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import raisa.domain.Costmap;
+import raisa.domain.CostmapListener;
+import raisa.domain.Grid;
+import raisa.util.Vector2D;
+
+public class DStarLitePlannerTest {
+
+	private static final int SIZE = Grid.GRID_SIZE;
+	private static final int CENTER = SIZE / 2;
+
+	private final Grid grid = new Grid();
+	private final Costmap costmap = grid.getCostmap();
+	private final DStarLitePlanner planner = new DStarLitePlanner();
+	private final GridPathPlanner gridPathPlanner = new GridPathPlanner();
+	private int[] changedCells = new int[0];
+
+	@Test
+	public void repairedPathsCostAsMuchAsFreshSearches() {
+		costmap.addCostmapListener(new CostmapListener() {
+			@Override
+			public void costsChanged(int[] cells, int count) {
+				int previousLength = changedCells.length;
+				changedCells = Arrays.copyOf(changedCells, previousLength + count);
+				System.arraycopy(cells, 0, changedCells, previousLength, count);
+			}
+
+			@Override
+			public void costmapRebuilt() {
+			}
+		});
+		Random random = new Random(3);
+		int startX = CENTER - 25;
+		int startY = CENTER;
+		int goal = CENTER * SIZE + CENTER + 25;
+		planner.initialize(costmap, startY * SIZE + startX, goal);
+		assertThat(planner.computeShortestPath(), is(true));
+		assertSameCost(planner.extractPath(), startX, startY, goal);
+
+		for (int round = 0; round < 30; ++round) {
+			changedCells = new int[0];
+			for (int i = 0; i < 15; ++i) {
+				int x = CENTER - 20 + random.nextInt(40);
+				int y = CENTER - 20 + random.nextInt(40);
+				grid.setUserPosition(new Vector2D(Grid.toWorld(x), Grid.toWorld(y)), random.nextInt(4) != 0);
+			}
+			if (round % 3 == 0 && startX < CENTER - 21) {
+				// the robot moves along the route
+				++startX;
+				planner.moveStart(startY * SIZE + startX);
+			}
+			planner.updateCells(changedCells, changedCells.length);
+			assertThat(planner.computeShortestPath(), is(true));
+			assertSameCost(planner.extractPath(), startX, startY, goal);
+		}
+	}
+
+	private void assertSameCost(int[] path, int startX, int startY, int goal) {
+		List<Vector2D> expectedPath = gridPathPlanner.findPath(grid, new Vector2D(Grid.toWorld(startX), Grid.toWorld(startY)),
+				new Vector2D(Grid.toWorld(goal % SIZE), Grid.toWorld(goal / SIZE)), null);
+		if (expectedPath == null) {
+			assertThat(path, nullValue());
+			return;
+		}
+		assertThat(path, notNullValue());
+		assertThat(path[0], is(startY * SIZE + startX));
+		assertThat(path[path.length - 1], is(goal));
+		int[] expectedCells = new int[expectedPath.size()];
+		for (int i = 0; i < expectedCells.length; ++i) {
+			expectedCells[i] = Grid.toCell(expectedPath.get(i).y) * SIZE + Grid.toCell(expectedPath.get(i).x);
+		}
+		float expectedCost = getCost(expectedCells);
+		assertEquals(expectedCost, getCost(path), expectedCost * 1e-4f);
+	}
+
+	private float getCost(int[] path) {
+		float cost = 0.0f;
+		for (int i = 1; i < path.length; ++i) {
+			boolean diagonal = path[i] % SIZE != path[i - 1] % SIZE && path[i] / SIZE != path[i - 1] / SIZE;
+			float length = (diagonal ? (float) Math.sqrt(2.0) : 1.0f) * Grid.CELL_SIZE;
+			cost += length * (costmap.getCost(path[i - 1]) + costmap.getCost(path[i])) * 0.5f;
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,47 @@
+package raisa.domain.plan;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import raisa.domain.Grid;
+import raisa.util.Vector2D;
+
+public class GridPathPlannerTest {
+
+	private final Grid grid = new Grid();
+	private final GridPathPlanner planner = new GridPathPlanner();
+
+	@Test
+	public void findsPathAroundWall() {
+		for (int y = -10; y <= 10; ++y) {
+			grid.setUserPosition(new Vector2D(0.0f, y * Grid.CELL_SIZE), true);
+		}
+		List<Vector2D> path = planner.findPath(grid, new Vector2D(-40.0f, 0.0f), new Vector2D(40.0f, 0.0f), null);
+		assertThat(path, notNullValue());
+		for (Vector2D point : path) {
+			assertThat(grid.isUserCellBlocked(Grid.toCell(point.x), Grid.toCell(point.y)), is(false));
+		}
+		Vector2D last = path.get(path.size() - 1);
+		assertThat(Grid.toCell(last.x), is(Grid.toCell(40.0f)));
+		assertThat(Grid.toCell(last.y), is(Grid.toCell(0.0f)));
+	}
+
+	@Test
+	public void doesNotFindPathIntoEnclosedArea() {
+		for (int i = -3; i <= 3; ++i) {
+			grid.setUserPosition(new Vector2D(i * Grid.CELL_SIZE, -3 * Grid.CELL_SIZE), true);
+			grid.setUserPosition(new Vector2D(i * Grid.CELL_SIZE, 3 * Grid.CELL_SIZE), true);
+			grid.setUserPosition(new Vector2D(-3 * Grid.CELL_SIZE, i * Grid.CELL_SIZE), true);
+			grid.setUserPosition(new Vector2D(3 * Grid.CELL_SIZE, i * Grid.CELL_SIZE), true);
+		}
+		List<Vector2D> path = planner.findPath(grid, new Vector2D(-100.0f, 0.0f), new Vector2D(0.0f, 0.0f), null);
+		assertThat(path, nullValue());
+	}
+
+}
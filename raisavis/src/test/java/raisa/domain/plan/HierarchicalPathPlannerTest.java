@@ -0,0 +1,154 @@
+package raisa.domain.plan;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import raisa.domain.Costmap;
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.util.Vector2D;
+
+public class HierarchicalPathPlannerTest {
+	/** Refining only the chosen cluster crossings may miss the optimal path by a little */
+	private static final float MAXIMUM_COST_RATIO = 1.15f;
+
+	private final WorldModel world = new WorldModel();
+	private final HierarchicalPathPlanner planner = new HierarchicalPathPlanner(world);
+	private final GridPathPlanner gridPlanner = new GridPathPlanner();
+	private final Vector2D start = toWorld(-70, -60);
+	private final Vector2D goal = toWorld(70, 60);
+
+	@Test
+	public void findsNearOptimalPathInEmptyMap() {
+		assertNearOptimal(start, goal);
+	}
+
+	@Test
+	public void findsNearOptimalPathAroundWalls() {
+		for (int wall = -40; wall <= 40; wall += 40) {
+			// walls with a gap at alternating ends
+			int gap = wall == 0 ? -40 : 40;
+			for (int i = -200; i <= 200; ++i) {
+				if (Math.abs(i - gap) > 10) {
+					block(wall, i);
+				}
+			}
+		}
+		assertNearOptimal(start, goal);
+	}
+
+	@Test
+	public void findsNearOptimalPathsAmongScatteredObstacles() {
+		Random random = new Random(3);
+		for (int i = 0; i < 150; ++i) {
+			block(random.nextInt(161) - 80, random.nextInt(161) - 80);
+		}
+		for (int i = 0; i < 5; ++i) {
+			Vector2D from = toFreeWorld(random);
+			Vector2D to = toFreeWorld(random);
+			assertNearOptimal(from, to);
+		}
+	}
+
+	@Test
+	public void rebuildsClustersAfterEdits() {
+		assertNearOptimal(start, goal);
+		// a wall across the previous route with a single gap
+		for (int i = -200; i <= 200; ++i) {
+			if (Math.abs(i - 50) > 6) {
+				block(i, -i);
+			}
+		}
+		assertNearOptimal(start, goal);
+		HierarchicalPathPlanner freshPlanner = new HierarchicalPathPlanner(world);
+		assertEquals(cost(freshPlanner.findPath(start, goal, null)), cost(planner.findPath(start, goal, null)), 1e-3f);
+
+		for (int i = -200; i <= 200; ++i) {
+			unblock(i, -i);
+		}
+		assertNearOptimal(start, goal);
+	}
+
+	@Test
+	public void returnsNullWhenInterrupted() {
+		Thread.currentThread().interrupt();
+		try {
+			assertThat(planner.findPath(start, goal, null), is(nullValue()));
+		} finally {
+			Thread.interrupted();
+		}
+		assertThat(planner.findPath(start, goal, null), is(notNullValue()));
+	}
+
+	private void assertNearOptimal(Vector2D from, Vector2D to) {
+		List<Vector2D> optimalPath = gridPlanner.findPath(world.getGrid(), from, to, null);
+		List<Vector2D> path = planner.findPath(from, to, null);
+		if (optimalPath == null) {
+			assertThat(path, is(nullValue()));
+			return;
+		}
+		assertThat(path, is(notNullValue()));
+		assertEquals(Grid.toCell(from.x), Grid.toCell(path.get(0).x));
+		assertEquals(Grid.toCell(from.y), Grid.toCell(path.get(0).y));
+		assertEquals(Grid.toCell(to.x), Grid.toCell(path.get(path.size() - 1).x));
+		assertEquals(Grid.toCell(to.y), Grid.toCell(path.get(path.size() - 1).y));
+		float optimalCost = cost(optimalPath);
+		float cost = cost(path);
+		assertTrue(cost + 1e-3f * optimalCost >= optimalCost);
+		assertTrue("cost " + cost + " optimal " + optimalCost, cost <= optimalCost * MAXIMUM_COST_RATIO);
+	}
+
+	/**
+	 * Cost of a path of neighbouring cells with the edge costs of the planners.
+	 */
+	private float cost(List<Vector2D> path) {
+		Costmap costmap = world.getCostmap();
+		float cost = 0.0f;
+		for (int i = 1; i < path.size(); ++i) {
+			int x0 = Grid.toCell(path.get(i - 1).x);
+			int y0 = Grid.toCell(path.get(i - 1).y);
+			int x1 = Grid.toCell(path.get(i).x);
+			int y1 = Grid.toCell(path.get(i).y);
+			int dx = Math.abs(x1 - x0);
+			int dy = Math.abs(y1 - y0);
+			assertTrue(dx <= 1 && dy <= 1 && dx + dy > 0);
+			assertFalse(costmap.isLethal(x1, y1));
+			float fromCost = Math.min(costmap.getCost(x0, y0), Costmap.CIRCUMSCRIBED_COST);
+			float length = dx + dy == 2 ? (float) Math.sqrt(2.0) : 1.0f;
+			cost += length * Grid.CELL_SIZE * (fromCost + costmap.getCost(x1, y1)) * 0.5f;
+		}
+		return cost;
+	}
+
+	private Vector2D toFreeWorld(Random random) {
+		while (true) {
+			int x = random.nextInt(161) - 80;
+			int y = random.nextInt(161) - 80;
+			if (!world.getCostmap().isLethal(x + Grid.GRID_SIZE / 2, y + Grid.GRID_SIZE / 2)) {
+				return toWorld(x, y);
+			}
+		}
+	}
+
+	private static Vector2D toWorld(int x, int y) {
+		return new Vector2D(x * Grid.CELL_SIZE, y * Grid.CELL_SIZE);
+	}
+
+	private void block(int x, int y) {
+		world.getGrid().setUserPosition(toWorld(x, y), true);
+	}
+
+	private void unblock(int x, int y) {
+		world.getGrid().setUserPosition(toWorld(x, y), false);
+	}
+}
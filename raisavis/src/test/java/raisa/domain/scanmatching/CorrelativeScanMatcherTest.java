@@ -0,0 +1,77 @@
+package raisa.domain.scanmatching;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.domain.robot.RobotState;
+import raisa.domain.samples.Sample;
+import raisa.util.Vector2D;
+
+public class CorrelativeScanMatcherTest {
+
+	private final WorldModel world = new WorldModel();
+	private final CorrelativeScanMatcher matcher = new CorrelativeScanMatcher(world);
+	private final RobotState actualState = new RobotState(new Vector2D(0.0f, 0.0f), 0.0f);
+
+	@Before
+	public void drawRoom() {
+		// an asymmetric room, so that only one translation matches
+		for (int i = -20; i <= 20; ++i) {
+			block(i, -20);
+			block(i, 15);
+			block(-20, i);
+			block(25, i);
+		}
+		for (int i = 0; i < 8; ++i) {
+			block(-12 + i, -5);
+			block(10, 4 + i);
+		}
+	}
+
+	@Test
+	public void correctsOffsetPose() {
+		RobotState offsetState = new RobotState(new Vector2D(2 * Grid.CELL_SIZE, -Grid.CELL_SIZE), 0.0f);
+		RobotState correctedState = sweep(offsetState);
+		assertTrue(correctedState.getPosition().distance(actualState.getPosition()) < Grid.CELL_SIZE);
+	}
+
+	@Test
+	public void keepsMatchingPose() {
+		RobotState state = new RobotState(new Vector2D(0.0f, 0.0f), 0.0f);
+		assertThat(sweep(state), is(sameInstance(state)));
+	}
+
+	/**
+	 * Sweeps the infrared scanner from left to right at the actual pose and
+	 * turns back, which completes the sweep.
+	 */
+	private RobotState sweep(RobotState estimatedState) {
+		for (int degrees = -90; degrees <= 90; degrees += 2) {
+			RobotState state = matcher.update(estimatedState, sample(degrees));
+			assertThat(state, is(sameInstance(estimatedState)));
+		}
+		return matcher.update(estimatedState, sample(88));
+	}
+
+	private Sample sample(int degrees) {
+		float angle = (float) Math.toRadians(degrees);
+		Sample sample = new Sample();
+		sample.setInfrared1Angle(angle);
+		// rays stop at the edge of a cell, which is ambiguous when rounded to a cell
+		float distance = world.getGrid().traceRay(actualState.getPosition(), actualState.getHeading() + angle) + Grid.CELL_SIZE / 2.0f;
+		sample.setInfrared1Distance(distance);
+		sample.setInfrared1MeasurementValid(true);
+		return sample;
+	}
+
+	private void block(int x, int y) {
+		world.getGrid().setUserPosition(new Vector2D(x * Grid.CELL_SIZE, y * Grid.CELL_SIZE), true);
+	}
+}
@@ -0,0 +1,75 @@
+package raisa.domain.vectormap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BoundingVolumeHierarchyTest {
+	private static final float MAX_DISTANCE = 5000.0f;
+
+	private final Random random = new Random(7);
+	private final VectorPrimitive[] primitives = createPrimitives(300);
+	private final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(primitives);
+
+	@Test
+	public void raysFindTheNearestPrimitive() {
+		for (int i = 0; i < 2000; ++i) {
+			float x = coordinate();
+			float y = coordinate();
+			double angle = random.nextDouble() * 2.0 * Math.PI;
+			float dx = (float) Math.sin(angle);
+			float dy = (float) -Math.cos(angle);
+			float expected = MAX_DISTANCE;
+			for (VectorPrimitive primitive : primitives) {
+				expected = Math.min(expected, primitive.intersectRay(x, y, dx, dy));
+			}
+			assertEquals(expected, hierarchy.intersectRay(x, y, dx, dy, MAX_DISTANCE), 1e-3f);
+		}
+	}
+
+	@Test
+	public void sectorsFindTheNearestPrimitive() {
+		for (int i = 0; i < 2000; ++i) {
+			float x = coordinate();
+			float y = coordinate();
+			double angle = random.nextDouble() * 2.0 * Math.PI;
+			double halfWidth = random.nextDouble() * 1.5;
+			float edge1X = (float) Math.sin(angle - halfWidth);
+			float edge1Y = (float) -Math.cos(angle - halfWidth);
+			float edge2X = (float) Math.sin(angle + halfWidth);
+			float edge2Y = (float) -Math.cos(angle + halfWidth);
+			float expected = MAX_DISTANCE;
+			for (VectorPrimitive primitive : primitives) {
+				expected = Math.min(expected, primitive.nearestInSector(x, y, edge1X, edge1Y, edge2X, edge2Y));
+			}
+			assertEquals(expected, hierarchy.nearestInSector(x, y, edge1X, edge1Y, edge2X, edge2Y, MAX_DISTANCE), 1e-3f);
+		}
+	}
+
+	@Test
+	public void emptyHierarchyFindsNothing() {
+		BoundingVolumeHierarchy empty = new BoundingVolumeHierarchy(new VectorPrimitive[0]);
+		assertEquals(MAX_DISTANCE, empty.intersectRay(0.0f, 0.0f, 1.0f, 0.0f, MAX_DISTANCE), 0.0f);
+		assertEquals(MAX_DISTANCE, empty.nearestInSector(0.0f, 0.0f, 0.0f, -1.0f, 1.0f, 0.0f, MAX_DISTANCE), 0.0f);
+	}
+
+	private VectorPrimitive[] createPrimitives(int count) {
+		VectorPrimitive[] primitives = new VectorPrimitive[count];
+		for (int i = 0; i < count; ++i) {
+			float x = coordinate();
+			float y = coordinate();
+			if (i % 5 == 0) {
+				primitives[i] = new Circle(x, y, 5.0f + random.nextFloat() * 30.0f);
+			} else {
+				primitives[i] = new LineSegment(x, y, x + random.nextFloat() * 200.0f - 100.0f, y + random.nextFloat() * 200.0f - 100.0f);
+			}
+		}
+		return primitives;
+	}
+
+	private float coordinate() {
+		return random.nextFloat() * 2000.0f - 1000.0f;
+	}
+}
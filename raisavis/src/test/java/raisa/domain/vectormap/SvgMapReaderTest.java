@@ -0,0 +1,85 @@
+package raisa.domain.vectormap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import raisa.util.Vector2D;
+
+public class SvgMapReaderTest {
+	private static final float UP = 0.0f;
+	private static final float RIGHT = (float) (Math.PI * 0.5);
+	private static final float DOWN = (float) Math.PI;
+	private static final float LEFT = (float) (Math.PI * 1.5);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Vector2D origin = new Vector2D(0.0f, 0.0f);
+
+	@Test
+	public void readsCompactArcFlags() throws IOException {
+		// the flags of the arc are written together with the end point
+		assertRoundedRoom(read("<path d='M0,0 h100 a10,10 0 0110,10 v90 h-110 z'/>"));
+	}
+
+	@Test
+	public void readsSeparatedArcFlags() throws IOException {
+		assertRoundedRoom(read("<path d='M 0 0 L 100 0 A 10 10 0 0 1 110 10 L 110 100 L 0 100 Z'/>"));
+	}
+
+	@Test
+	public void readsImplicitAndRelativeCommands() throws IOException {
+		// coordinates after a relative move are relative lines
+		VectorWorld world = read("<path d='m0,0 100,0 0,50 -100,0z'/>");
+		assertEquals(4, world.getPrimitives().size());
+		assertEquals(25.0f, world.traceRay(origin, UP), 1e-3f);
+		assertEquals(50.0f, world.traceRay(origin, RIGHT), 1e-3f);
+	}
+
+	@Test
+	public void appliesTransformsAndCentersTheDrawing() throws IOException {
+		VectorWorld world = read("<g transform='translate(500,300)'><rect x='0' y='0' width='80' height='40' transform='scale(2)'/></g>"
+				+ "<line x1='520' y1='370' x2='620' y2='370'/>");
+		// the rectangle is 160 x 80 and the line is inside it, 10 above the bottom edge
+		assertEquals(40.0f, world.traceRay(origin, UP), 1e-3f);
+		assertEquals(80.0f, world.traceRay(origin, LEFT), 1e-3f);
+		assertEquals(30.0f, world.traceRay(origin, DOWN), 1e-3f);
+	}
+
+	@Test
+	public void flattensCurves() throws IOException {
+		VectorWorld world = read("<circle cx='0' cy='0' r='100'/>");
+		for (float angle = 0.0f; angle < 2.0f * Math.PI; angle += 0.3f) {
+			assertEquals(100.0f, world.traceRay(origin, angle), 1.0f);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMissingArcFlag() throws IOException {
+		read("<path d='M0,0 a10,10 0 2 1 10,10'/>");
+	}
+
+	/**
+	 * Room of 110 x 100 whose top right corner is cut by the arc.
+	 */
+	private void assertRoundedRoom(VectorWorld world) {
+		assertEquals(5, world.getPrimitives().size());
+		assertEquals(50.0f, world.traceRay(origin, UP), 1e-3f);
+		assertEquals(50.0f, world.traceRay(origin, DOWN), 1e-3f);
+		assertEquals(55.0f, world.traceRay(origin, LEFT), 1e-3f);
+		assertEquals(55.0f, world.traceRay(origin, RIGHT), 1e-3f);
+	}
+
+	private VectorWorld read(String shapes) throws IOException {
+		File file = folder.newFile();
+		FileUtils.writeStringToFile(file, "<svg xmlns='http://www.w3.org/2000/svg'>" + shapes + "</svg>", "UTF-8");
+		return new SvgMapReader().read(file);
+	}
+}
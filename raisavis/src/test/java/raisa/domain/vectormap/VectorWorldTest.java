@@ -0,0 +1,66 @@
+package raisa.domain.vectormap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import raisa.util.Vector2D;
+
+public class VectorWorldTest {
+	private static final float UP = 0.0f;
+	private static final float RIGHT = (float) (Math.PI * 0.5);
+	private static final float DOWN = (float) Math.PI;
+	private static final float LEFT = (float) (Math.PI * 1.5);
+
+	/** A room of 200 x 100 around the origin with a pillar right of the origin */
+	private final VectorWorld world = new VectorWorldBuilder()
+			.addRectangle(-100.0f, -50.0f, 200.0f, 100.0f)
+			.addCircle(60.0f, 0.0f, 10.0f)
+			.build();
+	private final Vector2D origin = new Vector2D(0.0f, 0.0f);
+
+	@Test
+	public void raysHitTheNearestWall() {
+		assertEquals(50.0f, world.traceRay(origin, UP), 1e-3f);
+		assertEquals(50.0f, world.traceRay(origin, DOWN), 1e-3f);
+		assertEquals(100.0f, world.traceRay(origin, LEFT), 1e-3f);
+		assertEquals(50.0f, world.traceRay(origin, RIGHT), 1e-3f);
+		// the diagonal to a corner of the room
+		assertEquals((float) Math.hypot(100.0, 50.0), world.traceRay(origin, (float) -Math.atan2(100.0, 50.0)), 1e-2f);
+	}
+
+	@Test
+	public void raysStopAtMaximumRange() {
+		float[] angles = { UP, RIGHT, DOWN, LEFT };
+		float[] distances = new float[angles.length];
+		world.traceRays(origin, angles, angles.length, 40.0f, distances);
+		for (float distance : distances) {
+			assertEquals(40.0f, distance, 0.0f);
+		}
+		VectorWorld empty = new VectorWorldBuilder().build();
+		assertEquals(40.0f, empty.traceCone(origin, UP, 0.5f, 40.0f), 0.0f);
+	}
+
+	@Test
+	public void conesFindTheNearestPointInTheSector() {
+		// the wall above is nearest straight up, even though the sector is turned away from it
+		assertEquals(50.0f, world.traceCone(origin, 0.4f, 0.5f, 1000.0f), 1e-3f);
+		// the pillar is found at its nearest point although the center ray misses it
+		assertEquals(50.0f, world.traceCone(origin, RIGHT - 0.3f, 0.35f, 1000.0f), 1e-3f);
+		// without the pillar in the sector, the sector edge hits the wall first
+		float edge = RIGHT - 1.2f;
+		assertEquals(world.traceRay(origin, edge), world.traceCone(origin, RIGHT - 0.9f, 0.3f, 1000.0f), 1e-3f);
+	}
+
+	@Test
+	public void conesMatchRaysWhenNarrow() {
+		for (float angle = 0.0f; angle < 2.0f * Math.PI; angle += 0.1f) {
+			assertEquals(world.traceRay(origin, angle), world.traceCone(origin, angle, 0.0f, 1000.0f), 1e-3f);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void conesMustBeNarrowerThanHalfTurn() {
+		world.traceCone(origin, UP, (float) (Math.PI * 0.5), 1000.0f);
+	}
+}
@@ -0,0 +1,45 @@
+package raisa.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	private final MetricsRegistry registry = new MetricsRegistry();
+	private final Histogram histogram = registry.histogram("test");
+
+	@Test
+	public void bucketsContainTheirValues() {
+		for (long value = 0; value < 1000000; value = value * 3 / 2 + 1) {
+			int bucket = Histogram.toBucket(value);
+			assertTrue(value <= Histogram.getBucketMax(bucket));
+			assertTrue(bucket == 0 || value > Histogram.getBucketMax(bucket - 1));
+		}
+		assertTrue(Histogram.getBucketMax(Histogram.toBucket(Long.MAX_VALUE)) == Long.MAX_VALUE);
+	}
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		registry.setEnabled(true);
+		for (long value = 1; value <= 10000; ++value) {
+			histogram.record(value * 1000);
+		}
+		assertThat(histogram.getCount(), is(10000L));
+		assertThat(histogram.getMax(), is(10000000L));
+		long median = histogram.getPercentile(50.0);
+		assertTrue(median >= 5000000 && median < 5000000 * 17 / 16);
+		long p99 = histogram.getPercentile(99.0);
+		assertTrue(p99 >= 9900000 && p99 < 9900000 * 17 / 16);
+	}
+
+	@Test
+	public void nothingIsRecordedWhenDisabled() {
+		histogram.record(42);
+		histogram.recordSince(registry.startTimer());
+		assertThat(histogram.getCount(), is(0L));
+		assertThat(histogram.getPercentile(99.0), is(0L));
+	}
+}
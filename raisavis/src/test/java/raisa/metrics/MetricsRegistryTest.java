@@ -0,0 +1,29 @@
+package raisa.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+	private final MetricsRegistry registry = new MetricsRegistry();
+
+	@Test
+	public void staysEnabledWhileAnyUserWantsMetrics() {
+		Object panel = new Object();
+		Object overlay = new Object();
+		registry.setEnabled(panel, true);
+		registry.setEnabled(overlay, true);
+		registry.setEnabled(panel, false);
+		assertThat(registry.isEnabled(), is(true));
+		registry.setEnabled(overlay, false);
+		assertThat(registry.isEnabled(), is(false));
+
+		// as with -metrics
+		registry.setEnabled(true);
+		registry.setEnabled(panel, true);
+		registry.setEnabled(panel, false);
+		assertThat(registry.isEnabled(), is(true));
+	}
+}
@@ -0,0 +1,191 @@
+package raisa.session;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalWriterTest {
+	private static final long NEVER_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final long TIMEOUT_MILLIS = 5000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private JournalWriter writer;
+
+	@After
+	public void closeWriter() {
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+	@Test
+	public void commitsWhenBufferIsFull() throws Exception {
+		writer = createWriter(16, NEVER_MILLIS, 32);
+		for (int i = 0; i < 4; ++i) {
+			assertTrue(writer.append(new LineRecord("record " + i)));
+		}
+		// the fourth record does not fit in the buffer, so the first three are committed
+		waitUntilCommitted(3);
+		assertThat(writer.getCommits(), is(1L));
+		assertEquals("record 0\nrecord 1\nrecord 2\n", readJournal());
+	}
+
+	@Test
+	public void commitsAfterInterval() throws Exception {
+		writer = createWriter(16, 50, 1024);
+		assertTrue(writer.append(new LineRecord("first")));
+		waitUntilCommitted(1);
+		assertEquals("first\n", readJournal());
+	}
+
+	@Test
+	public void flushWritesQueuedRecords() throws Exception {
+		writer = createWriter(1024, NEVER_MILLIS, 64 * 1024);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; ++i) {
+			writer.append(new LineRecord("record " + i));
+			expected.append("record ").append(i).append('\n');
+		}
+		writer.flush();
+		assertThat(writer.getCommittedRecords(), is(100L));
+		assertEquals(expected.toString(), readJournal());
+	}
+
+	@Test
+	public void dropsRecordsWhenQueueIsFull() throws Exception {
+		writer = createWriter(2, NEVER_MILLIS, 1024);
+		BlockingRecord blocking = new BlockingRecord();
+		assertTrue(writer.append(blocking));
+		assertTrue(blocking.started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		// the writer is stuck in the first record, so the queue fills up
+		assertTrue(writer.append(new LineRecord("a")));
+		assertTrue(writer.append(new LineRecord("b")));
+		assertFalse(writer.append(new LineRecord("c")));
+		assertThat(writer.getDroppedRecords(), is(1L));
+		blocking.release.countDown();
+		writer.close();
+		assertThat(writer.getCommittedRecords(), is(3L));
+		assertEquals("blocking\na\nb\n", readJournal());
+	}
+
+	@Test
+	public void closeWritesQueuedRecordsAndRefusesNewOnes() throws Exception {
+		writer = createWriter(1024, NEVER_MILLIS, 64 * 1024);
+		writer.append(new LineRecord("one"));
+		writer.append(new LineRecord("two"));
+		writer.close();
+		assertEquals("one\ntwo\n", readJournal());
+		assertFalse(writer.append(new LineRecord("three")));
+		assertThat(writer.getCommittedRecords(), is(2L));
+	}
+
+	@Test
+	public void recordsAppendedWhileClosingAreWrittenOrRefused() throws Exception {
+		for (int round = 0; round < 20; ++round) {
+			writer = createWriter(JournalWriter.DEFAULT_QUEUE_CAPACITY, NEVER_MILLIS, 1024);
+			final AtomicLong accepted = new AtomicLong();
+			final AtomicBoolean stopped = new AtomicBoolean();
+			final JournalWriter appendingWriter = writer;
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < 4; ++i) {
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						while (!stopped.get()) {
+							if (appendingWriter.append(new LineRecord("x"))) {
+								accepted.incrementAndGet();
+							}
+						}
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			Thread.sleep(2);
+			writer.close();
+			stopped.set(true);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertThat(writer.getCommittedRecords(), is(accepted.get()));
+			assertEquals(accepted.get() * 2, readJournal().length());
+			FileUtils.cleanDirectory(folder.getRoot());
+		}
+		writer = null;
+	}
+
+	private JournalWriter createWriter(int queueCapacity, long commitIntervalMillis, int commitSize) throws IOException {
+		return new JournalWriter(folder.getRoot(), "journal", "txt", queueCapacity, commitIntervalMillis, commitSize, Long.MAX_VALUE);
+	}
+
+	private void waitUntilCommitted(long records) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (writer.getCommittedRecords() < records && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertThat(writer.getCommittedRecords(), is(records));
+	}
+
+	private String readJournal() throws IOException {
+		return FileUtils.readFileToString(new File(folder.getRoot(), "journal.txt"), "US-ASCII");
+	}
+
+	private static class LineRecord implements JournalRecord {
+		private final String text;
+
+		public LineRecord(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public int getMaxLength() {
+			return text.length() + 1;
+		}
+
+		@Override
+		public void writeTo(ByteBuffer buffer) {
+			JournalWriter.putAscii(buffer, text);
+			buffer.put((byte) '\n');
+		}
+	}
+
+	private static class BlockingRecord extends LineRecord {
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		public BlockingRecord() {
+			super("blocking");
+		}
+
+		@Override
+		public void writeTo(ByteBuffer buffer) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.writeTo(buffer);
+		}
+	}
+}
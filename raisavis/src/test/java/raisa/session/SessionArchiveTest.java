@@ -0,0 +1,158 @@
+package raisa.session;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import raisa.util.HexToBinaryUtil;
+
+public class SessionArchiveTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Random random = new Random(5);
+	private final List<String> sensorLines = new ArrayList<String>();
+	private final List<String> controlLines = new ArrayList<String>();
+	private final byte[] capture = new byte[3000];
+
+	@Test
+	public void exportsEveryStreamAsImported() throws IOException {
+		File archive = importSession();
+		File exported = folder.newFolder("exported");
+		SessionArchive.exportSession(archive, exported);
+
+		assertEquals(sensorLines, FileUtils.readLines(new File(exported, "data.sensor"), StandardCharsets.US_ASCII));
+		assertEquals(controlLines, FileUtils.readLines(new File(exported, "data.control"), StandardCharsets.US_ASCII));
+		assertArrayEquals(capture, FileUtils.readFileToByteArray(new File(exported, "capture.jpg")));
+		assertEquals("route", FileUtils.readFileToString(new File(exported, "notes.txt"), StandardCharsets.US_ASCII));
+		assertEquals(4, exported.list().length);
+	}
+
+	@Test
+	public void readsStreamsAndTimeRanges() throws IOException {
+		File archive = importSession();
+		try (SessionArchiveReader reader = new SessionArchiveReader(archive)) {
+			assertEquals("data", reader.getPrefix());
+			int sensorBlocks = 0;
+			for (ArchiveBlock block : reader.getBlocks()) {
+				if (block.getStream() == ArchiveStreamEnum.SENSOR) {
+					++sensorBlocks;
+				}
+			}
+			assertTrue("sensor blocks " + sensorBlocks, sensorBlocks > 1);
+			assertEquals(sensorLines, reader.readSensorLines());
+			assertEquals(controlLines, reader.readControlLines());
+			assertEquals(Arrays.asList("capture.jpg", "notes.txt"), reader.getFileNames());
+			assertArrayEquals(capture, reader.readFile("capture.jpg"));
+
+			assertEquals(sensorLines.subList(200, 401), reader.readSensorLines(sensorTimestamp(200), sensorTimestamp(400)));
+			assertEquals(controlLines.subList(10, 21), reader.readControlLines(controlTimestamp(10), controlTimestamp(20)));
+		}
+	}
+
+	@Test
+	public void refusesTruncatedArchive() throws IOException {
+		File archive = importSession();
+		try (RandomAccessFile file = new RandomAccessFile(archive, "rw")) {
+			file.setLength(file.length() - 100);
+		}
+		try {
+			new SessionArchiveReader(archive).close();
+			fail("truncated archive was opened");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void refusesCorruptBlock() throws IOException {
+		File archive = importSession();
+		ArchiveBlock corrupted;
+		try (SessionArchiveReader reader = new SessionArchiveReader(archive)) {
+			corrupted = reader.getBlocks().get(0);
+		}
+		try (RandomAccessFile file = new RandomAccessFile(archive, "rw")) {
+			byte[] garbage = new byte[64];
+			Arrays.fill(garbage, (byte) 0xff);
+			file.seek(corrupted.getOffset() + corrupted.getCompressedLength() / 2);
+			file.write(garbage);
+		}
+		try (SessionArchiveReader reader = new SessionArchiveReader(archive)) {
+			// the index is intact, reading the blocks is not
+			assertThat(reader.getBlocks().size() > 1, is(true));
+			try {
+				reader.readLines(corrupted);
+				fail("corrupt block was read");
+			} catch (IOException e) {
+				// expected
+			}
+			try {
+				SessionArchive.exportSession(archive, folder.newFolder("exported"));
+				fail("corrupt archive was exported");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Writes a session directory with a rotated sensor file and archives it.
+	 */
+	private File importSession() throws IOException {
+		File directory = folder.newFolder("session");
+		for (int i = 0; i < 1200; ++i) {
+			byte[] frame = new byte[100];
+			random.nextBytes(frame);
+			String line = "J1;TI" + sensorTimestamp(i) + ";SR" + random.nextInt(300);
+			if (i % 3 == 0) {
+				line += ";CA" + HexToBinaryUtil.byteArrayToHexString(frame) + ";CO" + i;
+			}
+			sensorLines.add(line);
+		}
+		for (int i = 0; i < 50; ++i) {
+			controlLines.add("{\"timestamp\":" + controlTimestamp(i) + ",\"command\":\"forward\",\"value\":" + i + "}");
+		}
+		// a blank line in the recording is not kept
+		FileUtils.writeLines(new File(directory, "data.sensor"), "US-ASCII", sensorLines.subList(0, 700));
+		FileUtils.writeLines(new File(directory, "data-2.sensor"), "US-ASCII", withBlankLine(sensorLines.subList(700, 1200)));
+		FileUtils.writeLines(new File(directory, "data.control"), "US-ASCII", controlLines);
+		random.nextBytes(capture);
+		FileUtils.writeByteArrayToFile(new File(directory, "capture.jpg"), capture);
+		FileUtils.writeStringToFile(new File(directory, "notes.txt"), "route", "US-ASCII");
+
+		File archive = new File(folder.getRoot(), "data." + SessionArchiveWriter.EXTENSION);
+		SessionArchive.importSession(directory, archive);
+		return archive;
+	}
+
+	private static List<String> withBlankLine(List<String> lines) {
+		List<String> result = new ArrayList<String>(lines);
+		result.add(result.size() / 2, "");
+		return result;
+	}
+
+	private static long sensorTimestamp(int i) {
+		return 1000000L + i * 20;
+	}
+
+	private static long controlTimestamp(int i) {
+		return 1000005L + i * 400;
+	}
+}
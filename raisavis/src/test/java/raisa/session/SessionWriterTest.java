@@ -0,0 +1,29 @@
+package raisa.session;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import raisa.metrics.MetricsRegistry;
+
+public class SessionWriterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void removesJournalGaugesWhenClosed() throws IOException {
+		SessionWriter writer = new SessionWriter(folder.getRoot(), "data");
+		writer.start();
+		assertThat(MetricsRegistry.getInstance().getGauges().containsKey("session.sensor.queueDepth"), is(true));
+		assertThat(MetricsRegistry.getInstance().getGauges().containsKey("session.control.writtenBytes"), is(true));
+		writer.close();
+		for (String name : MetricsRegistry.getInstance().getGauges().keySet()) {
+			assertThat(name, name.startsWith("session."), is(false));
+		}
+	}
+}
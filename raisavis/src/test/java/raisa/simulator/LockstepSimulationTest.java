@@ -0,0 +1,114 @@
+package raisa.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Test;
+
+import raisa.comms.SensorListener;
+import raisa.domain.Grid;
+import raisa.domain.WorldModel;
+import raisa.domain.robot.Robot;
+import raisa.domain.robot.RobotState;
+import raisa.util.Vector2D;
+
+public class LockstepSimulationTest {
+	private static final int TICKS_PER_SECOND = 20;
+
+	private final Grid grid = new Grid();
+
+	public LockstepSimulationTest() {
+		for (int i = -40; i <= 40; ++i) {
+			block(i, -40);
+			block(i, 40);
+			block(-40, i);
+			block(40, i);
+		}
+		for (int i = -10; i <= 10; ++i) {
+			block(15, i);
+		}
+	}
+
+	@Test
+	public void sameSeedRepeatsRun() {
+		Run first = new Run(7);
+		Run second = new Run(7);
+		first.simulation.run(30.0f);
+		second.simulation.run(30.0f);
+		assertTrue(first.samples.size() > 100);
+		assertEquals(first.samples, second.samples);
+		assertSameStates(first.simulation.getWorldModel(), second.simulation.getWorldModel());
+
+		Run other = new Run(8);
+		other.simulation.run(30.0f);
+		assertFalse(first.samples.equals(other.samples));
+	}
+
+	@Test
+	public void sameSeedRepeatsMultiRobotRun() throws InterruptedException {
+		MultiRobotSimulation first = new MultiRobotSimulation(grid, 3, 11, TICKS_PER_SECOND);
+		MultiRobotSimulation second = new MultiRobotSimulation(grid, 3, 11, TICKS_PER_SECOND);
+		first.run(20.0f, 3);
+		// one thread, the robots must not depend on each other or on scheduling
+		second.run(20.0f, 1);
+		for (int i = 0; i < first.getRobots().size(); ++i) {
+			WorldModel firstWorld = first.getRobots().get(i).getWorldModel();
+			WorldModel secondWorld = second.getRobots().get(i).getWorldModel();
+			assertEquals(sampleStrings(firstWorld), sampleStrings(secondWorld));
+			assertSameStates(firstWorld, secondWorld);
+		}
+	}
+
+	private static List<String> sampleStrings(WorldModel world) {
+		List<String> strings = new ArrayList<String>();
+		for (int i = 0; i < world.getSamples().size(); ++i) {
+			strings.add(world.getSamples().get(i).getSampleString());
+		}
+		return strings;
+	}
+
+	private static void assertSameStates(WorldModel expected, WorldModel actual) {
+		List<Robot> expectedStates = expected.getLastStates(Integer.MAX_VALUE);
+		List<Robot> actualStates = actual.getLastStates(Integer.MAX_VALUE);
+		assertEquals(expectedStates.size(), actualStates.size());
+		for (int i = 0; i < expectedStates.size(); ++i) {
+			assertEquals(expectedStates.get(i).getTimestampMillis(), actualStates.get(i).getTimestampMillis());
+			assertSameState(expectedStates.get(i).getMeasuredState(), actualStates.get(i).getMeasuredState());
+			assertSameState(expectedStates.get(i).getEstimatedState(), actualStates.get(i).getEstimatedState());
+		}
+	}
+
+	private static void assertSameState(RobotState expected, RobotState actual) {
+		assertEquals(expected.getPosition(), actual.getPosition());
+		assertEquals(expected.getHeading(), actual.getHeading(), 0.0f);
+	}
+
+	private void block(int x, int y) {
+		grid.setUserPosition(new Vector2D(x * Grid.CELL_SIZE, y * Grid.CELL_SIZE), true);
+	}
+
+	/**
+	 * A single robot and the sample lines its sensors sent.
+	 */
+	private class Run {
+		private final List<String> samples = new ArrayList<String>();
+		private final LockstepSimulation simulation;
+
+		public Run(long seed) {
+			WorldModel world = new WorldModel(new Well19937c(seed));
+			world.getGrid().setUserImage(grid.getUserImage());
+			simulation = new LockstepSimulation(world, grid.getUserMapSnapshot(), new Vector2D(0.0f, 0.0f), 30.0f, seed, TICKS_PER_SECOND);
+			simulation.addSensorListener(new SensorListener() {
+				@Override
+				public void sampleReceived(String sample) {
+					samples.add(sample);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package raisa.simulator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import raisa.comms.SampleParser;
+import raisa.domain.samples.Sample;
+import raisa.util.Vector3D;
+
+public class SensorReadingTest {
+	/** Gyro and acceleration are written with six decimals */
+	private static final float FORMATTED_PRECISION = 1e-6f;
+
+	private final Random random = new Random(4);
+
+	@Test
+	public void sampleMatchesParsedSampleString() {
+		for (int i = 0; i < 2000; ++i) {
+			SensorReading reading = randomReading(i);
+			String sampleString = reading.toSampleString();
+			Sample expected = new SampleParser().parse(sampleString);
+			Sample sample = reading.toSample();
+			String message = sampleString;
+			assertEquals(message, expected.getMessageNumber(), sample.getMessageNumber());
+			assertEquals(message, expected.getTimestampMillis(), sample.getTimestampMillis());
+			assertEquals(message, expected.getLeftTrackTicks(), sample.getLeftTrackTicks());
+			assertEquals(message, expected.getRightTrackTicks(), sample.getRightTrackTicks());
+			assertEquals(message, expected.getInfrared1Angle(), sample.getInfrared1Angle(), 0.0f);
+			assertEquals(message, expected.getInfrared1Distance(), sample.getInfrared1Distance(), 0.0f);
+			assertEquals(message, expected.isInfrared1MeasurementValid(), sample.isInfrared1MeasurementValid());
+			assertEquals(message, expected.getInfrared2Angle(), sample.getInfrared2Angle(), 0.0f);
+			assertEquals(message, expected.getInfrared2Distance(), sample.getInfrared2Distance(), 0.0f);
+			assertEquals(message, expected.isInfrared2MeasurementValid(), sample.isInfrared2MeasurementValid());
+			assertEquals(message, expected.getUltrasound1Angle(), sample.getUltrasound1Angle(), 0.0f);
+			assertEquals(message, expected.getUltrasound1Distance(), sample.getUltrasound1Distance(), 0.0f);
+			assertEquals(message, expected.isUltrasound1MeasurementValid(), sample.isUltrasound1MeasurementValid());
+			assertEquals(message, expected.getUltrasound2Angle(), sample.getUltrasound2Angle(), 0.0f);
+			assertEquals(message, expected.getUltrasound2Distance(), sample.getUltrasound2Distance(), 0.0f);
+			assertEquals(message, expected.isUltrasound2MeasurementValid(), sample.isUltrasound2MeasurementValid());
+			assertEquals(message, expected.getCompassDirection(), sample.getCompassDirection(), 0.0f);
+			assertEquals(message, expected.getGyro().getX(), sample.getGyro().getX(), FORMATTED_PRECISION);
+			assertEquals(message, expected.getGyro().getY(), sample.getGyro().getY(), FORMATTED_PRECISION);
+			assertEquals(message, expected.getGyro().getZ(), sample.getGyro().getZ(), FORMATTED_PRECISION);
+			assertEquals(message, expected.getAcceleration().getX(), sample.getAcceleration().getX(), FORMATTED_PRECISION);
+			assertEquals(message, expected.getAcceleration().getY(), sample.getAcceleration().getY(), FORMATTED_PRECISION);
+			assertEquals(message, expected.getAcceleration().getZ(), sample.getAcceleration().getZ(), FORMATTED_PRECISION);
+			assertEquals(sampleString, sample.getSampleString());
+		}
+	}
+
+	/**
+	 * Distances around and outside the valid ranges, and some fields left out.
+	 */
+	private SensorReading randomReading(int messageNumber) {
+		SensorReading reading = new SensorReading()
+				.setMessageNumber(messageNumber)
+				.setTimestamp(1000L + messageNumber * 20)
+				.setLeftEncoder(random.nextInt(10))
+				.setRightEncoder(random.nextInt(10))
+				.setIrDistance1(maybe(random.nextInt(170)))
+				.setIrDirection1(maybe(random.nextInt(181)))
+				.setSonarDistance1(maybe(random.nextInt(700)))
+				.setSonarDirection1(maybe(random.nextInt(181)))
+				.setCompassHeading(maybe(random.nextInt(360)));
+		reading.setIrDistance2(maybe(random.nextInt(170)));
+		reading.setIrDirection2(maybe(random.nextInt(181)));
+		reading.setSonarDistance2(maybe(random.nextInt(700)));
+		reading.setSonarDirection2(maybe(random.nextInt(181)));
+		if (random.nextInt(5) != 0) {
+			reading.setGyro(new Vector3D(randomFloat(), randomFloat(), randomFloat()));
+			reading.setAcceleration(new Vector3D(randomFloat(), randomFloat(), randomFloat()));
+		}
+		return reading;
+	}
+
+	private Integer maybe(int value) {
+		return random.nextInt(8) == 0 ? null : value;
+	}
+
+	private float randomFloat() {
+		return (random.nextFloat() - 0.5f) * 20.0f;
+	}
+}